@@ -16,11 +16,16 @@ import com.facebook.common.executors.SerialExecutorService;
 import com.facebook.common.executors.UiThreadImmediateExecutorService;
 import com.facebook.common.internal.DoNotStrip;
 import com.facebook.common.internal.Supplier;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
+import com.facebook.common.memory.NoOpMemoryTrimmableRegistry;
 import com.facebook.common.time.RealtimeSinceBootClock;
+import com.facebook.fresco.animation.bitmap.cache.AnimationFrameBudgetManager;
+import com.facebook.fresco.animation.bitmap.cache.AnimationFrameSpillStore;
 import com.facebook.fresco.animation.drawable.AnimatedDrawable2;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableBackend;
 import com.facebook.imagepipeline.animated.base.AnimatedImageResult;
 import com.facebook.imagepipeline.animated.factory.AnimatedFactory;
+import com.facebook.imagepipeline.animated.factory.AnimatedFactoryOptions;
 import com.facebook.imagepipeline.animated.factory.AnimatedImageFactory;
 import com.facebook.imagepipeline.animated.factory.AnimatedImageFactoryImpl;
 import com.facebook.imagepipeline.animated.impl.AnimatedDrawableBackendImpl;
@@ -36,6 +41,7 @@ import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.image.QualityInfo;
 import com.facebook.infer.annotation.Nullsafe;
+import java.io.File;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -46,11 +52,18 @@ import javax.annotation.concurrent.NotThreadSafe;
 public class AnimatedFactoryV2Impl implements AnimatedFactory {
 
   private static final int NUMBER_OF_FRAMES_TO_PREPARE = 3;
+  // part of the frame budget kept as free bitmaps for the next frames
+  private static final int FRAME_BITMAP_POOL_BUDGET_RATIO = 4;
 
   private final PlatformBitmapFactory mPlatformBitmapFactory;
   private final ExecutorSupplier mExecutorSupplier;
   private final CountingMemoryCache<CacheKey, CloseableImage> mBackingCache;
+  private final MemoryTrimmableRegistry mMemoryTrimmableRegistry;
   private final boolean mDownscaleFrameToDrawableDimensions;
+  private final int mAnimationFrameBudgetInBytes;
+  private final boolean mDecodeAnimationFramesByDeadline;
+  private final @Nullable File mAnimationFrameSpillDirectory;
+  private final long mAnimationFrameSpillMaxSizeInBytes;
 
   private @Nullable AnimatedImageFactory mAnimatedImageFactory;
   private @Nullable AnimatedDrawableBackendProvider mAnimatedDrawableBackendProvider;
@@ -63,10 +76,32 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
       ExecutorSupplier executorSupplier,
       CountingMemoryCache<CacheKey, CloseableImage> backingCache,
       boolean downscaleFrameToDrawableDimensions) {
+    this(
+        platformBitmapFactory,
+        executorSupplier,
+        backingCache,
+        NoOpMemoryTrimmableRegistry.getInstance(),
+        AnimatedFactoryOptions.newBuilder()
+            .setDownscaleFrameToDrawableDimensions(downscaleFrameToDrawableDimensions)
+            .build());
+  }
+
+  @DoNotStrip
+  public AnimatedFactoryV2Impl(
+      PlatformBitmapFactory platformBitmapFactory,
+      ExecutorSupplier executorSupplier,
+      CountingMemoryCache<CacheKey, CloseableImage> backingCache,
+      MemoryTrimmableRegistry memoryTrimmableRegistry,
+      AnimatedFactoryOptions options) {
     mPlatformBitmapFactory = platformBitmapFactory;
     mExecutorSupplier = executorSupplier;
     mBackingCache = backingCache;
-    mDownscaleFrameToDrawableDimensions = downscaleFrameToDrawableDimensions;
+    mMemoryTrimmableRegistry = memoryTrimmableRegistry;
+    mDownscaleFrameToDrawableDimensions = options.shouldDownscaleFrameToDrawableDimensions();
+    mAnimationFrameBudgetInBytes = options.getAnimationFrameBudgetInBytes();
+    mDecodeAnimationFramesByDeadline = options.shouldDecodeAnimationFramesByDeadline();
+    mAnimationFrameSpillDirectory = options.getAnimationFrameSpillDirectory();
+    mAnimationFrameSpillMaxSizeInBytes = options.getAnimationFrameSpillMaxSizeInBytes();
   }
 
   @Nullable
@@ -107,12 +142,37 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
   }
 
   private ExperimentalBitmapAnimationDrawableFactory createDrawableFactory() {
+    AnimationFrameBudgetManager animationFrameBudgetManager = null;
+    if (mAnimationFrameBudgetInBytes > 0) {
+      animationFrameBudgetManager =
+          new AnimationFrameBudgetManager(
+              mAnimationFrameBudgetInBytes,
+              mAnimationFrameBudgetInBytes / FRAME_BITMAP_POOL_BUDGET_RATIO);
+      mMemoryTrimmableRegistry.registerMemoryTrimmable(animationFrameBudgetManager);
+    }
+    AnimationFrameSpillStore animationFrameSpillStore = null;
+    if (animationFrameBudgetManager == null
+        && mAnimationFrameSpillDirectory != null
+        && mAnimationFrameSpillMaxSizeInBytes > 0) {
+      animationFrameSpillStore =
+          new AnimationFrameSpillStore(
+              mAnimationFrameSpillDirectory, mAnimationFrameSpillMaxSizeInBytes);
+    }
+    final int cachingStrategy;
+    if (animationFrameBudgetManager != null) {
+      cachingStrategy = ExperimentalBitmapAnimationDrawableFactory.CACHING_STRATEGY_BUDGETED;
+    } else if (animationFrameSpillStore != null) {
+      cachingStrategy =
+          ExperimentalBitmapAnimationDrawableFactory.CACHING_STRATEGY_FRESCO_CACHE_WITH_SPILL;
+    } else {
+      cachingStrategy =
+          ExperimentalBitmapAnimationDrawableFactory.CACHING_STRATEGY_FRESCO_CACHE_NO_REUSING;
+    }
     Supplier<Integer> cachingStrategySupplier =
         new Supplier<Integer>() {
           @Override
           public Integer get() {
-            return ExperimentalBitmapAnimationDrawableFactory
-                .CACHING_STRATEGY_FRESCO_CACHE_NO_REUSING;
+            return cachingStrategy;
           }
         };
 
@@ -135,7 +195,10 @@ public class AnimatedFactoryV2Impl implements AnimatedFactory {
         mPlatformBitmapFactory,
         mBackingCache,
         cachingStrategySupplier,
-        numberOfFramesToPrepareSupplier);
+        numberOfFramesToPrepareSupplier,
+        animationFrameBudgetManager,
+        animationFrameSpillStore,
+        mDecodeAnimationFramesByDeadline);
   }
 
   private AnimatedDrawableUtil getAnimatedDrawableUtil() {
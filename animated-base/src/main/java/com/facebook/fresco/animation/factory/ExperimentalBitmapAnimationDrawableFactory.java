@@ -11,20 +11,29 @@ import android.graphics.Bitmap;
 import android.graphics.Rect;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.Supplier;
+import com.facebook.common.time.AwakeTimeSinceBootClock;
 import com.facebook.common.time.MonotonicClock;
 import com.facebook.fresco.animation.backend.AnimationBackend;
 import com.facebook.fresco.animation.backend.AnimationBackendDelegateWithInactivityCheck;
+import com.facebook.fresco.animation.backend.AnimationInformation;
 import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
 import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
 import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
+import com.facebook.fresco.animation.bitmap.cache.AnimationFrameBudgetManager;
 import com.facebook.fresco.animation.bitmap.cache.AnimationFrameCacheKey;
+import com.facebook.fresco.animation.bitmap.cache.AnimationFrameSpillStore;
+import com.facebook.fresco.animation.bitmap.cache.BudgetedBitmapFrameCache;
 import com.facebook.fresco.animation.bitmap.cache.FrescoFrameCache;
 import com.facebook.fresco.animation.bitmap.cache.KeepLastFrameCache;
 import com.facebook.fresco.animation.bitmap.cache.NoOpCache;
+import com.facebook.fresco.animation.bitmap.cache.SpillingBitmapFrameCache;
+import com.facebook.fresco.animation.bitmap.preparation.AdaptiveBitmapFramePreparationStrategy;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparationStrategy;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparer;
+import com.facebook.fresco.animation.bitmap.preparation.BudgetedBitmapFramePreparationStrategy;
 import com.facebook.fresco.animation.bitmap.preparation.DefaultBitmapFramePreparer;
 import com.facebook.fresco.animation.bitmap.preparation.FixedNumberBitmapFramePreparationStrategy;
+import com.facebook.fresco.animation.bitmap.preparation.FrameDecodeScheduler;
 import com.facebook.fresco.animation.bitmap.wrapper.AnimatedDrawableBackendAnimationInformation;
 import com.facebook.fresco.animation.bitmap.wrapper.AnimatedDrawableBackendFrameRenderer;
 import com.facebook.fresco.animation.drawable.AnimatedDrawable2;
@@ -41,6 +50,7 @@ import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.infer.annotation.Nullsafe;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import javax.annotation.Nullable;
 
 /** Animation factory for {@link AnimatedDrawable2}. */
 @Nullsafe(Nullsafe.Mode.LOCAL)
@@ -50,15 +60,31 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
   public static final int CACHING_STRATEGY_FRESCO_CACHE = 1;
   public static final int CACHING_STRATEGY_FRESCO_CACHE_NO_REUSING = 2;
   public static final int CACHING_STRATEGY_KEEP_LAST_CACHE = 3;
+  /** Keeps as many frames as the shared {@link AnimationFrameBudgetManager} allows. */
+  public static final int CACHING_STRATEGY_BUDGETED = 4;
+  /**
+   * Like {@link #CACHING_STRATEGY_FRESCO_CACHE}, but frames that do not fit in memory are copied
+   * back from the {@link AnimationFrameSpillStore} instead of being rendered again.
+   */
+  public static final int CACHING_STRATEGY_FRESCO_CACHE_WITH_SPILL = 5;
+
+  /**
+   * Number of frames to prepare that makes animations prepare as many frames as needed to have
+   * them ready in time, see {@link AdaptiveBitmapFramePreparationStrategy}.
+   */
+  public static final int NUMBER_OF_FRAMES_TO_PREPARE_ADAPTIVE = -1;
 
   private final AnimatedDrawableBackendProvider mAnimatedDrawableBackendProvider;
   private final ScheduledExecutorService mScheduledExecutorServiceForUiThread;
   private final ExecutorService mExecutorServiceForFramePreparing;
+  @Nullable private final FrameDecodeScheduler mFrameDecodeScheduler;
   private final MonotonicClock mMonotonicClock;
   private final PlatformBitmapFactory mPlatformBitmapFactory;
   private final CountingMemoryCache<CacheKey, CloseableImage> mBackingCache;
   private final Supplier<Integer> mCachingStrategySupplier;
   private final Supplier<Integer> mNumberOfFramesToPrepareSupplier;
+  @Nullable private final AnimationFrameBudgetManager mAnimationFrameBudgetManager;
+  @Nullable private final AnimationFrameSpillStore mAnimationFrameSpillStore;
 
   public ExperimentalBitmapAnimationDrawableFactory(
       AnimatedDrawableBackendProvider animatedDrawableBackendProvider,
@@ -69,14 +95,117 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
       CountingMemoryCache<CacheKey, CloseableImage> backingCache,
       Supplier<Integer> cachingStrategySupplier,
       Supplier<Integer> numberOfFramesToPrepareSupplier) {
+    this(
+        animatedDrawableBackendProvider,
+        scheduledExecutorServiceForUiThread,
+        executorServiceForFramePreparing,
+        monotonicClock,
+        platformBitmapFactory,
+        backingCache,
+        cachingStrategySupplier,
+        numberOfFramesToPrepareSupplier,
+        null);
+  }
+
+  /**
+   * @param animationFrameBudgetManager the budget shared by the animations using {@link
+   *     #CACHING_STRATEGY_BUDGETED}, which fall back to {@link #CACHING_STRATEGY_KEEP_LAST_CACHE}
+   *     without it
+   */
+  public ExperimentalBitmapAnimationDrawableFactory(
+      AnimatedDrawableBackendProvider animatedDrawableBackendProvider,
+      ScheduledExecutorService scheduledExecutorServiceForUiThread,
+      ExecutorService executorServiceForFramePreparing,
+      MonotonicClock monotonicClock,
+      PlatformBitmapFactory platformBitmapFactory,
+      CountingMemoryCache<CacheKey, CloseableImage> backingCache,
+      Supplier<Integer> cachingStrategySupplier,
+      Supplier<Integer> numberOfFramesToPrepareSupplier,
+      @Nullable AnimationFrameBudgetManager animationFrameBudgetManager) {
+    this(
+        animatedDrawableBackendProvider,
+        scheduledExecutorServiceForUiThread,
+        executorServiceForFramePreparing,
+        monotonicClock,
+        platformBitmapFactory,
+        backingCache,
+        cachingStrategySupplier,
+        numberOfFramesToPrepareSupplier,
+        animationFrameBudgetManager,
+        null);
+  }
+
+  /**
+   * @param animationFrameBudgetManager the budget shared by the animations using {@link
+   *     #CACHING_STRATEGY_BUDGETED}, which fall back to {@link #CACHING_STRATEGY_KEEP_LAST_CACHE}
+   *     without it
+   * @param animationFrameSpillStore the store for the frames of the animations using {@link
+   *     #CACHING_STRATEGY_FRESCO_CACHE_WITH_SPILL}, which fall back to {@link
+   *     #CACHING_STRATEGY_FRESCO_CACHE} without it
+   */
+  public ExperimentalBitmapAnimationDrawableFactory(
+      AnimatedDrawableBackendProvider animatedDrawableBackendProvider,
+      ScheduledExecutorService scheduledExecutorServiceForUiThread,
+      ExecutorService executorServiceForFramePreparing,
+      MonotonicClock monotonicClock,
+      PlatformBitmapFactory platformBitmapFactory,
+      CountingMemoryCache<CacheKey, CloseableImage> backingCache,
+      Supplier<Integer> cachingStrategySupplier,
+      Supplier<Integer> numberOfFramesToPrepareSupplier,
+      @Nullable AnimationFrameBudgetManager animationFrameBudgetManager,
+      @Nullable AnimationFrameSpillStore animationFrameSpillStore) {
+    this(
+        animatedDrawableBackendProvider,
+        scheduledExecutorServiceForUiThread,
+        executorServiceForFramePreparing,
+        monotonicClock,
+        platformBitmapFactory,
+        backingCache,
+        cachingStrategySupplier,
+        numberOfFramesToPrepareSupplier,
+        animationFrameBudgetManager,
+        animationFrameSpillStore,
+        false);
+  }
+
+  /**
+   * @param animationFrameBudgetManager the budget shared by the animations using {@link
+   *     #CACHING_STRATEGY_BUDGETED}, which fall back to {@link #CACHING_STRATEGY_KEEP_LAST_CACHE}
+   *     without it
+   * @param animationFrameSpillStore the store for the frames of the animations using {@link
+   *     #CACHING_STRATEGY_FRESCO_CACHE_WITH_SPILL}, which fall back to {@link
+   *     #CACHING_STRATEGY_FRESCO_CACHE} without it
+   * @param decodeFramesByDeadline whether the frames of all animations are decoded earliest
+   *     deadline first by a shared {@link FrameDecodeScheduler}, rather than in the order they are
+   *     scheduled
+   */
+  public ExperimentalBitmapAnimationDrawableFactory(
+      AnimatedDrawableBackendProvider animatedDrawableBackendProvider,
+      ScheduledExecutorService scheduledExecutorServiceForUiThread,
+      ExecutorService executorServiceForFramePreparing,
+      MonotonicClock monotonicClock,
+      PlatformBitmapFactory platformBitmapFactory,
+      CountingMemoryCache<CacheKey, CloseableImage> backingCache,
+      Supplier<Integer> cachingStrategySupplier,
+      Supplier<Integer> numberOfFramesToPrepareSupplier,
+      @Nullable AnimationFrameBudgetManager animationFrameBudgetManager,
+      @Nullable AnimationFrameSpillStore animationFrameSpillStore,
+      boolean decodeFramesByDeadline) {
     mAnimatedDrawableBackendProvider = animatedDrawableBackendProvider;
     mScheduledExecutorServiceForUiThread = scheduledExecutorServiceForUiThread;
     mExecutorServiceForFramePreparing = executorServiceForFramePreparing;
+    mFrameDecodeScheduler =
+        decodeFramesByDeadline
+            ? new FrameDecodeScheduler(
+                executorServiceForFramePreparing, Runtime.getRuntime().availableProcessors())
+            : null;
     mMonotonicClock = monotonicClock;
     mPlatformBitmapFactory = platformBitmapFactory;
     mBackingCache = backingCache;
     mCachingStrategySupplier = cachingStrategySupplier;
     mNumberOfFramesToPrepareSupplier = numberOfFramesToPrepareSupplier;
+    mAnimationFrameBudgetManager = animationFrameBudgetManager;
+    mAnimationFrameSpillStore = animationFrameSpillStore;
   }
 
   @Override
@@ -94,24 +223,46 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
     AnimatedDrawableBackend animatedDrawableBackend =
         createAnimatedDrawableBackend(animatedImageResult);
 
-    BitmapFrameCache bitmapFrameCache = createBitmapFrameCache(animatedImageResult);
+    AnimationInformation animationInformation =
+        new AnimatedDrawableBackendAnimationInformation(animatedDrawableBackend);
+    BitmapFrameCache bitmapFrameCache =
+        createBitmapFrameCache(animatedImageResult, animationInformation);
     BitmapFrameRenderer bitmapFrameRenderer =
         new AnimatedDrawableBackendFrameRenderer(bitmapFrameCache, animatedDrawableBackend);
+    // spilled frames are copied back from their file when preparing, not when drawing
+    BitmapFrameRenderer preparingFrameRenderer =
+        bitmapFrameCache instanceof SpillingBitmapFrameCache
+            ? ((SpillingBitmapFrameCache) bitmapFrameCache)
+                .createSpilledFrameRenderer(bitmapFrameRenderer)
+            : bitmapFrameRenderer;
 
     int numberOfFramesToPrefetch = mNumberOfFramesToPrepareSupplier.get();
     BitmapFramePreparationStrategy bitmapFramePreparationStrategy = null;
     BitmapFramePreparer bitmapFramePreparer = null;
-    if (numberOfFramesToPrefetch > 0) {
+    if (numberOfFramesToPrefetch == NUMBER_OF_FRAMES_TO_PREPARE_ADAPTIVE) {
+      // also stays within the budget of budgeted frame caches
+      AdaptiveBitmapFramePreparationStrategy adaptiveStrategy =
+          new AdaptiveBitmapFramePreparationStrategy();
+      DefaultBitmapFramePreparer defaultBitmapFramePreparer =
+          createBitmapFramePreparer(preparingFrameRenderer);
+      defaultBitmapFramePreparer.setFramePreparationListener(adaptiveStrategy);
+      bitmapFramePreparationStrategy = adaptiveStrategy;
+      bitmapFramePreparer = defaultBitmapFramePreparer;
+    } else if (bitmapFrameCache instanceof BudgetedBitmapFrameCache) {
+      // the budget decides how many frames to prepare
+      bitmapFramePreparationStrategy = new BudgetedBitmapFramePreparationStrategy();
+      bitmapFramePreparer = createBitmapFramePreparer(preparingFrameRenderer);
+    } else if (numberOfFramesToPrefetch > 0) {
       bitmapFramePreparationStrategy =
           new FixedNumberBitmapFramePreparationStrategy(numberOfFramesToPrefetch);
-      bitmapFramePreparer = createBitmapFramePreparer(bitmapFrameRenderer);
+      bitmapFramePreparer = createBitmapFramePreparer(preparingFrameRenderer);
     }
 
     BitmapAnimationBackend bitmapAnimationBackend =
         new BitmapAnimationBackend(
             mPlatformBitmapFactory,
             bitmapFrameCache,
-            new AnimatedDrawableBackendAnimationInformation(animatedDrawableBackend),
+            animationInformation,
             bitmapFrameRenderer,
             bitmapFramePreparationStrategy,
             bitmapFramePreparer);
@@ -120,7 +271,16 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
         bitmapAnimationBackend, mMonotonicClock, mScheduledExecutorServiceForUiThread);
   }
 
-  private BitmapFramePreparer createBitmapFramePreparer(BitmapFrameRenderer bitmapFrameRenderer) {
+  private DefaultBitmapFramePreparer createBitmapFramePreparer(
+      BitmapFrameRenderer bitmapFrameRenderer) {
+    if (mFrameDecodeScheduler != null) {
+      return new DefaultBitmapFramePreparer(
+          mPlatformBitmapFactory,
+          bitmapFrameRenderer,
+          Bitmap.Config.ARGB_8888,
+          mFrameDecodeScheduler,
+          AwakeTimeSinceBootClock.get());
+    }
     return new DefaultBitmapFramePreparer(
         mPlatformBitmapFactory,
         bitmapFrameRenderer,
@@ -135,12 +295,29 @@ public class ExperimentalBitmapAnimationDrawableFactory implements DrawableFacto
     return mAnimatedDrawableBackendProvider.get(animatedImageResult, initialBounds);
   }
 
-  private BitmapFrameCache createBitmapFrameCache(AnimatedImageResult animatedImageResult) {
+  private BitmapFrameCache createBitmapFrameCache(
+      AnimatedImageResult animatedImageResult, AnimationInformation animationInformation) {
     switch (mCachingStrategySupplier.get()) {
       case CACHING_STRATEGY_FRESCO_CACHE:
         return new FrescoFrameCache(createAnimatedFrameCache(animatedImageResult), true);
+      case CACHING_STRATEGY_FRESCO_CACHE_WITH_SPILL:
+        BitmapFrameCache frescoFrameCache =
+            new FrescoFrameCache(createAnimatedFrameCache(animatedImageResult), true);
+        if (mAnimationFrameSpillStore != null) {
+          return new SpillingBitmapFrameCache(
+              frescoFrameCache,
+              mAnimationFrameSpillStore,
+              animationInformation.getFrameCount(),
+              mExecutorServiceForFramePreparing);
+        }
+        return frescoFrameCache;
       case CACHING_STRATEGY_FRESCO_CACHE_NO_REUSING:
         return new FrescoFrameCache(createAnimatedFrameCache(animatedImageResult), false);
+      case CACHING_STRATEGY_BUDGETED:
+        if (mAnimationFrameBudgetManager != null) {
+          return new BudgetedBitmapFrameCache(mAnimationFrameBudgetManager, animationInformation);
+        }
+        return new KeepLastFrameCache();
       case CACHING_STRATEGY_KEEP_LAST_CACHE:
         return new KeepLastFrameCache();
       case CACHING_STRATEGY_NO_CACHE:
@@ -221,8 +221,13 @@ public class AnimatedImageFactoryImpl implements AnimatedImageFactory {
   @SuppressLint("NewApi")
   private CloseableReference<Bitmap> createBitmap(
       int width, int height, Bitmap.Config bitmapConfig) {
+    // Frames are rendered into the bitmap, which is not possible with hardware bitmaps
+    final Bitmap.Config softwareBitmapConfig =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bitmapConfig == Bitmap.Config.HARDWARE
+            ? Bitmap.Config.ARGB_8888
+            : bitmapConfig;
     CloseableReference<Bitmap> bitmap =
-        mBitmapFactory.createBitmapInternal(width, height, bitmapConfig);
+        mBitmapFactory.createBitmapInternal(width, height, softwareBitmapConfig);
     bitmap.get().eraseColor(Color.TRANSPARENT);
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
       bitmap.get().setHasAlpha(true);
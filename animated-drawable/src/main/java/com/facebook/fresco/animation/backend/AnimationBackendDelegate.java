@@ -16,7 +16,8 @@ import androidx.annotation.IntRange;
 import javax.annotation.Nullable;
 
 /** Animation backend delegate that forwards all calls to a given {@link AnimationBackend} */
-public class AnimationBackendDelegate<T extends AnimationBackend> implements AnimationBackend {
+public class AnimationBackendDelegate<T extends AnimationBackend>
+    implements AnimationBackend, AnimationVisibilityListener {
 
   private static final int ALPHA_UNSET = -1;
 
@@ -29,6 +30,7 @@ public class AnimationBackendDelegate<T extends AnimationBackend> implements Ani
 
   @Nullable private ColorFilter mColorFilter;
   @Nullable private Rect mBounds;
+  private boolean mVisible = true;
 
   public AnimationBackendDelegate(@Nullable T animationBackend) {
     mAnimationBackend = animationBackend;
@@ -78,6 +80,14 @@ public class AnimationBackendDelegate<T extends AnimationBackend> implements Ani
     mBounds = bounds;
   }
 
+  @Override
+  public void onVisibilityChanged(boolean visible) {
+    if (mAnimationBackend instanceof AnimationVisibilityListener) {
+      ((AnimationVisibilityListener) mAnimationBackend).onVisibilityChanged(visible);
+    }
+    mVisible = visible;
+  }
+
   @Override
   public int getSizeInBytes() {
     return mAnimationBackend == null ? 0 : mAnimationBackend.getSizeInBytes();
@@ -138,5 +148,8 @@ public class AnimationBackendDelegate<T extends AnimationBackend> implements Ani
     if (mColorFilter != null) {
       backend.setColorFilter(mColorFilter);
     }
+    if (!mVisible && backend instanceof AnimationVisibilityListener) {
+      ((AnimationVisibilityListener) backend).onVisibilityChanged(false);
+    }
   }
 }
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.backend;
+
+/**
+ * Optional interface of animation backends and frame caches that want to know whether the animation
+ * is on screen, e.g. to give up cached frames while it is not.
+ *
+ * <p>{@link com.facebook.fresco.animation.drawable.AnimatedDrawable2} reports the visibility of the
+ * drawable to its backend if the backend implements this interface.
+ */
+public interface AnimationVisibilityListener {
+
+  /**
+   * Called when the visibility of the animation changes.
+   *
+   * @param visible true if the animation is visible
+   */
+  void onVisibilityChanged(boolean visible);
+}
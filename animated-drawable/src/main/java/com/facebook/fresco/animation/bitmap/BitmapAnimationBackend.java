@@ -22,6 +22,7 @@ import com.facebook.common.references.CloseableReference;
 import com.facebook.fresco.animation.backend.AnimationBackend;
 import com.facebook.fresco.animation.backend.AnimationBackendDelegateWithInactivityCheck;
 import com.facebook.fresco.animation.backend.AnimationInformation;
+import com.facebook.fresco.animation.backend.AnimationVisibilityListener;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparationStrategy;
 import com.facebook.fresco.animation.bitmap.preparation.BitmapFramePreparer;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
@@ -39,7 +40,9 @@ import javax.annotation.Nullable;
  */
 @Nullsafe(Nullsafe.Mode.STRICT)
 public class BitmapAnimationBackend
-    implements AnimationBackend, AnimationBackendDelegateWithInactivityCheck.InactivityListener {
+    implements AnimationBackend,
+        AnimationBackendDelegateWithInactivityCheck.InactivityListener,
+        AnimationVisibilityListener {
 
   public interface FrameListener {
 
@@ -163,6 +166,8 @@ public class BitmapAnimationBackend
 
     // Prepare next frames
     if (mBitmapFramePreparationStrategy != null && mBitmapFramePreparer != null) {
+      // the frames to prepare are due relative to this frame
+      mBitmapFramePreparer.onFrameDrawn(this, frameNumber);
       mBitmapFramePreparationStrategy.prepareFrames(
           mBitmapFramePreparer, mBitmapFrameCache, this, frameNumber);
     }
@@ -263,6 +268,10 @@ public class BitmapAnimationBackend
 
   @Override
   public void clear() {
+    // nobody is going to see the frames that are still waiting to be decoded
+    if (mBitmapFramePreparer != null) {
+      mBitmapFramePreparer.cancelPendingFrames(this);
+    }
     mBitmapFrameCache.clear();
   }
 
@@ -271,6 +280,13 @@ public class BitmapAnimationBackend
     clear();
   }
 
+  @Override
+  public void onVisibilityChanged(boolean visible) {
+    if (mBitmapFrameCache instanceof AnimationVisibilityListener) {
+      ((AnimationVisibilityListener) mBitmapFrameCache).onVisibilityChanged(visible);
+    }
+  }
+
   private void updateBitmapDimensions() {
     // Calculate the correct bitmap dimensions
     mBitmapWidth = mBitmapFrameRenderer.getIntrinsicWidth();
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.cache;
+
+import android.graphics.Bitmap;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.imageutils.BitmapUtil;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Pool of frame bitmaps shared by all animations, so that a frame bitmap released by one animation
+ * can be reused by another animation of the same dimensions.
+ *
+ * <p>The bitmaps handed out by {@link #get(int, int)} return to the pool when their last reference
+ * is closed. The pool keeps at most the given number of bytes of free bitmaps and recycles the
+ * oldest ones beyond that.
+ */
+@ThreadSafe
+public class AnimatedFrameBitmapPool {
+
+  private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
+
+  private final int mMaxSizeInBytes;
+
+  private final ResourceReleaser<Bitmap> mResourceReleaser =
+      new ResourceReleaser<Bitmap>() {
+        @Override
+        public void release(Bitmap value) {
+          AnimatedFrameBitmapPool.this.release(value);
+        }
+      };
+
+  @GuardedBy("this")
+  private final ArrayDeque<Bitmap> mFreeBitmaps = new ArrayDeque<>();
+
+  @GuardedBy("this")
+  private int mSizeInBytes;
+
+  @GuardedBy("this")
+  private int mReuseCount;
+
+  public AnimatedFrameBitmapPool(int maxSizeInBytes) {
+    mMaxSizeInBytes = maxSizeInBytes;
+  }
+
+  /**
+   * Returns a bitmap of the given dimensions, reusing a free one if available.
+   *
+   * <p>The content of a reused bitmap is undefined, so the frame renderer has to draw all of it.
+   *
+   * @param width the width of the bitmap
+   * @param height the height of the bitmap
+   * @return the bitmap reference that returns the bitmap to this pool once closed
+   */
+  public CloseableReference<Bitmap> get(int width, int height) {
+    Bitmap bitmap = null;
+    synchronized (this) {
+      Iterator<Bitmap> iterator = mFreeBitmaps.iterator();
+      while (iterator.hasNext()) {
+        Bitmap freeBitmap = iterator.next();
+        if (freeBitmap.getWidth() == width && freeBitmap.getHeight() == height) {
+          iterator.remove();
+          mSizeInBytes -= BitmapUtil.getSizeInBytes(freeBitmap);
+          mReuseCount++;
+          bitmap = freeBitmap;
+          break;
+        }
+      }
+    }
+    if (bitmap == null) {
+      bitmap = Bitmap.createBitmap(width, height, BITMAP_CONFIG);
+    }
+    return CloseableReference.of(bitmap, mResourceReleaser);
+  }
+
+  /** Recycles all free bitmaps. */
+  public void clear() {
+    List<Bitmap> bitmapsToRecycle;
+    synchronized (this) {
+      bitmapsToRecycle = new ArrayList<>(mFreeBitmaps);
+      mFreeBitmaps.clear();
+      mSizeInBytes = 0;
+    }
+    for (Bitmap bitmap : bitmapsToRecycle) {
+      bitmap.recycle();
+    }
+  }
+
+  /** @return the size in bytes of the free bitmaps */
+  public synchronized int getSizeInBytes() {
+    return mSizeInBytes;
+  }
+
+  /** @return the number of bitmaps that have been handed out again after being released */
+  public synchronized int getReuseCount() {
+    return mReuseCount;
+  }
+
+  @VisibleForTesting
+  void release(Bitmap bitmap) {
+    if (bitmap.isRecycled()) {
+      return;
+    }
+    int sizeInBytes = BitmapUtil.getSizeInBytes(bitmap);
+    List<Bitmap> bitmapsToRecycle = new ArrayList<>();
+    synchronized (this) {
+      mFreeBitmaps.addLast(bitmap);
+      mSizeInBytes += sizeInBytes;
+      // the released bitmap itself is recycled if it does not fit in the pool
+      while (mSizeInBytes > mMaxSizeInBytes) {
+        Bitmap oldestBitmap = mFreeBitmaps.removeFirst();
+        mSizeInBytes -= BitmapUtil.getSizeInBytes(oldestBitmap);
+        bitmapsToRecycle.add(oldestBitmap);
+      }
+    }
+    for (Bitmap bitmapToRecycle : bitmapsToRecycle) {
+      bitmapToRecycle.recycle();
+    }
+  }
+}
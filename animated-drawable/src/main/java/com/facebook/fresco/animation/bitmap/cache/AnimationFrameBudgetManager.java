@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.cache;
+
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Shares a memory budget for animation frames between all the {@link BudgetedBitmapFrameCache}s.
+ *
+ * <p>As long as the frames of all active animations fit in the budget, each animation can keep all
+ * of its frames. Otherwise, the animations that are not visible are downgraded to keep their last
+ * frame only, and the budget is split between the visible animations in proportion to their frame
+ * size and frame rate: a large, fast animation gets more frame slots than a small, slow one.
+ *
+ * <p>Once trimmed, the manager keeps downgrading the invisible animations until {@link
+ * #releaseMemoryPressure()} is called or no animation is active anymore, so that the next update
+ * does not bring their frames back.
+ *
+ * <p>The manager also owns the {@link AnimatedFrameBitmapPool} that lets animations of the same
+ * dimensions reuse each other's frame bitmaps.
+ */
+@ThreadSafe
+public class AnimationFrameBudgetManager implements MemoryTrimmable {
+
+  /** Frame slots of an animation that only keeps its last frame. */
+  public static final int FRAME_SLOTS_KEEP_LAST_FRAME = 0;
+
+  private final int mMaxSizeInBytes;
+  private final AnimatedFrameBitmapPool mBitmapPool;
+
+  // frame caches that have been garbage collected without being cleared just drop out
+  @GuardedBy("this")
+  private final Map<BudgetedBitmapFrameCache, Participant> mParticipants = new WeakHashMap<>();
+
+  @GuardedBy("this")
+  private boolean mUnderMemoryPressure;
+
+  /**
+   * @param maxSizeInBytes the budget for the frames of all animations
+   * @param maxBitmapPoolSizeInBytes the size of the free frame bitmaps kept for reuse
+   */
+  public AnimationFrameBudgetManager(int maxSizeInBytes, int maxBitmapPoolSizeInBytes) {
+    mMaxSizeInBytes = maxSizeInBytes;
+    mBitmapPool = new AnimatedFrameBitmapPool(maxBitmapPoolSizeInBytes);
+  }
+
+  public AnimatedFrameBitmapPool getBitmapPool() {
+    return mBitmapPool;
+  }
+
+  /** Downgrades the invisible animations and drops the free frame bitmaps. */
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    mBitmapPool.clear();
+    Map<BudgetedBitmapFrameCache, Integer> frameSlots;
+    synchronized (this) {
+      mUnderMemoryPressure = true;
+      frameSlots = allocateFrameSlots();
+    }
+    notifyFrameSlots(frameSlots);
+  }
+
+  /**
+   * Lets the animations use the whole budget again after a {@link #trim}, e.g. once the app is back
+   * in the foreground.
+   */
+  public void releaseMemoryPressure() {
+    Map<BudgetedBitmapFrameCache, Integer> frameSlots;
+    synchronized (this) {
+      if (!mUnderMemoryPressure) {
+        return;
+      }
+      mUnderMemoryPressure = false;
+      frameSlots = allocateFrameSlots();
+    }
+    notifyFrameSlots(frameSlots);
+  }
+
+  /**
+   * Updates the state of an animation and reallocates the budget.
+   *
+   * @param frameCache the frame cache of the animation
+   * @param frameCount the number of frames of the animation
+   * @param framesPerSecond the average frame rate of the animation
+   * @param frameSizeInBytes the size of a frame, 0 if not known yet
+   * @param active whether the animation is running, an inactive animation holds no frames
+   * @param visible whether the animation is on screen
+   */
+  void update(
+      BudgetedBitmapFrameCache frameCache,
+      int frameCount,
+      float framesPerSecond,
+      int frameSizeInBytes,
+      boolean active,
+      boolean visible) {
+    Map<BudgetedBitmapFrameCache, Integer> frameSlots;
+    synchronized (this) {
+      if (active) {
+        Participant participant = mParticipants.get(frameCache);
+        if (participant == null) {
+          participant = new Participant();
+          mParticipants.put(frameCache, participant);
+        }
+        participant.mFrameCount = frameCount;
+        participant.mFramesPerSecond = framesPerSecond;
+        participant.mFrameSizeInBytes = frameSizeInBytes;
+        participant.mVisible = visible;
+      } else {
+        mParticipants.remove(frameCache);
+        if (mParticipants.isEmpty()) {
+          // no frames are held anymore, the next animations start from the whole budget
+          mUnderMemoryPressure = false;
+        }
+      }
+      frameSlots = allocateFrameSlots();
+    }
+    notifyFrameSlots(frameSlots);
+  }
+
+  @VisibleForTesting
+  synchronized int getFrameSlots(BudgetedBitmapFrameCache frameCache) {
+    Participant participant = mParticipants.get(frameCache);
+    return participant == null ? FRAME_SLOTS_KEEP_LAST_FRAME : participant.mFrameSlots;
+  }
+
+  /** @return the frame caches whose frame slots changed, with their new frame slots */
+  @GuardedBy("this")
+  private Map<BudgetedBitmapFrameCache, Integer> allocateFrameSlots() {
+    long totalDemand = 0;
+    for (Participant participant : mParticipants.values()) {
+      totalDemand += participant.getDemandInBytes();
+    }
+    boolean underPressure = mUnderMemoryPressure || totalDemand > mMaxSizeInBytes;
+
+    List<Participant> pending = new ArrayList<>();
+    for (Participant participant : mParticipants.values()) {
+      if (!underPressure) {
+        participant.mNewFrameSlots = participant.mFrameCount;
+      } else if (!participant.mVisible) {
+        participant.mNewFrameSlots = FRAME_SLOTS_KEEP_LAST_FRAME;
+      } else if (participant.mFrameSizeInBytes <= 0) {
+        // the size is known once the first frame is rendered
+        participant.mNewFrameSlots = 1;
+      } else {
+        pending.add(participant);
+      }
+    }
+
+    // Splits the remaining budget by weight. The animations whose share covers all of their frames
+    // get them, and their unused share is split again between the others.
+    long remainingBytes = mMaxSizeInBytes;
+    boolean allocatedAllFrames = true;
+    while (!pending.isEmpty() && allocatedAllFrames) {
+      allocatedAllFrames = false;
+      double totalWeight = 0;
+      for (Participant participant : pending) {
+        totalWeight += participant.getWeight();
+      }
+      for (int i = pending.size() - 1; i >= 0; i--) {
+        Participant participant = pending.get(i);
+        double share = remainingBytes * participant.getWeight() / totalWeight;
+        if (share >= participant.getDemandInBytes()) {
+          participant.mNewFrameSlots = participant.mFrameCount;
+          remainingBytes -= participant.getDemandInBytes();
+          pending.remove(i);
+          allocatedAllFrames = true;
+        }
+      }
+      if (!allocatedAllFrames) {
+        for (Participant participant : pending) {
+          double share = remainingBytes * participant.getWeight() / totalWeight;
+          int frameSlots = (int) (share / participant.mFrameSizeInBytes);
+          // a visible animation always keeps the frame it is showing
+          participant.mNewFrameSlots = Math.max(1, Math.min(participant.mFrameCount, frameSlots));
+        }
+      }
+    }
+
+    Map<BudgetedBitmapFrameCache, Integer> changedFrameSlots = new HashMap<>();
+    for (Map.Entry<BudgetedBitmapFrameCache, Participant> entry : mParticipants.entrySet()) {
+      Participant participant = entry.getValue();
+      if (participant.mNewFrameSlots != participant.mFrameSlots) {
+        participant.mFrameSlots = participant.mNewFrameSlots;
+        changedFrameSlots.put(entry.getKey(), participant.mFrameSlots);
+      }
+    }
+    return changedFrameSlots;
+  }
+
+  // called without holding the lock, the frame caches call back into the manager
+  private static void notifyFrameSlots(Map<BudgetedBitmapFrameCache, Integer> frameSlots) {
+    for (Map.Entry<BudgetedBitmapFrameCache, Integer> entry : frameSlots.entrySet()) {
+      entry.getKey().setFrameSlots(entry.getValue());
+    }
+  }
+
+  private static class Participant {
+    int mFrameCount;
+    float mFramesPerSecond;
+    int mFrameSizeInBytes;
+    boolean mVisible;
+    int mFrameSlots = -1;
+    int mNewFrameSlots;
+
+    long getDemandInBytes() {
+      return (long) mFrameCount * mFrameSizeInBytes;
+    }
+
+    double getWeight() {
+      return (double) mFrameSizeInBytes * Math.max(mFramesPerSecond, 1f);
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.cache;
+
+import android.graphics.Bitmap;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.logging.FLog;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Directory of memory-mapped files that hold the rendered frames of animations as raw ARGB_8888
+ * pixels, see {@link SpillingBitmapFrameCache}.
+ *
+ * <p>Each animation gets its own file with a slot per frame, so that copying a frame back into a
+ * bitmap is a memory copy from the page cache instead of decoding and compositing it again. The
+ * total size of the files is bounded; animations that do not fit are not spilled. Files are
+ * deleted when released, and files left over by a previous process are deleted when the first file
+ * is opened.
+ */
+@ThreadSafe
+public class AnimationFrameSpillStore {
+
+  private static final Class<?> TAG = AnimationFrameSpillStore.class;
+  private static final String FILE_PREFIX = "frames";
+  private static final String FILE_SUFFIX = ".spill";
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private final File mDirectory;
+  private final long mMaxSizeInBytes;
+
+  @GuardedBy("this")
+  private long mSizeInBytes;
+
+  @GuardedBy("this")
+  private boolean mStaleFilesDeleted;
+
+  /**
+   * @param directory the directory for the frame files, used by this store only
+   * @param maxSizeInBytes the maximum total size of the frame files
+   */
+  public AnimationFrameSpillStore(File directory, long maxSizeInBytes) {
+    mDirectory = directory;
+    mMaxSizeInBytes = maxSizeInBytes;
+  }
+
+  /**
+   * Creates the file for the frames of an animation.
+   *
+   * @return the file, or null if it does not fit in the store or cannot be created
+   */
+  @Nullable
+  public SpillFile open(int width, int height, int frameCount) {
+    if (width <= 0 || height <= 0 || frameCount <= 0) {
+      return null;
+    }
+    long frameSizeInBytes = (long) width * height * BYTES_PER_PIXEL;
+    long sizeInBytes = frameSizeInBytes * frameCount;
+    if (sizeInBytes > Integer.MAX_VALUE) {
+      return null;
+    }
+    synchronized (this) {
+      if (mSizeInBytes + sizeInBytes > mMaxSizeInBytes) {
+        return null;
+      }
+      if (!mStaleFilesDeleted) {
+        deleteStaleFiles();
+        mStaleFilesDeleted = true;
+      }
+      mSizeInBytes += sizeInBytes;
+    }
+    File file = null;
+    try {
+      file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, mDirectory);
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+      try {
+        MappedByteBuffer buffer =
+            randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes);
+        return new SpillFile(this, file, buffer, width, height, frameCount, sizeInBytes);
+      } finally {
+        // the mapping stays valid after the file is closed
+        randomAccessFile.close();
+      }
+    } catch (IOException e) {
+      FLog.w(TAG, e, "Could not create frame file in %s", mDirectory);
+      if (file != null) {
+        deleteFile(file);
+      }
+      synchronized (this) {
+        mSizeInBytes -= sizeInBytes;
+      }
+      return null;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getSizeInBytes() {
+    return mSizeInBytes;
+  }
+
+  private void release(SpillFile spillFile) {
+    deleteFile(spillFile.mFile);
+    synchronized (this) {
+      mSizeInBytes -= spillFile.mSizeInBytes;
+    }
+  }
+
+  @GuardedBy("this")
+  private void deleteStaleFiles() {
+    if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+      FLog.w(TAG, "Could not create directory %s", mDirectory);
+      return;
+    }
+    File[] files = mDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.getName().startsWith(FILE_PREFIX) && file.getName().endsWith(FILE_SUFFIX)) {
+        deleteFile(file);
+      }
+    }
+  }
+
+  private static void deleteFile(File file) {
+    if (!file.delete()) {
+      FLog.w(TAG, "Could not delete frame file %s", file);
+    }
+  }
+
+  /** Frame slots of a single animation. Frames can only be stored once. */
+  @ThreadSafe
+  public static class SpillFile {
+
+    private final AnimationFrameSpillStore mStore;
+    private final File mFile;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSizeInBytes;
+    private final long mSizeInBytes;
+
+    @GuardedBy("this")
+    @Nullable
+    private MappedByteBuffer mBuffer;
+
+    @GuardedBy("this")
+    private final boolean[] mStoredFrames;
+
+    private SpillFile(
+        AnimationFrameSpillStore store,
+        File file,
+        MappedByteBuffer buffer,
+        int width,
+        int height,
+        int frameCount,
+        long sizeInBytes) {
+      mStore = store;
+      mFile = file;
+      mBuffer = buffer;
+      mWidth = width;
+      mHeight = height;
+      mFrameSizeInBytes = width * height * BYTES_PER_PIXEL;
+      mSizeInBytes = sizeInBytes;
+      mStoredFrames = new boolean[frameCount];
+    }
+
+    public synchronized boolean contains(int frameNumber) {
+      return isValidFrameNumber(frameNumber) && mStoredFrames[frameNumber];
+    }
+
+    /**
+     * Copies the pixels of the frame to its slot, unless it is stored already.
+     *
+     * @return true if the frame is stored
+     */
+    public synchronized boolean write(int frameNumber, Bitmap bitmap) {
+      if (mBuffer == null || !isValidFrameNumber(frameNumber) || !isCompatible(bitmap)) {
+        return false;
+      }
+      if (!mStoredFrames[frameNumber]) {
+        bitmap.copyPixelsToBuffer(getSlot(mBuffer, frameNumber));
+        mStoredFrames[frameNumber] = true;
+      }
+      return true;
+    }
+
+    /**
+     * Copies the stored pixels of the frame to the given bitmap.
+     *
+     * @return true if the frame was stored and has been copied
+     */
+    public synchronized boolean read(int frameNumber, Bitmap bitmap) {
+      if (mBuffer == null || !contains(frameNumber) || !isCompatible(bitmap)) {
+        return false;
+      }
+      bitmap.copyPixelsFromBuffer(getSlot(mBuffer, frameNumber));
+      return true;
+    }
+
+    public int getWidth() {
+      return mWidth;
+    }
+
+    public int getHeight() {
+      return mHeight;
+    }
+
+    /** Deletes the file. The frames are not available anymore. */
+    public void release() {
+      synchronized (this) {
+        if (mBuffer == null) {
+          return;
+        }
+        mBuffer = null;
+      }
+      mStore.release(this);
+    }
+
+    private boolean isValidFrameNumber(int frameNumber) {
+      return frameNumber >= 0 && frameNumber < mStoredFrames.length;
+    }
+
+    private boolean isCompatible(Bitmap bitmap) {
+      return bitmap.getWidth() == mWidth
+          && bitmap.getHeight() == mHeight
+          && bitmap.getConfig() == Bitmap.Config.ARGB_8888;
+    }
+
+    private ByteBuffer getSlot(ByteBuffer buffer, int frameNumber) {
+      ByteBuffer slot = buffer.duplicate();
+      int offset = frameNumber * mFrameSizeInBytes;
+      slot.position(offset);
+      slot.limit(offset + mFrameSizeInBytes);
+      return slot.slice();
+    }
+  }
+}
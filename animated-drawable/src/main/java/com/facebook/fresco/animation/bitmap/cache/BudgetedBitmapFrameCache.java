@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.cache;
+
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.fresco.animation.backend.AnimationInformation;
+import com.facebook.fresco.animation.backend.AnimationVisibilityListener;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
+import com.facebook.imageutils.BitmapUtil;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Bitmap frame cache that keeps as many frames as the {@link AnimationFrameBudgetManager} allows.
+ *
+ * <p>When the animation is downgraded, only the last frame is kept by a {@link KeepLastFrameCache}.
+ * Frame bitmaps come from the bitmap pool of the budget manager, so the bitmaps evicted here can
+ * be reused by other animations of the same dimensions.
+ *
+ * <p>The animation is active from its first rendered frame until it is cleared, e.g. by {@link
+ * com.facebook.fresco.animation.backend.AnimationBackendDelegateWithInactivityCheck}. The
+ * visibility reported by the drawable through {@link BitmapAnimationBackend} tells the budget
+ * manager about animations that are off screen.
+ */
+public class BudgetedBitmapFrameCache implements BitmapFrameCache, AnimationVisibilityListener {
+
+  private static final int FRAME_NUMBER_UNSET = -1;
+
+  private final AnimationFrameBudgetManager mBudgetManager;
+  private final KeepLastFrameCache mLastFrameCache = new KeepLastFrameCache();
+  private final int mFrameCount;
+  private final float mFramesPerSecond;
+
+  @GuardedBy("this")
+  private final SparseArray<CloseableReference<Bitmap>> mFrames = new SparseArray<>();
+
+  @GuardedBy("this")
+  private int mFrameSlots = 1;
+
+  @GuardedBy("this")
+  private int mLastFrameNumber = FRAME_NUMBER_UNSET;
+
+  @GuardedBy("this")
+  private int mFrameSizeInBytes;
+
+  @GuardedBy("this")
+  private boolean mActive;
+
+  @GuardedBy("this")
+  private boolean mVisible = true;
+
+  @Nullable private FrameCacheListener mFrameCacheListener;
+
+  public BudgetedBitmapFrameCache(
+      AnimationFrameBudgetManager budgetManager, AnimationInformation animationInformation) {
+    mBudgetManager = budgetManager;
+    mFrameCount = animationInformation.getFrameCount();
+    long durationMs = 0;
+    for (int i = 0; i < mFrameCount; i++) {
+      durationMs += animationInformation.getFrameDurationMs(i);
+    }
+    mFramesPerSecond = durationMs > 0 ? 1000f * mFrameCount / durationMs : 0;
+  }
+
+  /**
+   * Sets whether the animation is on screen. Invisible animations are the first ones to give up
+   * their frames when the budget is exceeded.
+   *
+   * @param visible true if the animation is visible
+   */
+  public void setVisible(boolean visible) {
+    synchronized (this) {
+      if (mVisible == visible) {
+        return;
+      }
+      mVisible = visible;
+      if (!mActive) {
+        return;
+      }
+    }
+    updateBudget();
+  }
+
+  @Override
+  public void onVisibilityChanged(boolean visible) {
+    setVisible(visible);
+  }
+
+  @Nullable
+  @Override
+  public synchronized CloseableReference<Bitmap> getCachedFrame(int frameNumber) {
+    CloseableReference<Bitmap> frame = CloseableReference.cloneOrNull(mFrames.get(frameNumber));
+    return frame != null ? frame : mLastFrameCache.getCachedFrame(frameNumber);
+  }
+
+  @Nullable
+  @Override
+  public CloseableReference<Bitmap> getFallbackFrame(int frameNumber) {
+    return mLastFrameCache.getFallbackFrame(frameNumber);
+  }
+
+  @Nullable
+  @Override
+  public CloseableReference<Bitmap> getBitmapToReuseForFrame(
+      int frameNumber, int width, int height) {
+    synchronized (this) {
+      if (mFrameSlots == AnimationFrameBudgetManager.FRAME_SLOTS_KEEP_LAST_FRAME) {
+        CloseableReference<Bitmap> lastFrame =
+            mLastFrameCache.getBitmapToReuseForFrame(frameNumber, width, height);
+        if (CloseableReference.isValid(lastFrame)
+            && lastFrame.get().getWidth() == width
+            && lastFrame.get().getHeight() == height) {
+          return lastFrame;
+        }
+        CloseableReference.closeSafely(lastFrame);
+      } else {
+        // makes room for the frame about to be rendered
+        evictFrames(mFrameSlots - 1, getNextFrameNumber());
+      }
+    }
+    return mBudgetManager.getBitmapPool().get(width, height);
+  }
+
+  @Override
+  public synchronized boolean contains(int frameNumber) {
+    return CloseableReference.isValid(mFrames.get(frameNumber))
+        || mLastFrameCache.contains(frameNumber);
+  }
+
+  @Override
+  public synchronized int getSizeInBytes() {
+    int size = 0;
+    for (int i = 0; i < mFrames.size(); i++) {
+      size += getBitmapSizeBytes(mFrames.valueAt(i));
+    }
+    // the last frame is usually one of the kept frames
+    if (mFrames.get(mLastFrameNumber) == null) {
+      size += mLastFrameCache.getSizeInBytes();
+    }
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    synchronized (this) {
+      evictFrames(0, 0);
+      mLastFrameCache.clear();
+      mLastFrameNumber = FRAME_NUMBER_UNSET;
+      if (!mActive) {
+        return;
+      }
+      mActive = false;
+    }
+    updateBudget();
+  }
+
+  @Override
+  public void onFrameRendered(
+      int frameNumber,
+      CloseableReference<Bitmap> bitmapReference,
+      @BitmapAnimationBackend.FrameType int frameType) {
+    boolean shouldUpdateBudget;
+    synchronized (this) {
+      mLastFrameCache.onFrameRendered(frameNumber, bitmapReference, frameType);
+      mLastFrameNumber = frameNumber;
+      // the frame just shown is needed last, so it does not evict prepared frames
+      if (mFrames.size() < mFrameSlots) {
+        cacheFrame(frameNumber, bitmapReference, getNextFrameNumber());
+      }
+      int frameSizeInBytes = getBitmapSizeBytes(bitmapReference);
+      shouldUpdateBudget = !mActive || frameSizeInBytes != mFrameSizeInBytes;
+      mActive = true;
+      mFrameSizeInBytes = frameSizeInBytes;
+    }
+    if (shouldUpdateBudget) {
+      updateBudget();
+    }
+  }
+
+  @Override
+  public synchronized void onFramePrepared(
+      int frameNumber,
+      CloseableReference<Bitmap> bitmapReference,
+      @BitmapAnimationBackend.FrameType int frameType) {
+    cacheFrame(frameNumber, bitmapReference, getNextFrameNumber());
+  }
+
+  @Override
+  public void setFrameCacheListener(FrameCacheListener frameCacheListener) {
+    mFrameCacheListener = frameCacheListener;
+  }
+
+  /** @return the number of frames to prepare ahead of the frame being shown */
+  public synchronized int getFramesToPrepare() {
+    return Math.max(0, mFrameSlots - 1);
+  }
+
+  /** Called by the budget manager when the number of frames this cache can keep changes. */
+  synchronized void setFrameSlots(int frameSlots) {
+    mFrameSlots = frameSlots;
+    evictFrames(frameSlots, getNextFrameNumber());
+  }
+
+  private void updateBudget() {
+    int frameSizeInBytes;
+    boolean active;
+    boolean visible;
+    synchronized (this) {
+      frameSizeInBytes = mFrameSizeInBytes;
+      active = mActive;
+      visible = mVisible;
+    }
+    mBudgetManager.update(this, mFrameCount, mFramesPerSecond, frameSizeInBytes, active, visible);
+  }
+
+  @GuardedBy("this")
+  private void cacheFrame(
+      int frameNumber, CloseableReference<Bitmap> bitmapReference, int nextFrameNumber) {
+    if (mFrameSlots == AnimationFrameBudgetManager.FRAME_SLOTS_KEEP_LAST_FRAME
+        || !CloseableReference.isValid(bitmapReference)) {
+      return;
+    }
+    CloseableReference<Bitmap> existingFrame = mFrames.get(frameNumber);
+    if (existingFrame != null) {
+      if (existingFrame.get() == bitmapReference.get()) {
+        return;
+      }
+      mFrames.remove(frameNumber);
+      CloseableReference.closeSafely(existingFrame);
+    }
+    evictFrames(mFrameSlots - 1, nextFrameNumber);
+    mFrames.put(frameNumber, bitmapReference.clone());
+    if (mFrameCacheListener != null) {
+      mFrameCacheListener.onFrameCached(this, frameNumber);
+    }
+  }
+
+  /**
+   * Evicts the frames that will be shown last, starting from the given frame number, until at most
+   * the given number of frames is left.
+   */
+  @GuardedBy("this")
+  private void evictFrames(int maxFrames, int nextFrameNumber) {
+    while (mFrames.size() > Math.max(maxFrames, 0)) {
+      int evictedIndex = 0;
+      int maxDistance = -1;
+      for (int i = 0; i < mFrames.size(); i++) {
+        int distance = getDistance(nextFrameNumber, mFrames.keyAt(i));
+        if (distance > maxDistance) {
+          maxDistance = distance;
+          evictedIndex = i;
+        }
+      }
+      int evictedFrameNumber = mFrames.keyAt(evictedIndex);
+      CloseableReference.closeSafely(mFrames.valueAt(evictedIndex));
+      mFrames.removeAt(evictedIndex);
+      if (mFrameCacheListener != null) {
+        mFrameCacheListener.onFrameEvicted(this, evictedFrameNumber);
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private int getNextFrameNumber() {
+    return mLastFrameNumber == FRAME_NUMBER_UNSET ? 0 : mLastFrameNumber + 1;
+  }
+
+  private int getDistance(int fromFrameNumber, int toFrameNumber) {
+    if (mFrameCount <= 0) {
+      return 0;
+    }
+    return ((toFrameNumber - fromFrameNumber) % mFrameCount + mFrameCount) % mFrameCount;
+  }
+
+  private static int getBitmapSizeBytes(@Nullable CloseableReference<Bitmap> bitmapReference) {
+    return CloseableReference.isValid(bitmapReference)
+        ? BitmapUtil.getSizeInBytes(bitmapReference.get())
+        : 0;
+  }
+}
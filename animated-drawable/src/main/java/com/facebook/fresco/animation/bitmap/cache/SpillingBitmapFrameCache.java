@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
+import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Bitmap frame cache that keeps a copy of every rendered frame in a file of the given {@link
+ * AnimationFrameSpillStore}, in addition to the frames kept in memory by the delegate cache.
+ *
+ * <p>Frames that are not in memory anymore are copied back from the file in later loops, instead
+ * of being decoded and composited again. This pays off for long animations whose frames depend on
+ * previous frames. The copies are made by the frame preparer, with the renderer returned by {@link
+ * #createSpilledFrameRenderer(BitmapFrameRenderer)}, so that the UI thread only gets frames from
+ * memory. The file is released when the cache is cleared, e.g. when the animation becomes inactive.
+ *
+ * <p>The frames rendered on the UI thread are written to the file on the given executor, e.g. the
+ * one preparing the frames. Their bitmaps must not be reused by the delegate while they are
+ * referenced, as is the case with {@link FrescoFrameCache}.
+ */
+public class SpillingBitmapFrameCache implements BitmapFrameCache {
+
+  private final BitmapFrameCache mDelegate;
+  private final AnimationFrameSpillStore mSpillStore;
+  private final int mFrameCount;
+  private final Executor mSpillExecutor;
+
+  @GuardedBy("this")
+  @Nullable
+  private AnimationFrameSpillStore.SpillFile mSpillFile;
+
+  // set if the store had no room for this animation, so that it does not try again every frame
+  @GuardedBy("this")
+  private boolean mSpillFileUnavailable;
+
+  // incremented when the cache is cleared, so that pending writes do not open a new file
+  @GuardedBy("this")
+  private int mGeneration;
+
+  /**
+   * @param delegate the cache for the frames kept in memory
+   * @param spillStore the store for the file of the frames
+   * @param frameCount the number of frames of the animation
+   * @param spillExecutor the executor writing the rendered frames to the file
+   */
+  public SpillingBitmapFrameCache(
+      BitmapFrameCache delegate,
+      AnimationFrameSpillStore spillStore,
+      int frameCount,
+      Executor spillExecutor) {
+    mDelegate = delegate;
+    mSpillStore = spillStore;
+    mFrameCount = frameCount;
+    mSpillExecutor = spillExecutor;
+  }
+
+  @Nullable
+  @Override
+  public CloseableReference<Bitmap> getCachedFrame(int frameNumber) {
+    // spilled frames are loaded back by the frame preparer, never on the UI thread
+    return mDelegate.getCachedFrame(frameNumber);
+  }
+
+  @Nullable
+  @Override
+  public CloseableReference<Bitmap> getFallbackFrame(int frameNumber) {
+    return mDelegate.getFallbackFrame(frameNumber);
+  }
+
+  @Nullable
+  @Override
+  public CloseableReference<Bitmap> getBitmapToReuseForFrame(
+      int frameNumber, int width, int height) {
+    return mDelegate.getBitmapToReuseForFrame(frameNumber, width, height);
+  }
+
+  @Override
+  public boolean contains(int frameNumber) {
+    // spilled frames are left out, so that the frame preparer loads them back in memory
+    return mDelegate.contains(frameNumber);
+  }
+
+  @Override
+  public int getSizeInBytes() {
+    // the spilled frames are not kept in memory
+    return mDelegate.getSizeInBytes();
+  }
+
+  @Override
+  public void clear() {
+    mDelegate.clear();
+    AnimationFrameSpillStore.SpillFile spillFile;
+    synchronized (this) {
+      spillFile = mSpillFile;
+      mSpillFile = null;
+      mSpillFileUnavailable = false;
+      mGeneration++;
+    }
+    if (spillFile != null) {
+      spillFile.release();
+    }
+  }
+
+  @Override
+  public void onFrameRendered(
+      final int frameNumber,
+      CloseableReference<Bitmap> bitmapReference,
+      @BitmapAnimationBackend.FrameType int frameType) {
+    mDelegate.onFrameRendered(frameNumber, bitmapReference, frameType);
+    if (!CloseableReference.isValid(bitmapReference)) {
+      return;
+    }
+    final int generation;
+    synchronized (this) {
+      if (mSpillFileUnavailable || (mSpillFile != null && mSpillFile.contains(frameNumber))) {
+        return;
+      }
+      generation = mGeneration;
+    }
+    // keeps the bitmap alive until it has been written
+    final CloseableReference<Bitmap> frameReference = bitmapReference.clone();
+    mSpillExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              spillFrame(frameNumber, frameReference, generation);
+            } finally {
+              frameReference.close();
+            }
+          }
+        });
+  }
+
+  @Override
+  public void onFramePrepared(
+      int frameNumber,
+      CloseableReference<Bitmap> bitmapReference,
+      @BitmapAnimationBackend.FrameType int frameType) {
+    mDelegate.onFramePrepared(frameNumber, bitmapReference, frameType);
+    // already off the UI thread
+    int generation;
+    synchronized (this) {
+      generation = mGeneration;
+    }
+    spillFrame(frameNumber, bitmapReference, generation);
+  }
+
+  @Override
+  public void setFrameCacheListener(FrameCacheListener frameCacheListener) {
+    mDelegate.setFrameCacheListener(frameCacheListener);
+  }
+
+  /**
+   * Creates the renderer of the frame preparer, which copies the frames found in the file instead
+   * of rendering them with the given renderer. The frames copied this way are cached by the
+   * preparer, so that they are in memory again when they are drawn.
+   *
+   * <p>The returned renderer reads from the file, it must not be used on the UI thread.
+   *
+   * @param frameRenderer the renderer of the frames that are not in the file
+   */
+  public BitmapFrameRenderer createSpilledFrameRenderer(final BitmapFrameRenderer frameRenderer) {
+    return new BitmapFrameRenderer() {
+      @Override
+      public boolean renderFrame(int frameNumber, Bitmap targetBitmap) {
+        return readSpilledFrame(frameNumber, targetBitmap)
+            || frameRenderer.renderFrame(frameNumber, targetBitmap);
+      }
+
+      @Override
+      public void setBounds(@Nullable Rect bounds) {
+        frameRenderer.setBounds(bounds);
+      }
+
+      @Override
+      public int getIntrinsicWidth() {
+        return frameRenderer.getIntrinsicWidth();
+      }
+
+      @Override
+      public int getIntrinsicHeight() {
+        return frameRenderer.getIntrinsicHeight();
+      }
+    };
+  }
+
+  private boolean readSpilledFrame(int frameNumber, Bitmap bitmap) {
+    AnimationFrameSpillStore.SpillFile spillFile;
+    synchronized (this) {
+      spillFile = mSpillFile;
+    }
+    return spillFile != null && spillFile.read(frameNumber, bitmap);
+  }
+
+  private void spillFrame(
+      int frameNumber, CloseableReference<Bitmap> bitmapReference, int generation) {
+    if (!CloseableReference.isValid(bitmapReference)) {
+      return;
+    }
+    Bitmap bitmap = bitmapReference.get();
+    AnimationFrameSpillStore.SpillFile spillFile = getOrOpenSpillFile(bitmap, generation);
+    // a file released by clear() in the meantime does not take the frame anymore
+    if (spillFile != null && !spillFile.contains(frameNumber)) {
+      spillFile.write(frameNumber, bitmap);
+    }
+  }
+
+  @Nullable
+  private synchronized AnimationFrameSpillStore.SpillFile getOrOpenSpillFile(
+      Bitmap bitmap, int generation) {
+    if (generation != mGeneration) {
+      return null;
+    }
+    if (mSpillFile == null && !mSpillFileUnavailable) {
+      mSpillFile = mSpillStore.open(bitmap.getWidth(), bitmap.getHeight(), mFrameCount);
+      mSpillFileUnavailable = mSpillFile == null;
+    }
+    return mSpillFile;
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import android.util.SparseBooleanArray;
+import com.facebook.common.logging.FLog;
+import com.facebook.fresco.animation.backend.AnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
+import com.facebook.fresco.animation.bitmap.cache.BudgetedBitmapFrameCache;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Frame preparation strategy that prepares as many frames ahead as needed for them to be ready
+ * before they are shown.
+ *
+ * <p>It keeps moving averages of the time frame decode jobs wait in the executor queue and of the
+ * time it takes to render a frame, as reported by {@link DefaultBitmapFramePreparer}. A frame is
+ * prepared now if a job scheduled when the next frame is shown would complete too late, based on
+ * the frame durations of the animation. When jobs wait longer in the queue than the average frame
+ * duration, the shared executor is saturated and only the next frame is prepared.
+ *
+ * <p>An instance has to be used for a single animation. Register it with {@link
+ * DefaultBitmapFramePreparer#setFramePreparationListener(
+ * DefaultBitmapFramePreparer.FramePreparationListener)} so that it gets the render costs.
+ */
+public class AdaptiveBitmapFramePreparationStrategy
+    implements BitmapFramePreparationStrategy,
+        DefaultBitmapFramePreparer.FramePreparationListener {
+
+  /** Listener for the playback metrics of an animation, e.g. for logging. */
+  public interface MetricsListener {
+
+    /**
+     * Called when frames have been skipped because they were not shown in time.
+     *
+     * @param animationBackend the backend
+     * @param frameNumber the frame number that was shown after the dropped frames
+     * @param droppedFrameCount the number of frames that have been dropped
+     */
+    void onFramesDropped(AnimationBackend animationBackend, int frameNumber, int droppedFrameCount);
+
+    /**
+     * Called when a frame was shown before the job preparing it had finished, so it had to be
+     * rendered on the UI thread.
+     *
+     * @param animationBackend the backend
+     * @param frameNumber the late frame number
+     */
+    void onFrameLate(AnimationBackend animationBackend, int frameNumber);
+
+    /**
+     * Called when the number of frames prepared ahead changes.
+     *
+     * @param animationBackend the backend
+     * @param framesToPrepare the new number of frames to prepare
+     * @param renderTimeNs the average time to render a frame
+     * @param queueTimeNs the average time a frame decode job waits in the executor queue
+     */
+    void onFramesToPrepareChanged(
+        AnimationBackend animationBackend,
+        int framesToPrepare,
+        long renderTimeNs,
+        long queueTimeNs);
+  }
+
+  private static final Class<?> TAG = AdaptiveBitmapFramePreparationStrategy.class;
+  private static final int DEFAULT_MAX_FRAMES_TO_PREPARE = 8;
+  private static final int INITIAL_FRAMES_TO_PREPARE = 3;
+  // weight of a new sample in the moving averages is 1 / 2^SMOOTHING_SHIFT
+  private static final int SMOOTHING_SHIFT = 2;
+  private static final int UNSET = -1;
+
+  private final int mMaxFramesToPrepare;
+  @Nullable private final MetricsListener mMetricsListener;
+
+  @GuardedBy("this")
+  private long mRenderTimeNs = UNSET;
+
+  @GuardedBy("this")
+  private long mQueueTimeNs = UNSET;
+
+  @GuardedBy("this")
+  private final SparseBooleanArray mPendingFrames = new SparseBooleanArray();
+
+  private long mAverageFrameDurationNs = UNSET;
+  private int mLastDrawnFrameNumber = UNSET;
+  private int mFramesToPrepare = UNSET;
+  private int mDroppedFrameCount;
+  private int mLateFrameCount;
+
+  public AdaptiveBitmapFramePreparationStrategy() {
+    this(DEFAULT_MAX_FRAMES_TO_PREPARE, null);
+  }
+
+  /**
+   * @param maxFramesToPrepare the maximum number of frames to prepare ahead
+   * @param metricsListener optional listener for dropped and late frames
+   */
+  public AdaptiveBitmapFramePreparationStrategy(
+      int maxFramesToPrepare, @Nullable MetricsListener metricsListener) {
+    mMaxFramesToPrepare = maxFramesToPrepare;
+    mMetricsListener = metricsListener;
+  }
+
+  @Override
+  public void prepareFrames(
+      BitmapFramePreparer bitmapFramePreparer,
+      BitmapFrameCache bitmapFrameCache,
+      AnimationBackend animationBackend,
+      int lastDrawnFrameNumber) {
+    int frameCount = animationBackend.getFrameCount();
+    if (frameCount <= 1) {
+      return;
+    }
+    updateMetrics(animationBackend, lastDrawnFrameNumber);
+
+    int framesToPrepare =
+        getFramesToPrepare(bitmapFrameCache, animationBackend, lastDrawnFrameNumber);
+    for (int i = 1; i <= framesToPrepare; i++) {
+      int nextFrameNumber = (lastDrawnFrameNumber + i) % frameCount;
+      if (FLog.isLoggable(FLog.VERBOSE)) {
+        FLog.v(TAG, "Preparing frame %d, last drawn: %d", nextFrameNumber, lastDrawnFrameNumber);
+      }
+      if (!bitmapFrameCache.contains(nextFrameNumber)) {
+        synchronized (this) {
+          mPendingFrames.put(nextFrameNumber, true);
+        }
+      }
+      if (!bitmapFramePreparer.prepareFrame(bitmapFrameCache, animationBackend, nextFrameNumber)) {
+        // We cannot prepare more frames, so we return early
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void onFramePrepared(
+      AnimationBackend animationBackend,
+      int frameNumber,
+      long queueTimeNs,
+      long renderTimeNs,
+      boolean prepared) {
+    synchronized (this) {
+      mPendingFrames.delete(frameNumber);
+      mQueueTimeNs = updateAverage(mQueueTimeNs, queueTimeNs);
+      if (prepared) {
+        mRenderTimeNs = updateAverage(mRenderTimeNs, renderTimeNs);
+      }
+    }
+  }
+
+  /** @return the number of frames that have been skipped so far */
+  public int getDroppedFrameCount() {
+    return mDroppedFrameCount;
+  }
+
+  /** @return the number of frames that were not prepared in time so far */
+  public int getLateFrameCount() {
+    return mLateFrameCount;
+  }
+
+  private void updateMetrics(AnimationBackend animationBackend, int frameNumber) {
+    boolean late;
+    synchronized (this) {
+      late = mPendingFrames.get(frameNumber);
+      mPendingFrames.delete(frameNumber);
+    }
+    if (late) {
+      mLateFrameCount++;
+      if (mMetricsListener != null) {
+        mMetricsListener.onFrameLate(animationBackend, frameNumber);
+      }
+    }
+
+    int frameCount = animationBackend.getFrameCount();
+    if (mLastDrawnFrameNumber != UNSET && mLastDrawnFrameNumber != frameNumber) {
+      int expectedFrameNumber = (mLastDrawnFrameNumber + 1) % frameCount;
+      int droppedFrameCount = (frameNumber - expectedFrameNumber + frameCount) % frameCount;
+      if (droppedFrameCount > 0) {
+        mDroppedFrameCount += droppedFrameCount;
+        if (mMetricsListener != null) {
+          mMetricsListener.onFramesDropped(animationBackend, frameNumber, droppedFrameCount);
+        }
+      }
+    }
+    mLastDrawnFrameNumber = frameNumber;
+  }
+
+  private int getFramesToPrepare(
+      BitmapFrameCache bitmapFrameCache,
+      AnimationBackend animationBackend,
+      int lastDrawnFrameNumber) {
+    int frameCount = animationBackend.getFrameCount();
+    int maxFramesToPrepare = Math.min(mMaxFramesToPrepare, frameCount - 1);
+    if (bitmapFrameCache instanceof BudgetedBitmapFrameCache) {
+      // there is no point in preparing frames the cache cannot keep
+      maxFramesToPrepare =
+          Math.min(
+              maxFramesToPrepare,
+              ((BudgetedBitmapFrameCache) bitmapFrameCache).getFramesToPrepare());
+    }
+
+    long renderTimeNs;
+    long queueTimeNs;
+    synchronized (this) {
+      renderTimeNs = mRenderTimeNs;
+      queueTimeNs = mQueueTimeNs;
+    }
+    int framesToPrepare;
+    if (renderTimeNs == UNSET) {
+      // nothing has been measured yet
+      framesToPrepare = INITIAL_FRAMES_TO_PREPARE;
+    } else if (queueTimeNs > getAverageFrameDurationNs(animationBackend)) {
+      // preparing more frames would only make the executor queue longer
+      framesToPrepare = 1;
+    } else {
+      // a frame has to be scheduled now if it would be late when scheduled for the next frame,
+      // with some margin for slower renders
+      long leadTimeNs = queueTimeNs + renderTimeNs + renderTimeNs / 2;
+      long currentFrameDurationNs = getFrameDurationNs(animationBackend, lastDrawnFrameNumber);
+      long deadlineNs = currentFrameDurationNs + leadTimeNs;
+      long timeUntilShownNs = currentFrameDurationNs;
+      framesToPrepare = 0;
+      while (framesToPrepare < frameCount - 1 && timeUntilShownNs < deadlineNs) {
+        framesToPrepare++;
+        timeUntilShownNs +=
+            getFrameDurationNs(
+                animationBackend, (lastDrawnFrameNumber + framesToPrepare) % frameCount);
+      }
+    }
+    framesToPrepare = Math.max(0, Math.min(framesToPrepare, maxFramesToPrepare));
+
+    if (framesToPrepare != mFramesToPrepare) {
+      mFramesToPrepare = framesToPrepare;
+      if (mMetricsListener != null) {
+        mMetricsListener.onFramesToPrepareChanged(
+            animationBackend, framesToPrepare, renderTimeNs, queueTimeNs);
+      }
+    }
+    return framesToPrepare;
+  }
+
+  private long getAverageFrameDurationNs(AnimationBackend animationBackend) {
+    if (mAverageFrameDurationNs == UNSET) {
+      int frameCount = animationBackend.getFrameCount();
+      long loopDurationNs = 0;
+      for (int i = 0; i < frameCount; i++) {
+        loopDurationNs += getFrameDurationNs(animationBackend, i);
+      }
+      mAverageFrameDurationNs = loopDurationNs / frameCount;
+    }
+    return mAverageFrameDurationNs;
+  }
+
+  private static long getFrameDurationNs(AnimationBackend animationBackend, int frameNumber) {
+    return TimeUnit.MILLISECONDS.toNanos(animationBackend.getFrameDurationMs(frameNumber));
+  }
+
+  private static long updateAverage(long average, long sample) {
+    return average == UNSET ? sample : average + ((sample - average) >> SMOOTHING_SHIFT);
+  }
+}
@@ -26,4 +26,21 @@ public interface BitmapFramePreparer {
    */
   boolean prepareFrame(
       BitmapFrameCache bitmapFrameCache, AnimationBackend animationBackend, int frameNumber);
+
+  /**
+   * Called when the backend has drawn a frame, before the next frames are prepared. Preparers that
+   * do not order their jobs can ignore it.
+   *
+   * @param animationBackend the backend
+   * @param frameNumber the frame number that has been drawn
+   */
+  void onFrameDrawn(AnimationBackend animationBackend, int frameNumber);
+
+  /**
+   * Cancels the frames of the backend that are still waiting to be prepared, e.g. when the backend
+   * is cleared.
+   *
+   * @param animationBackend the backend
+   */
+  void cancelPendingFrames(AnimationBackend animationBackend);
 }
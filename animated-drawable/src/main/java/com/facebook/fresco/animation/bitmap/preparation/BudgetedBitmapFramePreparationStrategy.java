@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.fresco.animation.backend.AnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
+import com.facebook.fresco.animation.bitmap.cache.BudgetedBitmapFrameCache;
+import com.facebook.infer.annotation.Nullsafe;
+
+/**
+ * Frame preparation strategy that prepares as many frames as the {@link BudgetedBitmapFrameCache}
+ * can keep, so that no frames are prepared only to be evicted before they are shown. Other caches
+ * are handled by the given fallback strategy.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class BudgetedBitmapFramePreparationStrategy implements BitmapFramePreparationStrategy {
+
+  private static final Class<?> TAG = BudgetedBitmapFramePreparationStrategy.class;
+
+  private final BitmapFramePreparationStrategy mFallbackStrategy;
+
+  public BudgetedBitmapFramePreparationStrategy() {
+    this(new FixedNumberBitmapFramePreparationStrategy());
+  }
+
+  public BudgetedBitmapFramePreparationStrategy(BitmapFramePreparationStrategy fallbackStrategy) {
+    mFallbackStrategy = fallbackStrategy;
+  }
+
+  @Override
+  public void prepareFrames(
+      BitmapFramePreparer bitmapFramePreparer,
+      BitmapFrameCache bitmapFrameCache,
+      AnimationBackend animationBackend,
+      int lastDrawnFrameNumber) {
+    if (!(bitmapFrameCache instanceof BudgetedBitmapFrameCache)) {
+      mFallbackStrategy.prepareFrames(
+          bitmapFramePreparer, bitmapFrameCache, animationBackend, lastDrawnFrameNumber);
+      return;
+    }
+    int framesToPrepare = ((BudgetedBitmapFrameCache) bitmapFrameCache).getFramesToPrepare();
+    for (int i = 1; i <= framesToPrepare; i++) {
+      int nextFrameNumber = (lastDrawnFrameNumber + i) % animationBackend.getFrameCount();
+      if (FLog.isLoggable(FLog.VERBOSE)) {
+        FLog.v(TAG, "Preparing frame %d, last drawn: %d", nextFrameNumber, lastDrawnFrameNumber);
+      }
+      if (!bitmapFramePreparer.prepareFrame(bitmapFrameCache, animationBackend, nextFrameNumber)) {
+        // We cannot prepare more frames, so we return early
+        return;
+      }
+    }
+  }
+}
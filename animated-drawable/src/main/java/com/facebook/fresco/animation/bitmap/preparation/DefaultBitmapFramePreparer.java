@@ -9,49 +9,145 @@ package com.facebook.fresco.animation.bitmap.preparation;
 
 import android.graphics.Bitmap;
 import android.util.SparseArray;
+import com.facebook.common.internal.Preconditions;
 import com.facebook.common.logging.FLog;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.common.time.AwakeTimeSinceBootClock;
+import com.facebook.common.time.MonotonicNanoClock;
 import com.facebook.fresco.animation.backend.AnimationBackend;
 import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
 import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
 import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Default bitmap frame preparer that uses the given {@link ExecutorService} to schedule jobs. An
  * instance of this class can be shared between multiple animated images.
+ *
+ * <p>Jobs are handed to the executor as soon as they are scheduled. When created with a {@link
+ * FrameDecodeScheduler} shared by several animations instead, the frames needed soonest are decoded
+ * first. The deadline of a frame is derived from the last frame drawn by its backend, see {@link
+ * #onFrameDrawn(AnimationBackend, int)}. The queued jobs of a backend are dropped by {@link
+ * #cancelPendingFrames(AnimationBackend)}, e.g. when it becomes inactive.
  */
 public class DefaultBitmapFramePreparer implements BitmapFramePreparer {
 
+  /** Listener that is notified when a frame decode job is done, e.g. to measure render costs. */
+  public interface FramePreparationListener {
+
+    /**
+     * Called on the executor thread when a frame decode job has finished.
+     *
+     * @param animationBackend the backend the frame was prepared for
+     * @param frameNumber the frame number
+     * @param queueTimeNs the time the job waited in the executor queue
+     * @param renderTimeNs the time spent rendering the frame, 0 if it was not rendered
+     * @param prepared true if the frame has been rendered and cached by this job
+     */
+    void onFramePrepared(
+        AnimationBackend animationBackend,
+        int frameNumber,
+        long queueTimeNs,
+        long renderTimeNs,
+        boolean prepared);
+  }
+
   private static final Class<?> TAG = DefaultBitmapFramePreparer.class;
 
   private final PlatformBitmapFactory mPlatformBitmapFactory;
   private final BitmapFrameRenderer mBitmapFrameRenderer;
   private final Bitmap.Config mBitmapConfig;
-  private final ExecutorService mExecutorService;
-  private final SparseArray<Runnable> mPendingFrameDecodeJobs;
+  // exactly one of them is set
+  @Nullable private final ExecutorService mExecutorService;
+  @Nullable private final FrameDecodeScheduler mFrameDecodeScheduler;
+  private final MonotonicNanoClock mMonotonicNanoClock;
+
+  // keyed by backend identity, so that jobs of different backends never collide
+  @GuardedBy("mPendingFrameDecodeJobs")
+  private final Map<AnimationBackend, SparseArray<FrameDecodeRunnable>> mPendingFrameDecodeJobs =
+      new IdentityHashMap<>();
+
+  @GuardedBy("mPendingFrameDecodeJobs")
+  private final Map<AnimationBackend, DrawnFrame> mDrawnFrames = new IdentityHashMap<>();
+
+  @Nullable private volatile FramePreparationListener mFramePreparationListener;
 
   public DefaultBitmapFramePreparer(
       PlatformBitmapFactory platformBitmapFactory,
       BitmapFrameRenderer bitmapFrameRenderer,
       Bitmap.Config bitmapConfig,
       ExecutorService executorService) {
+    this(
+        platformBitmapFactory,
+        bitmapFrameRenderer,
+        bitmapConfig,
+        executorService,
+        AwakeTimeSinceBootClock.get());
+  }
+
+  public DefaultBitmapFramePreparer(
+      PlatformBitmapFactory platformBitmapFactory,
+      BitmapFrameRenderer bitmapFrameRenderer,
+      Bitmap.Config bitmapConfig,
+      ExecutorService executorService,
+      MonotonicNanoClock monotonicNanoClock) {
+    this(
+        platformBitmapFactory,
+        bitmapFrameRenderer,
+        bitmapConfig,
+        executorService,
+        null,
+        monotonicNanoClock);
+  }
+
+  public DefaultBitmapFramePreparer(
+      PlatformBitmapFactory platformBitmapFactory,
+      BitmapFrameRenderer bitmapFrameRenderer,
+      Bitmap.Config bitmapConfig,
+      FrameDecodeScheduler frameDecodeScheduler,
+      MonotonicNanoClock monotonicNanoClock) {
+    this(
+        platformBitmapFactory,
+        bitmapFrameRenderer,
+        bitmapConfig,
+        null,
+        frameDecodeScheduler,
+        monotonicNanoClock);
+  }
+
+  private DefaultBitmapFramePreparer(
+      PlatformBitmapFactory platformBitmapFactory,
+      BitmapFrameRenderer bitmapFrameRenderer,
+      Bitmap.Config bitmapConfig,
+      @Nullable ExecutorService executorService,
+      @Nullable FrameDecodeScheduler frameDecodeScheduler,
+      MonotonicNanoClock monotonicNanoClock) {
     mPlatformBitmapFactory = platformBitmapFactory;
     mBitmapFrameRenderer = bitmapFrameRenderer;
     mBitmapConfig = bitmapConfig;
     mExecutorService = executorService;
-    mPendingFrameDecodeJobs = new SparseArray<>();
+    mFrameDecodeScheduler = frameDecodeScheduler;
+    mMonotonicNanoClock = monotonicNanoClock;
+  }
+
+  public void setFramePreparationListener(
+      @Nullable FramePreparationListener framePreparationListener) {
+    mFramePreparationListener = framePreparationListener;
   }
 
   @Override
   public boolean prepareFrame(
       BitmapFrameCache bitmapFrameCache, AnimationBackend animationBackend, int frameNumber) {
-    // Create a unique ID to identify the frame for the given backend.
-    int frameId = getUniqueId(animationBackend, frameNumber);
     synchronized (mPendingFrameDecodeJobs) {
+      SparseArray<FrameDecodeRunnable> pendingJobs = mPendingFrameDecodeJobs.get(animationBackend);
       // Check if already scheduled.
-      if (mPendingFrameDecodeJobs.get(frameId) != null) {
+      if (pendingJobs != null && pendingJobs.get(frameNumber) != null) {
         FLog.v(TAG, "Already scheduled decode job for frame %d", frameNumber);
         return true;
       }
@@ -60,18 +156,94 @@ public class DefaultBitmapFramePreparer implements BitmapFramePreparer {
         FLog.v(TAG, "Frame %d is cached already.", frameNumber);
         return true;
       }
-      Runnable frameDecodeRunnable =
-          new FrameDecodeRunnable(animationBackend, bitmapFrameCache, frameNumber, frameId);
-      mPendingFrameDecodeJobs.put(frameId, frameDecodeRunnable);
-      mExecutorService.execute(frameDecodeRunnable);
+      if (pendingJobs == null) {
+        pendingJobs = new SparseArray<>();
+        mPendingFrameDecodeJobs.put(animationBackend, pendingJobs);
+      }
+      FrameDecodeRunnable frameDecodeRunnable =
+          new FrameDecodeRunnable(animationBackend, bitmapFrameCache, frameNumber);
+      pendingJobs.put(frameNumber, frameDecodeRunnable);
+      if (mFrameDecodeScheduler != null) {
+        mFrameDecodeScheduler.schedule(
+            animationBackend, frameDecodeRunnable, getDeadlineNs(animationBackend, frameNumber));
+      } else {
+        Preconditions.checkNotNull(mExecutorService).execute(frameDecodeRunnable);
+      }
     }
     return true;
   }
 
-  private static int getUniqueId(AnimationBackend backend, int frameNumber) {
-    int result = backend.hashCode();
-    result = 31 * result + frameNumber;
-    return result;
+  /**
+   * Tells the preparer which frame the backend has just drawn, which determines the deadlines of
+   * the frames prepared next when they are decoded by a {@link FrameDecodeScheduler}.
+   *
+   * @param animationBackend the backend
+   * @param frameNumber the frame number that has been drawn
+   */
+  @Override
+  public void onFrameDrawn(AnimationBackend animationBackend, int frameNumber) {
+    if (mFrameDecodeScheduler == null) {
+      return;
+    }
+    synchronized (mPendingFrameDecodeJobs) {
+      DrawnFrame drawnFrame = mDrawnFrames.get(animationBackend);
+      if (drawnFrame == null) {
+        drawnFrame = new DrawnFrame();
+        mDrawnFrames.put(animationBackend, drawnFrame);
+      }
+      drawnFrame.mFrameNumber = frameNumber;
+      drawnFrame.mDrawTimeNs = mMonotonicNanoClock.nowNanos();
+    }
+  }
+
+  /**
+   * Cancels the frame decode jobs of the given backend that have not started yet. Frames of jobs
+   * that are already running are not cached, except for a frame being handed to the cache at that
+   * time. Jobs already handed to a plain executor still run, but return right away.
+   *
+   * @param animationBackend the backend
+   */
+  @Override
+  public void cancelPendingFrames(AnimationBackend animationBackend) {
+    synchronized (mPendingFrameDecodeJobs) {
+      mDrawnFrames.remove(animationBackend);
+      SparseArray<FrameDecodeRunnable> pendingJobs =
+          mPendingFrameDecodeJobs.remove(animationBackend);
+      if (pendingJobs == null) {
+        return;
+      }
+      for (int i = 0; i < pendingJobs.size(); i++) {
+        pendingJobs.valueAt(i).mCancelled = true;
+      }
+    }
+    if (mFrameDecodeScheduler != null) {
+      int cancelledJobCount = mFrameDecodeScheduler.cancelAll(animationBackend);
+      FLog.v(TAG, "Cancelled %d frame decode jobs.", cancelledJobCount);
+    }
+  }
+
+  @GuardedBy("mPendingFrameDecodeJobs")
+  private long getDeadlineNs(AnimationBackend animationBackend, int frameNumber) {
+    long nowNs = mMonotonicNanoClock.nowNanos();
+    DrawnFrame drawnFrame = mDrawnFrames.get(animationBackend);
+    int frameCount = animationBackend.getFrameCount();
+    if (drawnFrame == null || frameCount <= 0) {
+      return nowNs;
+    }
+    // the frame is due when all frames from the one drawn last up to it have been shown
+    int distance = ((frameNumber - drawnFrame.mFrameNumber) % frameCount + frameCount) % frameCount;
+    long timeUntilShownMs = 0;
+    for (int i = 0; i < distance; i++) {
+      timeUntilShownMs +=
+          animationBackend.getFrameDurationMs((drawnFrame.mFrameNumber + i) % frameCount);
+    }
+    return drawnFrame.mDrawTimeNs + TimeUnit.MILLISECONDS.toNanos(timeUntilShownMs);
+  }
+
+  /** The last frame drawn by a backend. */
+  private static class DrawnFrame {
+    int mFrameNumber;
+    long mDrawTimeNs;
   }
 
   private class FrameDecodeRunnable implements Runnable {
@@ -79,22 +251,28 @@ public class DefaultBitmapFramePreparer implements BitmapFramePreparer {
     private final BitmapFrameCache mBitmapFrameCache;
     private final AnimationBackend mAnimationBackend;
     private final int mFrameNumber;
-    private final int mHashCode;
+    private final long mSubmitTimeNs;
+
+    @GuardedBy("mPendingFrameDecodeJobs")
+    private boolean mCancelled;
 
     public FrameDecodeRunnable(
-        AnimationBackend animationBackend,
-        BitmapFrameCache bitmapFrameCache,
-        int frameNumber,
-        int hashCode) {
+        AnimationBackend animationBackend, BitmapFrameCache bitmapFrameCache, int frameNumber) {
       mAnimationBackend = animationBackend;
       mBitmapFrameCache = bitmapFrameCache;
       mFrameNumber = frameNumber;
-      mHashCode = hashCode;
+      mSubmitTimeNs = mMonotonicNanoClock.nowNanos();
     }
 
     @Override
     public void run() {
+      long startTimeNs = mMonotonicNanoClock.nowNanos();
+      long renderTimeNs = 0;
+      boolean prepared = false;
       try {
+        if (isCancelled()) {
+          return;
+        }
         // If we have a cached frame already, we don't need to do anything.
         if (mBitmapFrameCache.contains(mFrameNumber)) {
           FLog.v(TAG, "Frame %d is cached already.", mFrameNumber);
@@ -102,14 +280,33 @@ public class DefaultBitmapFramePreparer implements BitmapFramePreparer {
         }
 
         // Prepare the frame.
-        if (prepareFrameAndCache(mFrameNumber, BitmapAnimationBackend.FRAME_TYPE_REUSED)) {
+        prepared = prepareFrameAndCache(mFrameNumber, BitmapAnimationBackend.FRAME_TYPE_REUSED);
+        renderTimeNs = mMonotonicNanoClock.nowNanos() - startTimeNs;
+        if (prepared) {
           FLog.v(TAG, "Prepared frame frame %d.", mFrameNumber);
-        } else {
+        } else if (!isCancelled()) {
           FLog.e(TAG, "Could not prepare frame %d.", mFrameNumber);
         }
       } finally {
         synchronized (mPendingFrameDecodeJobs) {
-          mPendingFrameDecodeJobs.remove(mHashCode);
+          SparseArray<FrameDecodeRunnable> pendingJobs =
+              mPendingFrameDecodeJobs.get(mAnimationBackend);
+          // a cancelled job may have been replaced by a new one for the same frame
+          if (pendingJobs != null && pendingJobs.get(mFrameNumber) == this) {
+            pendingJobs.remove(mFrameNumber);
+            if (pendingJobs.size() == 0) {
+              mPendingFrameDecodeJobs.remove(mAnimationBackend);
+            }
+          }
+        }
+        FramePreparationListener framePreparationListener = mFramePreparationListener;
+        if (framePreparationListener != null) {
+          framePreparationListener.onFramePrepared(
+              mAnimationBackend,
+              mFrameNumber,
+              startTimeNs - mSubmitTimeNs,
+              renderTimeNs,
+              prepared);
         }
       }
     }
@@ -155,13 +352,19 @@ public class DefaultBitmapFramePreparer implements BitmapFramePreparer {
         CloseableReference.closeSafely(bitmapReference);
       }
 
-      if (created || nextFrameType == BitmapAnimationBackend.FRAME_TYPE_UNKNOWN) {
+      if (created || nextFrameType == BitmapAnimationBackend.FRAME_TYPE_UNKNOWN || isCancelled()) {
         return created;
       } else {
         return prepareFrameAndCache(frameNumber, nextFrameType);
       }
     }
 
+    private boolean isCancelled() {
+      synchronized (mPendingFrameDecodeJobs) {
+        return mCancelled;
+      }
+    }
+
     private boolean renderFrameAndCache(
         int frameNumber,
         CloseableReference<Bitmap> bitmapReference,
@@ -175,10 +378,13 @@ public class DefaultBitmapFramePreparer implements BitmapFramePreparer {
         return false;
       }
       FLog.v(TAG, "Frame %d ready.", mFrameNumber);
-      // Cache the frame
-      synchronized (mPendingFrameDecodeJobs) {
-        mBitmapFrameCache.onFramePrepared(mFrameNumber, bitmapReference, frameType);
+      // Cache the frame, unless the backend has been cleared in the meantime. The cache is not
+      // called with the lock held, so a frame may still be cached right after a cancellation. The
+      // cache keeps it until it is cleared again, as it does for a frame drawn at that time.
+      if (isCancelled()) {
+        return false;
       }
+      mBitmapFrameCache.onFramePrepared(mFrameNumber, bitmapReference, frameType);
       return true;
     }
   }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import androidx.annotation.VisibleForTesting;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Runs frame decode jobs of several animations on a shared executor, earliest deadline first.
+ *
+ * <p>Jobs are queued here rather than in the executor, so that the frames needed soonest are
+ * decoded first and the queued jobs of an animation can be cancelled when it goes off screen. At
+ * most the given number of jobs run on the executor at the same time. A run on the executor takes
+ * at most {@link #MAX_JOBS_PER_DRAIN} jobs and then gives the thread back, so that the other tasks
+ * of a shared executor are not held up by a long queue of frames.
+ */
+@ThreadSafe
+public class FrameDecodeScheduler {
+
+  /** A queued frame decode job. */
+  public static final class Job implements Comparable<Job> {
+
+    private final Object mOwner;
+    private final Runnable mRunnable;
+    private final long mDeadlineNs;
+    private final long mSequenceNumber;
+
+    private Job(Object owner, Runnable runnable, long deadlineNs, long sequenceNumber) {
+      mOwner = owner;
+      mRunnable = runnable;
+      mDeadlineNs = deadlineNs;
+      mSequenceNumber = sequenceNumber;
+    }
+
+    public long getDeadlineNs() {
+      return mDeadlineNs;
+    }
+
+    @Override
+    public int compareTo(Job other) {
+      if (mDeadlineNs != other.mDeadlineNs) {
+        return mDeadlineNs < other.mDeadlineNs ? -1 : 1;
+      }
+      // jobs with the same deadline run in the order they were scheduled
+      return Long.compare(mSequenceNumber, other.mSequenceNumber);
+    }
+  }
+
+  /** Number of jobs run on the executor before the queue is drained by a new executor task. */
+  @VisibleForTesting static final int MAX_JOBS_PER_DRAIN = 4;
+
+  private final Executor mExecutor;
+  private final int mMaxConcurrentJobs;
+  private final Runnable mDrainRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          drainQueue();
+        }
+      };
+
+  @GuardedBy("this")
+  private final PriorityQueue<Job> mQueue = new PriorityQueue<>();
+
+  @GuardedBy("this")
+  private int mRunningDrainCount;
+
+  @GuardedBy("this")
+  private long mNextSequenceNumber;
+
+  /**
+   * @param executor the executor to run the jobs on
+   * @param maxConcurrentJobs the maximum number of jobs running on the executor at the same time
+   */
+  public FrameDecodeScheduler(Executor executor, int maxConcurrentJobs) {
+    if (maxConcurrentJobs <= 0) {
+      throw new IllegalArgumentException("maxConcurrentJobs must be > 0");
+    }
+    mExecutor = executor;
+    mMaxConcurrentJobs = maxConcurrentJobs;
+  }
+
+  /**
+   * Queues a job.
+   *
+   * @param owner the owner of the job, used to cancel all its jobs at once
+   * @param runnable the job
+   * @param deadlineNs the time the result of the job is needed, jobs with earlier deadlines run
+   *     first
+   * @return the job, which can be cancelled while it is queued
+   */
+  public Job schedule(Object owner, Runnable runnable, long deadlineNs) {
+    Job job;
+    boolean startDrain = false;
+    synchronized (this) {
+      job = new Job(owner, runnable, deadlineNs, mNextSequenceNumber++);
+      mQueue.add(job);
+      if (mRunningDrainCount < mMaxConcurrentJobs) {
+        mRunningDrainCount++;
+        startDrain = true;
+      }
+    }
+    if (startDrain) {
+      mExecutor.execute(mDrainRunnable);
+    }
+    return job;
+  }
+
+  /**
+   * Removes the job from the queue. Jobs that are already running are not interrupted.
+   *
+   * @return true if the job was still queued
+   */
+  public synchronized boolean cancel(Job job) {
+    return mQueue.remove(job);
+  }
+
+  /**
+   * Removes all queued jobs of the given owner.
+   *
+   * @return the number of cancelled jobs
+   */
+  public synchronized int cancelAll(Object owner) {
+    int cancelledJobCount = 0;
+    Iterator<Job> iterator = mQueue.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().mOwner == owner) {
+        iterator.remove();
+        cancelledJobCount++;
+      }
+    }
+    return cancelledJobCount;
+  }
+
+  @VisibleForTesting
+  synchronized int getQueuedJobCount() {
+    return mQueue.size();
+  }
+
+  private void drainQueue() {
+    for (int jobCount = 0; jobCount < MAX_JOBS_PER_DRAIN; jobCount++) {
+      Job job;
+      synchronized (this) {
+        job = mQueue.poll();
+        if (job == null) {
+          mRunningDrainCount--;
+          return;
+        }
+      }
+      boolean completed = false;
+      try {
+        job.mRunnable.run();
+        completed = true;
+      } finally {
+        if (!completed) {
+          // the exception ends this drain, so another one takes over the remaining jobs
+          continueDrain();
+        }
+      }
+    }
+    continueDrain();
+  }
+
+  /** Posts a new drain for the remaining jobs, in place of the drain that is ending. */
+  private void continueDrain() {
+    boolean startDrain;
+    synchronized (this) {
+      startDrain = !mQueue.isEmpty();
+      if (!startDrain) {
+        mRunningDrainCount--;
+      }
+    }
+    if (startDrain) {
+      mExecutor.execute(mDrainRunnable);
+    }
+  }
+}
@@ -18,6 +18,7 @@ import com.facebook.common.logging.FLog;
 import com.facebook.drawable.base.DrawableWithCaches;
 import com.facebook.fresco.animation.backend.AnimationBackend;
 import com.facebook.fresco.animation.backend.AnimationInformation;
+import com.facebook.fresco.animation.backend.AnimationVisibilityListener;
 import com.facebook.fresco.animation.frame.DropFramesFrameScheduler;
 import com.facebook.fresco.animation.frame.FrameScheduler;
 import javax.annotation.Nullable;
@@ -182,6 +183,15 @@ public class AnimatedDrawable2 extends Drawable implements Animatable, DrawableW
     }
   }
 
+  @Override
+  public boolean setVisible(boolean visible, boolean restart) {
+    boolean changed = super.setVisible(visible, restart);
+    if (changed) {
+      notifyVisibility(mAnimationBackend, visible);
+    }
+    return changed;
+  }
+
   @Override
   public void draw(Canvas canvas) {
     if (mAnimationBackend == null || mFrameScheduler == null) {
@@ -296,6 +306,9 @@ public class AnimatedDrawable2 extends Drawable implements Animatable, DrawableW
     if (mAnimationBackend != null) {
       mFrameScheduler = new DropFramesFrameScheduler(mAnimationBackend);
       mAnimationBackend.setBounds(getBounds());
+      if (!isVisible()) {
+        notifyVisibility(mAnimationBackend, false);
+      }
       if (mDrawableProperties != null) {
         // re-apply to the same drawable so that the animation backend is updated.
         mDrawableProperties.applyTo(this);
@@ -453,6 +466,13 @@ public class AnimatedDrawable2 extends Drawable implements Animatable, DrawableW
     return new DropFramesFrameScheduler(animationBackend);
   }
 
+  private static void notifyVisibility(
+      @Nullable AnimationBackend animationBackend, boolean visible) {
+    if (animationBackend instanceof AnimationVisibilityListener) {
+      ((AnimationVisibilityListener) animationBackend).onVisibilityChanged(visible);
+    }
+  }
+
   /**
    * Set the animation to the given level. The level represents the animation time in ms. If the
    * animation time is greater than the last frame time for the last loop, the last frame will be
@@ -367,7 +367,16 @@ public class BitmapAnimationBackendTest {
     verify(mFrameListener).onFrameDropped(mBitmapAnimationBackend, 4);
   }
 
+  @Test
+  public void testClearCancelsPendingFrames() {
+    mBitmapAnimationBackend.clear();
+
+    verify(mBitmapFramePreparer).cancelPendingFrames(mBitmapAnimationBackend);
+    verify(mBitmapFrameCache).clear();
+  }
+
   private void verifyFramePreparationStrategyCalled(int frameNumber) {
+    verify(mBitmapFramePreparer).onFrameDrawn(mBitmapAnimationBackend, frameNumber);
     verify(mBitmapFramePreparationStrategy)
         .prepareFrames(
             mBitmapFramePreparer, mBitmapFrameCache, mBitmapAnimationBackend, frameNumber);
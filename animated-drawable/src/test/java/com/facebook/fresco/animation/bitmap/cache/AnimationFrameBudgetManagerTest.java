@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.fresco.animation.backend.AnimationInformation;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests {@link AnimationFrameBudgetManager} and {@link BudgetedBitmapFrameCache}. */
+@RunWith(RobolectricTestRunner.class)
+public class AnimationFrameBudgetManagerTest {
+
+  private static final int FRAME_COUNT = 10;
+  private static final int SMALL_FRAME_SIZE = 10 * 10 * 4;
+  private static final int LARGE_FRAME_SIZE = 20 * 20 * 4;
+
+  private AnimationFrameBudgetManager mBudgetManager;
+
+  @Before
+  public void setup() {
+    mBudgetManager = new AnimationFrameBudgetManager(8 * SMALL_FRAME_SIZE, 4 * LARGE_FRAME_SIZE);
+  }
+
+  @Test
+  public void testAllFramesAreKeptWithinBudget() {
+    mBudgetManager = new AnimationFrameBudgetManager(4 * FRAME_COUNT * SMALL_FRAME_SIZE, 0);
+    BudgetedBitmapFrameCache first = newFrameCache(100);
+    BudgetedBitmapFrameCache second = newFrameCache(100);
+    renderFrame(first, 0, 10);
+    renderFrame(second, 0, 10);
+
+    assertEquals(FRAME_COUNT, mBudgetManager.getFrameSlots(first));
+    assertEquals(FRAME_COUNT, mBudgetManager.getFrameSlots(second));
+    assertEquals(FRAME_COUNT - 1, first.getFramesToPrepare());
+  }
+
+  @Test
+  public void testInvisibleAnimationIsDowngradedUnderPressure() {
+    mBudgetManager = new AnimationFrameBudgetManager(FRAME_COUNT * SMALL_FRAME_SIZE, 0);
+    BudgetedBitmapFrameCache visible = newFrameCache(100);
+    BudgetedBitmapFrameCache invisible = newFrameCache(100);
+    renderFrame(visible, 0, 10);
+    renderFrame(invisible, 0, 10);
+    invisible.setVisible(false);
+
+    assertEquals(FRAME_COUNT, mBudgetManager.getFrameSlots(visible));
+    assertEquals(
+        AnimationFrameBudgetManager.FRAME_SLOTS_KEEP_LAST_FRAME,
+        mBudgetManager.getFrameSlots(invisible));
+    assertEquals(0, invisible.getFramesToPrepare());
+    // the last frame is still available
+    assertTrue(invisible.contains(0));
+  }
+
+  @Test
+  public void testBudgetIsSplitByFrameSizeAndFrameRate() {
+    mBudgetManager = new AnimationFrameBudgetManager(8 * LARGE_FRAME_SIZE, 0);
+    BudgetedBitmapFrameCache largeAndFast = newFrameCache(20);
+    BudgetedBitmapFrameCache smallAndSlow = newFrameCache(100);
+    renderFrame(largeAndFast, 0, 20);
+    renderFrame(smallAndSlow, 0, 10);
+
+    // weights of 20 * 20 * 50 fps and 10 * 10 * 10 fps
+    assertEquals(7, mBudgetManager.getFrameSlots(largeAndFast));
+    assertEquals(1, mBudgetManager.getFrameSlots(smallAndSlow));
+  }
+
+  @Test
+  public void testClearedAnimationReleasesItsBudget() {
+    BudgetedBitmapFrameCache first = newFrameCache(100);
+    BudgetedBitmapFrameCache second = newFrameCache(100);
+    renderFrame(first, 0, 10);
+    renderFrame(second, 0, 10);
+    assertEquals(4, mBudgetManager.getFrameSlots(second));
+
+    first.clear();
+
+    assertEquals(8, mBudgetManager.getFrameSlots(second));
+    assertEquals(0, first.getSizeInBytes());
+  }
+
+  @Test
+  public void testTrimDowngradesInvisibleAnimations() {
+    mBudgetManager = new AnimationFrameBudgetManager(4 * FRAME_COUNT * SMALL_FRAME_SIZE, 0);
+    BudgetedBitmapFrameCache frameCache = newFrameCache(100);
+    renderFrame(frameCache, 0, 10);
+    frameCache.setVisible(false);
+    assertEquals(FRAME_COUNT, mBudgetManager.getFrameSlots(frameCache));
+
+    mBudgetManager.trim(MemoryTrimType.OnSystemLowMemoryWhileAppInForeground);
+
+    assertEquals(
+        AnimationFrameBudgetManager.FRAME_SLOTS_KEEP_LAST_FRAME,
+        mBudgetManager.getFrameSlots(frameCache));
+  }
+
+  @Test
+  public void testTrimStaysInEffectUntilMemoryPressureIsReleased() {
+    mBudgetManager = new AnimationFrameBudgetManager(4 * FRAME_COUNT * SMALL_FRAME_SIZE, 0);
+    BudgetedBitmapFrameCache invisible = newFrameCache(100);
+    renderFrame(invisible, 0, 10);
+    invisible.onVisibilityChanged(false);
+    mBudgetManager.trim(MemoryTrimType.OnAppBackgrounded);
+
+    // an update of another animation does not give the frames back
+    BudgetedBitmapFrameCache visible = newFrameCache(100);
+    renderFrame(visible, 0, 10);
+
+    assertEquals(
+        AnimationFrameBudgetManager.FRAME_SLOTS_KEEP_LAST_FRAME,
+        mBudgetManager.getFrameSlots(invisible));
+    assertEquals(FRAME_COUNT, mBudgetManager.getFrameSlots(visible));
+
+    mBudgetManager.releaseMemoryPressure();
+
+    assertEquals(FRAME_COUNT, mBudgetManager.getFrameSlots(invisible));
+    assertEquals(FRAME_COUNT, mBudgetManager.getFrameSlots(visible));
+  }
+
+  @Test
+  public void testFrameCacheKeepsFramesNeededNext() {
+    mBudgetManager = new AnimationFrameBudgetManager(4 * LARGE_FRAME_SIZE, 0);
+    BudgetedBitmapFrameCache frameCache = newFrameCache(100);
+    renderFrame(frameCache, 0, 20);
+    assertEquals(4, mBudgetManager.getFrameSlots(frameCache));
+    assertEquals(3, frameCache.getFramesToPrepare());
+
+    for (int frameNumber = 1; frameNumber <= 3; frameNumber++) {
+      prepareFrame(frameCache, frameNumber, 20);
+    }
+    assertEquals(4 * LARGE_FRAME_SIZE, frameCache.getSizeInBytes());
+    assertFalse(frameCache.contains(4));
+
+    // the frame shown last is needed last, but is kept as the fallback frame
+    prepareFrame(frameCache, 4, 20);
+    for (int frameNumber = 0; frameNumber <= 4; frameNumber++) {
+      assertTrue(frameCache.contains(frameNumber));
+    }
+    assertEquals(5 * LARGE_FRAME_SIZE, frameCache.getSizeInBytes());
+    renderFrame(frameCache, 1, 20);
+    assertFalse(frameCache.contains(0));
+  }
+
+  @Test
+  public void testFrameBitmapsAreReusedAcrossAnimations() {
+    BudgetedBitmapFrameCache first = newFrameCache(100);
+    renderFrame(first, 0, 20);
+    CloseableReference<Bitmap> firstFrame = first.getCachedFrame(0);
+    Bitmap firstBitmap = firstFrame.get();
+    firstFrame.close();
+    // the bitmap returns to the pool once the last reference is closed
+    first.clear();
+
+    BudgetedBitmapFrameCache second = newFrameCache(100);
+    CloseableReference<Bitmap> reusedBitmap = second.getBitmapToReuseForFrame(0, 20, 20);
+
+    assertNotNull(reusedBitmap);
+    assertSame(firstBitmap, reusedBitmap.get());
+    assertEquals(1, mBudgetManager.getBitmapPool().getReuseCount());
+    reusedBitmap.close();
+  }
+
+  private BudgetedBitmapFrameCache newFrameCache(int frameDurationMs) {
+    AnimationInformation animationInformation = mock(AnimationInformation.class);
+    when(animationInformation.getFrameCount()).thenReturn(FRAME_COUNT);
+    when(animationInformation.getFrameDurationMs(anyInt())).thenReturn(frameDurationMs);
+    return new BudgetedBitmapFrameCache(mBudgetManager, animationInformation);
+  }
+
+  private void renderFrame(BudgetedBitmapFrameCache frameCache, int frameNumber, int size) {
+    CloseableReference<Bitmap> bitmap =
+        frameCache.getBitmapToReuseForFrame(frameNumber, size, size);
+    frameCache.onFrameRendered(frameNumber, bitmap, BitmapAnimationBackend.FRAME_TYPE_REUSED);
+    bitmap.close();
+  }
+
+  private void prepareFrame(BudgetedBitmapFrameCache frameCache, int frameNumber, int size) {
+    CloseableReference<Bitmap> bitmap =
+        frameCache.getBitmapToReuseForFrame(frameNumber, size, size);
+    frameCache.onFramePrepared(frameNumber, bitmap, BitmapAnimationBackend.FRAME_TYPE_REUSED);
+    bitmap.close();
+  }
+}
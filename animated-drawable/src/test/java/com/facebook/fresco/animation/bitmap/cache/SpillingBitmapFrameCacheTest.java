@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import com.facebook.common.file.FileTree;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.fresco.animation.bitmap.BitmapAnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameRenderer;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Tests {@link SpillingBitmapFrameCache} and {@link AnimationFrameSpillStore}. */
+@RunWith(RobolectricTestRunner.class)
+public class SpillingBitmapFrameCacheTest {
+
+  private static final int FRAME_COUNT = 3;
+  private static final int SIZE = 4;
+  private static final int FRAME_SIZE_IN_BYTES = SIZE * SIZE * 4;
+
+  private File mDirectory;
+  private AnimationFrameSpillStore mSpillStore;
+  private SpillingBitmapFrameCache mFrameCache;
+  private List<Runnable> mSpillJobs;
+
+  @Before
+  public void setup() {
+    mSpillJobs = new ArrayList<>();
+    mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "animation-frames-test");
+    mDirectory.mkdirs();
+    FileTree.deleteContents(mDirectory);
+    mSpillStore = new AnimationFrameSpillStore(mDirectory, 10 * FRAME_COUNT * FRAME_SIZE_IN_BYTES);
+    mFrameCache =
+        new SpillingBitmapFrameCache(
+            new KeepLastFrameCache(), mSpillStore, FRAME_COUNT, newSpillExecutor());
+  }
+
+  @After
+  public void tearDown() {
+    FileTree.deleteContents(mDirectory);
+  }
+
+  @Test
+  public void testFramesEvictedFromMemoryAreNotReportedAsCached() {
+    renderFrame(0, Color.RED);
+    renderFrame(1, Color.BLUE);
+
+    assertFalse(mFrameCache.contains(0));
+    assertTrue(mFrameCache.contains(1));
+    assertEquals(FRAME_COUNT * FRAME_SIZE_IN_BYTES, mSpillStore.getSizeInBytes());
+    // only frames in memory are returned, the file is not read
+    assertNull(mFrameCache.getCachedFrame(0));
+  }
+
+  @Test
+  public void testSpilledFramesAreLoadedBackByPreparer() {
+    KeepLastFrameCache delegate = spy(new KeepLastFrameCache());
+    mFrameCache =
+        new SpillingBitmapFrameCache(delegate, mSpillStore, FRAME_COUNT, newSpillExecutor());
+    renderFrame(0, Color.RED);
+    renderFrame(1, Color.BLUE);
+    BitmapFrameRenderer frameRenderer = mock(BitmapFrameRenderer.class);
+    BitmapFrameRenderer spilledFrameRenderer =
+        mFrameCache.createSpilledFrameRenderer(frameRenderer);
+
+    Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    assertTrue(spilledFrameRenderer.renderFrame(0, bitmap));
+    verify(frameRenderer, never()).renderFrame(anyInt(), any(Bitmap.class));
+    assertEquals(Color.RED, bitmap.getPixel(1, 1));
+
+    // the preparer caches the copied frame in memory
+    CloseableReference<Bitmap> bitmapReference =
+        CloseableReference.of(bitmap, SimpleBitmapReleaser.getInstance());
+    mFrameCache.onFramePrepared(0, bitmapReference, BitmapAnimationBackend.FRAME_TYPE_REUSED);
+    verify(delegate).onFramePrepared(0, bitmapReference, BitmapAnimationBackend.FRAME_TYPE_REUSED);
+    bitmapReference.close();
+
+    // frames missing from the file are rendered
+    Bitmap otherBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    spilledFrameRenderer.renderFrame(2, otherBitmap);
+    verify(frameRenderer).renderFrame(2, otherBitmap);
+  }
+
+  @Test
+  public void testClearReleasesFile() {
+    renderFrame(0, Color.RED);
+    assertEquals(1, mDirectory.listFiles().length);
+
+    mFrameCache.clear();
+
+    assertFalse(mFrameCache.contains(0));
+    assertEquals(0, mSpillStore.getSizeInBytes());
+    assertEquals(0, mDirectory.listFiles().length);
+  }
+
+  @Test
+  public void testRenderedFramesAreWrittenOnSpillExecutor() {
+    renderFrame(0, Color.RED, false);
+
+    assertEquals(1, mSpillJobs.size());
+    assertEquals(0, mSpillStore.getSizeInBytes());
+    assertEquals(0, mDirectory.listFiles().length);
+
+    runSpillJobs();
+
+    assertEquals(FRAME_COUNT * FRAME_SIZE_IN_BYTES, mSpillStore.getSizeInBytes());
+    assertEquals(1, mDirectory.listFiles().length);
+  }
+
+  @Test
+  public void testClearDropsPendingWrites() {
+    renderFrame(0, Color.RED, false);
+
+    mFrameCache.clear();
+    runSpillJobs();
+
+    assertFalse(mFrameCache.contains(0));
+    assertEquals(0, mSpillStore.getSizeInBytes());
+    assertEquals(0, mDirectory.listFiles().length);
+  }
+
+  @Test
+  public void testFramesAreNotSpilledWhenStoreIsFull() {
+    mSpillStore = new AnimationFrameSpillStore(mDirectory, FRAME_SIZE_IN_BYTES);
+    mFrameCache =
+        new SpillingBitmapFrameCache(
+            new KeepLastFrameCache(), mSpillStore, FRAME_COUNT, newSpillExecutor());
+
+    renderFrame(0, Color.RED);
+    renderFrame(1, Color.BLUE);
+
+    Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    BitmapFrameRenderer frameRenderer = mock(BitmapFrameRenderer.class);
+    mFrameCache.createSpilledFrameRenderer(frameRenderer).renderFrame(0, bitmap);
+    verify(frameRenderer).renderFrame(0, bitmap);
+    assertEquals(0, mSpillStore.getSizeInBytes());
+  }
+
+  @Test
+  public void testStaleFilesAreDeleted() throws IOException {
+    File staleFile = new File(mDirectory, "frames123.spill");
+    assertTrue(staleFile.createNewFile());
+
+    renderFrame(0, Color.RED);
+
+    assertFalse(staleFile.exists());
+  }
+
+  private void renderFrame(int frameNumber, int color) {
+    renderFrame(frameNumber, color, true);
+  }
+
+  private void renderFrame(int frameNumber, int color, boolean runSpillJobs) {
+    Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    bitmap.eraseColor(color);
+    CloseableReference<Bitmap> bitmapReference =
+        CloseableReference.of(bitmap, SimpleBitmapReleaser.getInstance());
+    mFrameCache.onFrameRendered(
+        frameNumber, bitmapReference, BitmapAnimationBackend.FRAME_TYPE_CREATED);
+    bitmapReference.close();
+    if (runSpillJobs) {
+      runSpillJobs();
+    }
+  }
+
+  private Executor newSpillExecutor() {
+    return new Executor() {
+      @Override
+      public void execute(Runnable runnable) {
+        mSpillJobs.add(runnable);
+      }
+    };
+  }
+
+  private void runSpillJobs() {
+    while (!mSpillJobs.isEmpty()) {
+      mSpillJobs.remove(0).run();
+    }
+  }
+}
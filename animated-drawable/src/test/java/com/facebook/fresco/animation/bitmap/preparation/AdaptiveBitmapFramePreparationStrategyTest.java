@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.facebook.fresco.animation.backend.AnimationBackend;
+import com.facebook.fresco.animation.bitmap.BitmapFrameCache;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests {@link AdaptiveBitmapFramePreparationStrategy}. */
+@RunWith(RobolectricTestRunner.class)
+public class AdaptiveBitmapFramePreparationStrategyTest {
+
+  private static final int FRAME_COUNT = 10;
+  private static final int FRAME_DURATION_MS = 100;
+  private static final int MAX_FRAMES_TO_PREPARE = 5;
+
+  @Mock public AnimationBackend mAnimationBackend;
+  @Mock public BitmapFramePreparer mBitmapFramePreparer;
+  @Mock public BitmapFrameCache mBitmapFrameCache;
+  @Mock public AdaptiveBitmapFramePreparationStrategy.MetricsListener mMetricsListener;
+
+  private AdaptiveBitmapFramePreparationStrategy mStrategy;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    mStrategy = new AdaptiveBitmapFramePreparationStrategy(MAX_FRAMES_TO_PREPARE, mMetricsListener);
+    when(mAnimationBackend.getFrameCount()).thenReturn(FRAME_COUNT);
+    when(mAnimationBackend.getFrameDurationMs(anyInt())).thenReturn(FRAME_DURATION_MS);
+    when(mBitmapFramePreparer.prepareFrame(eq(mBitmapFrameCache), eq(mAnimationBackend), anyInt()))
+        .thenReturn(true);
+  }
+
+  @Test
+  public void testPrepareFrames_BeforeFirstMeasurement() {
+    prepareFrames(0);
+
+    verifyPrepareCalledForFrames(1, 2, 3);
+  }
+
+  @Test
+  public void testPrepareFrames_WhenRenderingIsFast_thenPrepareNextFrameOnly() {
+    reportFramePrepared(1, 0, 10);
+
+    prepareFrames(0);
+
+    verifyPrepareCalledForFrames(1);
+  }
+
+  @Test
+  public void testPrepareFrames_WhenRenderingIsSlow_thenPrepareFurtherAhead() {
+    // a lead time of 375 ms means that the frames shown within 475 ms have to be prepared now
+    reportFramePrepared(1, 0, 250);
+
+    prepareFrames(8);
+
+    verifyPrepareCalledForFrames(9, 0, 1, 2);
+  }
+
+  @Test
+  public void testPrepareFrames_DoesNotExceedMaxFramesToPrepare() {
+    reportFramePrepared(1, 0, 2000);
+
+    prepareFrames(0);
+
+    verifyPrepareCalledForFrames(1, 2, 3, 4, 5);
+  }
+
+  @Test
+  public void testPrepareFrames_WhenExecutorIsSaturated_thenPrepareNextFrameOnly() {
+    reportFramePrepared(1, 150, 250);
+
+    prepareFrames(0);
+
+    verifyPrepareCalledForFrames(1);
+  }
+
+  @Test
+  public void testPrepareFrames_ReportsDroppedFrames() {
+    prepareFrames(0);
+    prepareFrames(1);
+    prepareFrames(1);
+    prepareFrames(4);
+
+    verify(mMetricsListener).onFramesDropped(mAnimationBackend, 4, 2);
+    assertEquals(2, mStrategy.getDroppedFrameCount());
+  }
+
+  @Test
+  public void testPrepareFrames_ReportsFramesNotPreparedInTime() {
+    prepareFrames(0);
+    reportFramePrepared(1, 0, 10);
+
+    prepareFrames(1);
+    verify(mMetricsListener, never()).onFrameLate(mAnimationBackend, 1);
+
+    prepareFrames(2);
+    verify(mMetricsListener).onFrameLate(mAnimationBackend, 2);
+    assertEquals(1, mStrategy.getLateFrameCount());
+  }
+
+  @Test
+  public void testPrepareFrames_ReportsChangesOfFramesToPrepare() {
+    prepareFrames(0);
+    verify(mMetricsListener).onFramesToPrepareChanged(mAnimationBackend, 3, -1, -1);
+
+    reportFramePrepared(1, 0, 10);
+    prepareFrames(1);
+    verify(mMetricsListener)
+        .onFramesToPrepareChanged(mAnimationBackend, 1, TimeUnit.MILLISECONDS.toNanos(10), 0);
+
+    reset(mMetricsListener);
+    prepareFrames(2);
+    verify(mMetricsListener, never())
+        .onFramesToPrepareChanged(eq(mAnimationBackend), anyInt(), anyLong(), anyLong());
+  }
+
+  private void prepareFrames(int lastDrawnFrameNumber) {
+    mStrategy.prepareFrames(
+        mBitmapFramePreparer, mBitmapFrameCache, mAnimationBackend, lastDrawnFrameNumber);
+  }
+
+  private void reportFramePrepared(int frameNumber, long queueTimeMs, long renderTimeMs) {
+    mStrategy.onFramePrepared(
+        mAnimationBackend,
+        frameNumber,
+        TimeUnit.MILLISECONDS.toNanos(queueTimeMs),
+        TimeUnit.MILLISECONDS.toNanos(renderTimeMs),
+        true);
+  }
+
+  private void verifyPrepareCalledForFrames(int... frameNumbers) {
+    InOrder inOrder = inOrder(mBitmapFramePreparer);
+    for (int frameNumber : frameNumbers) {
+      inOrder
+          .verify(mBitmapFramePreparer)
+          .prepareFrame(mBitmapFrameCache, mAnimationBackend, frameNumber);
+    }
+    inOrder.verifyNoMoreInteractions();
+  }
+}
@@ -8,6 +8,7 @@
 package com.facebook.fresco.animation.bitmap.preparation;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -198,4 +199,36 @@ public class DefaultBitmapFramePreparerTest {
 
     verifyNoMoreInteractions(mBitmapFrameCache);
   }
+
+  @Test
+  public void testCancelPendingFrames_thenQueuedFrameIsNotRendered() {
+    when(mBitmapFrameCache.getBitmapToReuseForFrame(
+            1, BACKEND_INTRINSIC_WIDTH, BACKEND_INTRINSIC_HEIGHT))
+        .thenReturn(mBitmapReference);
+    when(mBitmapFrameRenderer.renderFrame(1, mBitmap)).thenReturn(true);
+    mDefaultBitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1);
+
+    mDefaultBitmapFramePreparer.cancelPendingFrames(mAnimationBackend);
+    mExecutorService.getScheduledQueue().runNextPendingCommand();
+
+    verifyZeroInteractions(mBitmapFrameRenderer, mPlatformBitmapFactory);
+
+    // the frame can be scheduled again
+    mDefaultBitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1);
+    mExecutorService.getScheduledQueue().runNextPendingCommand();
+
+    verify(mBitmapFrameCache)
+        .onFramePrepared(1, mBitmapReference, BitmapAnimationBackend.FRAME_TYPE_REUSED);
+  }
+
+  @Test
+  public void testPrepareFrame_whenSameFrameOfAnotherBackend_thenScheduleBoth() {
+    AnimationBackend otherAnimationBackend = mock(AnimationBackend.class);
+
+    mDefaultBitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1);
+    mDefaultBitmapFramePreparer.prepareFrame(mBitmapFrameCache, mAnimationBackend, 1);
+    mDefaultBitmapFramePreparer.prepareFrame(mBitmapFrameCache, otherAnimationBackend, 1);
+
+    assertThat(mExecutorService.getScheduledQueue().getPendingCount()).isEqualTo(2);
+  }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.animation.bitmap.preparation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests {@link FrameDecodeScheduler}. */
+@RunWith(RobolectricTestRunner.class)
+public class FrameDecodeSchedulerTest {
+
+  private final Object mFirstOwner = new Object();
+  private final Object mSecondOwner = new Object();
+
+  private List<Runnable> mExecutedRunnables;
+  private List<String> mCompletedJobs;
+  private FrameDecodeScheduler mFrameDecodeScheduler;
+
+  @Before
+  public void setup() {
+    mExecutedRunnables = new ArrayList<>();
+    mCompletedJobs = new ArrayList<>();
+    mFrameDecodeScheduler = new FrameDecodeScheduler(newExecutor(), 1);
+  }
+
+  @Test
+  public void testJobsRunEarliestDeadlineFirst() {
+    schedule(mFirstOwner, "late", 30);
+    schedule(mSecondOwner, "early", 10);
+    schedule(mFirstOwner, "middle", 20);
+    schedule(mSecondOwner, "middle again", 20);
+
+    runExecutedRunnables();
+
+    assertEquals(Arrays.asList("early", "middle", "middle again", "late"), mCompletedJobs);
+  }
+
+  @Test
+  public void testCancelAll_RemovesQueuedJobsOfOwnerOnly() {
+    schedule(mFirstOwner, "first", 10);
+    schedule(mSecondOwner, "second", 20);
+    schedule(mFirstOwner, "third", 30);
+
+    assertEquals(2, mFrameDecodeScheduler.cancelAll(mFirstOwner));
+    assertEquals(1, mFrameDecodeScheduler.getQueuedJobCount());
+    runExecutedRunnables();
+
+    assertEquals(Arrays.asList("second"), mCompletedJobs);
+  }
+
+  @Test
+  public void testCancel_WhenJobHasRun_thenReturnFalse() {
+    FrameDecodeScheduler.Job job = schedule(mFirstOwner, "first", 10);
+    FrameDecodeScheduler.Job cancelledJob = schedule(mFirstOwner, "second", 20);
+
+    assertTrue(mFrameDecodeScheduler.cancel(cancelledJob));
+    runExecutedRunnables();
+
+    assertFalse(mFrameDecodeScheduler.cancel(job));
+    assertEquals(Arrays.asList("first"), mCompletedJobs);
+  }
+
+  @Test
+  public void testMaxConcurrentJobs() {
+    mFrameDecodeScheduler = new FrameDecodeScheduler(newExecutor(), 2);
+    schedule(mFirstOwner, "first", 10);
+    schedule(mFirstOwner, "second", 20);
+    schedule(mFirstOwner, "third", 30);
+
+    assertEquals(2, mExecutedRunnables.size());
+    runExecutedRunnables();
+
+    assertEquals(Arrays.asList("first", "second", "third"), mCompletedJobs);
+    // the executor is used again once the queue has been drained
+    schedule(mFirstOwner, "fourth", 40);
+    assertEquals(1, mExecutedRunnables.size());
+  }
+
+  @Test
+  public void testDrainRunsBoundedNumberOfJobs() {
+    int jobCount = FrameDecodeScheduler.MAX_JOBS_PER_DRAIN + 2;
+    for (int i = 0; i < jobCount; i++) {
+      schedule(mFirstOwner, "job" + i, i);
+    }
+    assertEquals(1, mExecutedRunnables.size());
+
+    mExecutedRunnables.remove(0).run();
+
+    assertEquals(FrameDecodeScheduler.MAX_JOBS_PER_DRAIN, mCompletedJobs.size());
+    // the remaining jobs are drained by a new executor task
+    assertEquals(1, mExecutedRunnables.size());
+    assertEquals(2, mFrameDecodeScheduler.getQueuedJobCount());
+    runExecutedRunnables();
+
+    assertEquals(jobCount, mCompletedJobs.size());
+    assertTrue(mExecutedRunnables.isEmpty());
+  }
+
+  @Test
+  public void testFailingJob_DoesNotStopRemainingJobs() {
+    mFrameDecodeScheduler.schedule(
+        mFirstOwner,
+        new Runnable() {
+          @Override
+          public void run() {
+            throw new IllegalStateException("failed");
+          }
+        },
+        10);
+    schedule(mFirstOwner, "second", 20);
+
+    try {
+      mExecutedRunnables.remove(0).run();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    runExecutedRunnables();
+
+    assertEquals(Arrays.asList("second"), mCompletedJobs);
+  }
+
+  private FrameDecodeScheduler.Job schedule(Object owner, final String name, long deadlineNs) {
+    return mFrameDecodeScheduler.schedule(
+        owner,
+        new Runnable() {
+          @Override
+          public void run() {
+            mCompletedJobs.add(name);
+          }
+        },
+        deadlineNs);
+  }
+
+  private Executor newExecutor() {
+    return new Executor() {
+      @Override
+      public void execute(Runnable runnable) {
+        mExecutedRunnables.add(runnable);
+      }
+    };
+  }
+
+  private void runExecutedRunnables() {
+    while (!mExecutedRunnables.isEmpty()) {
+      mExecutedRunnables.remove(0).run();
+    }
+  }
+}
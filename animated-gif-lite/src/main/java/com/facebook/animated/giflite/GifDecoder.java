@@ -8,10 +8,14 @@
 package com.facebook.animated.giflite;
 
 import android.graphics.Movie;
+import com.facebook.animated.giflite.decoder.GifFrameDecoder;
 import com.facebook.animated.giflite.decoder.GifMetadataDecoder;
+import com.facebook.animated.giflite.draw.JavaGifAnimatedImage;
+import com.facebook.animated.giflite.draw.JavaGifFrame;
 import com.facebook.animated.giflite.draw.MovieAnimatedImage;
 import com.facebook.animated.giflite.draw.MovieDrawer;
 import com.facebook.animated.giflite.draw.MovieFrame;
+import com.facebook.common.internal.ByteStreams;
 import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo;
 import com.facebook.imagepipeline.animated.base.AnimatedImageResult;
 import com.facebook.imagepipeline.common.ImageDecodeOptions;
@@ -25,15 +29,37 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-/** A simple Gif decoder that uses Android's {@link Movie} class to decode Gif images. */
+/**
+ * A simple Gif decoder that uses Android's {@link Movie} class to decode Gif images, or optionally
+ * the pure Java {@link GifFrameDecoder}.
+ */
 public class GifDecoder implements ImageDecoder {
 
+  private static final int KEYFRAME_INTERVAL = 8;
+
+  private final boolean mDecodeWithJavaDecoder;
+
+  public GifDecoder() {
+    this(false);
+  }
+
+  /**
+   * @param decodeWithJavaDecoder whether to decode with {@link GifFrameDecoder} instead of {@link
+   *     Movie}, so that frames can be rendered in parallel and from the closest keyframe
+   */
+  public GifDecoder(boolean decodeWithJavaDecoder) {
+    mDecodeWithJavaDecoder = decodeWithJavaDecoder;
+  }
+
   @Override
   public CloseableImage decode(
       final EncodedImage encodedImage,
       int length,
       QualityInfo qualityInfo,
       ImageDecodeOptions options) {
+    if (mDecodeWithJavaDecoder) {
+      return decodeWithJavaDecoder(encodedImage);
+    }
     InputStream is = encodedImage.getInputStream();
     try {
       ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -81,6 +107,40 @@ public class GifDecoder implements ImageDecoder {
     }
   }
 
+  private static CloseableImage decodeWithJavaDecoder(EncodedImage encodedImage) {
+    InputStream is = encodedImage.getInputStream();
+    try {
+      byte[] data = ByteStreams.toByteArray(is);
+      // the frame decoder does not need a fixed stream for frames without duration
+      GifMetadataDecoder decoder = GifMetadataDecoder.create(new ByteArrayInputStream(data), null);
+      GifFrameDecoder frameDecoder = new GifFrameDecoder(data, decoder, KEYFRAME_INTERVAL);
+      JavaGifFrame[] frames = new JavaGifFrame[decoder.getFrameCount()];
+      int duration = 0;
+      for (int frameNumber = 0, N = frames.length; frameNumber < N; frameNumber++) {
+        int frameDuration = decoder.getFrameDurationMs(frameNumber);
+        duration += frameDuration;
+        frames[frameNumber] =
+            new JavaGifFrame(
+                frameDecoder,
+                frameNumber,
+                frameDuration,
+                translateFrameDisposal(decoder.getFrameDisposal(frameNumber)));
+      }
+      return new CloseableAnimatedImage(
+          AnimatedImageResult.forAnimatedImage(
+              new JavaGifAnimatedImage(
+                  frames, encodedImage.getSize(), duration, decoder.getLoopCount())),
+          false);
+    } catch (IOException e) {
+      throw new RuntimeException("Error while decoding gif", e);
+    } finally {
+      try {
+        is.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
   private static AnimatedDrawableFrameInfo.DisposalMethod translateFrameDisposal(int raw) {
     switch (raw) {
       case 2: // restore to background
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.animated.giflite.decoder;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+
+/**
+ * Pure Java GIF decoder that renders the composited frames of an animation into ARGB pixels.
+ *
+ * <p>The frames are located once by {@link GifMetadataDecoder}. The LZW data of a frame is decoded
+ * in a streaming fashion, row by row straight into the canvas, without buffering the whole frame.
+ *
+ * <p>Since a GIF frame is drawn on top of the previous ones, the canvas before every n-th frame is
+ * kept as a keyframe, so that rendering a frame only replays the frames since the closest keyframe
+ * instead of the whole animation. The keyframes are capped in bytes, the frames after the cap
+ * replay from the last keyframe kept.
+ *
+ * <p>Frames can be rendered in parallel: every concurrent call gets its own {@link Cursor}, and the
+ * idle cursors are reused by the following calls, starting from the closest one.
+ */
+public class GifFrameDecoder {
+
+  private static final int MAX_STACK_SIZE = 4096;
+  private static final int MAX_IDLE_CURSORS = 2;
+  private static final int MAX_IDLE_PIXEL_BUFFERS = 2;
+
+  /** Default cap of the bytes held by the keyframes of one animation. */
+  public static final long DEFAULT_MAX_KEYFRAME_BYTES = 4 * 1024 * 1024;
+
+  private static final int DISPOSAL_TO_BACKGROUND = 2;
+  private static final int DISPOSAL_TO_PREVIOUS = 3;
+
+  private final byte[] mData;
+  private final GifMetadataDecoder mMetadataDecoder;
+  private final int mWidth;
+  private final int mHeight;
+  private final int mFrameCount;
+  private final int mKeyframeInterval;
+  private final long mMaxKeyframeBytes;
+  @Nullable private final int[] mGlobalColorTable;
+
+  // the canvas before frame i * mKeyframeInterval, filled in as the frames are rendered
+  private final AtomicReferenceArray<int[]> mKeyframes;
+  private final AtomicLong mKeyframeBytes = new AtomicLong();
+  private final ConcurrentLinkedQueue<Cursor> mIdleCursors = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<int[]> mIdlePixelBuffers = new ConcurrentLinkedQueue<>();
+
+  /**
+   * @param data the GIF data
+   * @param metadataDecoder the decoded metadata of the same data
+   * @param keyframeInterval the number of frames between two keyframes, or 0 to not keep any
+   */
+  public GifFrameDecoder(byte[] data, GifMetadataDecoder metadataDecoder, int keyframeInterval) {
+    this(data, metadataDecoder, keyframeInterval, DEFAULT_MAX_KEYFRAME_BYTES);
+  }
+
+  /**
+   * @param data the GIF data
+   * @param metadataDecoder the decoded metadata of the same data
+   * @param keyframeInterval the number of frames between two keyframes, or 0 to not keep any
+   * @param maxKeyframeBytes the maximum number of bytes of all the keyframes kept
+   */
+  public GifFrameDecoder(
+      byte[] data,
+      GifMetadataDecoder metadataDecoder,
+      int keyframeInterval,
+      long maxKeyframeBytes) {
+    mData = data;
+    mMetadataDecoder = metadataDecoder;
+    mWidth = metadataDecoder.getWidth();
+    mHeight = metadataDecoder.getHeight();
+    mFrameCount = metadataDecoder.getFrameCount();
+    mKeyframeInterval = keyframeInterval;
+    mMaxKeyframeBytes = maxKeyframeBytes;
+    mKeyframes =
+        new AtomicReferenceArray<>(keyframeInterval > 0 ? mFrameCount / keyframeInterval + 1 : 0);
+    mGlobalColorTable =
+        metadataDecoder.getGlobalColorTableOffset() == GifMetadataDecoder.NONE
+            ? null
+            : readColorTable(
+                metadataDecoder.getGlobalColorTableOffset(),
+                metadataDecoder.getGlobalColorTableSize());
+  }
+
+  public int getWidth() {
+    return mWidth;
+  }
+
+  public int getHeight() {
+    return mHeight;
+  }
+
+  public int getFrameCount() {
+    return mFrameCount;
+  }
+
+  /** @return the number of keyframes kept so far */
+  public int getKeyframeCount() {
+    int count = 0;
+    for (int i = 0; i < mKeyframes.length(); i++) {
+      if (mKeyframes.get(i) != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** @return the number of bytes of the keyframes kept so far */
+  public long getKeyframeBytes() {
+    return mKeyframeBytes.get();
+  }
+
+  /**
+   * @return pixels of size width * height to render frames into, to give back with {@link
+   *     #releasePixelBuffer(int[])} once done
+   */
+  public int[] acquirePixelBuffer() {
+    int[] pixels = mIdlePixelBuffers.poll();
+    return pixels != null ? pixels : new int[mWidth * mHeight];
+  }
+
+  /** Gives back pixels acquired with {@link #acquirePixelBuffer()}, to be reused. */
+  public void releasePixelBuffer(int[] pixels) {
+    if (pixels.length == mWidth * mHeight && mIdlePixelBuffers.size() < MAX_IDLE_PIXEL_BUFFERS) {
+      mIdlePixelBuffers.offer(pixels);
+    }
+  }
+
+  /**
+   * Renders the frame, composited with the previous frames, into the given pixels.
+   *
+   * @param frameNumber the frame to render
+   * @param pixels the ARGB pixels of size width * height, row by row
+   */
+  public void renderFrame(int frameNumber, int[] pixels) {
+    if (frameNumber < 0 || frameNumber >= mFrameCount) {
+      throw new IllegalArgumentException("Invalid frame number " + frameNumber);
+    }
+    Cursor cursor = acquireCursor(frameNumber);
+    try {
+      cursor.renderFrame(frameNumber, pixels);
+    } finally {
+      if (mIdleCursors.size() < MAX_IDLE_CURSORS) {
+        mIdleCursors.offer(cursor);
+      }
+    }
+  }
+
+  private Cursor acquireCursor(int frameNumber) {
+    // the cursor closest before the frame needs to replay the fewest frames
+    Cursor bestCursor = null;
+    int bestFrameNumber = -1;
+    Iterator<Cursor> iterator = mIdleCursors.iterator();
+    while (iterator.hasNext()) {
+      Cursor cursor = iterator.next();
+      int cursorFrameNumber = cursor.mFrameNumber <= frameNumber ? cursor.mFrameNumber : -1;
+      if (bestCursor == null || cursorFrameNumber > bestFrameNumber) {
+        bestCursor = cursor;
+        bestFrameNumber = cursorFrameNumber;
+      }
+    }
+    // another thread may have taken it in the meantime
+    if (bestCursor != null && mIdleCursors.remove(bestCursor)) {
+      return bestCursor;
+    }
+    Cursor cursor = mIdleCursors.poll();
+    return cursor != null ? cursor : new Cursor();
+  }
+
+  private int[] readColorTable(int offset, int size) {
+    // all 256 entries, so that invalid indices are transparent instead of out of bounds
+    int[] colorTable = new int[256];
+    int count = Math.min(size, Math.min(256, (mData.length - offset) / 3));
+    for (int i = 0; i < count; i++) {
+      int r = mData[offset + 3 * i] & 0xff;
+      int g = mData[offset + 3 * i + 1] & 0xff;
+      int b = mData[offset + 3 * i + 2] & 0xff;
+      colorTable[i] = 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+    return colorTable;
+  }
+
+  private int readTwoByteInt(int offset) {
+    return (mData[offset] & 0xff) | ((mData[offset + 1] & 0xff) << 8);
+  }
+
+  /** Rendering state of a single thread: the canvas with the last rendered frame on it. */
+  private class Cursor {
+
+    private final int[] mCanvas = new int[mWidth * mHeight];
+    @Nullable private int[] mPreviousCanvas;
+
+    // the last frame drawn on the canvas, and whether it has been disposed already
+    private int mFrameNumber = -1;
+    private boolean mDisposed = true;
+
+    // bounds of the last frame drawn, used to dispose it
+    private int mFrameLeft;
+    private int mFrameTop;
+    private int mFrameWidth;
+    private int mFrameHeight;
+
+    // LZW decoding tables
+    private final short[] mPrefix = new short[MAX_STACK_SIZE];
+    private final byte[] mSuffix = new byte[MAX_STACK_SIZE];
+    private final byte[] mPixelStack = new byte[MAX_STACK_SIZE + 1];
+
+    // decoding state of the current frame
+    private byte[] mRow = new byte[0];
+    private int mRowX;
+    private int mRowCount;
+    private int mInterlacePass;
+    private int mInterlaceY;
+    private boolean mInterlaced;
+    private int mTransparentIndex;
+    private int[] mColorTable = new int[0];
+
+    void renderFrame(int frameNumber, int[] pixels) {
+      seek(frameNumber);
+      System.arraycopy(mCanvas, 0, pixels, 0, mCanvas.length);
+    }
+
+    private void seek(int frameNumber) {
+      int keyframeIndex = 0;
+      if (mKeyframeInterval > 0) {
+        keyframeIndex = frameNumber / mKeyframeInterval;
+        while (keyframeIndex > 0 && mKeyframes.get(keyframeIndex) == null) {
+          keyframeIndex--;
+        }
+      }
+      int startFrameNumber = keyframeIndex * mKeyframeInterval;
+      if (mFrameNumber > frameNumber || mFrameNumber < startFrameNumber - 1) {
+        // starts over from the closest keyframe, the first one being the empty canvas
+        int[] keyframe = keyframeIndex > 0 ? mKeyframes.get(keyframeIndex) : null;
+        if (keyframe != null) {
+          System.arraycopy(keyframe, 0, mCanvas, 0, mCanvas.length);
+        } else {
+          Arrays.fill(mCanvas, 0);
+        }
+        mFrameNumber = startFrameNumber - 1;
+        mDisposed = true;
+      }
+      while (mFrameNumber < frameNumber) {
+        if (!mDisposed) {
+          disposeFrame(mFrameNumber);
+        }
+        mFrameNumber++;
+        maybeKeepKeyframe(mFrameNumber);
+        drawFrame(mFrameNumber);
+        mDisposed = false;
+      }
+    }
+
+    private void maybeKeepKeyframe(int frameNumber) {
+      if (mKeyframeInterval <= 0 || frameNumber == 0 || frameNumber % mKeyframeInterval != 0) {
+        return;
+      }
+      int keyframeIndex = frameNumber / mKeyframeInterval;
+      if (mKeyframes.get(keyframeIndex) != null || !reserveKeyframeBytes()) {
+        return;
+      }
+      if (!mKeyframes.compareAndSet(keyframeIndex, null, Arrays.copyOf(mCanvas, mCanvas.length))) {
+        // kept by another cursor in the meantime
+        mKeyframeBytes.addAndGet(-getCanvasBytes());
+      }
+    }
+
+    private boolean reserveKeyframeBytes() {
+      long canvasBytes = getCanvasBytes();
+      while (true) {
+        long keyframeBytes = mKeyframeBytes.get();
+        if (keyframeBytes + canvasBytes > mMaxKeyframeBytes) {
+          return false;
+        }
+        if (mKeyframeBytes.compareAndSet(keyframeBytes, keyframeBytes + canvasBytes)) {
+          return true;
+        }
+      }
+    }
+
+    private long getCanvasBytes() {
+      return 4L * mCanvas.length;
+    }
+
+    private void disposeFrame(int frameNumber) {
+      switch (mMetadataDecoder.getFrameDisposal(frameNumber)) {
+        case DISPOSAL_TO_BACKGROUND:
+          for (int y = mFrameTop; y < mFrameTop + mFrameHeight; y++) {
+            Arrays.fill(mCanvas, y * mWidth + mFrameLeft, y * mWidth + mFrameLeft + mFrameWidth, 0);
+          }
+          break;
+        case DISPOSAL_TO_PREVIOUS:
+          if (mPreviousCanvas != null) {
+            System.arraycopy(mPreviousCanvas, 0, mCanvas, 0, mCanvas.length);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void drawFrame(int frameNumber) {
+      mFrameWidth = 0;
+      mFrameHeight = 0;
+      if (mMetadataDecoder.getFrameDisposal(frameNumber) == DISPOSAL_TO_PREVIOUS) {
+        if (mPreviousCanvas == null) {
+          mPreviousCanvas = new int[mCanvas.length];
+        }
+        System.arraycopy(mCanvas, 0, mPreviousCanvas, 0, mCanvas.length);
+      }
+      int offset = mMetadataDecoder.getFrameImageOffset(frameNumber);
+      if (offset == GifMetadataDecoder.NONE || offset + 9 > mData.length) {
+        return;
+      }
+
+      int left = readTwoByteInt(offset);
+      int top = readTwoByteInt(offset + 2);
+      int width = readTwoByteInt(offset + 4);
+      int height = readTwoByteInt(offset + 6);
+      int flags = mData[offset + 8] & 0xff;
+      offset += 9;
+      int[] colorTable = mGlobalColorTable;
+      if ((flags & 0x80) != 0) {
+        int localColorTableSize = 2 << (flags & 7);
+        colorTable = readColorTable(offset, localColorTableSize);
+        offset += 3 * localColorTableSize;
+      }
+      if (colorTable == null || width == 0 || height == 0) {
+        return;
+      }
+
+      // the frame bounds are clipped to the canvas when disposing
+      mFrameLeft = Math.min(left, mWidth);
+      mFrameTop = Math.min(top, mHeight);
+      mFrameWidth = Math.min(width, mWidth - mFrameLeft);
+      mFrameHeight = Math.min(height, mHeight - mFrameTop);
+
+      if (mRow.length < width) {
+        mRow = new byte[width];
+      }
+      mRowX = 0;
+      mRowCount = 0;
+      mInterlaced = (flags & 0x40) != 0;
+      mInterlacePass = 0;
+      mInterlaceY = 0;
+      mTransparentIndex = mMetadataDecoder.getFrameTransparentIndex(frameNumber);
+      mColorTable = colorTable;
+      decodeLzw(offset, left, top, width, height);
+    }
+
+    /** Decodes the LZW image data starting at the given offset, emitting the pixels row by row. */
+    private void decodeLzw(int offset, int left, int top, int width, int height) {
+      if (offset >= mData.length) {
+        return;
+      }
+      int minCodeSize = mData[offset++] & 0xff;
+      if (minCodeSize < 1 || minCodeSize > 11) {
+        return;
+      }
+      int clearCode = 1 << minCodeSize;
+      int endCode = clearCode + 1;
+      int available = clearCode + 2;
+      int codeSize = minCodeSize + 1;
+      int codeMask = (1 << codeSize) - 1;
+      int oldCode = -1;
+      int first = 0;
+      for (int code = 0; code < clearCode; code++) {
+        mPrefix[code] = 0;
+        mSuffix[code] = (byte) code;
+      }
+
+      int datum = 0;
+      int bits = 0;
+      while (offset < mData.length) {
+        int blockSize = mData[offset++] & 0xff;
+        if (blockSize == 0) {
+          return;
+        }
+        int blockEnd = Math.min(offset + blockSize, mData.length);
+        for (; offset < blockEnd; offset++) {
+          datum |= (mData[offset] & 0xff) << bits;
+          bits += 8;
+          while (bits >= codeSize) {
+            int code = datum & codeMask;
+            datum >>= codeSize;
+            bits -= codeSize;
+
+            if (code == clearCode) {
+              codeSize = minCodeSize + 1;
+              codeMask = (1 << codeSize) - 1;
+              available = clearCode + 2;
+              oldCode = -1;
+              continue;
+            } else if (code == endCode) {
+              return;
+            } else if (oldCode == -1) {
+              if (code >= clearCode) {
+                // corrupted data, the first code must be a color
+                return;
+              }
+              first = code;
+              oldCode = code;
+              if (!emitPixel(code, left, top, width, height)) {
+                return;
+              }
+              continue;
+            } else if (code > available) {
+              return;
+            }
+
+            int inCode = code;
+            int stackTop = 0;
+            if (code == available) {
+              mPixelStack[stackTop++] = (byte) first;
+              code = oldCode;
+            }
+            while (code >= clearCode) {
+              mPixelStack[stackTop++] = mSuffix[code];
+              code = mPrefix[code];
+            }
+            first = mSuffix[code] & 0xff;
+            mPixelStack[stackTop++] = (byte) first;
+
+            if (available < MAX_STACK_SIZE) {
+              mPrefix[available] = (short) oldCode;
+              mSuffix[available] = (byte) first;
+              available++;
+              if ((available & codeMask) == 0 && available < MAX_STACK_SIZE) {
+                codeSize++;
+                codeMask += available;
+              }
+            }
+            oldCode = inCode;
+
+            while (stackTop > 0) {
+              if (!emitPixel(mPixelStack[--stackTop] & 0xff, left, top, width, height)) {
+                return;
+              }
+            }
+          }
+        }
+      }
+    }
+
+    /** @return false once all the rows of the frame have been emitted */
+    private boolean emitPixel(int colorIndex, int left, int top, int width, int height) {
+      mRow[mRowX++] = (byte) colorIndex;
+      if (mRowX < width) {
+        return true;
+      }
+      mRowX = 0;
+      writeRow(getNextRowY(height), left, top, width);
+      mRowCount++;
+      return mRowCount < height;
+    }
+
+    private int getNextRowY(int height) {
+      if (!mInterlaced) {
+        return mRowCount;
+      }
+      // passes of rows 0, 8, 16... then 4, 12... then 2, 6... then 1, 3...
+      while (mInterlaceY >= height && mInterlacePass < 3) {
+        mInterlacePass++;
+        mInterlaceY = 8 >> mInterlacePass;
+      }
+      int y = mInterlaceY;
+      mInterlaceY += mInterlacePass == 0 ? 8 : 16 >> mInterlacePass;
+      return y;
+    }
+
+    private void writeRow(int y, int left, int top, int width) {
+      int canvasY = top + y;
+      if (canvasY >= mHeight) {
+        return;
+      }
+      int canvasOffset = canvasY * mWidth + left;
+      int rowWidth = Math.min(width, mWidth - left);
+      for (int x = 0; x < rowWidth; x++) {
+        int colorIndex = mRow[x] & 0xff;
+        if (colorIndex != mTransparentIndex) {
+          mCanvas[canvasOffset + x] = mColorTable[colorIndex];
+        }
+      }
+    }
+  }
+}
@@ -23,14 +23,23 @@ public class GifMetadataDecoder {
       new char[] {'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0'};
   private static final int CONTROL_INDEX_DISPOSE = 0;
   private static final int CONTROL_INDEX_DELAY = 1;
+  private static final int CONTROL_INDEX_TRANSPARENT_INDEX = 2;
+  private static final int CONTROL_INDEX_IMAGE_OFFSET = 3;
   private static final int DEFAULT_FRAME_DURATION_MS = 100;
 
+  /** Returned for frames without transparent color, or without image data. */
+  public static final int NONE = -1;
+
   private final byte[] block = new byte[MAX_BLOCK_SIZE];
   private final InputStream mInputStream;
   @Nullable private final OutputStream mOutputStream;
   private boolean shouldFixStream;
   private final List<int[]> mFrameControls = new ArrayList<>();
   private int mLoopCount = 1; // default loop count is 1
+  private int mWidth;
+  private int mHeight;
+  private int mGlobalColorTableOffset = NONE;
+  private int mGlobalColorTableSize;
   private boolean mDecoded = false;
   private int mCurrentOffset = 0;
 
@@ -79,6 +88,57 @@ public class GifMetadataDecoder {
     return mFrameControls.get(frameNumber)[CONTROL_INDEX_DISPOSE];
   }
 
+  /** @return the width of the logical screen */
+  public int getWidth() {
+    if (!mDecoded) {
+      throw new IllegalStateException("getWidth called before decode");
+    }
+    return mWidth;
+  }
+
+  /** @return the height of the logical screen */
+  public int getHeight() {
+    if (!mDecoded) {
+      throw new IllegalStateException("getHeight called before decode");
+    }
+    return mHeight;
+  }
+
+  /** @return the offset of the first entry of the global color table, or {@link #NONE} */
+  public int getGlobalColorTableOffset() {
+    if (!mDecoded) {
+      throw new IllegalStateException("getGlobalColorTableOffset called before decode");
+    }
+    return mGlobalColorTableOffset;
+  }
+
+  /** @return the number of colors of the global color table */
+  public int getGlobalColorTableSize() {
+    if (!mDecoded) {
+      throw new IllegalStateException("getGlobalColorTableSize called before decode");
+    }
+    return mGlobalColorTableSize;
+  }
+
+  /** @return the color index of the frame that is not drawn, or {@link #NONE} */
+  public int getFrameTransparentIndex(int frameNumber) {
+    if (!mDecoded) {
+      throw new IllegalStateException("getFrameTransparentIndex called before decode");
+    }
+    return mFrameControls.get(frameNumber)[CONTROL_INDEX_TRANSPARENT_INDEX];
+  }
+
+  /**
+   * @return the offset of the image descriptor of the frame, right after its separator, or {@link
+   *     #NONE} for plain text frames
+   */
+  public int getFrameImageOffset(int frameNumber) {
+    if (!mDecoded) {
+      throw new IllegalStateException("getFrameImageOffset called before decode");
+    }
+    return mFrameControls.get(frameNumber)[CONTROL_INDEX_IMAGE_OFFSET];
+  }
+
   public int getFrameDurationMs(int frameNumber) {
     if (!mDecoded) {
       throw new IllegalStateException("getFrameDurationMs called before decode");
@@ -96,7 +156,7 @@ public class GifMetadataDecoder {
   private void readGifInfo() throws IOException {
     validateAndIgnoreHeader();
 
-    final int[] control = new int[] {0, 0};
+    final int[] control = new int[] {0, 0, NONE, NONE};
 
     boolean done = false;
     while (!done) {
@@ -117,6 +177,7 @@ public class GifMetadataDecoder {
               readGraphicsControlExtension(control);
               break;
             case 0x01: // plain text extension, counts as a frame
+              control[CONTROL_INDEX_IMAGE_OFFSET] = NONE;
               addFrame(control);
               skipExtension();
               break;
@@ -125,6 +186,7 @@ public class GifMetadataDecoder {
           }
           break;
         case 0x2C: // image
+          control[CONTROL_INDEX_IMAGE_OFFSET] = mCurrentOffset;
           addFrame(control);
           skipImage();
           // count as a frame
@@ -140,6 +202,8 @@ public class GifMetadataDecoder {
 
   private void addFrame(int[] control) {
     mFrameControls.add(Arrays.copyOf(control, control.length));
+    // the transparency of a graphics control extension only applies to the next frame
+    control[CONTROL_INDEX_TRANSPARENT_INDEX] = NONE;
   }
 
   private void validateAndIgnoreHeader() throws IOException {
@@ -155,7 +219,10 @@ public class GifMetadataDecoder {
       throw new IOException("Illegal header for gif");
     }
 
-    skipAndWriteBytes(4); // width, height
+    mWidth = readTwoByteInt();
+    writeTwoByteInt(mWidth);
+    mHeight = readTwoByteInt();
+    writeTwoByteInt(mHeight);
 
     int fields = readAndWriteNextByte();
     boolean hasGlobalColorTable = (fields & 0x80) != 0;
@@ -164,6 +231,8 @@ public class GifMetadataDecoder {
     skipAndWriteBytes(2); // bgc index, aspect ratio
 
     if (hasGlobalColorTable) {
+      mGlobalColorTableOffset = mCurrentOffset;
+      mGlobalColorTableSize = globalColorTableSize;
       ignoreColorTable(globalColorTableSize);
     }
   }
@@ -236,7 +305,9 @@ public class GifMetadataDecoder {
       initFixedOutputStream();
     }
     writeTwoByteInt(control[CONTROL_INDEX_DELAY] / 10);
-    skipAndWriteBytes(2);
+    int transparentIndex = readAndWriteNextByte();
+    control[CONTROL_INDEX_TRANSPARENT_INDEX] = (flags & 0x01) != 0 ? transparentIndex : NONE;
+    skipAndWriteBytes(1); // block terminator
   }
 
   private int readNextByte() throws IOException {
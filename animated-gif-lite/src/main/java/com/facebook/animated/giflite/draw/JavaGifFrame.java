@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.animated.giflite.draw;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import com.facebook.animated.giflite.decoder.GifFrameDecoder;
+import com.facebook.imagepipeline.animated.base.AnimatedDrawableFrameInfo;
+import com.facebook.imagepipeline.animated.base.AnimatedImageFrame;
+import com.facebook.infer.annotation.Nullsafe;
+
+/**
+ * Frame of a GIF decoded by {@link GifFrameDecoder}. Unlike {@link MovieFrame}, frames can be
+ * rendered in parallel.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class JavaGifFrame implements AnimatedImageFrame {
+
+  private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  private final GifFrameDecoder mFrameDecoder;
+  private final int mFrameNumber;
+  private final int mFrameDuration;
+  private final AnimatedDrawableFrameInfo.DisposalMethod mDisposalMethod;
+
+  public JavaGifFrame(
+      GifFrameDecoder frameDecoder,
+      int frameNumber,
+      int frameDuration,
+      AnimatedDrawableFrameInfo.DisposalMethod disposalMethod) {
+    mFrameDecoder = frameDecoder;
+    mFrameNumber = frameNumber;
+    mFrameDuration = frameDuration;
+    mDisposalMethod = disposalMethod;
+  }
+
+  @Override
+  public void dispose() {}
+
+  @Override
+  public void renderFrame(int w, int h, Bitmap bitmap) {
+    int width = mFrameDecoder.getWidth();
+    int height = mFrameDecoder.getHeight();
+    // the pixels are only needed until copied into a bitmap, the frames share them
+    int[] pixels = mFrameDecoder.acquirePixelBuffer();
+    try {
+      mFrameDecoder.renderFrame(mFrameNumber, pixels);
+      if (w == width && h == height) {
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        return;
+      }
+      Bitmap frameBitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+      try {
+        new Canvas(bitmap).drawBitmap(frameBitmap, null, new Rect(0, 0, w, h), SCALE_PAINT);
+      } finally {
+        frameBitmap.recycle();
+      }
+    } finally {
+      mFrameDecoder.releasePixelBuffer(pixels);
+    }
+  }
+
+  @Override
+  public int getDurationMs() {
+    return mFrameDuration;
+  }
+
+  @Override
+  public int getWidth() {
+    return mFrameDecoder.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return mFrameDecoder.getHeight();
+  }
+
+  @Override
+  public int getXOffset() {
+    return 0;
+  }
+
+  @Override
+  public int getYOffset() {
+    return 0;
+  }
+
+  public AnimatedDrawableFrameInfo.DisposalMethod getDisposalMode() {
+    return mDisposalMethod;
+  }
+}
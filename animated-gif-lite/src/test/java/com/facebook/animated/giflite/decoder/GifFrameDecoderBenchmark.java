@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.animated.giflite.decoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures {@link GifFrameDecoder} on a corpus of GIFs: playing the frames in order, seeking to
+ * random frames with and without keyframes, and rendering frames from several threads.
+ *
+ * <p>It only needs the JVM. Run with the test classpath as {@code GifFrameDecoderBenchmark
+ * [gif file or directory]...} from the root of the repository. Without arguments, the corpus is
+ * made of the GIF fixtures of the imagepipeline-base test resources.
+ */
+public class GifFrameDecoderBenchmark {
+
+  private static final int KEYFRAME_INTERVAL = 8;
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int MEASURED_ROUNDS = 5;
+  private static final int THREAD_COUNT = 4;
+  private static final String FIXTURES_DIRECTORY = "imagepipeline-base/src/test/resources";
+
+  public static void main(String[] args) throws Exception {
+    List<byte[]> corpus = new ArrayList<>();
+    for (String path : args.length > 0 ? args : new String[] {FIXTURES_DIRECTORY}) {
+      addGifs(new File(path), corpus);
+    }
+    if (corpus.isEmpty()) {
+      System.out.println("Usage: GifFrameDecoderBenchmark [gif file or directory]...");
+      return;
+    }
+    long totalFrames = 0;
+    long totalPixels = 0;
+    for (byte[] data : corpus) {
+      GifMetadataDecoder metadataDecoder = decodeMetadata(data);
+      totalFrames += metadataDecoder.getFrameCount();
+      totalPixels +=
+          (long) metadataDecoder.getFrameCount()
+              * metadataDecoder.getWidth()
+              * metadataDecoder.getHeight();
+    }
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%d gifs, %d frames, %.1f megapixels",
+            corpus.size(),
+            totalFrames,
+            totalPixels / 1e6));
+
+    report("metadata", totalFrames, measure(corpus, new MetadataTask()));
+    report("sequential", totalFrames, measure(corpus, new SequentialTask()));
+    report("seek, no keyframes", totalFrames, measure(corpus, new SeekTask(0)));
+    report("seek, keyframes", totalFrames, measure(corpus, new SeekTask(KEYFRAME_INTERVAL)));
+    ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      report(
+          THREAD_COUNT + " threads, keyframes",
+          totalFrames,
+          measure(corpus, new ParallelTask(executor)));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private interface Task {
+    /** @return a checksum, so that the work is not optimized away */
+    long run(byte[] data) throws Exception;
+  }
+
+  /** Parses the frame controls only. */
+  private static class MetadataTask implements Task {
+    @Override
+    public long run(byte[] data) throws IOException {
+      return decodeMetadata(data).getFrameCount();
+    }
+  }
+
+  /** Renders all frames in order, as an animation plays. */
+  private static class SequentialTask implements Task {
+    @Override
+    public long run(byte[] data) throws IOException {
+      GifFrameDecoder decoder = new GifFrameDecoder(data, decodeMetadata(data), KEYFRAME_INTERVAL);
+      int[] pixels = new int[decoder.getWidth() * decoder.getHeight()];
+      long checksum = 0;
+      for (int i = 0; i < decoder.getFrameCount(); i++) {
+        decoder.renderFrame(i, pixels);
+        checksum += pixels[pixels.length / 2];
+      }
+      return checksum;
+    }
+  }
+
+  /** Plays the animation once, then renders as many frames in random order. */
+  private static class SeekTask implements Task {
+
+    private final int mKeyframeInterval;
+
+    SeekTask(int keyframeInterval) {
+      mKeyframeInterval = keyframeInterval;
+    }
+
+    @Override
+    public long run(byte[] data) throws IOException {
+      GifFrameDecoder decoder = new GifFrameDecoder(data, decodeMetadata(data), mKeyframeInterval);
+      int[] pixels = new int[decoder.getWidth() * decoder.getHeight()];
+      long checksum = 0;
+      for (int i = 0; i < decoder.getFrameCount(); i++) {
+        decoder.renderFrame(i, pixels);
+      }
+      Random random = new Random(42);
+      for (int i = 0; i < decoder.getFrameCount(); i++) {
+        decoder.renderFrame(random.nextInt(decoder.getFrameCount()), pixels);
+        checksum += pixels[pixels.length / 2];
+      }
+      return checksum;
+    }
+  }
+
+  /** Renders interleaved frames from several threads, as when preparing frames ahead. */
+  private static class ParallelTask implements Task {
+
+    private final ExecutorService mExecutor;
+
+    ParallelTask(ExecutorService executor) {
+      mExecutor = executor;
+    }
+
+    @Override
+    public long run(byte[] data) throws Exception {
+      final GifFrameDecoder decoder =
+          new GifFrameDecoder(data, decodeMetadata(data), KEYFRAME_INTERVAL);
+      List<Future<Long>> futures = new ArrayList<>();
+      for (int thread = 0; thread < THREAD_COUNT; thread++) {
+        final int firstFrame = thread;
+        futures.add(
+            mExecutor.submit(
+                new Callable<Long>() {
+                  @Override
+                  public Long call() {
+                    int[] pixels = new int[decoder.getWidth() * decoder.getHeight()];
+                    long checksum = 0;
+                    for (int i = firstFrame; i < decoder.getFrameCount(); i += THREAD_COUNT) {
+                      decoder.renderFrame(i, pixels);
+                      checksum += pixels[pixels.length / 2];
+                    }
+                    return checksum;
+                  }
+                }));
+      }
+      long checksum = 0;
+      for (Future<Long> future : futures) {
+        checksum += future.get();
+      }
+      return checksum;
+    }
+  }
+
+  /** @return the best time in nanoseconds to run the task over the corpus */
+  private static long measure(List<byte[]> corpus, Task task) throws Exception {
+    long checksum = 0;
+    long bestNanos = Long.MAX_VALUE;
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (byte[] data : corpus) {
+        checksum += task.run(data);
+      }
+      if (round >= WARMUP_ROUNDS) {
+        bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+      }
+    }
+    if (checksum == 42) {
+      System.out.println();
+    }
+    return bestNanos;
+  }
+
+  private static void report(String name, long frames, long nanos) {
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%-24s %8.2f ms %8.1f us/frame",
+            name,
+            nanos / 1e6,
+            nanos / 1e3 / frames));
+  }
+
+  private static GifMetadataDecoder decodeMetadata(byte[] data) throws IOException {
+    return GifMetadataDecoder.create(new ByteArrayInputStream(data), null);
+  }
+
+  private static void addGifs(File file, List<byte[]> corpus) throws IOException {
+    if (file.isDirectory()) {
+      File[] files = file.listFiles();
+      if (files != null) {
+        for (File child : files) {
+          addGifs(child, corpus);
+        }
+      }
+      return;
+    }
+    if (!file.getName().endsWith(".gif")) {
+      return;
+    }
+    byte[] data = new byte[(int) file.length()];
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      input.readFully(data);
+    }
+    try {
+      decodeMetadata(data);
+      corpus.add(data);
+    } catch (IOException e) {
+      System.out.println("Skipping " + file + ": " + e.getMessage());
+    }
+  }
+}
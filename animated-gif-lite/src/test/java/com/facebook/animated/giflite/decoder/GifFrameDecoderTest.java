@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.animated.giflite.decoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/** Tests {@link GifFrameDecoder} with GIFs encoded by the test. */
+public class GifFrameDecoderTest {
+
+  private static final int[] COLORS = {0xffff0000, 0xff00ff00, 0xff0000ff, 0xffffffff};
+  private static final int RED = 0;
+  private static final int GREEN = 1;
+  private static final int BLUE = 2;
+  private static final int WHITE = 3;
+
+  private static final int DISPOSAL_NONE = 0;
+  private static final int DISPOSAL_KEEP = 1;
+  private static final int DISPOSAL_TO_BACKGROUND = 2;
+  private static final int DISPOSAL_TO_PREVIOUS = 3;
+
+  @Test
+  public void testRendersKnownPixels() throws IOException {
+    byte[] indices = {RED, GREEN, BLUE, WHITE, WHITE, BLUE, GREEN, RED};
+    GifBuilder gif = new GifBuilder(4, 2);
+    gif.addFrame(0, 0, 4, 2, indices);
+
+    int[] pixels = render(gif.build(), 0, 0);
+
+    assertArrayEquals(toColors(indices), pixels);
+  }
+
+  @Test
+  public void testDecodesCodesOfGrowingSize() throws IOException {
+    byte[] indices = randomIndices(32 * 32, 1);
+    GifBuilder gif = new GifBuilder(32, 32);
+    gif.addFrame(0, 0, 32, 32, indices);
+    byte[] data = gif.build();
+    // starts with 3 bit codes for the 4 colors
+    assertTrue(gif.getMaxCodeSize() >= 8);
+
+    assertArrayEquals(toColors(indices), render(data, 0, 0));
+  }
+
+  @Test
+  public void testDecodesInterlacedRows() throws IOException {
+    int height = 10;
+    byte[] indices = new byte[2 * height];
+    for (int y = 0; y < height; y++) {
+      indices[2 * y] = (byte) (y % 4);
+      indices[2 * y + 1] = (byte) ((y + 1) % 4);
+    }
+    GifBuilder gif = new GifBuilder(2, height);
+    gif.addInterlacedFrame(0, 0, 2, height, indices);
+
+    assertArrayEquals(toColors(indices), render(gif.build(), 0, 0));
+  }
+
+  @Test
+  public void testDisposalNone_KeepsFrame() throws IOException {
+    assertEquals(COLORS[BLUE], renderPixelAfterDisposal(DISPOSAL_NONE));
+  }
+
+  @Test
+  public void testDisposalKeep_KeepsFrame() throws IOException {
+    assertEquals(COLORS[BLUE], renderPixelAfterDisposal(DISPOSAL_KEEP));
+  }
+
+  @Test
+  public void testDisposalToBackground_ClearsFrameBounds() throws IOException {
+    assertEquals(0, renderPixelAfterDisposal(DISPOSAL_TO_BACKGROUND));
+  }
+
+  @Test
+  public void testDisposalToPrevious_RestoresPreviousFrame() throws IOException {
+    assertEquals(COLORS[RED], renderPixelAfterDisposal(DISPOSAL_TO_PREVIOUS));
+  }
+
+  @Test
+  public void testTransparentIndex_IsNotDrawn() throws IOException {
+    GifBuilder gif = new GifBuilder(2, 1);
+    gif.addFrame(0, 0, 2, 1, new byte[] {RED, RED});
+    gif.setTransparentIndex(WHITE);
+    gif.addFrame(0, 0, 2, 1, new byte[] {WHITE, GREEN});
+
+    assertArrayEquals(new int[] {COLORS[RED], COLORS[GREEN]}, render(gif.build(), 1, 0));
+  }
+
+  @Test
+  public void testSeekFromKeyframes_RendersSameFramesAsPlayingInOrder() throws IOException {
+    byte[] data = buildPixelByPixelAnimation(5, 4);
+    GifFrameDecoder inOrder = newFrameDecoder(data, 0);
+    int[][] expectedFrames = new int[20][];
+    for (int frameNumber = 0; frameNumber < 20; frameNumber++) {
+      expectedFrames[frameNumber] = new int[20];
+      inOrder.renderFrame(frameNumber, expectedFrames[frameNumber]);
+    }
+    GifFrameDecoder frameDecoder = newFrameDecoder(data, 4);
+    int[] pixels = new int[20];
+    frameDecoder.renderFrame(19, pixels);
+    assertEquals(4, frameDecoder.getKeyframeCount());
+
+    int[] frameNumbers = {13, 2, 19, 8, 7, 0, 16, 15, 4, 11};
+    for (int frameNumber : frameNumbers) {
+      frameDecoder.renderFrame(frameNumber, pixels);
+      assertArrayEquals(expectedFrames[frameNumber], pixels);
+    }
+  }
+
+  @Test
+  public void testKeyframesAreCappedInBytes() throws IOException {
+    byte[] data = buildPixelByPixelAnimation(5, 4);
+    int canvasBytes = 4 * 20;
+    GifMetadataDecoder metadataDecoder = decodeMetadata(data);
+    GifFrameDecoder frameDecoder = new GifFrameDecoder(data, metadataDecoder, 4, 2 * canvasBytes);
+    int[] pixels = new int[20];
+    frameDecoder.renderFrame(19, pixels);
+
+    assertEquals(2, frameDecoder.getKeyframeCount());
+    assertEquals(2 * canvasBytes, frameDecoder.getKeyframeBytes());
+    // the frames after the cap replay from the last keyframe kept
+    int[] expected = new int[20];
+    newFrameDecoder(data, 0).renderFrame(17, expected);
+    frameDecoder.renderFrame(3, pixels);
+    frameDecoder.renderFrame(17, pixels);
+    assertArrayEquals(expected, pixels);
+  }
+
+  @Test
+  public void testPixelBuffersAreReused() throws IOException {
+    GifBuilder gif = new GifBuilder(2, 1);
+    gif.addFrame(0, 0, 2, 1, new byte[] {RED, GREEN});
+    GifFrameDecoder frameDecoder = newFrameDecoder(gif.build(), 0);
+
+    int[] pixels = frameDecoder.acquirePixelBuffer();
+    assertEquals(2, pixels.length);
+    frameDecoder.releasePixelBuffer(pixels);
+
+    assertSame(pixels, frameDecoder.acquirePixelBuffer());
+  }
+
+  /**
+   * Renders the pixel at (1, 1) of the third frame: the first frame fills the canvas in red, the
+   * second draws blue at (1, 1) with the given disposal, the third draws elsewhere.
+   */
+  private static int renderPixelAfterDisposal(int disposal) throws IOException {
+    GifBuilder gif = new GifBuilder(3, 3);
+    gif.addFrame(0, 0, 3, 3, filled(9, RED));
+    gif.setDisposal(disposal);
+    gif.addFrame(1, 1, 2, 2, filled(4, BLUE));
+    gif.setDisposal(DISPOSAL_NONE);
+    gif.addFrame(0, 0, 1, 1, filled(1, GREEN));
+
+    int[] pixels = render(gif.build(), 2, 0);
+    assertEquals(COLORS[GREEN], pixels[0]);
+    return pixels[3 + 1];
+  }
+
+  /** Builds an animation of width * height frames, each drawing the next pixel of the canvas. */
+  private static byte[] buildPixelByPixelAnimation(int width, int height) {
+    GifBuilder gif = new GifBuilder(width, height);
+    for (int i = 0; i < width * height; i++) {
+      gif.addFrame(i % width, i / width, 1, 1, filled(1, i % COLORS.length));
+    }
+    return gif.build();
+  }
+
+  private static int[] render(byte[] data, int frameNumber, int keyframeInterval)
+      throws IOException {
+    GifFrameDecoder frameDecoder = newFrameDecoder(data, keyframeInterval);
+    int[] pixels = new int[frameDecoder.getWidth() * frameDecoder.getHeight()];
+    frameDecoder.renderFrame(frameNumber, pixels);
+    return pixels;
+  }
+
+  private static GifFrameDecoder newFrameDecoder(byte[] data, int keyframeInterval)
+      throws IOException {
+    return new GifFrameDecoder(data, decodeMetadata(data), keyframeInterval);
+  }
+
+  private static GifMetadataDecoder decodeMetadata(byte[] data) throws IOException {
+    return GifMetadataDecoder.create(new ByteArrayInputStream(data), null);
+  }
+
+  private static int[] toColors(byte[] indices) {
+    int[] colors = new int[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      colors[i] = COLORS[indices[i]];
+    }
+    return colors;
+  }
+
+  private static byte[] filled(int size, int colorIndex) {
+    byte[] indices = new byte[size];
+    for (int i = 0; i < size; i++) {
+      indices[i] = (byte) colorIndex;
+    }
+    return indices;
+  }
+
+  private static byte[] randomIndices(int size, long seed) {
+    Random random = new Random(seed);
+    byte[] indices = new byte[size];
+    for (int i = 0; i < size; i++) {
+      indices[i] = (byte) random.nextInt(COLORS.length);
+    }
+    return indices;
+  }
+
+  /** Writes a GIF with the {@link #COLORS} as global color table and LZW encoded frames. */
+  private static class GifBuilder {
+
+    private static final int MIN_CODE_SIZE = 2;
+    private static final int MAX_CODE_SIZE = 12;
+
+    private final ByteArrayOutputStream mOutputStream = new ByteArrayOutputStream();
+    private int mDisposal = DISPOSAL_NONE;
+    private int mTransparentIndex = GifMetadataDecoder.NONE;
+    private int mMaxCodeSize;
+
+    // bits not written yet
+    private int mBits;
+    private int mBitCount;
+    private final ByteArrayOutputStream mLzwData = new ByteArrayOutputStream();
+
+    GifBuilder(int width, int height) {
+      writeBytes('G', 'I', 'F', '8', '9', 'a');
+      writeTwoByteInt(width);
+      writeTwoByteInt(height);
+      // global color table of 2 << 1 colors
+      writeBytes(0x81, 0, 0);
+      for (int color : COLORS) {
+        writeBytes((color >> 16) & 0xff, (color >> 8) & 0xff, color & 0xff);
+      }
+    }
+
+    void setDisposal(int disposal) {
+      mDisposal = disposal;
+    }
+
+    void setTransparentIndex(int transparentIndex) {
+      mTransparentIndex = transparentIndex;
+    }
+
+    int getMaxCodeSize() {
+      return mMaxCodeSize;
+    }
+
+    void addFrame(int left, int top, int width, int height, byte[] indices) {
+      addFrame(left, top, width, height, indices, false);
+    }
+
+    /** @param indices the rows of the frame in order, written in the interlaced order */
+    void addInterlacedFrame(int left, int top, int width, int height, byte[] indices) {
+      byte[] interlacedIndices = new byte[indices.length];
+      int row = 0;
+      int[][] passes = {{0, 8}, {4, 8}, {2, 4}, {1, 2}};
+      for (int[] pass : passes) {
+        for (int y = pass[0]; y < height; y += pass[1]) {
+          System.arraycopy(indices, y * width, interlacedIndices, row++ * width, width);
+        }
+      }
+      addFrame(left, top, width, height, interlacedIndices, true);
+    }
+
+    byte[] build() {
+      writeBytes(0x3b);
+      return mOutputStream.toByteArray();
+    }
+
+    private void addFrame(
+        int left, int top, int width, int height, byte[] indices, boolean interlaced) {
+      // graphics control extension, 100 ms
+      boolean transparent = mTransparentIndex != GifMetadataDecoder.NONE;
+      writeBytes(0x21, 0xf9, 4, (mDisposal << 2) | (transparent ? 1 : 0), 10, 0);
+      writeBytes(transparent ? mTransparentIndex : 0, 0);
+      mTransparentIndex = GifMetadataDecoder.NONE;
+
+      writeBytes(0x2c);
+      writeTwoByteInt(left);
+      writeTwoByteInt(top);
+      writeTwoByteInt(width);
+      writeTwoByteInt(height);
+      writeBytes(interlaced ? 0x40 : 0);
+      writeBytes(MIN_CODE_SIZE);
+      byte[] lzwData = encodeLzw(indices);
+      for (int offset = 0; offset < lzwData.length; offset += 255) {
+        int blockSize = Math.min(255, lzwData.length - offset);
+        writeBytes(blockSize);
+        mOutputStream.write(lzwData, offset, blockSize);
+      }
+      writeBytes(0);
+    }
+
+    private byte[] encodeLzw(byte[] indices) {
+      int clearCode = 1 << MIN_CODE_SIZE;
+      int endCode = clearCode + 1;
+      Map<Integer, Integer> codes = new HashMap<>();
+      int available = clearCode + 2;
+      int codeSize = MIN_CODE_SIZE + 1;
+      mLzwData.reset();
+      mBits = 0;
+      mBitCount = 0;
+
+      writeCode(clearCode, codeSize);
+      int prefix = indices[0];
+      for (int i = 1; i < indices.length; i++) {
+        int key = (prefix << 8) | indices[i];
+        Integer code = codes.get(key);
+        if (code != null) {
+          prefix = code;
+          continue;
+        }
+        writeCode(prefix, codeSize);
+        if (available == 1 << MAX_CODE_SIZE) {
+          writeCode(clearCode, codeSize);
+          codes.clear();
+          available = clearCode + 2;
+          codeSize = MIN_CODE_SIZE + 1;
+        } else {
+          // the decoder grows the code size once it has added the code of the same index
+          if (available == 1 << codeSize && codeSize < MAX_CODE_SIZE) {
+            codeSize++;
+          }
+          codes.put(key, available++);
+        }
+        prefix = indices[i];
+      }
+      writeCode(prefix, codeSize);
+      writeCode(endCode, codeSize);
+      if (mBitCount > 0) {
+        mLzwData.write(mBits);
+      }
+      return mLzwData.toByteArray();
+    }
+
+    private void writeCode(int code, int codeSize) {
+      mMaxCodeSize = Math.max(mMaxCodeSize, codeSize);
+      mBits |= code << mBitCount;
+      mBitCount += codeSize;
+      while (mBitCount >= 8) {
+        mLzwData.write(mBits & 0xff);
+        mBits >>= 8;
+        mBitCount -= 8;
+      }
+    }
+
+    private void writeTwoByteInt(int value) {
+      writeBytes(value & 0xff, (value >> 8) & 0xff);
+    }
+
+    private void writeBytes(int... bytes) {
+      for (int b : bytes) {
+        mOutputStream.write(b);
+      }
+    }
+  }
+}
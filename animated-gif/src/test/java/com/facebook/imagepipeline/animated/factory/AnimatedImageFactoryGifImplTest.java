@@ -23,6 +23,7 @@ import static org.mockito.Mockito.when;
 
 import android.graphics.Bitmap;
 import android.graphics.Rect;
+import android.os.Build;
 import com.facebook.animated.gif.GifImage;
 import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
@@ -48,6 +49,7 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareOnlyThisForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
 
 /** Tests for {@link AnimatedImageFactory} */
 @RunWith(RobolectricTestRunner.class)
@@ -191,6 +193,42 @@ public class AnimatedImageFactoryGifImplTest {
     testCreateWithDecodeAlFrames(mockGifImage, mockBitmap1, mockBitmap2, byteBuffer);
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.O)
+  public void testCreateWithPreviewBitmapForHardwareConfig() throws Exception {
+    GifImage mockGifImage = mock(GifImage.class);
+    Bitmap mockBitmap = MockBitmapFactory.create(50, 50, DEFAULT_BITMAP_CONFIG);
+    TrivialPooledByteBuffer byteBuffer = createByteBuffer();
+    when(mGifImageMock.decodeFromNativeMemory(
+            eq(byteBuffer.getNativePtr()), eq(byteBuffer.size()), any(ImageDecodeOptions.class)))
+        .thenReturn(mockGifImage);
+    when(mockGifImage.getWidth()).thenReturn(50);
+    when(mockGifImage.getHeight()).thenReturn(50);
+    when(mMockAnimatedDrawableBackendProvider.get(
+            any(AnimatedImageResult.class), isNull(Rect.class)))
+        .thenReturn(createAnimatedDrawableBackendMock(1));
+    when(mMockBitmapFactory.createBitmapInternal(50, 50, Bitmap.Config.ARGB_8888))
+        .thenReturn(CloseableReference.of(mockBitmap, FAKE_BITMAP_RESOURCE_RELEASER));
+    PowerMockito.whenNew(AnimatedImageCompositor.class)
+        .withAnyArguments()
+        .thenReturn(mock(AnimatedImageCompositor.class));
+    EncodedImage encodedImage =
+        new EncodedImage(CloseableReference.of(byteBuffer, FAKE_RESOURCE_RELEASER));
+    encodedImage.setImageFormat(ImageFormat.UNKNOWN);
+
+    CloseableAnimatedImage closeableImage =
+        (CloseableAnimatedImage)
+            mAnimatedImageFactory.decodeGif(
+                encodedImage,
+                ImageDecodeOptions.newBuilder().setDecodePreviewFrame(true).build(),
+                Bitmap.Config.HARDWARE);
+
+    // the preview frame is rendered into a software bitmap
+    assertNotNull(closeableImage.getImageResult().getPreviewBitmap());
+    verify(mMockBitmapFactory).createBitmapInternal(50, 50, Bitmap.Config.ARGB_8888);
+    verifyNoMoreInteractions(mMockBitmapFactory);
+  }
+
   private void testCreateDefaults(GifImage mockGifImage, PooledByteBuffer byteBuffer) {
     EncodedImage encodedImage =
         new EncodedImage(CloseableReference.of(byteBuffer, FAKE_RESOURCE_RELEASER));
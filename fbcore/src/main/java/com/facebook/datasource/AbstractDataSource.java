@@ -9,7 +9,12 @@ package com.facebook.datasource;
 
 import android.util.Pair;
 import com.facebook.common.internal.Preconditions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import javax.annotation.Nullable;
@@ -58,12 +63,31 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
 
   private final ConcurrentLinkedQueue<Pair<DataSubscriber<T>, Executor>> mSubscribers;
 
+  /** Executors that have a progress notification posted but not yet run. */
+  @GuardedBy("this")
+  private final Set<Executor> mPendingProgressExecutors =
+      Collections.newSetFromMap(new IdentityHashMap<Executor, Boolean>());
+
   @Nullable private static volatile DataSourceInstrumenter sDataSourceInstrumenter;
 
+  private static volatile boolean sBatchNotifications = false;
+
   public static void provideInstrumenter(@Nullable DataSourceInstrumenter dataSourceInstrumenter) {
     sDataSourceInstrumenter = dataSourceInstrumenter;
   }
 
+  /**
+   * Enables batched notifications.
+   *
+   * <p>When enabled, subscribers that share an executor are notified with a single runnable per
+   * event instead of one runnable each, and progress updates are coalesced: while a progress
+   * notification is pending on an executor, further updates don't post again. Subscribers then see
+   * the latest progress via {@link #getProgress()} when the pending notification runs.
+   */
+  public static void setBatchNotificationsEnabled(boolean batchNotifications) {
+    sBatchNotifications = batchNotifications;
+  }
+
   protected AbstractDataSource() {
     mIsClosed = false;
     mDataSourceStatus = DataSourceStatus.IN_PROGRESS;
@@ -175,11 +199,64 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
   private void notifyDataSubscribers() {
     final boolean isFailure = hasFailed();
     final boolean isCancellation = wasCancelled();
+    if (sBatchNotifications) {
+      notifyDataSubscribersBatched(isFailure, isCancellation);
+      return;
+    }
     for (Pair<DataSubscriber<T>, Executor> pair : mSubscribers) {
       notifyDataSubscriber(pair.first, pair.second, isFailure, isCancellation);
     }
   }
 
+  private void notifyDataSubscribersBatched(
+      final boolean isFailure, final boolean isCancellation) {
+    List<Executor> executors = new ArrayList<>(2);
+    final List<List<DataSubscriber<T>>> subscribersPerExecutor = new ArrayList<>(2);
+    for (Pair<DataSubscriber<T>, Executor> pair : mSubscribers) {
+      int index = indexOfExecutor(executors, pair.second);
+      if (index < 0) {
+        index = executors.size();
+        executors.add(pair.second);
+        subscribersPerExecutor.add(new ArrayList<DataSubscriber<T>>(1));
+      }
+      subscribersPerExecutor.get(index).add(pair.first);
+    }
+    for (int i = 0; i < executors.size(); i++) {
+      final List<DataSubscriber<T>> subscribers = subscribersPerExecutor.get(i);
+      Runnable runnable =
+          new Runnable() {
+            @Override
+            public void run() {
+              for (DataSubscriber<T> dataSubscriber : subscribers) {
+                if (isFailure) {
+                  dataSubscriber.onFailure(AbstractDataSource.this);
+                } else if (isCancellation) {
+                  dataSubscriber.onCancellation(AbstractDataSource.this);
+                } else {
+                  dataSubscriber.onNewResult(AbstractDataSource.this);
+                }
+              }
+            }
+          };
+      final DataSourceInstrumenter instrumenter = getDataSourceInstrumenter();
+      if (instrumenter != null) {
+        runnable =
+            instrumenter.decorateRunnable(runnable, "AbstractDataSource_notifyDataSubscribers");
+      }
+      executors.get(i).execute(runnable);
+    }
+  }
+
+  private static int indexOfExecutor(List<Executor> executors, Executor executor) {
+    // The number of distinct executors is tiny, a linear scan is cheaper than hashing.
+    for (int i = 0; i < executors.size(); i++) {
+      if (executors.get(i) == executor) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   protected void notifyDataSubscriber(
       final DataSubscriber<T> dataSubscriber,
       final Executor executor,
@@ -346,6 +423,10 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
   }
 
   protected void notifyProgressUpdate() {
+    if (sBatchNotifications) {
+      notifyProgressUpdateCoalesced();
+      return;
+    }
     for (Pair<DataSubscriber<T>, Executor> pair : mSubscribers) {
       final DataSubscriber<T> subscriber = pair.first;
       Executor executor = pair.second;
@@ -359,6 +440,35 @@ public abstract class AbstractDataSource<T> implements DataSource<T> {
     }
   }
 
+  private void notifyProgressUpdateCoalesced() {
+    List<Executor> executors = new ArrayList<>(2);
+    synchronized (this) {
+      for (Pair<DataSubscriber<T>, Executor> pair : mSubscribers) {
+        if (mPendingProgressExecutors.add(pair.second)) {
+          executors.add(pair.second);
+        }
+      }
+    }
+    for (final Executor executor : executors) {
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              synchronized (AbstractDataSource.this) {
+                mPendingProgressExecutors.remove(executor);
+              }
+              // Subscribers are looked up when running so that the notification reflects the
+              // latest progress and subscription state.
+              for (Pair<DataSubscriber<T>, Executor> pair : mSubscribers) {
+                if (pair.second == executor) {
+                  pair.first.onProgressUpdate(AbstractDataSource.this);
+                }
+              }
+            }
+          });
+    }
+  }
+
   @Nullable
   public static DataSourceInstrumenter getDataSourceInstrumenter() {
     return sDataSourceInstrumenter;
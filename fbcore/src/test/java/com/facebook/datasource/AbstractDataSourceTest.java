@@ -11,8 +11,11 @@ import static com.facebook.datasource.DataSourceTestUtils.*;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import javax.annotation.Nullable;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -63,6 +66,11 @@ public class AbstractDataSourceTest {
     mDataSource = new FakeAbstractDataSource();
   }
 
+  @After
+  public void tearDown() {
+    AbstractDataSource.setBatchNotificationsEnabled(false);
+  }
+
   private void verifyExecutor(Executor executor) {
     ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
     verify(executor).execute(captor.capture());
@@ -316,4 +324,116 @@ public class AbstractDataSourceTest {
     mDataSource.close();
     verify(value3).close();
   }
+
+  @Test
+  public void testBatched_SharedExecutorIsPostedOnce() {
+    AbstractDataSource.setBatchNotificationsEnabled(true);
+    mDataSource.subscribe(mDataSubscriber1, mExecutor1);
+    mDataSource.subscribe(mDataSubscriber2, mExecutor1);
+
+    mDataSource.setResult(mock(Value.class), LAST);
+    verifyExecutor(mExecutor1);
+    verify(mDataSubscriber1).onNewResult(mDataSource);
+    verify(mDataSubscriber2).onNewResult(mDataSource);
+  }
+
+  @Test
+  public void testBatched_Failure() {
+    AbstractDataSource.setBatchNotificationsEnabled(true);
+    subscribe();
+    mDataSource.setFailure(mock(Throwable.class));
+    verifySubscribers(ON_FAILURE);
+  }
+
+  @Test
+  public void testBatched_Cancellation() {
+    AbstractDataSource.setBatchNotificationsEnabled(true);
+    subscribe();
+    mDataSource.close();
+    verifySubscribers(ON_CANCELLATION);
+  }
+
+  @Test
+  public void testBatched_ProgressIsCoalesced() {
+    AbstractDataSource.setBatchNotificationsEnabled(true);
+    QueueingExecutor executor = new QueueingExecutor();
+    mDataSource.subscribe(mDataSubscriber1, executor);
+    mDataSource.subscribe(mDataSubscriber2, executor);
+
+    mDataSource.setProgress(0.1f);
+    mDataSource.setProgress(0.2f);
+    mDataSource.setProgress(0.3f);
+    assertEquals(1, executor.getPostCount());
+
+    executor.runAll();
+    verify(mDataSubscriber1).onProgressUpdate(mDataSource);
+    verify(mDataSubscriber2).onProgressUpdate(mDataSource);
+    assertEquals(0.3f, mDataSource.getProgress(), 0f);
+
+    // Once the pending notification ran, the next update posts again.
+    mDataSource.setProgress(0.4f);
+    assertEquals(2, executor.getPostCount());
+  }
+
+  /**
+   * Counts executor posts for a typical progressive load: several progress updates arriving
+   * between two frames, two intermediate results and the final one.
+   *
+   * <p>The subscriber layouts approximate the Drawee path (controller and controller listener on
+   * the UI thread) and the Vito path (image listener, perf listener and drawable on the UI thread,
+   * plus a background prefetch subscriber).
+   */
+  @Test
+  public void testExecutorPostsPerImageLoad() {
+    assertEquals(24, countPostsPerImageLoad(false, 2, 0));
+    assertEquals(6, countPostsPerImageLoad(true, 2, 0));
+    assertEquals(48, countPostsPerImageLoad(false, 3, 1));
+    assertEquals(12, countPostsPerImageLoad(true, 3, 1));
+  }
+
+  private static int countPostsPerImageLoad(
+      boolean batchNotifications, int uiSubscribers, int backgroundSubscribers) {
+    AbstractDataSource.setBatchNotificationsEnabled(batchNotifications);
+    FakeAbstractDataSource dataSource = new FakeAbstractDataSource();
+    QueueingExecutor uiExecutor = new QueueingExecutor();
+    QueueingExecutor backgroundExecutor = new QueueingExecutor();
+    for (int i = 0; i < uiSubscribers; i++) {
+      dataSource.subscribe(mock(DataSubscriber.class), uiExecutor);
+    }
+    for (int i = 0; i < backgroundSubscribers; i++) {
+      dataSource.subscribe(mock(DataSubscriber.class), backgroundExecutor);
+    }
+    for (int result = 0; result < 3; result++) {
+      for (int progress = 1; progress <= 3; progress++) {
+        dataSource.setProgress((result * 3 + progress) / 10f);
+      }
+      uiExecutor.runAll();
+      backgroundExecutor.runAll();
+      dataSource.setResult(mock(Value.class), result == 2);
+      uiExecutor.runAll();
+      backgroundExecutor.runAll();
+    }
+    return uiExecutor.getPostCount() + backgroundExecutor.getPostCount();
+  }
+
+  private static class QueueingExecutor implements Executor {
+    private final List<Runnable> mQueue = new ArrayList<>();
+    private int mPostCount;
+
+    @Override
+    public void execute(Runnable runnable) {
+      mPostCount++;
+      mQueue.add(runnable);
+    }
+
+    void runAll() {
+      while (!mQueue.isEmpty()) {
+        mQueue.remove(0).run();
+      }
+    }
+
+    int getPostCount() {
+      return mPostCount;
+    }
+  }
 }
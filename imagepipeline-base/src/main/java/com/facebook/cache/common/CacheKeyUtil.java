@@ -7,9 +7,7 @@
 
 package com.facebook.cache.common;
 
-import com.facebook.common.util.SecureHashUtil;
 import com.facebook.infer.annotation.Nullsafe;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,43 +18,46 @@ public final class CacheKeyUtil {
    * Get a list of possible resourceIds from MultiCacheKey or get single resourceId from CacheKey.
    */
   public static List<String> getResourceIds(final CacheKey key) {
-    try {
-      final List<String> ids;
-      if (key instanceof MultiCacheKey) {
-        List<CacheKey> keys = ((MultiCacheKey) key).getCacheKeys();
-        ids = new ArrayList<>(keys.size());
-        for (int i = 0; i < keys.size(); i++) {
-          ids.add(secureHashKey(keys.get(i)));
-        }
-      } else {
-        ids = new ArrayList<>(1);
-        ids.add(key.isResourceIdForDebugging() ? key.getUriString() : secureHashKey(key));
+    return getResourceIds(key, ResourceIdHashers.sha1());
+  }
+
+  /**
+   * Get a list of possible resourceIds from MultiCacheKey or get single resourceId from CacheKey,
+   * computed with the given hasher.
+   */
+  public static List<String> getResourceIds(final CacheKey key, final ResourceIdHasher hasher) {
+    final List<String> ids;
+    if (key instanceof MultiCacheKey) {
+      List<CacheKey> keys = ((MultiCacheKey) key).getCacheKeys();
+      ids = new ArrayList<>(keys.size());
+      for (int i = 0; i < keys.size(); i++) {
+        ids.add(hasher.hash(keys.get(i).getUriString()));
       }
-      return ids;
-    } catch (UnsupportedEncodingException e) {
-      // This should never happen. All VMs support UTF-8
-      throw new RuntimeException(e);
+    } else {
+      ids = new ArrayList<>(1);
+      ids.add(
+          key.isResourceIdForDebugging() ? key.getUriString() : hasher.hash(key.getUriString()));
     }
+    return ids;
   }
 
   /**
    * Get the resourceId from the first key in MultiCacheKey or get single resourceId from CacheKey.
    */
   public static String getFirstResourceId(final CacheKey key) {
-    try {
-      if (key instanceof MultiCacheKey) {
-        List<CacheKey> keys = ((MultiCacheKey) key).getCacheKeys();
-        return secureHashKey(keys.get(0));
-      } else {
-        return secureHashKey(key);
-      }
-    } catch (UnsupportedEncodingException e) {
-      // This should never happen. All VMs support UTF-8
-      throw new RuntimeException(e);
-    }
+    return getFirstResourceId(key, ResourceIdHashers.sha1());
   }
 
-  private static String secureHashKey(final CacheKey key) throws UnsupportedEncodingException {
-    return SecureHashUtil.makeSHA1HashBase64(key.getUriString().getBytes("UTF-8"));
+  /**
+   * Get the resourceId from the first key in MultiCacheKey or get single resourceId from CacheKey,
+   * computed with the given hasher.
+   */
+  public static String getFirstResourceId(final CacheKey key, final ResourceIdHasher hasher) {
+    if (key instanceof MultiCacheKey) {
+      List<CacheKey> keys = ((MultiCacheKey) key).getCacheKeys();
+      return hasher.hash(keys.get(0).getUriString());
+    } else {
+      return hasher.hash(key.getUriString());
+    }
   }
 }
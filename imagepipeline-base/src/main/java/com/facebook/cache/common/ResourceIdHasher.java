@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.common;
+
+import com.facebook.infer.annotation.Nullsafe;
+
+/**
+ * Turns the uri strings of the cache keys into the resource ids under which the disk caches store
+ * them.
+ *
+ * <p>See {@link ResourceIdHashers} for the available implementations.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public interface ResourceIdHasher {
+
+  /**
+   * Returns the resource id for the uri string of a cache key. The id is used as a file name, so it
+   * must only contain characters that are valid in file names.
+   */
+  String hash(String uriString);
+
+  /**
+   * Returns the version of the resource ids. The disk caches built with a hasher of another version
+   * do not find the same entries, so they are stored separately, see {@link
+   * com.facebook.cache.disk.DiskStorageCache#getStorageVersion(int, ResourceIdHasher)}.
+   */
+  int getVersion();
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.common;
+
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.util.SecureHashUtil;
+import com.facebook.infer.annotation.Nullsafe;
+import java.io.UnsupportedEncodingException;
+
+/** Provides the {@link ResourceIdHasher} implementations. */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public final class ResourceIdHashers {
+
+  private static final ResourceIdHasher SHA1 =
+      new ResourceIdHasher() {
+        @Override
+        public String hash(String uriString) {
+          try {
+            return SecureHashUtil.makeSHA1HashBase64(uriString.getBytes("UTF-8"));
+          } catch (UnsupportedEncodingException e) {
+            // This should never happen. All VMs support UTF-8
+            throw new RuntimeException(e);
+          }
+        }
+
+        @Override
+        public int getVersion() {
+          return 0;
+        }
+      };
+
+  private static final ResourceIdHasher MURMUR3_128 =
+      new ResourceIdHasher() {
+        @Override
+        public String hash(String uriString) {
+          return murmur3x64128Hex(uriString);
+        }
+
+        @Override
+        public int getVersion() {
+          return 1;
+        }
+      };
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+  private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+  private ResourceIdHashers() {}
+
+  /**
+   * Returns the hasher computing the base64 encoded SHA-1 of the UTF-8 bytes of the uri. This is
+   * the default one, and the one of the caches written before the hashers were configurable.
+   */
+  public static ResourceIdHasher sha1() {
+    return SHA1;
+  }
+
+  /**
+   * Returns the hasher computing the 128-bit MurmurHash3 (x64 variant) of the uri, as 32 hex
+   * characters.
+   *
+   * <p>It hashes the UTF-16 code units of the string directly, without encoding the string, looking
+   * up a digest or allocating anything but the result. It is not a cryptographic hash, which the
+   * resource ids do not need: a collision only makes two keys share an entry of the disk cache, and
+   * with 128 bits that is as unlikely as with SHA-1 for the sizes of the disk caches.
+   */
+  public static ResourceIdHasher murmur3x128() {
+    return MURMUR3_128;
+  }
+
+  /**
+   * Computes MurmurHash3_x64_128 with seed 0 of the UTF-16LE encoding of the string, and returns h1
+   * then h2 as big endian hex.
+   */
+  @VisibleForTesting
+  static String murmur3x64128Hex(String s) {
+    final int length = s.length();
+    long h1 = 0;
+    long h2 = 0;
+
+    // 8 chars make a 16 bytes block
+    final int blockEnd = length & ~7;
+    for (int i = 0; i < blockEnd; i += 8) {
+      long k1 =
+          s.charAt(i)
+              | ((long) s.charAt(i + 1) << 16)
+              | ((long) s.charAt(i + 2) << 32)
+              | ((long) s.charAt(i + 3) << 48);
+      long k2 =
+          s.charAt(i + 4)
+              | ((long) s.charAt(i + 5) << 16)
+              | ((long) s.charAt(i + 6) << 32)
+              | ((long) s.charAt(i + 7) << 48);
+
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    // Remaining chars, the first 4 in k1 and the next 3 in k2
+    long k1 = 0;
+    long k2 = 0;
+    for (int i = blockEnd; i < length; i++) {
+      int shift = ((i - blockEnd) & 3) << 4;
+      if (i - blockEnd < 4) {
+        k1 |= (long) s.charAt(i) << shift;
+      } else {
+        k2 |= (long) s.charAt(i) << shift;
+      }
+    }
+    if (length - blockEnd > 4) {
+      h2 ^= mixK2(k2);
+    }
+    if (length > blockEnd) {
+      h1 ^= mixK1(k1);
+    }
+
+    final long byteLength = 2L * length;
+    h1 ^= byteLength;
+    h2 ^= byteLength;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+
+    char[] hex = new char[32];
+    writeHex(h1, hex, 0);
+    writeHex(h2, hex, 16);
+    return new String(hex);
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static void writeHex(long value, char[] destination, int offset) {
+    for (int i = 15; i >= 0; i--) {
+      destination[offset + i] = HEX_CHARS[(int) (value & 0xF)];
+      value >>>= 4;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.disk;
+
+import com.facebook.infer.annotation.Nullsafe;
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps the access times of the cache files in memory, and writes them to the files in batches on a
+ * background executor, so that reading a file does not also write its metadata.
+ *
+ * <p>Only the newest access time of each file is kept. The accesses recorded while a flush is
+ * queued are written by that same flush.
+ */
+@ThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+class AccessTimeBuffer {
+
+  private final Map<File, Long> mPendingAccessTimes = new ConcurrentHashMap<>();
+  private final AtomicBoolean mIsFlushScheduled = new AtomicBoolean(false);
+  private final Executor mExecutor;
+
+  private final Runnable mFlushRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          mIsFlushScheduled.set(false);
+          flush();
+        }
+      };
+
+  AccessTimeBuffer(Executor executor) {
+    mExecutor = executor;
+  }
+
+  /** Records an access to the file, to be written by the next flush. */
+  void recordAccess(File file, long accessTime) {
+    mPendingAccessTimes.put(file, accessTime);
+    if (mIsFlushScheduled.compareAndSet(false, true)) {
+      mExecutor.execute(mFlushRunnable);
+    }
+  }
+
+  /** Writes the pending access times to the files that still exist. */
+  void flush() {
+    Iterator<Map.Entry<File, Long>> iterator = mPendingAccessTimes.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<File, Long> entry = iterator.next();
+      File file = entry.getKey();
+      long accessTime = entry.getValue();
+      // keeps an access recorded since the iteration started for the next flush
+      if (mPendingAccessTimes.remove(file, accessTime) && file.exists()) {
+        file.setLastModified(accessTime);
+      }
+    }
+  }
+
+  /** Drops the pending access time of a file, e.g. when it is deleted. */
+  void forget(File file) {
+    mPendingAccessTimes.remove(file);
+  }
+
+  void clear() {
+    mPendingAccessTimes.clear();
+  }
+
+  int getPendingCount() {
+    return mPendingAccessTimes.size();
+  }
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.disk;
+
+import androidx.annotation.VisibleForTesting;
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.cache.common.WriterCallback;
+import com.facebook.cache.common.WriterCallbacks;
+import com.facebook.common.internal.ByteStreams;
+import com.facebook.common.internal.Closeables;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.time.Clock;
+import com.facebook.common.time.SystemClock;
+import com.facebook.common.util.SecureHashUtil;
+import com.facebook.imageformat.DefaultImageFormats;
+import com.facebook.imageformat.ImageFormat;
+import com.facebook.imageformat.ImageFormatChecker;
+import com.facebook.infer.annotation.Nullsafe;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link DiskStorage} storing each distinct content only once.
+ *
+ * <p>The content of an entry is stored in the delegate as a blob identified by its SHA-1 hash, and
+ * the entry itself as a small link file holding the id of the blob. The same image fetched from
+ * different URLs is therefore stored once, the blob being deleted with its last link. The blobs
+ * of uncompressed formats can also be deflated, see {@link #shouldTryCompression(InputStream)}.
+ *
+ * <p>The content is not buffered in memory while it is hashed, it is staged in a temporary entry of
+ * the delegate until the entry is committed.
+ *
+ * <p>The entries listed by this storage are the links, their size being the size of the link plus
+ * their share of the size of the blob, so that the sizes add up to the space used on disk.
+ *
+ * <p>The layout of the files is not compatible with the delegate used alone, so the delegate must
+ * use its own version, see {@link #getStorageVersion(int)}.
+ */
+@ThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class ContentAddressedDiskStorage implements DiskStorage {
+
+  private static final String BLOB_PREFIX = "blob.";
+  private static final String COMPRESSED_BLOB_PREFIX = "blobz.";
+  private static final String STAGING_PREFIX = "staging.";
+  private static final byte[] LINK_MAGIC = {'C', 'A', 'L', '1'};
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // Added to the version of the cache, so that the directory is recreated when switching to or
+  // from this storage
+  private static final int VERSION_OFFSET = 1 << 16;
+
+  // Only the blobs saving at least 1/8 of their size are kept compressed
+  private static final int MIN_COMPRESSION_SAVING_DIVISOR = 8;
+  // Size of the sample compressed first, to skip the contents that do not compress
+  private static final int COMPRESSION_SAMPLE_SIZE = 16 * 1024;
+
+  private final DiskStorage mDelegate;
+  private final boolean mCompressionEnabled;
+  private final Clock mClock;
+
+  // resource id -> blob id, loaded on first use
+  @GuardedBy("this")
+  private @Nullable Map<String, String> mLinks;
+
+  @GuardedBy("this")
+  private final Map<String, Integer> mBlobReferenceCounts = new HashMap<>();
+
+  private final AtomicInteger mStagingCounter = new AtomicInteger();
+
+  public ContentAddressedDiskStorage(DiskStorage delegate, boolean compressionEnabled) {
+    mDelegate = delegate;
+    mCompressionEnabled = compressionEnabled;
+    mClock = SystemClock.get();
+  }
+
+  /** Returns the version the delegate storage should use for the given cache version. */
+  public static int getStorageVersion(int version) {
+    return VERSION_OFFSET + version;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return mDelegate.isEnabled();
+  }
+
+  @Override
+  public boolean isExternal() {
+    return mDelegate.isExternal();
+  }
+
+  @Override
+  public String getStorageName() {
+    return mDelegate.getStorageName();
+  }
+
+  @Override
+  public @Nullable BinaryResource getResource(String resourceId, Object debugInfo)
+      throws IOException {
+    BinaryResource link = mDelegate.getResource(resourceId, debugInfo);
+    if (link == null) {
+      return null;
+    }
+    String blobId = readLink(link);
+    if (blobId == null) {
+      // not a link, e.g. an entry written by the delegate alone
+      return link;
+    }
+    BinaryResource blob = getBlob(blobId, debugInfo);
+    if (blob == null) {
+      // the blob is gone, the link is useless
+      remove(resourceId);
+    }
+    return blob;
+  }
+
+  @Override
+  public boolean contains(String resourceId, Object debugInfo) throws IOException {
+    return mDelegate.contains(resourceId, debugInfo);
+  }
+
+  @Override
+  public boolean touch(String resourceId, Object debugInfo) throws IOException {
+    return mDelegate.touch(resourceId, debugInfo);
+  }
+
+  @Override
+  public void purgeUnexpectedResources() {
+    mDelegate.purgeUnexpectedResources();
+    try {
+      synchronized (this) {
+        // rebuilds the reference counts from the links on disk
+        getEntries();
+        // deletes the blobs left without link and the staged contents, e.g. if the app died before
+        // writing the link
+        for (Entry entry : mDelegate.getEntries()) {
+          if ((isBlob(entry.getId()) && !mBlobReferenceCounts.containsKey(entry.getId()))
+              || isStaging(entry.getId())) {
+            mDelegate.remove(entry.getId());
+          }
+        }
+      }
+    } catch (IOException ioe) {
+      // the blobs will be deleted by the next purge
+    }
+  }
+
+  @Override
+  public Inserter insert(String resourceId, Object debugInfo) throws IOException {
+    return new ContentAddressedInserter(resourceId);
+  }
+
+  @Override
+  public synchronized Collection<Entry> getEntries() throws IOException {
+    Collection<Entry> delegateEntries = mDelegate.getEntries();
+    Map<String, Entry> blobs = new HashMap<>();
+    List<Entry> links = new ArrayList<>();
+    for (Entry entry : delegateEntries) {
+      if (isBlob(entry.getId())) {
+        blobs.put(entry.getId(), entry);
+      } else if (!isStaging(entry.getId())) {
+        links.add(entry);
+      }
+    }
+
+    Map<String, String> linkTargets = new HashMap<>();
+    Map<String, Integer> referenceCounts = new HashMap<>();
+    for (Entry link : links) {
+      String blobId = readLink(link.getResource());
+      if (blobId != null && blobs.containsKey(blobId)) {
+        linkTargets.put(link.getId(), blobId);
+        increment(referenceCounts, blobId, 1);
+      }
+    }
+
+    List<Entry> entries = new ArrayList<>(links.size());
+    for (Entry link : links) {
+      String blobId = linkTargets.get(link.getId());
+      if (blobId == null) {
+        // plain entry, or link without blob that will be removed by the cache eventually
+        entries.add(link);
+        continue;
+      }
+      Entry blob = Preconditions.checkNotNull(blobs.get(blobId));
+      int referenceCount = Preconditions.checkNotNull(referenceCounts.get(blobId));
+      entries.add(
+          new LinkEntry(
+              link.getId(),
+              link.getTimestamp(),
+              link.getSize() + blob.getSize() / referenceCount,
+              wrapBlob(blobId, blob.getResource())));
+    }
+
+    mLinks = linkTargets;
+    mBlobReferenceCounts.clear();
+    mBlobReferenceCounts.putAll(referenceCounts);
+    return Collections.unmodifiableList(entries);
+  }
+
+  @Override
+  public long remove(Entry entry) throws IOException {
+    return remove(entry.getId());
+  }
+
+  @Override
+  public synchronized long remove(String resourceId) throws IOException {
+    String blobId = getLinks().remove(resourceId);
+    long removedSize = mDelegate.remove(resourceId);
+    if (blobId != null && release(blobId)) {
+      long blobSize = mDelegate.remove(blobId);
+      if (removedSize >= 0 && blobSize > 0) {
+        removedSize += blobSize;
+      }
+    }
+    return removedSize;
+  }
+
+  @Override
+  public synchronized void clearAll() throws IOException {
+    mDelegate.clearAll();
+    mLinks = new HashMap<>();
+    mBlobReferenceCounts.clear();
+  }
+
+  @Override
+  public DiskDumpInfo getDumpInfo() throws IOException {
+    return mDelegate.getDumpInfo();
+  }
+
+  @VisibleForTesting
+  synchronized int getBlobReferenceCount(String blobId) throws IOException {
+    getLinks();
+    Integer count = mBlobReferenceCounts.get(blobId);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Returns true if the content is in a format that is not compressed already and if its first
+   * bytes compress well. The blob is then deflated, and kept compressed only if compressing it
+   * saved enough space.
+   */
+  @VisibleForTesting
+  static boolean shouldTryCompression(InputStream content) throws IOException {
+    byte[] sample = new byte[COMPRESSION_SAMPLE_SIZE];
+    int sampleSize = ByteStreams.read(content, sample, 0, sample.length);
+    ImageFormat imageFormat =
+        ImageFormatChecker.getImageFormat(new ByteArrayInputStream(sample, 0, sampleSize));
+    // PNG is usually compressed already, but its compression level may be 0
+    if (imageFormat != DefaultImageFormats.BMP
+        && imageFormat != DefaultImageFormats.ICO
+        && imageFormat != DefaultImageFormats.DNG
+        && imageFormat != DefaultImageFormats.PNG
+        && imageFormat != ImageFormat.UNKNOWN) {
+      return false;
+    }
+    if (sampleSize < COMPRESSION_SAMPLE_SIZE) {
+      // small contents are compressed entirely
+      return true;
+    }
+    ByteArrayOutputStream compressedSample = new ByteArrayOutputStream(sampleSize / 2 + 16);
+    deflate(new ByteArrayInputStream(sample, 0, sampleSize), sampleSize, compressedSample);
+    return isWorthCompressing(sampleSize, compressedSample.size());
+  }
+
+  private static boolean isWorthCompressing(long size, long compressedSize) {
+    return compressedSize <= size - size / MIN_COMPRESSION_SAVING_DIVISOR;
+  }
+
+  /** Writes the length of the content followed by the deflated content. */
+  private static void deflate(InputStream content, int length, OutputStream outputStream)
+      throws IOException {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+      dataOutputStream.writeInt(length);
+      DeflaterOutputStream deflaterOutputStream =
+          new DeflaterOutputStream(dataOutputStream, deflater);
+      ByteStreams.copy(content, deflaterOutputStream);
+      deflaterOutputStream.finish();
+      deflaterOutputStream.flush();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @GuardedBy("this")
+  private Map<String, String> getLinks() throws IOException {
+    if (mLinks == null) {
+      // getEntries rebuilds the links and the reference counts
+      getEntries();
+    }
+    return Preconditions.checkNotNull(mLinks);
+  }
+
+  @GuardedBy("this")
+  private boolean release(String blobId) {
+    Integer count = mBlobReferenceCounts.get(blobId);
+    if (count == null || count <= 1) {
+      mBlobReferenceCounts.remove(blobId);
+      return true;
+    }
+    mBlobReferenceCounts.put(blobId, count - 1);
+    return false;
+  }
+
+  private @Nullable BinaryResource getBlob(String blobId, Object debugInfo) throws IOException {
+    BinaryResource blob = mDelegate.getResource(blobId, debugInfo);
+    return blob == null ? null : wrapBlob(blobId, blob);
+  }
+
+  private static BinaryResource wrapBlob(String blobId, BinaryResource blob) {
+    return blobId.startsWith(COMPRESSED_BLOB_PREFIX) ? new DeflatedBinaryResource(blob) : blob;
+  }
+
+  private static boolean isBlob(String id) {
+    return id.startsWith(BLOB_PREFIX) || id.startsWith(COMPRESSED_BLOB_PREFIX);
+  }
+
+  private static boolean isStaging(String id) {
+    return id.startsWith(STAGING_PREFIX);
+  }
+
+  private static @Nullable String readLink(BinaryResource resource) throws IOException {
+    if (resource.size() <= LINK_MAGIC.length) {
+      return null;
+    }
+    byte[] bytes = resource.read();
+    for (int i = 0; i < LINK_MAGIC.length; i++) {
+      if (bytes[i] != LINK_MAGIC[i]) {
+        return null;
+      }
+    }
+    String blobId =
+        new String(bytes, LINK_MAGIC.length, bytes.length - LINK_MAGIC.length, UTF_8);
+    return isBlob(blobId) ? blobId : null;
+  }
+
+  private static byte[] newLink(String blobId) {
+    byte[] id = blobId.getBytes(UTF_8);
+    byte[] bytes = new byte[LINK_MAGIC.length + id.length];
+    System.arraycopy(LINK_MAGIC, 0, bytes, 0, LINK_MAGIC.length);
+    System.arraycopy(id, 0, bytes, LINK_MAGIC.length, id.length);
+    return bytes;
+  }
+
+  private static void increment(Map<String, Integer> counts, String key, int increment) {
+    Integer count = counts.get(key);
+    counts.put(key, (count == null ? 0 : count) + increment);
+  }
+
+  /**
+   * Stages the content and writes the blob in {@link #writeData}, outside of the cache lock, and
+   * the link in {@link #commit}.
+   */
+  private class ContentAddressedInserter implements Inserter {
+
+    private final String mResourceId;
+    private final String mStagingId;
+    private @Nullable String mBlobId;
+    // the content is kept until the commit in case the blob is deleted in the meantime
+    private @Nullable BinaryResource mStagedContent;
+
+    ContentAddressedInserter(String resourceId) {
+      mResourceId = resourceId;
+      mStagingId = STAGING_PREFIX + mStagingCounter.incrementAndGet() + "." + resourceId;
+    }
+
+    @Override
+    public void writeData(WriterCallback callback, Object debugInfo) throws IOException {
+      HashingWriterCallback hashingCallback = new HashingWriterCallback(callback);
+      Inserter stagingInserter = mDelegate.insert(mStagingId, debugInfo);
+      final BinaryResource stagedContent;
+      try {
+        stagingInserter.writeData(hashingCallback, debugInfo);
+        stagedContent = stagingInserter.commit(debugInfo);
+      } finally {
+        stagingInserter.cleanUp();
+      }
+      mStagedContent = stagedContent;
+      String hash = hashingCallback.getHash();
+      if (mDelegate.contains(BLOB_PREFIX + hash, debugInfo)) {
+        mBlobId = BLOB_PREFIX + hash;
+      } else if (mDelegate.contains(COMPRESSED_BLOB_PREFIX + hash, debugInfo)) {
+        mBlobId = COMPRESSED_BLOB_PREFIX + hash;
+      } else {
+        mBlobId = writeNewBlob(hash, stagedContent, debugInfo);
+      }
+    }
+
+    @Override
+    public BinaryResource commit(Object debugInfo) throws IOException {
+      return commit(debugInfo, mClock.now());
+    }
+
+    @Override
+    public BinaryResource commit(Object debugInfo, long time) throws IOException {
+      String blobId = Preconditions.checkNotNull(mBlobId);
+      synchronized (ContentAddressedDiskStorage.this) {
+        Map<String, String> links = getLinks();
+        BinaryResource blob = getBlob(blobId, debugInfo);
+        if (blob == null) {
+          // the last link to the blob was removed in the meantime
+          writeBlob(
+              blobId,
+              Preconditions.checkNotNull(mStagedContent),
+              blobId.startsWith(COMPRESSED_BLOB_PREFIX),
+              debugInfo);
+          blob = Preconditions.checkNotNull(getBlob(blobId, debugInfo));
+        }
+        Inserter linkInserter = mDelegate.insert(mResourceId, debugInfo);
+        try {
+          linkInserter.writeData(WriterCallbacks.from(newLink(blobId)), debugInfo);
+          linkInserter.commit(debugInfo, time);
+        } finally {
+          linkInserter.cleanUp();
+        }
+        String previousBlobId = links.put(mResourceId, blobId);
+        if (!blobId.equals(previousBlobId)) {
+          increment(mBlobReferenceCounts, blobId, 1);
+          if (previousBlobId != null && release(previousBlobId)) {
+            mDelegate.remove(previousBlobId);
+          }
+        }
+        return blob;
+      }
+    }
+
+    @Override
+    public boolean cleanUp() {
+      if (mStagedContent == null) {
+        return true;
+      }
+      mStagedContent = null;
+      try {
+        mDelegate.remove(mStagingId);
+      } catch (IOException ioe) {
+        // deleted by the next purge
+        return false;
+      }
+      return true;
+    }
+
+    /** Writes the blob of new content, compressed if it saves enough space, returns its id. */
+    private String writeNewBlob(String hash, BinaryResource stagedContent, Object debugInfo)
+        throws IOException {
+      if (mCompressionEnabled && shouldTryCompression(stagedContent)) {
+        String compressedBlobId = COMPRESSED_BLOB_PREFIX + hash;
+        BinaryResource blob = writeBlob(compressedBlobId, stagedContent, true, debugInfo);
+        if (isWorthCompressing(stagedContent.size(), blob.size())) {
+          return compressedBlobId;
+        }
+        mDelegate.remove(compressedBlobId);
+      }
+      String blobId = BLOB_PREFIX + hash;
+      writeBlob(blobId, stagedContent, false, debugInfo);
+      return blobId;
+    }
+
+    private BinaryResource writeBlob(
+        String blobId,
+        final BinaryResource stagedContent,
+        final boolean compressed,
+        Object debugInfo)
+        throws IOException {
+      Inserter blobInserter = mDelegate.insert(blobId, debugInfo);
+      try {
+        blobInserter.writeData(
+            new WriterCallback() {
+              @Override
+              public void write(OutputStream os) throws IOException {
+                InputStream content = stagedContent.openStream();
+                try {
+                  if (compressed) {
+                    deflate(content, (int) stagedContent.size(), os);
+                  } else {
+                    ByteStreams.copy(content, os);
+                  }
+                } finally {
+                  Closeables.closeQuietly(content);
+                }
+              }
+            },
+            debugInfo);
+        return blobInserter.commit(debugInfo);
+      } finally {
+        blobInserter.cleanUp();
+      }
+    }
+  }
+
+  private static boolean shouldTryCompression(BinaryResource content) throws IOException {
+    InputStream inputStream = content.openStream();
+    try {
+      return shouldTryCompression(inputStream);
+    } finally {
+      Closeables.closeQuietly(inputStream);
+    }
+  }
+
+  /** Computes the SHA-1 hash of the content written by the callback. */
+  private static class HashingWriterCallback implements WriterCallback {
+
+    private final WriterCallback mCallback;
+    private final MessageDigest mDigest;
+
+    HashingWriterCallback(WriterCallback callback) {
+      mCallback = callback;
+      try {
+        mDigest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void write(OutputStream os) throws IOException {
+      mDigest.reset();
+      DigestOutputStream digestOutputStream = new DigestOutputStream(os, mDigest);
+      mCallback.write(digestOutputStream);
+      digestOutputStream.flush();
+    }
+
+    String getHash() throws UnsupportedEncodingException {
+      return SecureHashUtil.convertToHex(mDigest.digest());
+    }
+  }
+
+  /** Entry of a link, the resource being the content of its blob. */
+  private static class LinkEntry implements Entry {
+
+    private final String mId;
+    private final long mTimestamp;
+    private final long mSize;
+    private final BinaryResource mResource;
+
+    LinkEntry(String id, long timestamp, long size, BinaryResource resource) {
+      mId = id;
+      mTimestamp = timestamp;
+      mSize = size;
+      mResource = resource;
+    }
+
+    @Override
+    public String getId() {
+      return mId;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return mTimestamp;
+    }
+
+    @Override
+    public long getSize() {
+      return mSize;
+    }
+
+    @Override
+    public BinaryResource getResource() {
+      return mResource;
+    }
+  }
+
+  /**
+   * Resource inflating a blob written by {@link #deflate(InputStream, int, OutputStream)}.
+   *
+   * <p>Its size is the size of the blob on disk, which the disk cache accounts for, not the size of
+   * the inflated content.
+   */
+  private static class DeflatedBinaryResource implements BinaryResource {
+
+    private final BinaryResource mBlob;
+
+    DeflatedBinaryResource(BinaryResource blob) {
+      mBlob = blob;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+      InputStream inputStream = mBlob.openStream();
+      try {
+        new DataInputStream(inputStream).readInt();
+        return new InflaterInputStream(inputStream);
+      } catch (IOException ioe) {
+        Closeables.closeQuietly(inputStream);
+        throw ioe;
+      }
+    }
+
+    @Override
+    public byte[] read() throws IOException {
+      InputStream inputStream = openStream();
+      try {
+        return ByteStreams.toByteArray(inputStream);
+      } finally {
+        Closeables.closeQuietly(inputStream);
+      }
+    }
+
+    @Override
+    public long size() {
+      return mBlob.size();
+    }
+  }
+}
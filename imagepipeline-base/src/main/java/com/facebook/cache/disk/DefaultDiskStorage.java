@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -78,6 +79,9 @@ public class DefaultDiskStorage implements DiskStorage {
   private final CacheErrorLogger mCacheErrorLogger;
   private final Clock mClock;
 
+  /** Access times not written to the files yet, if touches are deferred */
+  private final @Nullable AccessTimeBuffer mAccessTimeBuffer;
+
   /**
    * Instantiates a ShardedDiskStorage that will use the directory to save a map between keys and
    * files. The version is very important if clients change the format saved in those files.
@@ -90,6 +94,19 @@ public class DefaultDiskStorage implements DiskStorage {
    * @param cacheErrorLogger logger for various events
    */
   public DefaultDiskStorage(File rootDirectory, int version, CacheErrorLogger cacheErrorLogger) {
+    this(rootDirectory, version, cacheErrorLogger, null);
+  }
+
+  /**
+   * @param deferredTouchExecutor if not null, the access times of the files are kept in memory on
+   *     reads and written to the files in batches on this executor. They are all written before
+   *     listing the entries, so that the eviction order is not affected.
+   */
+  public DefaultDiskStorage(
+      File rootDirectory,
+      int version,
+      CacheErrorLogger cacheErrorLogger,
+      @Nullable Executor deferredTouchExecutor) {
     Preconditions.checkNotNull(rootDirectory);
 
     mRootDirectory = rootDirectory;
@@ -103,6 +120,8 @@ public class DefaultDiskStorage implements DiskStorage {
     mCacheErrorLogger = cacheErrorLogger;
     recreateDirectoryIfVersionChanges();
     mClock = SystemClock.get();
+    mAccessTimeBuffer =
+        deferredTouchExecutor == null ? null : new AccessTimeBuffer(deferredTouchExecutor);
   }
 
   @SuppressWarnings("ExternalStorageUse")
@@ -367,12 +386,20 @@ public class DefaultDiskStorage implements DiskStorage {
   public @Nullable BinaryResource getResource(String resourceId, Object debugInfo) {
     final File file = getContentFileFor(resourceId);
     if (file.exists()) {
-      file.setLastModified(mClock.now());
+      updateAccessTime(file);
       return FileBinaryResource.createOrNull(file);
     }
     return null;
   }
 
+  private void updateAccessTime(File file) {
+    if (mAccessTimeBuffer != null) {
+      mAccessTimeBuffer.recordAccess(file, mClock.now());
+    } else {
+      file.setLastModified(mClock.now());
+    }
+  }
+
   private String getFilename(String resourceId) {
     FileInfo fileInfo = new FileInfo(FileType.CONTENT, resourceId);
     String path = getSubdirectoryPath(fileInfo.resourceId);
@@ -393,7 +420,7 @@ public class DefaultDiskStorage implements DiskStorage {
     File contentFile = getContentFileFor(resourceId);
     boolean exists = contentFile.exists();
     if (touch && exists) {
-      contentFile.setLastModified(mClock.now());
+      updateAccessTime(contentFile);
     }
     return exists;
   }
@@ -412,6 +439,9 @@ public class DefaultDiskStorage implements DiskStorage {
   }
 
   private long doRemove(final File contentFile) {
+    if (mAccessTimeBuffer != null) {
+      mAccessTimeBuffer.forget(contentFile);
+    }
     if (!contentFile.exists()) {
       return 0;
     }
@@ -425,6 +455,9 @@ public class DefaultDiskStorage implements DiskStorage {
   }
 
   public void clearAll() {
+    if (mAccessTimeBuffer != null) {
+      mAccessTimeBuffer.clear();
+    }
     FileTree.deleteContents(mRootDirectory);
   }
 
@@ -483,6 +516,10 @@ public class DefaultDiskStorage implements DiskStorage {
    * <p>This list is immutable.
    */
   public List<Entry> getEntries() throws IOException {
+    if (mAccessTimeBuffer != null) {
+      // the timestamps of the entries give the eviction order
+      mAccessTimeBuffer.flush();
+    }
     EntriesCollector collector = new EntriesCollector();
     FileTree.walkFileTree(mVersionDirectory, collector);
     return collector.getEntries();
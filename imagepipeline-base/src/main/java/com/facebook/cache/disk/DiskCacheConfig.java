@@ -12,6 +12,8 @@ import com.facebook.cache.common.CacheErrorLogger;
 import com.facebook.cache.common.CacheEventListener;
 import com.facebook.cache.common.NoOpCacheErrorLogger;
 import com.facebook.cache.common.NoOpCacheEventListener;
+import com.facebook.cache.common.ResourceIdHasher;
+import com.facebook.cache.common.ResourceIdHashers;
 import com.facebook.common.disk.DiskTrimmable;
 import com.facebook.common.disk.DiskTrimmableRegistry;
 import com.facebook.common.disk.NoOpDiskTrimmableRegistry;
@@ -39,6 +41,11 @@ public class DiskCacheConfig {
   private final DiskTrimmableRegistry mDiskTrimmableRegistry;
   @Nullable private final Context mContext;
   private final boolean mIndexPopulateAtStartupEnabled;
+  private final boolean mIncrementalEvictionEnabled;
+  private final boolean mDeferredTouchEnabled;
+  private final boolean mContentDeduplicationEnabled;
+  private final boolean mCompressionEnabled;
+  private final ResourceIdHasher mResourceIdHasher;
 
   protected DiskCacheConfig(Builder builder) {
     mContext = builder.mContext;
@@ -76,6 +83,11 @@ public class DiskCacheConfig {
             ? NoOpDiskTrimmableRegistry.getInstance()
             : builder.mDiskTrimmableRegistry;
     mIndexPopulateAtStartupEnabled = builder.mIndexPopulateAtStartupEnabled;
+    mIncrementalEvictionEnabled = builder.mIncrementalEvictionEnabled;
+    mDeferredTouchEnabled = builder.mDeferredTouchEnabled;
+    mContentDeduplicationEnabled = builder.mContentDeduplicationEnabled;
+    mCompressionEnabled = builder.mCompressionEnabled;
+    mResourceIdHasher = builder.mResourceIdHasher;
   }
 
   public int getVersion() {
@@ -126,6 +138,26 @@ public class DiskCacheConfig {
     return mIndexPopulateAtStartupEnabled;
   }
 
+  public boolean getIncrementalEvictionEnabled() {
+    return mIncrementalEvictionEnabled;
+  }
+
+  public boolean getDeferredTouchEnabled() {
+    return mDeferredTouchEnabled;
+  }
+
+  public boolean getContentDeduplicationEnabled() {
+    return mContentDeduplicationEnabled;
+  }
+
+  public boolean getCompressionEnabled() {
+    return mCompressionEnabled;
+  }
+
+  public ResourceIdHasher getResourceIdHasher() {
+    return mResourceIdHasher;
+  }
+
   /**
    * Create a new builder.
    *
@@ -153,6 +185,11 @@ public class DiskCacheConfig {
     private @Nullable CacheEventListener mCacheEventListener;
     private @Nullable DiskTrimmableRegistry mDiskTrimmableRegistry;
     private boolean mIndexPopulateAtStartupEnabled;
+    private boolean mIncrementalEvictionEnabled;
+    private boolean mDeferredTouchEnabled;
+    private boolean mContentDeduplicationEnabled;
+    private boolean mCompressionEnabled;
+    private ResourceIdHasher mResourceIdHasher = ResourceIdHashers.sha1();
 
     private final @Nullable Context mContext;
 
@@ -251,6 +288,57 @@ public class DiskCacheConfig {
       return this;
     }
 
+    /**
+     * Keeps the entries ordered by eviction priority in memory, so that the cache evicts them in
+     * small batches instead of listing and sorting all the files each time it is full.
+     *
+     * <p>The order given by the entry eviction comparator must not change as time passes.
+     */
+    public Builder setIncrementalEvictionEnabled(boolean incrementalEvictionEnabled) {
+      mIncrementalEvictionEnabled = incrementalEvictionEnabled;
+      return this;
+    }
+
+    /**
+     * Keeps the access times of the cached files in memory on reads, and writes them to the files
+     * in background batches, so that cache hits do not write to the disk.
+     */
+    public Builder setDeferredTouchEnabled(boolean deferredTouchEnabled) {
+      mDeferredTouchEnabled = deferredTouchEnabled;
+      return this;
+    }
+
+    /**
+     * Stores each distinct content only once, whatever the number of keys it is cached under.
+     *
+     * <p>See {@link ContentAddressedDiskStorage}. Changing this setting clears the cache.
+     */
+    public Builder setContentDeduplicationEnabled(boolean contentDeduplicationEnabled) {
+      mContentDeduplicationEnabled = contentDeduplicationEnabled;
+      return this;
+    }
+
+    /**
+     * Compresses the images in formats that are not compressed already, like BMP. Only applies if
+     * content deduplication is enabled.
+     */
+    public Builder setCompressionEnabled(boolean compressionEnabled) {
+      mCompressionEnabled = compressionEnabled;
+      return this;
+    }
+
+    /**
+     * Sets the hasher of the cache keys into the names of the cache files. Defaults to {@link
+     * ResourceIdHashers#sha1()}; {@link ResourceIdHashers#murmur3x128()} is faster.
+     *
+     * <p>Changing the hasher clears the cache, see {@link DiskStorageCache#getStorageVersion(int,
+     * ResourceIdHasher)}.
+     */
+    public Builder setResourceIdHasher(ResourceIdHasher resourceIdHasher) {
+      mResourceIdHasher = resourceIdHasher;
+      return this;
+    }
+
     public DiskCacheConfig build() {
       return new DiskCacheConfig(this);
     }
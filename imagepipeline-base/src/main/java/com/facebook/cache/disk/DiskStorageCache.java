@@ -13,6 +13,8 @@ import com.facebook.cache.common.CacheErrorLogger;
 import com.facebook.cache.common.CacheEventListener;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.cache.common.CacheKeyUtil;
+import com.facebook.cache.common.ResourceIdHasher;
+import com.facebook.cache.common.ResourceIdHashers;
 import com.facebook.cache.common.WriterCallback;
 import com.facebook.common.disk.DiskTrimmable;
 import com.facebook.common.disk.DiskTrimmableRegistry;
@@ -28,15 +30,25 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
-/** Cache that manages disk storage. */
+/**
+ * Cache that manages disk storage.
+ *
+ * <p>Lookups only read the storage and the concurrent resource index, so they are not blocked by
+ * inserts, evictions or size recalculations, which are serialized with the cache lock. With
+ * incremental eviction, the entries read are recorded without the lock and moved in the eviction
+ * queue when it is next used, and the size is recalculated on the background executor.
+ */
 @ThreadSafe
 @Nullsafe(Nullsafe.Mode.STRICT)
 public class DiskStorageCache implements FileCache, DiskTrimmable {
@@ -48,11 +60,15 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   // subclasses of MediaCache have moved on to subsequent versions and are
   // no longer using this constant, it can be removed.
   public static final int START_OF_VERSIONING = 1;
+  // Shift of the resource id hasher version in the storage version
+  private static final int RESOURCE_ID_HASHER_VERSION_SHIFT = 20;
   private static final long FUTURE_TIMESTAMP_THRESHOLD_MS = TimeUnit.HOURS.toMillis(2);
   // Force recalculation of the ground truth for filecache size at this interval
   private static final long FILECACHE_SIZE_UPDATE_PERIOD_MS = TimeUnit.MINUTES.toMillis(30);
   private static final double TRIMMING_LOWER_BOUND = 0.02;
   private static final long UNINITIALIZED = -1;
+  // Number of entries evicted per acquisition of the lock with incremental eviction
+  private static final int EVICTION_BATCH_SIZE = 16;
 
   private final long mLowDiskSpaceCacheSizeLimit;
   private final long mDefaultCacheSizeLimit;
@@ -61,10 +77,9 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
 
   private final CacheEventListener mCacheEventListener;
 
-  @GuardedBy("mLock")
-  // All resourceId stored on disk (if any).
-  @VisibleForTesting
-  final Set<String> mResourceIndex;
+  // All resourceId stored on disk (if any). Updated without the lock by lookups, so it may
+  // briefly disagree with the storage when a lookup races with an insert or a removal.
+  @VisibleForTesting final Set<String> mResourceIndex;
 
   private long mCacheSizeLastUpdateTime;
 
@@ -73,10 +88,32 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   private final StatFsHelper mStatFsHelper;
 
   private final DiskStorage mStorage;
+  private final ResourceIdHasher mResourceIdHasher;
   private final EntryEvictionComparatorSupplier mEntryEvictionComparatorSupplier;
   private final CacheErrorLogger mCacheErrorLogger;
   private final boolean mIndexPopulateAtStartupEnabled;
 
+  // Entries ordered by eviction priority, only maintained with incremental eviction.
+  @GuardedBy("mLock")
+  private final @Nullable EvictionQueue mEvictionQueue;
+
+  // Time of the last read of the entries read since the eviction queue was last used, by id
+  private final ConcurrentHashMap<String, Long> mPendingTouches = new ConcurrentHashMap<>();
+
+  // Ids of the entries not found in the storage since the eviction queue was last used
+  private final Set<String> mPendingRemovals =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final AtomicBoolean mIsEvicting = new AtomicBoolean(false);
+
+  private final Executor mBackgroundExecutor;
+  private final AtomicBoolean mIsUpdatingSizeInBackground = new AtomicBoolean(false);
+
+  // Incremented by every change of the storage, to tell whether a listing made without the lock
+  // is still accurate
+  @GuardedBy("mLock")
+  private int mStorageGeneration;
+
   private final CacheStats mCacheStats;
 
   private final Clock mClock;
@@ -150,12 +187,67 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
       @Nullable DiskTrimmableRegistry diskTrimmableRegistry,
       final Executor executorForBackgrountInit,
       boolean indexPopulateAtStartupEnabled) {
+    this(
+        diskStorage,
+        entryEvictionComparatorSupplier,
+        params,
+        cacheEventListener,
+        cacheErrorLogger,
+        diskTrimmableRegistry,
+        executorForBackgrountInit,
+        indexPopulateAtStartupEnabled,
+        false);
+  }
+
+  public DiskStorageCache(
+      DiskStorage diskStorage,
+      EntryEvictionComparatorSupplier entryEvictionComparatorSupplier,
+      Params params,
+      CacheEventListener cacheEventListener,
+      CacheErrorLogger cacheErrorLogger,
+      @Nullable DiskTrimmableRegistry diskTrimmableRegistry,
+      final Executor executorForBackgrountInit,
+      boolean indexPopulateAtStartupEnabled,
+      boolean incrementalEvictionEnabled) {
+    this(
+        diskStorage,
+        entryEvictionComparatorSupplier,
+        params,
+        cacheEventListener,
+        cacheErrorLogger,
+        diskTrimmableRegistry,
+        executorForBackgrountInit,
+        indexPopulateAtStartupEnabled,
+        incrementalEvictionEnabled,
+        ResourceIdHashers.sha1());
+  }
+
+  /**
+   * @param incrementalEvictionEnabled whether to keep the entries in an in-memory queue ordered by
+   *     eviction priority, and to evict them in small batches without holding the cache lock during
+   *     the whole eviction, instead of listing and sorting all the entries of the storage
+   * @param resourceIdHasher the hasher of the cache keys into resource ids. The storage must have
+   *     been created with the version given by {@link #getStorageVersion(int, ResourceIdHasher)}
+   *     for it
+   */
+  public DiskStorageCache(
+      DiskStorage diskStorage,
+      EntryEvictionComparatorSupplier entryEvictionComparatorSupplier,
+      Params params,
+      CacheEventListener cacheEventListener,
+      CacheErrorLogger cacheErrorLogger,
+      @Nullable DiskTrimmableRegistry diskTrimmableRegistry,
+      final Executor executorForBackgrountInit,
+      boolean indexPopulateAtStartupEnabled,
+      boolean incrementalEvictionEnabled,
+      ResourceIdHasher resourceIdHasher) {
     this.mLowDiskSpaceCacheSizeLimit = params.mLowDiskSpaceCacheSizeLimit;
     this.mDefaultCacheSizeLimit = params.mDefaultCacheSizeLimit;
     this.mCacheSizeLimit = params.mDefaultCacheSizeLimit;
     this.mStatFsHelper = StatFsHelper.getInstance();
 
     this.mStorage = diskStorage;
+    this.mResourceIdHasher = resourceIdHasher;
 
     this.mEntryEvictionComparatorSupplier = entryEvictionComparatorSupplier;
 
@@ -173,7 +265,15 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
 
     mIndexPopulateAtStartupEnabled = indexPopulateAtStartupEnabled;
 
-    this.mResourceIndex = new HashSet<>();
+    mBackgroundExecutor = executorForBackgrountInit;
+
+    this.mResourceIndex = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    this.mEvictionQueue =
+        incrementalEvictionEnabled
+            ? new EvictionQueue(
+                entryEvictionComparatorSupplier.get(), FUTURE_TIMESTAMP_THRESHOLD_MS)
+            : null;
 
     if (diskTrimmableRegistry != null) {
       diskTrimmableRegistry.registerDiskTrimmable(this);
@@ -199,6 +299,18 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     }
   }
 
+  /**
+   * Returns the version the storage should use for a cache of the given version, starting at
+   * {@link #START_OF_VERSIONING}, whose resource ids are computed with the given hasher.
+   *
+   * <p>The storages delete the entries of the other versions, so changing the hasher migrates the
+   * cache by starting it anew instead of leaving unreachable entries. The version of the default
+   * SHA-1 hasher is 0, so the caches using it keep their entries.
+   */
+  public static int getStorageVersion(int version, ResourceIdHasher resourceIdHasher) {
+    return (resourceIdHasher.getVersion() << RESOURCE_ID_HASHER_VERSION_SHIFT) + version;
+  }
+
   @Override
   public DiskStorage.DiskDumpInfo getDumpInfo() throws IOException {
     return mStorage.getDumpInfo();
@@ -244,27 +356,29 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     String resourceId = null;
     SettableCacheEvent cacheEvent = SettableCacheEvent.obtain().setCacheKey(key);
     try {
-      synchronized (mLock) {
-        BinaryResource resource = null;
-        List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-        for (int i = 0; i < resourceIds.size(); i++) {
-          resourceId = resourceIds.get(i);
-          cacheEvent.setResourceId(resourceId);
-          resource = mStorage.getResource(resourceId, key);
-          if (resource != null) {
-            break;
-          }
+      BinaryResource resource = null;
+      List<String> resourceIds = CacheKeyUtil.getResourceIds(key, mResourceIdHasher);
+      for (int i = 0; i < resourceIds.size(); i++) {
+        resourceId = resourceIds.get(i);
+        cacheEvent.setResourceId(resourceId);
+        resource = mStorage.getResource(resourceId, key);
+        if (resource != null) {
+          break;
         }
-        if (resource == null) {
-          mCacheEventListener.onMiss(cacheEvent);
+      }
+      if (resource == null) {
+        mCacheEventListener.onMiss(cacheEvent);
+        if (resourceId != null) {
           mResourceIndex.remove(resourceId);
-        } else {
-          Preconditions.checkNotNull(resourceId);
-          mCacheEventListener.onHit(cacheEvent);
-          mResourceIndex.add(resourceId);
+          removeFromEvictionQueue(resourceId);
         }
-        return resource;
+      } else {
+        Preconditions.checkNotNull(resourceId);
+        mCacheEventListener.onHit(cacheEvent);
+        mResourceIndex.add(resourceId);
+        touchInEvictionQueue(resourceId);
       }
+      return resource;
     } catch (IOException ioe) {
       mCacheErrorLogger.logError(
           CacheErrorLogger.CacheErrorCategory.GENERIC_IO, TAG, "getResource", ioe);
@@ -289,17 +403,16 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   public boolean probe(final CacheKey key) {
     String resourceId = null;
     try {
-      synchronized (mLock) {
-        List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-        for (int i = 0; i < resourceIds.size(); i++) {
-          resourceId = resourceIds.get(i);
-          if (mStorage.touch(resourceId, key)) {
-            mResourceIndex.add(resourceId);
-            return true;
-          }
+      List<String> resourceIds = CacheKeyUtil.getResourceIds(key, mResourceIdHasher);
+      for (int i = 0; i < resourceIds.size(); i++) {
+        resourceId = resourceIds.get(i);
+        if (mStorage.touch(resourceId, key)) {
+          mResourceIndex.add(resourceId);
+          touchInEvictionQueue(resourceId);
+          return true;
         }
-        return false;
       }
+      return false;
     } catch (IOException e) {
       SettableCacheEvent cacheEvent =
           SettableCacheEvent.obtain().setCacheKey(key).setResourceId(resourceId).setException(e);
@@ -309,6 +422,52 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     }
   }
 
+  /** Records the read of the entry, to move it in the eviction queue without the lock. */
+  private void touchInEvictionQueue(String resourceId) {
+    if (mEvictionQueue != null) {
+      mPendingTouches.put(resourceId, mClock.now());
+    }
+  }
+
+  /** Records the miss of the entry, to remove it from the eviction queue without the lock. */
+  private void removeFromEvictionQueue(String resourceId) {
+    if (mEvictionQueue != null) {
+      mPendingTouches.remove(resourceId);
+      mPendingRemovals.add(resourceId);
+    }
+  }
+
+  /**
+   * Moves the entries read since the last call in the eviction queue, and removes the entries
+   * missed since then.
+   *
+   * <p>A missed entry may have been written again before this call, so it is only removed if it
+   * is still missing from the storage.
+   */
+  @GuardedBy("mLock")
+  private void drainPendingTouches() {
+    if (mEvictionQueue == null) {
+      return;
+    }
+    for (Map.Entry<String, Long> touch : mPendingTouches.entrySet()) {
+      mEvictionQueue.touch(touch.getKey(), touch.getValue());
+      // a newer read is kept for the next call
+      mPendingTouches.remove(touch.getKey(), touch.getValue());
+    }
+    for (String resourceId : mPendingRemovals) {
+      mPendingRemovals.remove(resourceId);
+      try {
+        if (mEvictionQueue.contains(resourceId) && !mStorage.contains(resourceId, resourceId)) {
+          mEvictionQueue.remove(resourceId);
+        }
+      } catch (IOException ioe) {
+        // the entry is kept, eviction deletes it anyway
+        mCacheErrorLogger.logError(
+            CacheErrorLogger.CacheErrorCategory.GENERIC_IO, TAG, "drainPendingTouches", ioe);
+      }
+    }
+  }
+
   /** Creates a temp file for writing outside the session lock */
   private DiskStorage.Inserter startInsert(final String resourceId, final CacheKey key)
       throws IOException {
@@ -325,8 +484,24 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
       throws IOException {
     synchronized (mLock) {
       BinaryResource resource = inserter.commit(key);
+      mStorageGeneration++;
       mResourceIndex.add(resourceId);
-      mCacheStats.increment(resource.size(), 1);
+      if (mEvictionQueue != null) {
+        // applies the reads as they happen with inserts, so that they do not pile up
+        drainPendingTouches();
+        long now = mClock.now();
+        DiskStorage.Entry replaced =
+            mEvictionQueue.put(resourceId, resource.size(), now, resource, now);
+        // the size is not recalculated before evicting, so overwritten files must not be counted
+        // twice
+        if (replaced != null) {
+          mCacheStats.increment(resource.size() - replaced.getSize(), 0);
+        } else {
+          mCacheStats.increment(resource.size(), 1);
+        }
+      } else {
+        mCacheStats.increment(resource.size(), 1);
+      }
       return resource;
     }
   }
@@ -337,11 +512,8 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     // when writing files.
     SettableCacheEvent cacheEvent = SettableCacheEvent.obtain().setCacheKey(key);
     mCacheEventListener.onWriteAttempt(cacheEvent);
-    String resourceId;
-    synchronized (mLock) {
-      // for multiple resource ids associated with the same image, we only write one file
-      resourceId = CacheKeyUtil.getFirstResourceId(key);
-    }
+    // for multiple resource ids associated with the same image, we only write one file
+    String resourceId = CacheKeyUtil.getFirstResourceId(key, mResourceIdHasher);
     cacheEvent.setResourceId(resourceId);
     try {
       // getting the file is synchronized
@@ -373,11 +545,16 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     synchronized (mLock) {
       try {
         String resourceId = null;
-        List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
+        List<String> resourceIds = CacheKeyUtil.getResourceIds(key, mResourceIdHasher);
         for (int i = 0; i < resourceIds.size(); i++) {
           resourceId = resourceIds.get(i);
           mStorage.remove(resourceId);
+          mStorageGeneration++;
           mResourceIndex.remove(resourceId);
+          if (mEvictionQueue != null) {
+            mPendingTouches.remove(resourceId);
+            mEvictionQueue.remove(resourceId);
+          }
         }
       } catch (IOException e) {
         mCacheErrorLogger.logError(
@@ -407,7 +584,12 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
           long entryAgeMs = Math.max(1, Math.abs(now - entry.getTimestamp()));
           if (entryAgeMs >= cacheExpirationMs) {
             long entryRemovedSize = mStorage.remove(entry);
+            mStorageGeneration++;
             mResourceIndex.remove(entry.getId());
+            if (mEvictionQueue != null) {
+              mPendingTouches.remove(entry.getId());
+              mEvictionQueue.remove(entry.getId());
+            }
             if (entryRemovedSize > 0) {
               itemsRemovedCount++;
               itemsRemovedSize += entryRemovedSize;
@@ -447,6 +629,10 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
    * <p>This method uses mLock for synchronization purposes.
    */
   private void maybeEvictFilesInCacheDir() throws IOException {
+    if (mEvictionQueue != null) {
+      maybeEvictIncrementally();
+      return;
+    }
     synchronized (mLock) {
       boolean calculatedRightNow = maybeUpdateFileCacheSize();
 
@@ -493,7 +679,12 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
         break;
       }
       long deletedSize = mStorage.remove(entry);
+      mStorageGeneration++;
       mResourceIndex.remove(entry.getId());
+      if (mEvictionQueue != null) {
+        mPendingTouches.remove(entry.getId());
+        mEvictionQueue.remove(entry.getId());
+      }
       if (deletedSize > 0) {
         itemCount++;
         sumItemSizes += deletedSize;
@@ -512,6 +703,134 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     mStorage.purgeUnexpectedResources();
   }
 
+  /**
+   * Incremental version of {@link #maybeEvictFilesInCacheDir()}, relying on the size kept up to
+   * date along with the eviction queue instead of recalculating it before evicting. The size is
+   * recalculated on the background executor when needed, nothing is evicted until it is known.
+   */
+  private void maybeEvictIncrementally() {
+    long desiredSize;
+    synchronized (mLock) {
+      if (shouldUpdateFileCacheSize()) {
+        updateFileCacheSizeInBackground();
+      }
+      if (!mCacheStats.isInitialized()) {
+        return;
+      }
+      updateFileCacheSizeLimit();
+      if (mCacheStats.getSize() <= mCacheSizeLimit) {
+        return;
+      }
+      desiredSize = mCacheSizeLimit * 9 / 10; // 90%
+    }
+    evictIncrementally(desiredSize, CacheEventListener.EvictionReason.CACHE_FULL);
+  }
+
+  /**
+   * Recalculates the size of the cache and the eviction queue on the background executor. The
+   * storage is listed without the lock, and listed again with it if it changed in the meantime.
+   */
+  private void updateFileCacheSizeInBackground() {
+    if (!mIsUpdatingSizeInBackground.compareAndSet(false, true)) {
+      return;
+    }
+    mBackgroundExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              int storageGeneration;
+              synchronized (mLock) {
+                storageGeneration = mStorageGeneration;
+              }
+              Collection<DiskStorage.Entry> entries = mStorage.getEntries();
+              synchronized (mLock) {
+                if (storageGeneration == mStorageGeneration) {
+                  updateFileCacheSizeAndIndex(entries);
+                } else {
+                  maybeUpdateFileCacheSizeAndIndex();
+                }
+              }
+            } catch (IOException ioe) {
+              mCacheErrorLogger.logError(
+                  CacheErrorLogger.CacheErrorCategory.GENERIC_IO,
+                  TAG,
+                  "calcFileCacheSize: " + ioe.getMessage(),
+                  ioe);
+            } finally {
+              mIsUpdatingSizeInBackground.set(false);
+            }
+          }
+        });
+  }
+
+  /**
+   * Evicts the entries at the head of the eviction queue until the cache size is below the desired
+   * size. The lock is only held while evicting each batch of entries, so that inserts can proceed
+   * between batches. Only one thread evicts at a time, the others proceed without waiting.
+   *
+   * <p>The entries are deleted with the lock held, so that an entry written again after it was
+   * picked is not deleted. An entry read after it was picked is put back in the queue instead.
+   */
+  private void evictIncrementally(long desiredSize, CacheEventListener.EvictionReason reason) {
+    if (!mIsEvicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long cacheSizeBeforeClearance = mCacheStats.getSize();
+      long sumItemSizes = 0L;
+      List<DiskStorage.Entry> batch = new ArrayList<>(EVICTION_BATCH_SIZE);
+      while (mCacheStats.getSize() > desiredSize) {
+        synchronized (mLock) {
+          EvictionQueue evictionQueue = Preconditions.checkNotNull(mEvictionQueue);
+          drainPendingTouches();
+          evictionQueue.pollFirst(batch, EVICTION_BATCH_SIZE);
+          if (batch.isEmpty()) {
+            // the queue is out of sync with the storage, force a recalculation on the next insert
+            mCacheStats.reset();
+            break;
+          }
+          long now = mClock.now();
+          for (int i = 0; i < batch.size(); i++) {
+            DiskStorage.Entry entry = batch.get(i);
+            Long touchTime = mPendingTouches.remove(entry.getId());
+            if (touchTime != null) {
+              // read since the queue was reordered, it is not the next entry to evict anymore
+              evictionQueue.put(
+                  entry.getId(), entry.getSize(), touchTime, entry.getResource(), now);
+              continue;
+            }
+            long deletedSize = mStorage.remove(entry.getId());
+            mStorageGeneration++;
+            mResourceIndex.remove(entry.getId());
+            if (deletedSize > 0) {
+              sumItemSizes += deletedSize;
+              mCacheStats.increment(-deletedSize, -1);
+              SettableCacheEvent cacheEvent =
+                  SettableCacheEvent.obtain()
+                      .setResourceId(entry.getId())
+                      .setEvictionReason(reason)
+                      .setItemSize(deletedSize)
+                      .setCacheSize(cacheSizeBeforeClearance - sumItemSizes)
+                      .setCacheLimit(desiredSize);
+              mCacheEventListener.onEviction(cacheEvent);
+              cacheEvent.recycle();
+            }
+          }
+        }
+        batch.clear();
+      }
+    } catch (IOException ioe) {
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.EVICTION,
+          TAG,
+          "evictIncrementally: " + ioe.getMessage(),
+          ioe);
+    } finally {
+      mIsEvicting.set(false);
+    }
+  }
+
   /**
    * If any file timestamp is in the future (beyond now + FUTURE_TIMESTAMP_THRESHOLD_MS), we will
    * set its effective timestamp to 0 (the beginning of unix time), thus sending it to the head of
@@ -568,7 +887,13 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     synchronized (mLock) {
       try {
         mStorage.clearAll();
+        mStorageGeneration++;
         mResourceIndex.clear();
+        if (mEvictionQueue != null) {
+          mPendingTouches.clear();
+          mPendingRemovals.clear();
+          mEvictionQueue.clear();
+        }
         mCacheEventListener.onCleared();
       } catch (IOException | NullPointerException e) {
         mCacheErrorLogger.logError(
@@ -580,54 +905,52 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
 
   @Override
   public boolean hasKeySync(CacheKey key) {
-    synchronized (mLock) {
-      String resourceId = null;
-      List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-      for (int i = 0; i < resourceIds.size(); i++) {
-        resourceId = resourceIds.get(i);
-        if (mResourceIndex.contains(resourceId)) {
-          return true;
-        }
+    String resourceId = null;
+    List<String> resourceIds = CacheKeyUtil.getResourceIds(key, mResourceIdHasher);
+    for (int i = 0; i < resourceIds.size(); i++) {
+      resourceId = resourceIds.get(i);
+      if (mResourceIndex.contains(resourceId)) {
+        return true;
       }
-      return false;
     }
+    return false;
   }
 
   @Override
   public boolean hasKey(final CacheKey key) {
-    synchronized (mLock) {
-      if (hasKeySync(key)) {
-        return true;
-      }
-      try {
-        String resourceId = null;
-        List<String> resourceIds = CacheKeyUtil.getResourceIds(key);
-        for (int i = 0; i < resourceIds.size(); i++) {
-          resourceId = resourceIds.get(i);
-          if (mStorage.contains(resourceId, key)) {
-            mResourceIndex.add(resourceId);
-            return true;
-          }
+    if (hasKeySync(key)) {
+      return true;
+    }
+    try {
+      String resourceId = null;
+      List<String> resourceIds = CacheKeyUtil.getResourceIds(key, mResourceIdHasher);
+      for (int i = 0; i < resourceIds.size(); i++) {
+        resourceId = resourceIds.get(i);
+        if (mStorage.contains(resourceId, key)) {
+          mResourceIndex.add(resourceId);
+          return true;
         }
-        return false;
-      } catch (IOException e) {
-        return false;
       }
+      return false;
+    } catch (IOException e) {
+      return false;
     }
   }
 
   @Override
   public void trimToMinimum() {
+    double trimRatio;
     synchronized (mLock) {
       maybeUpdateFileCacheSize();
       long cacheSize = mCacheStats.getSize();
       if (mCacheSizeLimitMinimum <= 0 || cacheSize <= 0 || cacheSize < mCacheSizeLimitMinimum) {
         return;
       }
-      double trimRatio = 1 - (double) mCacheSizeLimitMinimum / (double) cacheSize;
-      if (trimRatio > TRIMMING_LOWER_BOUND) {
-        trimBy(trimRatio);
-      }
+      trimRatio = 1 - (double) mCacheSizeLimitMinimum / (double) cacheSize;
+    }
+    // trimBy takes the lock itself, which lets the incremental eviction release it between batches
+    if (trimRatio > TRIMMING_LOWER_BOUND) {
+      trimBy(trimRatio);
     }
   }
 
@@ -637,6 +960,19 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
   }
 
   private void trimBy(final double trimRatio) {
+    if (mEvictionQueue != null) {
+      long newMaxBytesInFiles;
+      synchronized (mLock) {
+        // Force update the ground truth if we are about to evict
+        mCacheStats.reset();
+        maybeUpdateFileCacheSize();
+        long cacheSize = mCacheStats.getSize();
+        newMaxBytesInFiles = cacheSize - (long) (trimRatio * cacheSize);
+      }
+      evictIncrementally(
+          newMaxBytesInFiles, CacheEventListener.EvictionReason.CACHE_MANAGER_TRIMMED);
+      return;
+    }
     synchronized (mLock) {
       try {
         // Force update the ground truth if we are about to evict
@@ -660,17 +996,37 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
    */
   @GuardedBy("mLock")
   private boolean maybeUpdateFileCacheSize() {
-    long now = mClock.now();
-    if ((!mCacheStats.isInitialized())
-        || mCacheSizeLastUpdateTime == UNINITIALIZED
-        || (now - mCacheSizeLastUpdateTime) > FILECACHE_SIZE_UPDATE_PERIOD_MS) {
+    if (shouldUpdateFileCacheSize()) {
       return maybeUpdateFileCacheSizeAndIndex();
     }
     return false;
   }
 
+  @GuardedBy("mLock")
+  private boolean shouldUpdateFileCacheSize() {
+    return !mCacheStats.isInitialized()
+        || mCacheSizeLastUpdateTime == UNINITIALIZED
+        || (mClock.now() - mCacheSizeLastUpdateTime) > FILECACHE_SIZE_UPDATE_PERIOD_MS;
+  }
+
   @GuardedBy("mLock")
   private boolean maybeUpdateFileCacheSizeAndIndex() {
+    try {
+      updateFileCacheSizeAndIndex(mStorage.getEntries());
+      return true;
+    } catch (IOException ioe) {
+      mCacheErrorLogger.logError(
+          CacheErrorLogger.CacheErrorCategory.GENERIC_IO,
+          TAG,
+          "calcFileCacheSize: " + ioe.getMessage(),
+          ioe);
+      return false;
+    }
+  }
+
+  /** Updates the size of the cache, the index and the eviction queue from the listed entries. */
+  @GuardedBy("mLock")
+  private void updateFileCacheSizeAndIndex(Collection<DiskStorage.Entry> entries) {
     long size = 0;
     int count = 0;
     boolean foundFutureTimestamp = false;
@@ -687,53 +1043,47 @@ public class DiskStorageCache implements FileCache, DiskTrimmable {
     } else {
       tempResourceIndex = null;
     }
-    try {
-      Collection<DiskStorage.Entry> entries = mStorage.getEntries();
-      for (DiskStorage.Entry entry : entries) {
-        count++;
-        size += entry.getSize();
-
-        // Check if any files have a future timestamp, beyond our threshold
-        if (entry.getTimestamp() > timeThreshold) {
-          foundFutureTimestamp = true;
-          numFutureFiles++;
-          sizeFutureFiles += entry.getSize();
-          maxTimeDelta = Math.max(entry.getTimestamp() - now, maxTimeDelta);
-        } else if (mIndexPopulateAtStartupEnabled) {
-          Preconditions.checkNotNull(tempResourceIndex);
-          tempResourceIndex.add(entry.getId());
-        }
-      }
-      if (foundFutureTimestamp) {
-        mCacheErrorLogger.logError(
-            CacheErrorLogger.CacheErrorCategory.READ_INVALID_ENTRY,
-            TAG,
-            "Future timestamp found in "
-                + numFutureFiles
-                + " files , with a total size of "
-                + sizeFutureFiles
-                + " bytes, and a maximum time delta of "
-                + maxTimeDelta
-                + "ms",
-            null);
-      }
-      if (mCacheStats.getCount() != count || mCacheStats.getSize() != size) {
-        if (mIndexPopulateAtStartupEnabled && mResourceIndex != tempResourceIndex) {
-          Preconditions.checkNotNull(tempResourceIndex);
-          mResourceIndex.clear();
-          mResourceIndex.addAll(tempResourceIndex);
-        }
-        mCacheStats.set(size, count);
+    for (DiskStorage.Entry entry : entries) {
+      count++;
+      size += entry.getSize();
+
+      // Check if any files have a future timestamp, beyond our threshold
+      if (entry.getTimestamp() > timeThreshold) {
+        foundFutureTimestamp = true;
+        numFutureFiles++;
+        sizeFutureFiles += entry.getSize();
+        maxTimeDelta = Math.max(entry.getTimestamp() - now, maxTimeDelta);
+      } else if (mIndexPopulateAtStartupEnabled) {
+        Preconditions.checkNotNull(tempResourceIndex);
+        tempResourceIndex.add(entry.getId());
       }
-    } catch (IOException ioe) {
+    }
+    if (foundFutureTimestamp) {
       mCacheErrorLogger.logError(
-          CacheErrorLogger.CacheErrorCategory.GENERIC_IO,
+          CacheErrorLogger.CacheErrorCategory.READ_INVALID_ENTRY,
           TAG,
-          "calcFileCacheSize: " + ioe.getMessage(),
-          ioe);
-      return false;
+          "Future timestamp found in "
+              + numFutureFiles
+              + " files , with a total size of "
+              + sizeFutureFiles
+              + " bytes, and a maximum time delta of "
+              + maxTimeDelta
+              + "ms",
+          null);
+    }
+    if (mEvictionQueue != null) {
+      mEvictionQueue.reset(entries, now);
+      // the reads since the entries were listed are newer
+      drainPendingTouches();
+    }
+    if (mCacheStats.getCount() != count || mCacheStats.getSize() != size) {
+      if (mIndexPopulateAtStartupEnabled && mResourceIndex != tempResourceIndex) {
+        Preconditions.checkNotNull(tempResourceIndex);
+        mResourceIndex.clear();
+        mResourceIndex.addAll(tempResourceIndex);
+      }
+      mCacheStats.set(size, count);
     }
     mCacheSizeLastUpdateTime = now;
-    return true;
   }
 }
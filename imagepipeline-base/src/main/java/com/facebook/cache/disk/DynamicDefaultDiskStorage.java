@@ -19,6 +19,7 @@ import com.facebook.infer.annotation.Nullsafe;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.Executor;
 import javax.annotation.Nullable;
 
 /** A supplier of a DiskStorage concrete implementation. */
@@ -30,6 +31,7 @@ public class DynamicDefaultDiskStorage implements DiskStorage {
   private final Supplier<File> mBaseDirectoryPathSupplier;
   private final String mBaseDirectoryName;
   private final CacheErrorLogger mCacheErrorLogger;
+  private final @Nullable Executor mDeferredTouchExecutor;
 
   @VisibleForTesting volatile State mCurrentState;
 
@@ -51,10 +53,24 @@ public class DynamicDefaultDiskStorage implements DiskStorage {
       Supplier<File> baseDirectoryPathSupplier,
       String baseDirectoryName,
       CacheErrorLogger cacheErrorLogger) {
+    this(version, baseDirectoryPathSupplier, baseDirectoryName, cacheErrorLogger, null);
+  }
+
+  /**
+   * @param deferredTouchExecutor if not null, the executor on which the access times of the files
+   *     are written in batches, see {@link DefaultDiskStorage}
+   */
+  public DynamicDefaultDiskStorage(
+      int version,
+      Supplier<File> baseDirectoryPathSupplier,
+      String baseDirectoryName,
+      CacheErrorLogger cacheErrorLogger,
+      @Nullable Executor deferredTouchExecutor) {
     mVersion = version;
     mCacheErrorLogger = cacheErrorLogger;
     mBaseDirectoryPathSupplier = baseDirectoryPathSupplier;
     mBaseDirectoryName = baseDirectoryName;
+    mDeferredTouchExecutor = deferredTouchExecutor;
     mCurrentState = new State(null, null);
   }
 
@@ -178,7 +194,9 @@ public class DynamicDefaultDiskStorage implements DiskStorage {
   private void createStorage() throws IOException {
     File rootDirectory = new File(mBaseDirectoryPathSupplier.get(), mBaseDirectoryName);
     createRootDirectoryIfNecessary(rootDirectory);
-    DiskStorage storage = new DefaultDiskStorage(rootDirectory, mVersion, mCacheErrorLogger);
+    DiskStorage storage =
+        new DefaultDiskStorage(
+            rootDirectory, mVersion, mCacheErrorLogger, mDeferredTouchExecutor);
     mCurrentState = new State(rootDirectory, storage);
   }
 
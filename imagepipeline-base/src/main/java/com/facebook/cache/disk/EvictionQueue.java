@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.disk;
+
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * In-memory index of the entries of a {@link DiskStorage}, ordered by eviction priority.
+ *
+ * <p>It lets the cache pick the next entries to evict without listing and sorting the whole
+ * storage. The order is given by the {@link EntryEvictionComparator} at construction, which must
+ * not change as time passes, as is the case for the comparators shipped with Fresco. Entries with
+ * a timestamp in the future are given a timestamp of 0, so that they are evicted first.
+ */
+@NotThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+class EvictionQueue {
+
+  private final Map<String, IndexedEntry> mEntries = new HashMap<>();
+  private final TreeSet<IndexedEntry> mQueue;
+  private final long mFutureTimestampThresholdMs;
+
+  EvictionQueue(EntryEvictionComparator comparator, long futureTimestampThresholdMs) {
+    mQueue = new TreeSet<>(new TieBreakingComparator(comparator));
+    mFutureTimestampThresholdMs = futureTimestampThresholdMs;
+  }
+
+  /** Replaces the content of the queue with the given entries. */
+  void reset(Collection<DiskStorage.Entry> entries, long now) {
+    clear();
+    for (DiskStorage.Entry entry : entries) {
+      put(entry.getId(), entry.getSize(), entry.getTimestamp(), entry.getResource(), now);
+    }
+  }
+
+  /**
+   * Adds an entry, or replaces the entry with the same id.
+   *
+   * @return the replaced entry, if any
+   */
+  @Nullable
+  DiskStorage.Entry put(String id, long size, long timestamp, BinaryResource resource, long now) {
+    IndexedEntry previous = mEntries.remove(id);
+    if (previous != null) {
+      mQueue.remove(previous);
+    }
+    IndexedEntry entry = new IndexedEntry(id, size, effectiveTimestamp(timestamp, now), resource);
+    mEntries.put(id, entry);
+    mQueue.add(entry);
+    return previous;
+  }
+
+  /** Updates the timestamp of the entry, if present. */
+  void touch(String id, long now) {
+    IndexedEntry entry = mEntries.get(id);
+    if (entry != null) {
+      mQueue.remove(entry);
+      entry.mTimestamp = now;
+      mQueue.add(entry);
+    }
+  }
+
+  boolean contains(String id) {
+    return mEntries.containsKey(id);
+  }
+
+  void remove(String id) {
+    IndexedEntry entry = mEntries.remove(id);
+    if (entry != null) {
+      mQueue.remove(entry);
+    }
+  }
+
+  /** Removes up to {@code maxCount} entries to evict and adds them to {@code entries}. */
+  void pollFirst(List<DiskStorage.Entry> entries, int maxCount) {
+    for (int i = 0; i < maxCount; i++) {
+      IndexedEntry entry = mQueue.pollFirst();
+      if (entry == null) {
+        return;
+      }
+      mEntries.remove(entry.getId());
+      entries.add(entry);
+    }
+  }
+
+  int size() {
+    return mQueue.size();
+  }
+
+  void clear() {
+    mEntries.clear();
+    mQueue.clear();
+  }
+
+  private long effectiveTimestamp(long timestamp, long now) {
+    return timestamp > now + mFutureTimestampThresholdMs ? 0 : timestamp;
+  }
+
+  private static class IndexedEntry implements DiskStorage.Entry {
+
+    private final String mId;
+    private final long mSize;
+    private final BinaryResource mResource;
+    private long mTimestamp;
+
+    IndexedEntry(String id, long size, long timestamp, BinaryResource resource) {
+      mId = id;
+      mSize = size;
+      mTimestamp = timestamp;
+      mResource = resource;
+    }
+
+    @Override
+    public String getId() {
+      return mId;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return mTimestamp;
+    }
+
+    @Override
+    public long getSize() {
+      return mSize;
+    }
+
+    @Override
+    public BinaryResource getResource() {
+      return mResource;
+    }
+  }
+
+  /** Orders the entries the comparator considers equal by id, as they must be kept in the set. */
+  private static class TieBreakingComparator implements Comparator<IndexedEntry> {
+
+    private final EntryEvictionComparator mComparator;
+
+    TieBreakingComparator(EntryEvictionComparator comparator) {
+      mComparator = comparator;
+    }
+
+    @Override
+    public int compare(IndexedEntry lhs, IndexedEntry rhs) {
+      int result = mComparator.compare(lhs, rhs);
+      return result != 0 ? result : lhs.getId().compareTo(rhs.getId());
+    }
+  }
+}
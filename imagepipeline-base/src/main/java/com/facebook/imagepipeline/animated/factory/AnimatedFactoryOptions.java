@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.animated.factory;
+
+import com.facebook.infer.annotation.Nullsafe;
+import java.io.File;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/** Options of the {@link AnimatedFactory}, set up from the image pipeline experiments. */
+@Immutable
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class AnimatedFactoryOptions {
+
+  private final boolean mDownscaleFrameToDrawableDimensions;
+  private final int mAnimationFrameBudgetInBytes;
+  private final boolean mDecodeAnimationFramesByDeadline;
+  @Nullable private final File mAnimationFrameSpillDirectory;
+  private final long mAnimationFrameSpillMaxSizeInBytes;
+
+  private AnimatedFactoryOptions(Builder builder) {
+    mDownscaleFrameToDrawableDimensions = builder.mDownscaleFrameToDrawableDimensions;
+    mAnimationFrameBudgetInBytes = builder.mAnimationFrameBudgetInBytes;
+    mDecodeAnimationFramesByDeadline = builder.mDecodeAnimationFramesByDeadline;
+    mAnimationFrameSpillDirectory = builder.mAnimationFrameSpillDirectory;
+    mAnimationFrameSpillMaxSizeInBytes = builder.mAnimationFrameSpillMaxSizeInBytes;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public boolean shouldDownscaleFrameToDrawableDimensions() {
+    return mDownscaleFrameToDrawableDimensions;
+  }
+
+  /** @return the memory budget shared by the frames of all animations, or 0 if not budgeted */
+  public int getAnimationFrameBudgetInBytes() {
+    return mAnimationFrameBudgetInBytes;
+  }
+
+  /** @return whether the frames of all animations are decoded earliest deadline first */
+  public boolean shouldDecodeAnimationFramesByDeadline() {
+    return mDecodeAnimationFramesByDeadline;
+  }
+
+  /** @return the directory of the files holding the frames of animations, or null if not used */
+  @Nullable
+  public File getAnimationFrameSpillDirectory() {
+    return mAnimationFrameSpillDirectory;
+  }
+
+  public long getAnimationFrameSpillMaxSizeInBytes() {
+    return mAnimationFrameSpillMaxSizeInBytes;
+  }
+
+  public static class Builder {
+
+    private boolean mDownscaleFrameToDrawableDimensions;
+    private int mAnimationFrameBudgetInBytes;
+    private boolean mDecodeAnimationFramesByDeadline;
+    @Nullable private File mAnimationFrameSpillDirectory;
+    private long mAnimationFrameSpillMaxSizeInBytes;
+
+    private Builder() {}
+
+    public Builder setDownscaleFrameToDrawableDimensions(
+        boolean downscaleFrameToDrawableDimensions) {
+      mDownscaleFrameToDrawableDimensions = downscaleFrameToDrawableDimensions;
+      return this;
+    }
+
+    public Builder setAnimationFrameBudgetInBytes(int animationFrameBudgetInBytes) {
+      mAnimationFrameBudgetInBytes = animationFrameBudgetInBytes;
+      return this;
+    }
+
+    public Builder setDecodeAnimationFramesByDeadline(boolean decodeAnimationFramesByDeadline) {
+      mDecodeAnimationFramesByDeadline = decodeAnimationFramesByDeadline;
+      return this;
+    }
+
+    public Builder setAnimationFrameSpill(
+        @Nullable File animationFrameSpillDirectory, long animationFrameSpillMaxSizeInBytes) {
+      mAnimationFrameSpillDirectory = animationFrameSpillDirectory;
+      mAnimationFrameSpillMaxSizeInBytes = animationFrameSpillMaxSizeInBytes;
+      return this;
+    }
+
+    public AnimatedFactoryOptions build() {
+      return new AnimatedFactoryOptions(this);
+    }
+  }
+}
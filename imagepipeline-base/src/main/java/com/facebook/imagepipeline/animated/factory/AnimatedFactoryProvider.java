@@ -8,6 +8,7 @@
 package com.facebook.imagepipeline.animated.factory;
 
 import com.facebook.cache.common.CacheKey;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 import com.facebook.imagepipeline.cache.CountingMemoryCache;
 import com.facebook.imagepipeline.core.ExecutorSupplier;
@@ -51,4 +52,39 @@ public class AnimatedFactoryProvider {
     }
     return sImpl;
   }
+
+  public static AnimatedFactory getAnimatedFactory(
+      PlatformBitmapFactory platformBitmapFactory,
+      ExecutorSupplier executorSupplier,
+      CountingMemoryCache<CacheKey, CloseableImage> backingCache,
+      MemoryTrimmableRegistry memoryTrimmableRegistry,
+      AnimatedFactoryOptions options) {
+    if (!sImplLoaded) {
+      try {
+        final Class<?> clazz =
+            Class.forName("com.facebook.fresco.animation.factory.AnimatedFactoryV2Impl");
+        final Constructor<?> constructor =
+            clazz.getConstructor(
+                PlatformBitmapFactory.class,
+                ExecutorSupplier.class,
+                CountingMemoryCache.class,
+                MemoryTrimmableRegistry.class,
+                AnimatedFactoryOptions.class);
+        sImpl =
+            (AnimatedFactory)
+                constructor.newInstance(
+                    platformBitmapFactory,
+                    executorSupplier,
+                    backingCache,
+                    memoryTrimmableRegistry,
+                    options);
+      } catch (Throwable e) {
+        // Head in the sand
+      }
+      if (sImpl != null) {
+        sImplLoaded = true;
+      }
+    }
+    return sImpl;
+  }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.Arrays;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * TinyLFU style admission filter, deciding whether a key is popular enough to be written to a
+ * cache.
+ *
+ * <p>The first occurrence of a key only sets its bits in a doorkeeper Bloom filter, further
+ * occurrences are counted in a {@link FrequencySketch}. A key is admitted once it has been seen at
+ * least {@code minFrequency} times since the last aging of the sketch, so that images seen only
+ * once, e.g. while scrolling through an infinite feed, do not evict frequently used ones. Every
+ * access counts towards the sample size of the sketch, and the filter ages the sketch and clears
+ * the doorkeeper once per sample.
+ */
+@ThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class CacheAdmissionFilter {
+
+  public static final int DEFAULT_MIN_FREQUENCY = 2;
+
+  private static final int DOORKEEPER_BITS_PER_KEY = 8;
+  private static final int DOORKEEPER_HASHES = 3;
+
+  private final FrequencySketch mSketch;
+  private final long[] mDoorkeeper;
+  private final int mDoorkeeperMask;
+  private final int mMinFrequency;
+  private int mAccesses;
+
+  public CacheAdmissionFilter(int expectedKeys) {
+    this(expectedKeys, DEFAULT_MIN_FREQUENCY);
+  }
+
+  /**
+   * @param expectedKeys number of distinct keys the filter should tell apart, usually a few times
+   *     the number of entries the cache can hold
+   * @param minFrequency number of occurrences after which a key is admitted
+   */
+  public CacheAdmissionFilter(int expectedKeys, int minFrequency) {
+    if (minFrequency < 1 || minFrequency > FrequencySketch.MAX_FREQUENCY + 1) {
+      throw new IllegalArgumentException("Invalid minimum frequency: " + minFrequency);
+    }
+    mSketch = new FrequencySketch(expectedKeys);
+    // the doorkeeper holds all the distinct keys of a sample
+    long doorkeeperBits = (long) mSketch.getSampleSize() * DOORKEEPER_BITS_PER_KEY;
+    int bits = 64;
+    while (bits < doorkeeperBits && bits < (1 << 30)) {
+      bits <<= 1;
+    }
+    mDoorkeeper = new long[bits / 64];
+    mDoorkeeperMask = bits - 1;
+    mMinFrequency = minFrequency;
+  }
+
+  /** Records an occurrence of the key. */
+  public synchronized void recordAccess(Object key) {
+    int hash = spread(key.hashCode());
+    if (putInDoorkeeper(hash)) {
+      mSketch.increment(hash);
+    }
+    if (++mAccesses >= mSketch.getSampleSize()) {
+      mSketch.age();
+      Arrays.fill(mDoorkeeper, 0L);
+      mAccesses = 0;
+    }
+  }
+
+  /** Returns whether the key has been seen often enough to be cached. */
+  public boolean shouldAdmit(Object key) {
+    return getFrequency(key) >= mMinFrequency;
+  }
+
+  /** Returns the estimated number of recent occurrences of the key. */
+  public synchronized int getFrequency(Object key) {
+    int hash = spread(key.hashCode());
+    if (!isInDoorkeeper(hash)) {
+      return 0;
+    }
+    return 1 + mSketch.frequency(hash);
+  }
+
+  /** Sets the doorkeeper bits of the hash and returns true if they were all set already. */
+  private boolean putInDoorkeeper(int hash) {
+    boolean present = true;
+    for (int i = 0; i < DOORKEEPER_HASHES; i++) {
+      int bit = doorkeeperBit(hash, i);
+      long mask = 1L << (bit & 63);
+      if ((mDoorkeeper[bit >>> 6] & mask) == 0) {
+        present = false;
+        mDoorkeeper[bit >>> 6] |= mask;
+      }
+    }
+    return present;
+  }
+
+  private boolean isInDoorkeeper(int hash) {
+    for (int i = 0; i < DOORKEEPER_HASHES; i++) {
+      int bit = doorkeeperBit(hash, i);
+      if ((mDoorkeeper[bit >>> 6] & (1L << (bit & 63))) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int doorkeeperBit(int hash, int i) {
+    // double hashing, the second hash being odd so that all the probes differ
+    int secondHash = (Integer.rotateLeft(hash, 16) * 0x85ebca6b) | 1;
+    return (hash + i * secondHash) & mDoorkeeperMask;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
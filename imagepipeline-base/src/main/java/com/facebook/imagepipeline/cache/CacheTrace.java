@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import com.facebook.infer.annotation.Nullsafe;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Anonymized trace of cache accesses, which can be replayed offline against different cache
+ * implementations and parameters.
+ *
+ * <p>Events only contain a 64 bit hash of the cache key, so that traces recorded in production do
+ * not leak the URIs of the images.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public final class CacheTrace {
+
+  public static final int LAYER_BITMAP_MEMORY = 0;
+  public static final int LAYER_ENCODED_MEMORY = 1;
+  public static final int LAYER_STAGING_AREA = 2;
+  public static final int LAYER_DISK = 3;
+
+  public static final int TYPE_HIT = 0;
+  public static final int TYPE_MISS = 1;
+  public static final int TYPE_PUT = 2;
+
+  /** Size of the events of which the size is not known. */
+  public static final int UNKNOWN_SIZE = 0;
+
+  private static final int MAGIC = 0x46435452; // "FCTR"
+  private static final int VERSION = 1;
+
+  private CacheTrace() {}
+
+  /** A single cache access. */
+  @Immutable
+  public static final class Event {
+
+    public final long timestampMs;
+    public final int layer;
+    public final int type;
+    public final long keyHash;
+    public final int sizeInBytes;
+
+    public Event(long timestampMs, int layer, int type, long keyHash, int sizeInBytes) {
+      this.timestampMs = timestampMs;
+      this.layer = layer;
+      this.type = type;
+      this.keyHash = keyHash;
+      this.sizeInBytes = sizeInBytes;
+    }
+
+    /** Returns true if this event is a lookup, i.e. a hit or a miss. */
+    public boolean isLookup() {
+      return type == TYPE_HIT || type == TYPE_MISS;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof Event)) {
+        return false;
+      }
+      Event other = (Event) o;
+      return timestampMs == other.timestampMs
+          && layer == other.layer
+          && type == other.type
+          && keyHash == other.keyHash
+          && sizeInBytes == other.sizeInBytes;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int) (timestampMs ^ (timestampMs >>> 32));
+      result = 31 * result + layer;
+      result = 31 * result + type;
+      result = 31 * result + (int) (keyHash ^ (keyHash >>> 32));
+      return 31 * result + sizeInBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "Event{t="
+          + timestampMs
+          + ", layer="
+          + layer
+          + ", type="
+          + type
+          + ", key="
+          + Long.toHexString(keyHash)
+          + ", size="
+          + sizeInBytes
+          + "}";
+    }
+  }
+
+  /** Writes the events in a compact binary format that can be read by {@link #read}. */
+  public static void write(List<Event> events, OutputStream outputStream) throws IOException {
+    DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(events.size());
+    for (int i = 0; i < events.size(); i++) {
+      Event event = events.get(i);
+      out.writeLong(event.timestampMs);
+      out.writeByte(event.layer);
+      out.writeByte(event.type);
+      out.writeLong(event.keyHash);
+      out.writeInt(event.sizeInBytes);
+    }
+    out.flush();
+  }
+
+  /** Reads events written by {@link #write}. */
+  public static List<Event> read(InputStream inputStream) throws IOException {
+    DataInputStream in = new DataInputStream(inputStream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a cache trace");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported cache trace version: " + version);
+    }
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid event count: " + count);
+    }
+    List<Event> events = new ArrayList<>(Math.min(count, 1 << 16));
+    for (int i = 0; i < count; i++) {
+      long timestampMs = in.readLong();
+      int layer = in.readByte();
+      int type = in.readByte();
+      long keyHash = in.readLong();
+      int sizeInBytes = in.readInt();
+      events.add(new Event(timestampMs, layer, type, keyHash, sizeInBytes));
+    }
+    return events;
+  }
+}
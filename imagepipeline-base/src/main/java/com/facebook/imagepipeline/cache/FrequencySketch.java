@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import com.facebook.common.internal.Preconditions;
+import com.facebook.infer.annotation.Nullsafe;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Count-min sketch estimating how often keys were seen recently.
+ *
+ * <p>The sketch has {@link #DEPTH} rows of saturating 4 bit counters, packed two per byte. A key
+ * increments one counter per row and its frequency is the smallest of those counters, which may over-estimate but never
+ * under-estimate. The owner of the sketch calls {@link #age()} once per sample of occurrences, so
+ * that the sketch follows the recent popularity instead of the all-time one.
+ */
+@NotThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class FrequencySketch {
+
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final int DEPTH = 4;
+  private static final int MIN_WIDTH = 16;
+  private static final int SAMPLE_SIZE_FACTOR = 10;
+  private static final int[] SEEDS = {0x97cb3127, 0xb2a4c3f1, 0x6a09e667, 0x3c6ef373};
+
+  // two counters per byte, the counter at an even index in the low 4 bits
+  private final byte[][] mCounters;
+  private final int mWidthMask;
+  private final int mSampleSize;
+
+  /** @param expectedKeys number of distinct keys the sketch should tell apart */
+  public FrequencySketch(int expectedKeys) {
+    Preconditions.checkArgument(expectedKeys > 0);
+    int width = MIN_WIDTH;
+    while (width < expectedKeys && width < (1 << 30)) {
+      width <<= 1;
+    }
+    mCounters = new byte[DEPTH][width / 2];
+    mWidthMask = width - 1;
+    mSampleSize = SAMPLE_SIZE_FACTOR * width;
+  }
+
+  /** Records an occurrence of the key with the given hash. */
+  public void increment(int hash) {
+    int frequency = frequency(hash);
+    if (frequency < MAX_FREQUENCY) {
+      // conservative update: only the counters at the minimum are incremented
+      for (int row = 0; row < DEPTH; row++) {
+        int index = indexOf(hash, row);
+        if (getCounter(row, index) == frequency) {
+          mCounters[row][index >>> 1] += (byte) (1 << shiftOf(index));
+        }
+      }
+    }
+  }
+
+  /** Returns the estimated number of recent occurrences of the key, capped to MAX_FREQUENCY. */
+  public int frequency(int hash) {
+    int frequency = MAX_FREQUENCY;
+    for (int row = 0; row < DEPTH; row++) {
+      frequency = Math.min(frequency, getCounter(row, indexOf(hash, row)));
+    }
+    return frequency;
+  }
+
+  /** Returns the number of occurrences after which the sketch should be aged. */
+  public int getSampleSize() {
+    return mSampleSize;
+  }
+
+  /** Halves all the counters. */
+  public void age() {
+    for (byte[] row : mCounters) {
+      for (int i = 0; i < row.length; i++) {
+        // the low bit of the high counter must not be shifted into the low counter
+        row[i] = (byte) (((row[i] & 0xff) >>> 1) & 0x77);
+      }
+    }
+  }
+
+  private int getCounter(int row, int index) {
+    return (mCounters[row][index >>> 1] >>> shiftOf(index)) & 0x0f;
+  }
+
+  private static int shiftOf(int index) {
+    return (index & 1) << 2;
+  }
+
+  private int indexOf(int hash, int row) {
+    int h = hash * SEEDS[row];
+    h ^= h >>> 16;
+    return h & mWidthMask;
+  }
+}
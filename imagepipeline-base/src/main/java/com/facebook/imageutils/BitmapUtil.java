@@ -150,6 +150,17 @@ public final class BitmapUtil {
     }
   }
 
+  /**
+   * Returns whether the pixels of the bitmap are only in graphics memory, see {@link
+   * android.graphics.Bitmap.Config#HARDWARE}. Such bitmaps cannot be read or drawn on a software
+   * canvas.
+   */
+  public static boolean isHardwareBitmap(@Nullable Bitmap bitmap) {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+        && bitmap != null
+        && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+  }
+
   /**
    * Returns the amount of bytes used by a pixel in a specific {@link
    * android.graphics.Bitmap.Config}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.common;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the throughput of the {@link ResourceIdHasher}s on long CDN urls.
+ *
+ * <p>Run with the test classpath, e.g. from the IDE, as {@code ResourceIdHasherBenchmark
+ * [iterations]}. The sha1 hasher needs android.util.Base64, so run it where Robolectric or the
+ * android jar provides it.
+ */
+public class ResourceIdHasherBenchmark {
+
+  private static final int URL_COUNT = 1024;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+
+  public static void main(String[] args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    String[] urls = createCdnUrls(URL_COUNT, new Random(42));
+    long totalChars = 0;
+    for (String url : urls) {
+      totalChars += url.length();
+    }
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%d urls, %.1f chars on average",
+            urls.length,
+            totalChars / (double) URL_COUNT));
+
+    benchmark("murmur3x128", ResourceIdHashers.murmur3x128(), urls, iterations);
+    benchmark("sha1", ResourceIdHashers.sha1(), urls, iterations);
+  }
+
+  private static void benchmark(
+      String name, ResourceIdHasher hasher, String[] urls, int iterations) {
+    int checksum = 0;
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      checksum += hashAll(hasher, urls, iterations);
+    }
+    long bestNanos = Long.MAX_VALUE;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      long start = System.nanoTime();
+      checksum += hashAll(hasher, urls, iterations);
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+    }
+    long hashes = (long) iterations * urls.length;
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%-12s %8.1f ns/key %10.0f keys/s (checksum %d)",
+            name,
+            bestNanos / (double) hashes,
+            hashes * 1e9 / bestNanos,
+            checksum));
+  }
+
+  private static int hashAll(ResourceIdHasher hasher, String[] urls, int iterations) {
+    int checksum = 0;
+    for (int i = 0; i < iterations; i++) {
+      for (String url : urls) {
+        checksum += hasher.hash(url).charAt(0);
+      }
+    }
+    return checksum;
+  }
+
+  /** Urls shaped like the ones of image CDNs: long paths and signed query parameters. */
+  private static String[] createCdnUrls(int count, Random random) {
+    String[] urls = new String[count];
+    for (int i = 0; i < count; i++) {
+      StringBuilder url = new StringBuilder("https://scontent-");
+      url.append(randomToken(random, 4))
+          .append("-1.xx.fbcdn.net/v/t39.30808-6/")
+          .append(random.nextInt(Integer.MAX_VALUE))
+          .append('_')
+          .append(Math.abs(random.nextLong()))
+          .append("_n.jpg?stp=dst-jpg_p")
+          .append(320 + random.nextInt(720))
+          .append("x")
+          .append(320 + random.nextInt(720))
+          .append("&_nc_cat=")
+          .append(random.nextInt(120))
+          .append("&ccb=1-7&_nc_sid=")
+          .append(randomToken(random, 6))
+          .append("&_nc_ohc=")
+          .append(randomToken(random, 24))
+          .append("&_nc_ht=scontent.xx&oh=00_")
+          .append(randomToken(random, 40))
+          .append("&oe=")
+          .append(randomToken(random, 8));
+      urls[i] = url.toString();
+    }
+    return urls;
+  }
+
+  private static String randomToken(Random random, int length) {
+    final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    char[] token = new char[length];
+    for (int i = 0; i < length; i++) {
+      token[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+    }
+    return new String(token);
+  }
+}
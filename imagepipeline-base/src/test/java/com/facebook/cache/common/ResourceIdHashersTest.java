@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.facebook.cache.disk.DiskStorageCache;
+import com.facebook.common.util.SecureHashUtil;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResourceIdHashersTest {
+
+  private static final String URL =
+      "https://scontent.xx.fbcdn.net/v/t1.0-9/12345_678_n.jpg?_nc_cat=1&oh=abc";
+
+  @Test
+  public void testMurmur3ReferenceValues() {
+    // MurmurHash3_x64_128 of the UTF-16LE bytes, covering every tail length
+    assertMurmur3("00000000000000000000000000000000", "");
+    assertMurmur3("96a698500b4e98bdb278c9bfc754677d", "a");
+    assertMurmur3("548cfc581a584f48076f42dc4bbe30df", "abcd");
+    assertMurmur3("ef8464c206cb30eccc827c3e934dfa4b", "abcde");
+    assertMurmur3("a0c7451959a72be9a2e258a1ac2474a2", "abcdefg");
+    assertMurmur3("2803a5bc696daeb2a2b1eb7540d6d1fa", "abcdefgh");
+    assertMurmur3("1ac6acfe7367072eceacd682c36f564a", "abcdefghi");
+    assertMurmur3("e25680972c4fe55c054cabb295d0ec6f", URL);
+    assertMurmur3("2eae1d60f7616c14c49c355468905e4d", "\u00e9\u65e5\u672c\ud83d\ude00");
+  }
+
+  @Test
+  public void testMurmur3DistinguishesSimilarUrls() {
+    assertNotEquals(
+        ResourceIdHashers.murmur3x128().hash(URL + "1"),
+        ResourceIdHashers.murmur3x128().hash(URL + "2"));
+  }
+
+  @Test
+  public void testSha1MatchesPreviousResourceIds() throws Exception {
+    assertEquals(
+        SecureHashUtil.makeSHA1HashBase64(URL.getBytes("UTF-8")),
+        ResourceIdHashers.sha1().hash(URL));
+    assertEquals(
+        CacheKeyUtil.getFirstResourceId(new SimpleCacheKey(URL)),
+        CacheKeyUtil.getFirstResourceId(new SimpleCacheKey(URL), ResourceIdHashers.sha1()));
+  }
+
+  @Test
+  public void testGetResourceIdsWithHasher() {
+    List<CacheKey> keys =
+        Arrays.<CacheKey>asList(new SimpleCacheKey(URL), new SimpleCacheKey(URL + "2"));
+    List<String> ids =
+        CacheKeyUtil.getResourceIds(new MultiCacheKey(keys), ResourceIdHashers.murmur3x128());
+    assertEquals(
+        Arrays.asList(
+            ResourceIdHashers.murmur3x128().hash(URL),
+            ResourceIdHashers.murmur3x128().hash(URL + "2")),
+        ids);
+    assertEquals(
+        ResourceIdHashers.murmur3x128().hash(URL),
+        CacheKeyUtil.getFirstResourceId(new MultiCacheKey(keys), ResourceIdHashers.murmur3x128()));
+  }
+
+  @Test
+  public void testStorageVersions() {
+    int version = DiskStorageCache.START_OF_VERSIONING;
+    assertEquals(version, DiskStorageCache.getStorageVersion(version, ResourceIdHashers.sha1()));
+    assertNotEquals(
+        version, DiskStorageCache.getStorageVersion(version, ResourceIdHashers.murmur3x128()));
+    assertNotEquals(
+        DiskStorageCache.getStorageVersion(version + 1, ResourceIdHashers.sha1()),
+        DiskStorageCache.getStorageVersion(version, ResourceIdHashers.murmur3x128()));
+  }
+
+  private static void assertMurmur3(String expected, String uriString) {
+    assertEquals(expected, ResourceIdHashers.murmur3x64128Hex(uriString));
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.disk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.NoOpCacheErrorLogger;
+import com.facebook.cache.common.NoOpCacheEventListener;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.cache.common.WriterCallbacks;
+import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.common.file.FileTree;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Tests for {@link ContentAddressedDiskStorage} */
+@RunWith(RobolectricTestRunner.class)
+public class ContentAddressedDiskStorageTest {
+
+  private File mDirectory;
+  private DefaultDiskStorage mDelegate;
+  private ContentAddressedDiskStorage mStorage;
+
+  @Before
+  public void setUp() {
+    mDirectory =
+        new File(RuntimeEnvironment.application.getCacheDir(), "content-addressed-storage-test");
+    mDirectory.mkdirs();
+    FileTree.deleteContents(mDirectory);
+    mDelegate = new DefaultDiskStorage(mDirectory, 1, NoOpCacheErrorLogger.getInstance());
+    mStorage = new ContentAddressedDiskStorage(mDelegate, true);
+  }
+
+  @After
+  public void tearDown() {
+    FileTree.deleteContents(mDirectory);
+  }
+
+  @Test
+  public void testSameContentIsStoredOnce() throws Exception {
+    byte[] content = newJpegContent(1000);
+    BinaryResource resource1 = insert("resource1", content);
+    BinaryResource resource2 = insert("resource2", content);
+
+    assertArrayEquals(content, resource1.read());
+    assertArrayEquals(content, resource2.read());
+    assertArrayEquals(content, mStorage.getResource("resource1", "debug").read());
+    assertArrayEquals(content, mStorage.getResource("resource2", "debug").read());
+    // two links and a single blob
+    assertEquals(3, mDelegate.getEntries().size());
+
+    Collection<DiskStorage.Entry> entries = mStorage.getEntries();
+    assertEquals(2, entries.size());
+    long size = 0;
+    for (DiskStorage.Entry entry : entries) {
+      size += entry.getSize();
+      assertArrayEquals(content, entry.getResource().read());
+    }
+    assertEquals(getDelegateSize(), size);
+  }
+
+  @Test
+  public void testBlobIsDeletedWithItsLastLink() throws Exception {
+    byte[] content = newJpegContent(1000);
+    insert("resource1", content);
+    insert("resource2", content);
+
+    long removedSize = mStorage.remove("resource1");
+    assertTrue(removedSize > 0 && removedSize < content.length);
+    assertNull(mStorage.getResource("resource1", "debug"));
+    assertFalse(mStorage.contains("resource1", "debug"));
+    assertArrayEquals(content, mStorage.getResource("resource2", "debug").read());
+
+    removedSize = mStorage.remove("resource2");
+    assertTrue(removedSize > content.length);
+    assertTrue(mDelegate.getEntries().isEmpty());
+  }
+
+  @Test
+  public void testReferenceCountsAreLoadedFromDisk() throws Exception {
+    byte[] content = newJpegContent(1000);
+    insert("resource1", content);
+    insert("resource2", content);
+
+    ContentAddressedDiskStorage storage = new ContentAddressedDiskStorage(mDelegate, true);
+    storage.remove("resource1");
+    assertArrayEquals(content, storage.getResource("resource2", "debug").read());
+    storage.remove("resource2");
+    assertTrue(mDelegate.getEntries().isEmpty());
+  }
+
+  @Test
+  public void testReplacingContentReleasesPreviousBlob() throws Exception {
+    insert("resource1", newJpegContent(1000));
+    byte[] newContent = newJpegContent(2000);
+    insert("resource1", newContent);
+
+    assertArrayEquals(newContent, mStorage.getResource("resource1", "debug").read());
+    assertEquals(2, mDelegate.getEntries().size());
+  }
+
+  @Test
+  public void testUncompressedFormatIsCompressed() throws Exception {
+    byte[] content = new byte[10000];
+    content[0] = 'B';
+    content[1] = 'M';
+    BinaryResource resource = insert("resource1", content);
+
+    assertArrayEquals(content, resource.read());
+    BinaryResource readResource = mStorage.getResource("resource1", "debug");
+    assertArrayEquals(content, readResource.read());
+    assertTrue(getDelegateSize() < content.length / 10);
+    // the size is the one of the blob on disk, for the accounting of the cache
+    assertTrue(resource.size() < content.length / 10);
+    assertEquals(resource.size(), readResource.size());
+    // the staged content is deleted once the link is committed
+    assertEquals(2, mDelegate.getEntries().size());
+  }
+
+  @Test
+  public void testCompressedBlobDeletedBeforeCommitIsWrittenAgain() throws Exception {
+    byte[] content = new byte[10000];
+    content[0] = 'B';
+    content[1] = 'M';
+    insert("resource1", content);
+
+    DiskStorage.Inserter inserter = mStorage.insert("resource2", "debug");
+    try {
+      inserter.writeData(WriterCallbacks.from(content), "debug");
+      mStorage.remove("resource1");
+      inserter.commit("debug");
+    } finally {
+      inserter.cleanUp();
+    }
+
+    assertArrayEquals(content, mStorage.getResource("resource2", "debug").read());
+    assertEquals(2, mDelegate.getEntries().size());
+    assertTrue(getDelegateSize() < content.length / 10);
+  }
+
+  @Test
+  public void testShouldTryCompression() throws IOException {
+    byte[] bitmap = new byte[100 * 1024];
+    bitmap[0] = 'B';
+    bitmap[1] = 'M';
+    assertTrue(shouldTryCompression(bitmap));
+    // already compressed formats are left as is
+    assertFalse(shouldTryCompression(newJpegContent(100 * 1024)));
+    // so are the contents that do not compress
+    byte[] noise = new byte[100 * 1024];
+    new Random(42).nextBytes(noise);
+    assertFalse(shouldTryCompression(noise));
+  }
+
+  @Test
+  public void testIncompressibleContentIsStoredUncompressed() throws Exception {
+    // a small content of an uncompressed format is always tried, but it does not compress
+    byte[] content = new byte[1000];
+    new Random(42).nextBytes(content);
+    content[0] = 'B';
+    content[1] = 'M';
+    BinaryResource resource = insert("resource1", content);
+
+    assertEquals(content.length, resource.size());
+    assertArrayEquals(content, mStorage.getResource("resource1", "debug").read());
+    assertEquals(2, mDelegate.getEntries().size());
+  }
+
+  @Test
+  public void testPurgeDeletesBlobsWithoutLink() throws Exception {
+    insert("resource1", newJpegContent(1000));
+    mDelegate.remove("resource1");
+    assertEquals(1, mDelegate.getEntries().size());
+
+    mStorage.purgeUnexpectedResources();
+
+    assertTrue(mDelegate.getEntries().isEmpty());
+  }
+
+  @Test
+  public void testClearAll() throws Exception {
+    insert("resource1", newJpegContent(1000));
+    mStorage.clearAll();
+    assertTrue(mStorage.getEntries().isEmpty());
+    assertTrue(mDelegate.getEntries().isEmpty());
+  }
+
+  @Test
+  public void testWithDiskStorageCache() throws Exception {
+    DiskStorageCache cache =
+        new DiskStorageCache(
+            mStorage,
+            new DefaultEntryEvictionComparatorSupplier(),
+            new DiskStorageCache.Params(0, 100000, 100000),
+            NoOpCacheEventListener.getInstance(),
+            NoOpCacheErrorLogger.getInstance(),
+            null,
+            CallerThreadExecutor.getInstance(),
+            false);
+    byte[] content = newJpegContent(1000);
+    List<CacheKey> keys = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      CacheKey key = new SimpleCacheKey("http://cdn" + i + ".fresco.com/image.jpg");
+      keys.add(key);
+      cache.insert(key, WriterCallbacks.from(content));
+    }
+
+    for (CacheKey key : keys) {
+      assertArrayEquals(content, cache.getResource(key).read());
+    }
+    // five links and a single blob
+    assertEquals(6, mDelegate.getEntries().size());
+    assertTrue(getDelegateSize() < 2 * content.length);
+  }
+
+  private BinaryResource insert(String resourceId, byte[] content) throws IOException {
+    DiskStorage.Inserter inserter = mStorage.insert(resourceId, "debug");
+    try {
+      inserter.writeData(WriterCallbacks.from(content), "debug");
+      return inserter.commit("debug");
+    } finally {
+      inserter.cleanUp();
+    }
+  }
+
+  private static boolean shouldTryCompression(byte[] content) throws IOException {
+    return ContentAddressedDiskStorage.shouldTryCompression(new ByteArrayInputStream(content));
+  }
+
+  private long getDelegateSize() throws IOException {
+    long size = 0;
+    for (DiskStorage.Entry entry : mDelegate.getEntries()) {
+      size += entry.getSize();
+    }
+    return size;
+  }
+
+  private static byte[] newJpegContent(int size) {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    content[0] = (byte) 0xFF;
+    content[1] = (byte) 0xD8;
+    content[2] = (byte) 0xFF;
+    return content;
+  }
+}
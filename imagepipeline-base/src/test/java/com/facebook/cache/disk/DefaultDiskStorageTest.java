@@ -33,6 +33,7 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.Before;
@@ -237,6 +238,52 @@ public class DefaultDiskStorageTest {
     assertTrue(Math.abs(file2.lastModified() - time2) <= 500);
   }
 
+  @Test
+  public void testDeferredTouch() throws Exception {
+    final List<Runnable> pendingFlushes = new ArrayList<>();
+    DefaultDiskStorage storage =
+        new DefaultDiskStorage(
+            mDirectory,
+            1,
+            mock(CacheErrorLogger.class),
+            new Executor() {
+              @Override
+              public void execute(Runnable runnable) {
+                pendingFlushes.add(runnable);
+              }
+            });
+    final long startTime = 0;
+
+    final String resourceId1 = "resource1";
+    final File file1 = writeFileToStorage(storage, resourceId1, new byte[100]);
+    final String resourceId2 = "resource2";
+    final File file2 = writeFileToStorage(storage, resourceId2, new byte[100]);
+
+    // reads are not written to the files until the flush runs
+    final long time2 = startTime + 10000;
+    when(mClock.now()).thenReturn(time2);
+    storage.touch(resourceId1, null);
+    final long time3 = time2 + 10000;
+    when(mClock.now()).thenReturn(time3);
+    storage.getResource(resourceId1, null);
+    assertTrue(Math.abs(file1.lastModified() - startTime) <= 500);
+    assertEquals(1, pendingFlushes.size());
+
+    pendingFlushes.get(0).run();
+    assertTrue(Math.abs(file1.lastModified() - time3) <= 500);
+    assertTrue(Math.abs(file2.lastModified() - startTime) <= 500);
+
+    // listing the entries writes the pending access times first
+    final long time4 = time3 + 10000;
+    when(mClock.now()).thenReturn(time4);
+    storage.touch(resourceId2, null);
+    assertEquals(2, pendingFlushes.size());
+    for (DiskStorage.Entry entry : storage.getEntries()) {
+      long expected = entry.getId().equals(resourceId1) ? time3 : time4;
+      assertTrue(Math.abs(entry.getTimestamp() - expected) <= 500);
+    }
+  }
+
   @Test
   public void testRemoveById() throws Exception {
     final DefaultDiskStorage storage = getStorageSupplier(1).get();
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.disk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.NoOpCacheErrorLogger;
+import com.facebook.cache.common.NoOpCacheEventListener;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.cache.common.WriterCallback;
+import com.facebook.cache.common.WriterCallbacks;
+import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.common.file.FileTree;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Concurrent reads and inserts on a {@link DiskStorageCache} backed by the file system. */
+@RunWith(RobolectricTestRunner.class)
+public class DiskStorageCacheStressTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+  private static final int KEY_COUNT = 200;
+  private static final int VALUE_SIZE = 1024;
+  private static final long CACHE_SIZE = 64 * VALUE_SIZE;
+  private static final int READER_COUNT = 4;
+  private static final int WRITER_COUNT = 2;
+  private static final int OPERATIONS_PER_THREAD = 500;
+
+  private File mDirectory;
+  private ExecutorService mExecutor;
+
+  @Before
+  public void setUp() {
+    mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "disk-cache-stress-test");
+    mDirectory.mkdirs();
+    FileTree.deleteContents(mDirectory);
+    mExecutor = Executors.newFixedThreadPool(READER_COUNT + WRITER_COUNT);
+  }
+
+  @After
+  public void tearDown() {
+    mExecutor.shutdownNow();
+    FileTree.deleteContents(mDirectory);
+  }
+
+  @Test
+  public void testLookupsAreNotBlockedByCommit() throws Exception {
+    doTestLookupsAreNotBlockedByCommit(false);
+  }
+
+  @Test
+  public void testLookupsAreNotBlockedByCommitWithIncrementalEviction() throws Exception {
+    doTestLookupsAreNotBlockedByCommit(true);
+  }
+
+  private void doTestLookupsAreNotBlockedByCommit(boolean incrementalEvictionEnabled)
+      throws Exception {
+    final CountDownLatch commitStarted = new CountDownLatch(1);
+    final CountDownLatch releaseCommit = new CountDownLatch(1);
+    DiskStorage storage =
+        new BlockingCommitDiskStorage(newDiskStorage(), commitStarted, releaseCommit);
+    final DiskStorageCache cache = newDiskStorageCache(storage, incrementalEvictionEnabled);
+    final CacheKey cachedKey = new SimpleCacheKey("cached");
+    final CacheKey uncachedKey = new SimpleCacheKey("uncached");
+    cache.insert(cachedKey, WriterCallbacks.from(new byte[VALUE_SIZE]));
+
+    // the next commit holds the cache lock until released
+    Future<BinaryResource> insert =
+        mExecutor.submit(
+            new Callable<BinaryResource>() {
+              @Override
+              public BinaryResource call() throws IOException {
+                return cache.insert(
+                    new SimpleCacheKey("slow"), WriterCallbacks.from(new byte[VALUE_SIZE]));
+              }
+            });
+    assertTrue(commitStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    Future<Boolean> lookup =
+        mExecutor.submit(
+            new Callable<Boolean>() {
+              @Override
+              public Boolean call() {
+                return cache.getResource(cachedKey) != null
+                    && cache.probe(cachedKey)
+                    && cache.hasKey(cachedKey)
+                    && cache.hasKeySync(cachedKey)
+                    && cache.getResource(uncachedKey) == null;
+              }
+            });
+    try {
+      assertTrue(lookup.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertFalse(insert.isDone());
+    } finally {
+      releaseCommit.countDown();
+    }
+    assertNotNull(insert.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testConcurrentReadsAndInserts() throws Exception {
+    doTestConcurrentReadsAndInserts(false);
+  }
+
+  @Test
+  public void testConcurrentReadsAndInsertsWithIncrementalEviction() throws Exception {
+    doTestConcurrentReadsAndInserts(true);
+  }
+
+  private void doTestConcurrentReadsAndInserts(boolean incrementalEvictionEnabled)
+      throws Exception {
+    final DiskStorage storage = newDiskStorage();
+    final DiskStorageCache cache = newDiskStorageCache(storage, incrementalEvictionEnabled);
+    final WriterCallback callback = WriterCallbacks.from(new byte[VALUE_SIZE]);
+    final AtomicInteger hits = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    Future<?>[] futures = new Future<?>[READER_COUNT + WRITER_COUNT];
+    for (int i = 0; i < futures.length; i++) {
+      final boolean isWriter = i < WRITER_COUNT;
+      final Random random = new Random(i);
+      futures[i] =
+          mExecutor.submit(
+              new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                  start.await();
+                  for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                    CacheKey key = new SimpleCacheKey("key" + random.nextInt(KEY_COUNT));
+                    if (isWriter) {
+                      cache.insert(key, callback);
+                    } else {
+                      BinaryResource resource = cache.getResource(key);
+                      if (resource != null) {
+                        hits.incrementAndGet();
+                      } else {
+                        cache.probe(key);
+                      }
+                    }
+                  }
+                  return null;
+                }
+              });
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(TIMEOUT_SECONDS * 6, TimeUnit.SECONDS);
+    }
+
+    assertTrue(hits.get() > 0);
+    long size = 0;
+    for (DiskStorage.Entry entry : storage.getEntries()) {
+      assertEquals(VALUE_SIZE, entry.getSize());
+      size += entry.getSize();
+    }
+    // evictions happen before each insert, and the concurrent inserts can each add one entry
+    assertTrue(size > 0);
+    assertTrue(size <= CACHE_SIZE + WRITER_COUNT * VALUE_SIZE);
+  }
+
+  private DiskStorage newDiskStorage() {
+    return new DefaultDiskStorage(mDirectory, 1, NoOpCacheErrorLogger.getInstance());
+  }
+
+  private static DiskStorageCache newDiskStorageCache(
+      DiskStorage storage, boolean incrementalEvictionEnabled) {
+    return new DiskStorageCache(
+        storage,
+        new DefaultEntryEvictionComparatorSupplier(),
+        new DiskStorageCache.Params(0, CACHE_SIZE, CACHE_SIZE),
+        NoOpCacheEventListener.getInstance(),
+        NoOpCacheErrorLogger.getInstance(),
+        null,
+        CallerThreadExecutor.getInstance(),
+        false,
+        incrementalEvictionEnabled);
+  }
+
+  /** Storage whose inserter waits for a latch when committing. */
+  private static class BlockingCommitDiskStorage implements DiskStorage {
+
+    private final DiskStorage mDelegate;
+    private final CountDownLatch mCommitStarted;
+    private final CountDownLatch mReleaseCommit;
+
+    BlockingCommitDiskStorage(
+        DiskStorage delegate, CountDownLatch commitStarted, CountDownLatch releaseCommit) {
+      mDelegate = delegate;
+      mCommitStarted = commitStarted;
+      mReleaseCommit = releaseCommit;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return mDelegate.isEnabled();
+    }
+
+    @Override
+    public boolean isExternal() {
+      return mDelegate.isExternal();
+    }
+
+    @Override
+    public BinaryResource getResource(String resourceId, Object debugInfo) throws IOException {
+      return mDelegate.getResource(resourceId, debugInfo);
+    }
+
+    @Override
+    public boolean contains(String resourceId, Object debugInfo) throws IOException {
+      return mDelegate.contains(resourceId, debugInfo);
+    }
+
+    @Override
+    public boolean touch(String resourceId, Object debugInfo) throws IOException {
+      return mDelegate.touch(resourceId, debugInfo);
+    }
+
+    @Override
+    public void purgeUnexpectedResources() {
+      mDelegate.purgeUnexpectedResources();
+    }
+
+    @Override
+    public Inserter insert(String resourceId, Object debugInfo) throws IOException {
+      final Inserter inserter = mDelegate.insert(resourceId, debugInfo);
+      if (!"slow".equals(debugInfo.toString())) {
+        return inserter;
+      }
+      return new Inserter() {
+        @Override
+        public void writeData(WriterCallback callback, Object debugInfo) throws IOException {
+          inserter.writeData(callback, debugInfo);
+        }
+
+        @Override
+        public BinaryResource commit(Object debugInfo) throws IOException {
+          mCommitStarted.countDown();
+          try {
+            mReleaseCommit.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+          return inserter.commit(debugInfo);
+        }
+
+        @Override
+        public BinaryResource commit(Object debugInfo, long time) throws IOException {
+          return inserter.commit(debugInfo, time);
+        }
+
+        @Override
+        public boolean cleanUp() {
+          return inserter.cleanUp();
+        }
+      };
+    }
+
+    @Override
+    public Collection<Entry> getEntries() throws IOException {
+      return mDelegate.getEntries();
+    }
+
+    @Override
+    public long remove(Entry entry) throws IOException {
+      return mDelegate.remove(entry);
+    }
+
+    @Override
+    public long remove(String resourceId) throws IOException {
+      return mDelegate.remove(resourceId);
+    }
+
+    @Override
+    public void clearAll() throws IOException {
+      mDelegate.clearAll();
+    }
+
+    @Override
+    public DiskDumpInfo getDumpInfo() throws IOException {
+      return mDelegate.getDumpInfo();
+    }
+
+    @Override
+    public String getStorageName() {
+      return mDelegate.getStorageName();
+    }
+  }
+}
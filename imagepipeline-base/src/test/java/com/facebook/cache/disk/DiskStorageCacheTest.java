@@ -15,6 +15,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
@@ -56,6 +58,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareOnlyThisForTest;
@@ -128,6 +132,13 @@ public class DiskStorageCacheTest {
 
   private DiskStorageCache createDiskCache(
       DiskStorage diskStorage, boolean indexPopulateAtStartupEnabled) {
+    return createDiskCache(diskStorage, indexPopulateAtStartupEnabled, false);
+  }
+
+  private DiskStorageCache createDiskCache(
+      DiskStorage diskStorage,
+      boolean indexPopulateAtStartupEnabled,
+      boolean incrementalEvictionEnabled) {
     DiskStorageCache.Params diskStorageCacheParams =
         new DiskStorageCache.Params(
             0, FILE_CACHE_MAX_SIZE_LOW_LIMIT, FILE_CACHE_MAX_SIZE_HIGH_LIMIT);
@@ -140,7 +151,8 @@ public class DiskStorageCacheTest {
         mock(CacheErrorLogger.class),
         mDiskTrimmableRegistry,
         mBackgroundExecutor,
-        indexPopulateAtStartupEnabled);
+        indexPopulateAtStartupEnabled,
+        incrementalEvictionEnabled);
   }
 
   @Test
@@ -656,6 +668,99 @@ public class DiskStorageCacheTest {
     assertTrue(mCache.hasKey(key3));
   }
 
+  @Test
+  public void testIncrementalSizeEvictionClearsIndex() throws Exception {
+    DiskStorageCache cache = createDiskCache(mStorage, false, true);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS));
+    CacheKey key1 = putOneThingInCache(cache);
+    // the size is recalculated in the background
+    mBackgroundExecutor.runUntilIdle();
+    CacheKey key2 = new SimpleCacheKey("bar");
+    CacheKey key3 = new SimpleCacheKey("duck");
+    byte[] value2 = new byte[(int) FILE_CACHE_MAX_SIZE_HIGH_LIMIT];
+    value2[80] = 'c';
+    WriterCallback callback = WriterCallbacks.from(value2);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(2, TimeUnit.DAYS));
+    cache.insert(key2, callback);
+    // now over limit. Next write will evict key1
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(3, TimeUnit.DAYS));
+    cache.insert(key3, callback);
+    assertFalse(cache.hasKeySync(key1));
+    assertFalse(cache.hasKey(key1));
+    assertTrue(cache.hasKeySync(key3));
+    assertTrue(cache.hasKey(key3));
+    assertEquals(FILE_CACHE_MAX_SIZE_HIGH_LIMIT, cache.getSize());
+  }
+
+  @Test
+  public void testIncrementalSizeEvictionKeepsRecentlyReadEntries() throws Exception {
+    DiskStorageCache cache = createDiskCache(mStorage, false, true);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS));
+    CacheKey key1 = putOneThingInCache(cache);
+    // the size is recalculated in the background
+    mBackgroundExecutor.runUntilIdle();
+    CacheKey key2 = new SimpleCacheKey("bar");
+    byte[] value2 = new byte[101];
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(2, TimeUnit.DAYS));
+    cache.insert(key2, WriterCallbacks.from(value2));
+    // reading key1 makes key2 the next entry to evict
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(3, TimeUnit.DAYS));
+    assertNotNull(cache.getResource(key1));
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(4, TimeUnit.DAYS));
+    CacheKey key3 = new SimpleCacheKey("duck");
+    cache.insert(key3, WriterCallbacks.from(value2));
+    assertTrue(cache.hasKey(key1));
+    assertFalse(cache.hasKey(key2));
+    assertFalse(cache.hasKeySync(key2));
+    assertTrue(cache.hasKey(key3));
+  }
+
+  @Test
+  public void testIncrementalEvictionKeepsEntriesReadWhileEvicting() throws Exception {
+    final DiskStorageCache cache = createDiskCache(mStorage, false, true);
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS));
+    CacheKey key1 = new SimpleCacheKey("foo");
+    cache.insert(key1, WriterCallbacks.from(new byte[50]));
+    mBackgroundExecutor.runUntilIdle();
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(2, TimeUnit.DAYS));
+    final CacheKey key2 = new SimpleCacheKey("bar");
+    cache.insert(key2, WriterCallbacks.from(new byte[50]));
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(3, TimeUnit.DAYS));
+    CacheKey key3 = new SimpleCacheKey("duck");
+    cache.insert(key3, WriterCallbacks.from(new byte[150]));
+    // key2 is read once key1 is evicted, after the batch of entries to evict has been picked
+    doAnswer(
+            new Answer<Void>() {
+              @Override
+              public Void answer(InvocationOnMock invocation) {
+                assertNotNull(cache.getResource(key2));
+                return null;
+              }
+            })
+        .when(mCacheEventListener)
+        .onEviction(any(CacheEvent.class));
+
+    when(mClock.now()).thenReturn(TimeUnit.MILLISECONDS.convert(4, TimeUnit.DAYS));
+    cache.insert(new SimpleCacheKey("goose"), WriterCallbacks.from(new byte[10]));
+
+    assertFalse(cache.hasKey(key1));
+    assertTrue(cache.hasKey(key2));
+    assertFalse(cache.hasKey(key3));
+    verify(mCacheEventListener, times(2)).onEviction(any(CacheEvent.class));
+  }
+
+  @Test
+  public void testIncrementalEvictionRecalculatesSizeInBackground() throws Exception {
+    DiskStorageCache cache = createDiskCache(mStorage, false, true);
+    putOneThingInCache(cache);
+    assertEquals(-1, cache.getSize());
+
+    mBackgroundExecutor.runUntilIdle();
+
+    assertEquals(101, cache.getSize());
+    assertEquals(1, cache.getCount());
+  }
+
   @Test
   public void testTimeEvictionClearsIndex() throws Exception {
     when(mClock.now()).thenReturn(5l);
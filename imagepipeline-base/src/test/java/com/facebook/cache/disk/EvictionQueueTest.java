@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.cache.disk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.binaryresource.ByteArrayBinaryResource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Test for {@link EvictionQueue} */
+@RunWith(RobolectricTestRunner.class)
+public class EvictionQueueTest {
+
+  private static final long FUTURE_TIMESTAMP_THRESHOLD_MS = 100;
+  private static final long NOW = 1000;
+
+  private final BinaryResource mResource = new ByteArrayBinaryResource(new byte[0]);
+  private EvictionQueue mQueue;
+
+  @Before
+  public void setUp() {
+    mQueue =
+        new EvictionQueue(
+            new DefaultEntryEvictionComparatorSupplier().get(), FUTURE_TIMESTAMP_THRESHOLD_MS);
+  }
+
+  @Test
+  public void testPollsOldestFirst() {
+    mQueue.put("b", 10, 20, mResource, NOW);
+    mQueue.put("a", 10, 30, mResource, NOW);
+    mQueue.put("c", 10, 10, mResource, NOW);
+
+    assertEquals(Arrays.asList("c", "b", "a"), pollIds(10));
+    assertEquals(0, mQueue.size());
+  }
+
+  @Test
+  public void testPollsAtMostMaxCount() {
+    mQueue.put("a", 10, 10, mResource, NOW);
+    mQueue.put("b", 10, 20, mResource, NOW);
+    mQueue.put("c", 10, 30, mResource, NOW);
+
+    assertEquals(Arrays.asList("a", "b"), pollIds(2));
+    assertEquals(1, mQueue.size());
+  }
+
+  @Test
+  public void testEntriesWithSameTimestampAreKept() {
+    mQueue.put("b", 10, 10, mResource, NOW);
+    mQueue.put("a", 10, 10, mResource, NOW);
+
+    assertEquals(2, mQueue.size());
+    assertEquals(Arrays.asList("a", "b"), pollIds(10));
+  }
+
+  @Test
+  public void testTouchMovesEntryToTheEnd() {
+    mQueue.put("a", 10, 10, mResource, NOW);
+    mQueue.put("b", 10, 20, mResource, NOW);
+
+    mQueue.touch("a", 30);
+    mQueue.touch("unknown", 40);
+
+    assertEquals(2, mQueue.size());
+    assertEquals(Arrays.asList("b", "a"), pollIds(10));
+  }
+
+  @Test
+  public void testPutReplacesEntry() {
+    mQueue.put("a", 10, 10, mResource, NOW);
+    mQueue.put("b", 10, 20, mResource, NOW);
+    mQueue.put("a", 20, 30, mResource, NOW);
+
+    List<DiskStorage.Entry> entries = new ArrayList<>();
+    mQueue.pollFirst(entries, 10);
+    assertEquals(2, entries.size());
+    assertEquals("a", entries.get(1).getId());
+    assertEquals(20, entries.get(1).getSize());
+  }
+
+  @Test
+  public void testFutureTimestampsAreEvictedFirst() {
+    mQueue.put("a", 10, 10, mResource, NOW);
+    mQueue.put("b", 10, NOW + FUTURE_TIMESTAMP_THRESHOLD_MS, mResource, NOW);
+    mQueue.put("c", 10, NOW + FUTURE_TIMESTAMP_THRESHOLD_MS + 1, mResource, NOW);
+
+    assertEquals(Arrays.asList("c", "a", "b"), pollIds(10));
+  }
+
+  @Test
+  public void testRemoveAndReset() {
+    mQueue.put("a", 10, 10, mResource, NOW);
+    mQueue.put("b", 10, 20, mResource, NOW);
+    mQueue.remove("a");
+    assertEquals(Arrays.asList("b"), pollIds(10));
+
+    mQueue.put("c", 10, 10, mResource, NOW);
+    List<DiskStorage.Entry> entries = new ArrayList<>();
+    mQueue.put("d", 10, 20, mResource, NOW);
+    mQueue.pollFirst(entries, 10);
+    mQueue.put("e", 10, 30, mResource, NOW);
+    mQueue.reset(entries, NOW);
+    assertEquals(Arrays.asList("c", "d"), pollIds(10));
+
+    mQueue.put("f", 10, 10, mResource, NOW);
+    mQueue.clear();
+    assertTrue(pollIds(10).isEmpty());
+  }
+
+  private List<String> pollIds(int maxCount) {
+    List<DiskStorage.Entry> entries = new ArrayList<>();
+    mQueue.pollFirst(entries, maxCount);
+    List<String> ids = new ArrayList<>();
+    for (DiskStorage.Entry entry : entries) {
+      ids.add(entry.getId());
+    }
+    return ids;
+  }
+}
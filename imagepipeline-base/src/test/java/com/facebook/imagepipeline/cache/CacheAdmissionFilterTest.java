@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CacheAdmissionFilterTest {
+
+  @Test
+  public void testFirstAccessIsNotAdmitted() {
+    CacheAdmissionFilter filter = new CacheAdmissionFilter(100);
+
+    assertThat(filter.getFrequency("key")).isEqualTo(0);
+    filter.recordAccess("key");
+    assertThat(filter.getFrequency("key")).isEqualTo(1);
+    assertThat(filter.shouldAdmit("key")).isFalse();
+
+    filter.recordAccess("key");
+    assertThat(filter.getFrequency("key")).isEqualTo(2);
+    assertThat(filter.shouldAdmit("key")).isTrue();
+    assertThat(filter.shouldAdmit("other key")).isFalse();
+  }
+
+  @Test
+  public void testMinFrequency() {
+    CacheAdmissionFilter filter = new CacheAdmissionFilter(100, 3);
+
+    filter.recordAccess("key");
+    filter.recordAccess("key");
+    assertThat(filter.shouldAdmit("key")).isFalse();
+    filter.recordAccess("key");
+    assertThat(filter.shouldAdmit("key")).isTrue();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMinFrequency() {
+    new CacheAdmissionFilter(100, 0);
+  }
+
+  @Test
+  public void testAgingForgetsOldKeys() {
+    CacheAdmissionFilter filter = new CacheAdmissionFilter(64);
+    filter.recordAccess("old key");
+    filter.recordAccess("old key");
+    assertThat(filter.shouldAdmit("old key")).isTrue();
+
+    // enough accesses to other keys to age the sketch and clear the doorkeeper
+    for (int i = 0; i < 2000; i++) {
+      filter.recordAccess("key" + (i % 10));
+    }
+
+    assertThat(filter.shouldAdmit("old key")).isFalse();
+  }
+
+  @Test
+  public void testAgesOncePerSample() {
+    CacheAdmissionFilter filter = new CacheAdmissionFilter(64);
+    int sampleSize = new FrequencySketch(64).getSampleSize();
+    // the first access is held by the doorkeeper, the other 8 are counted by the sketch
+    for (int i = 0; i < 9; i++) {
+      filter.recordAccess("key");
+    }
+    for (int i = 9; i < sampleSize; i++) {
+      filter.recordAccess("key" + i);
+    }
+
+    // the doorkeeper was cleared and the count halved
+    assertThat(filter.getFrequency("key")).isEqualTo(0);
+    filter.recordAccess("key");
+    assertThat(filter.getFrequency("key")).isEqualTo(5);
+  }
+
+  /**
+   * Replays a trace where a small set of popular images is interleaved with a stream of images
+   * seen only once, e.g. while scrolling through an infinite feed, against an LRU cache.
+   */
+  @Test
+  public void testAdmissionImprovesHitRateOfScanResistantTrace() {
+    int capacity = 100;
+    double hitRateWithoutFilter = simulate(capacity, null);
+    double hitRateWithFilter = simulate(capacity, new CacheAdmissionFilter(4 * capacity));
+
+    assertThat(hitRateWithFilter).isGreaterThan(hitRateWithoutFilter + 0.2);
+  }
+
+  private static double simulate(int capacity, @Nullable CacheAdmissionFilter filter) {
+    LruCache cache = new LruCache(capacity);
+    Random random = new Random(42);
+    int oneHitWonder = 0;
+    int hits = 0;
+    int requests = 0;
+    for (int i = 0; i < 50000; i++) {
+      String key;
+      if (random.nextInt(3) == 0) {
+        // 80 popular images
+        key = "hot" + random.nextInt(80);
+      } else {
+        key = "once" + oneHitWonder++;
+      }
+      requests++;
+      if (filter != null) {
+        filter.recordAccess(key);
+      }
+      if (cache.get(key)) {
+        hits++;
+      } else if (filter == null || filter.shouldAdmit(key)) {
+        cache.put(key);
+      }
+    }
+    return (double) hits / requests;
+  }
+
+  private static class LruCache extends LinkedHashMap<String, Boolean> {
+
+    private final int mCapacity;
+
+    LruCache(int capacity) {
+      super(16, 0.75f, true);
+      mCapacity = capacity;
+    }
+
+    boolean get(String key) {
+      return super.get(key) != null;
+    }
+
+    void put(String key) {
+      put(key, Boolean.TRUE);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > mCapacity;
+    }
+  }
+}
@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import com.facebook.binaryresource.BinaryResource;
+import com.facebook.cache.common.BaseCacheEventListener;
+import com.facebook.cache.common.CacheEvent;
+import com.facebook.cache.common.NoOpCacheErrorLogger;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.cache.common.WriterCallback;
+import com.facebook.cache.disk.DiskStorage;
+import com.facebook.cache.disk.DiskStorageCache;
+import com.facebook.cache.disk.EntryEvictionComparatorSupplier;
+import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.common.internal.Suppliers;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Replays a {@link CacheTrace} against a cache implementation and reports its hit ratio, byte hit
+ * ratio and eviction churn.
+ *
+ * <p>The replay simulates a demand filled cache: each lookup of the replayed layer is a request,
+ * and the requested entry is inserted after a miss. The put events of the trace are only used to
+ * learn the sizes of the entries. Note that the trace of a layer only contains the requests which
+ * were not served by the layers above it in production.
+ */
+public class CacheTraceReplayer {
+
+  /** Cache under simulation. */
+  public interface SimulatedCache {
+
+    /** Looks the key up, returning true on a hit. */
+    boolean lookup(long keyHash, long timestampMs);
+
+    void insert(long keyHash, int sizeInBytes, long timestampMs);
+
+    long getEvictionCount();
+
+    long getEvictedBytes();
+  }
+
+  /** Statistics of a replay. */
+  public static class Result {
+
+    public final long requests;
+    public final long hits;
+    public final long requestedBytes;
+    public final long hitBytes;
+    public final long evictions;
+    public final long evictedBytes;
+
+    Result(
+        long requests,
+        long hits,
+        long requestedBytes,
+        long hitBytes,
+        long evictions,
+        long evictedBytes) {
+      this.requests = requests;
+      this.hits = hits;
+      this.requestedBytes = requestedBytes;
+      this.hitBytes = hitBytes;
+      this.evictions = evictions;
+      this.evictedBytes = evictedBytes;
+    }
+
+    public double getHitRatio() {
+      return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public double getByteHitRatio() {
+      return requestedBytes == 0 ? 0 : (double) hitBytes / requestedBytes;
+    }
+
+    /** Returns the number of evictions per request. */
+    public double getEvictionChurn() {
+      return requests == 0 ? 0 : (double) evictions / requests;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          (Locale) null,
+          "requests=%d hitRatio=%.4f byteHitRatio=%.4f evictionChurn=%.4f evictedBytes=%d",
+          requests,
+          getHitRatio(),
+          getByteHitRatio(),
+          getEvictionChurn(),
+          evictedBytes);
+    }
+  }
+
+  private CacheTraceReplayer() {}
+
+  /**
+   * Replays the lookups of one layer of the trace.
+   *
+   * @param defaultSizeInBytes size of the entries of which the trace does not know the size
+   */
+  public static Result replay(
+      List<CacheTrace.Event> events, int layer, SimulatedCache cache, int defaultSizeInBytes) {
+    Map<Long, Integer> sizes = new HashMap<>();
+    long lastTimestampMs = 0;
+    for (CacheTrace.Event event : events) {
+      if (event.layer == layer && event.sizeInBytes != CacheTrace.UNKNOWN_SIZE) {
+        sizes.put(event.keyHash, event.sizeInBytes);
+      }
+      lastTimestampMs = Math.max(lastTimestampMs, event.timestampMs);
+    }
+    // the eviction comparators compare timestamps with the current time, so the trace ends now
+    long timeOffsetMs = System.currentTimeMillis() - lastTimestampMs;
+
+    long requests = 0;
+    long hits = 0;
+    long requestedBytes = 0;
+    long hitBytes = 0;
+    for (CacheTrace.Event event : events) {
+      if (event.layer != layer || !event.isLookup()) {
+        continue;
+      }
+      Integer knownSize = sizes.get(event.keyHash);
+      int size = knownSize == null ? defaultSizeInBytes : knownSize;
+      long timestampMs = timeOffsetMs + event.timestampMs;
+      requests++;
+      requestedBytes += size;
+      if (cache.lookup(event.keyHash, timestampMs)) {
+        hits++;
+        hitBytes += size;
+      } else {
+        cache.insert(event.keyHash, size, timestampMs);
+      }
+    }
+    return new Result(
+        requests,
+        hits,
+        requestedBytes,
+        hitBytes,
+        cache.getEvictionCount(),
+        cache.getEvictedBytes());
+  }
+
+  /** Simulates a {@link LruCountingMemoryCache}. */
+  public static SimulatedCache newLruMemoryCache(MemoryCacheParams params) {
+    SimulatedMemoryCache simulatedCache = new SimulatedMemoryCache();
+    simulatedCache.mMemoryCache =
+        new LruCountingMemoryCache<>(
+            SimulatedMemoryCache.VALUE_DESCRIPTOR,
+            SimulatedMemoryCache.NO_TRIM_STRATEGY,
+            Suppliers.of(params),
+            null);
+    return simulatedCache;
+  }
+
+  /** Simulates an {@link AbstractAdaptiveCountingMemoryCache}. */
+  public static SimulatedCache newAdaptiveMemoryCache(
+      MemoryCacheParams params,
+      int adaptiveRatePromil,
+      int frequentlyUsedThreshold,
+      int ghostListMaxSize,
+      int lfuFractionPromil) {
+    SimulatedMemoryCache simulatedCache = new SimulatedMemoryCache();
+    simulatedCache.mMemoryCache =
+        new AbstractAdaptiveCountingMemoryCache<Long, Integer>(
+            Suppliers.of(params),
+            SimulatedMemoryCache.NO_TRIM_STRATEGY,
+            SimulatedMemoryCache.VALUE_DESCRIPTOR,
+            adaptiveRatePromil,
+            frequentlyUsedThreshold,
+            ghostListMaxSize,
+            lfuFractionPromil) {
+          @Override
+          protected void logIllegalLfuFraction() {
+            throw new IllegalArgumentException("Invalid LFU fraction");
+          }
+
+          @Override
+          protected void logIllegalAdaptiveRate() {
+            throw new IllegalArgumentException("Invalid adaptive rate");
+          }
+
+          @Override
+          public @Nullable String getDebugData() {
+            return null;
+          }
+        };
+    return simulatedCache;
+  }
+
+  /** Simulates a {@link DiskStorageCache} on top of an in-memory storage. */
+  public static SimulatedCache newDiskStorageCache(
+      long maxSizeInBytes, EntryEvictionComparatorSupplier evictionComparatorSupplier) {
+    return new SimulatedDiskCache(maxSizeInBytes, evictionComparatorSupplier);
+  }
+
+  private static class SimulatedMemoryCache implements SimulatedCache {
+
+    static final ValueDescriptor<Integer> VALUE_DESCRIPTOR =
+        new ValueDescriptor<Integer>() {
+          @Override
+          public int getSizeInBytes(Integer value) {
+            return value;
+          }
+        };
+
+    static final MemoryCache.CacheTrimStrategy NO_TRIM_STRATEGY =
+        new MemoryCache.CacheTrimStrategy() {
+          @Override
+          public double getTrimRatio(MemoryTrimType trimType) {
+            return 0;
+          }
+        };
+
+    @Nullable MemoryCache<Long, Integer> mMemoryCache;
+    private long mEvictionCount;
+    private long mEvictedBytes;
+    private boolean mRejected;
+
+    private final ResourceReleaser<Integer> mReleaser =
+        new ResourceReleaser<Integer>() {
+          @Override
+          public void release(Integer value) {
+            if (!mRejected) {
+              mEvictionCount++;
+              mEvictedBytes += value;
+            }
+          }
+        };
+
+    @Override
+    public boolean lookup(long keyHash, long timestampMs) {
+      CloseableReference<Integer> ref = getMemoryCache().get(keyHash);
+      if (ref == null) {
+        return false;
+      }
+      ref.close();
+      return true;
+    }
+
+    @Override
+    public void insert(long keyHash, int sizeInBytes, long timestampMs) {
+      CloseableReference<Integer> ref = CloseableReference.of(sizeInBytes, mReleaser);
+      CloseableReference<Integer> cachedRef = getMemoryCache().cache(keyHash, ref);
+      // values the cache refuses, e.g. because they are too big, are not evictions
+      mRejected = cachedRef == null;
+      ref.close();
+      mRejected = false;
+      CloseableReference.closeSafely(cachedRef);
+    }
+
+    @Override
+    public long getEvictionCount() {
+      return mEvictionCount;
+    }
+
+    @Override
+    public long getEvictedBytes() {
+      return mEvictedBytes;
+    }
+
+    private MemoryCache<Long, Integer> getMemoryCache() {
+      if (mMemoryCache == null) {
+        throw new IllegalStateException();
+      }
+      return mMemoryCache;
+    }
+  }
+
+  private static class SimulatedDiskCache extends BaseCacheEventListener
+      implements SimulatedCache {
+
+    private final InMemoryDiskStorage mStorage;
+    private final DiskStorageCache mDiskStorageCache;
+    private long mEvictionCount;
+    private long mEvictedBytes;
+
+    SimulatedDiskCache(
+        long maxSizeInBytes, EntryEvictionComparatorSupplier evictionComparatorSupplier) {
+      mStorage = new InMemoryDiskStorage();
+      mDiskStorageCache =
+          new DiskStorageCache(
+              mStorage,
+              evictionComparatorSupplier,
+              new DiskStorageCache.Params(0, maxSizeInBytes, maxSizeInBytes),
+              this,
+              NoOpCacheErrorLogger.getInstance(),
+              null,
+              CallerThreadExecutor.getInstance(),
+              false);
+    }
+
+    @Override
+    public boolean lookup(long keyHash, long timestampMs) {
+      mStorage.mNowMs = timestampMs;
+      return mDiskStorageCache.getResource(newCacheKey(keyHash)) != null;
+    }
+
+    @Override
+    public void insert(long keyHash, final int sizeInBytes, long timestampMs) {
+      mStorage.mNowMs = timestampMs;
+      try {
+        mDiskStorageCache.insert(
+            newCacheKey(keyHash),
+            new WriterCallback() {
+              @Override
+              public void write(OutputStream os) throws IOException {
+                byte[] chunk = new byte[Math.min(sizeInBytes, 4096)];
+                for (int written = 0; written < sizeInBytes; written += chunk.length) {
+                  os.write(chunk, 0, Math.min(chunk.length, sizeInBytes - written));
+                }
+              }
+            });
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void onEviction(CacheEvent cacheEvent) {
+      mEvictionCount++;
+      mEvictedBytes += cacheEvent.getItemSize();
+    }
+
+    @Override
+    public long getEvictionCount() {
+      return mEvictionCount;
+    }
+
+    @Override
+    public long getEvictedBytes() {
+      return mEvictedBytes;
+    }
+
+    private static SimpleCacheKey newCacheKey(long keyHash) {
+      return new SimpleCacheKey(Long.toHexString(keyHash));
+    }
+  }
+
+  /** Disk storage only keeping the sizes and timestamps of the entries. */
+  private static class InMemoryDiskStorage implements DiskStorage {
+
+    private final Map<String, InMemoryEntry> mEntries = new HashMap<>();
+    long mNowMs;
+
+    @Override
+    public boolean isEnabled() {
+      return true;
+    }
+
+    @Override
+    public boolean isExternal() {
+      return false;
+    }
+
+    @Override
+    public @Nullable BinaryResource getResource(String resourceId, Object debugInfo) {
+      InMemoryEntry entry = mEntries.get(resourceId);
+      if (entry == null) {
+        return null;
+      }
+      entry.mTimestamp = mNowMs;
+      return entry.getResource();
+    }
+
+    @Override
+    public boolean contains(String resourceId, Object debugInfo) {
+      return mEntries.containsKey(resourceId);
+    }
+
+    @Override
+    public boolean touch(String resourceId, Object debugInfo) {
+      return getResource(resourceId, debugInfo) != null;
+    }
+
+    @Override
+    public void purgeUnexpectedResources() {}
+
+    @Override
+    public Inserter insert(final String resourceId, Object debugInfo) {
+      return new Inserter() {
+        private long mSize;
+
+        @Override
+        public void writeData(WriterCallback callback, Object debugInfo) throws IOException {
+          CountingOutputStream outputStream = new CountingOutputStream();
+          callback.write(outputStream);
+          mSize = outputStream.mCount;
+        }
+
+        @Override
+        public BinaryResource commit(Object debugInfo) {
+          return commit(debugInfo, mNowMs);
+        }
+
+        @Override
+        public BinaryResource commit(Object debugInfo, long time) {
+          InMemoryEntry entry = new InMemoryEntry(resourceId, mSize, time);
+          mEntries.put(resourceId, entry);
+          return entry.getResource();
+        }
+
+        @Override
+        public boolean cleanUp() {
+          return true;
+        }
+      };
+    }
+
+    @Override
+    public Collection<Entry> getEntries() {
+      return new ArrayList<Entry>(mEntries.values());
+    }
+
+    @Override
+    public long remove(Entry entry) {
+      return remove(entry.getId());
+    }
+
+    @Override
+    public long remove(String resourceId) {
+      InMemoryEntry entry = mEntries.remove(resourceId);
+      return entry == null ? -1 : entry.getSize();
+    }
+
+    @Override
+    public void clearAll() {
+      mEntries.clear();
+    }
+
+    @Override
+    public DiskDumpInfo getDumpInfo() {
+      return new DiskDumpInfo();
+    }
+
+    @Override
+    public String getStorageName() {
+      return "in-memory";
+    }
+  }
+
+  private static class InMemoryEntry implements DiskStorage.Entry {
+
+    private final String mId;
+    private final long mSize;
+    long mTimestamp;
+
+    InMemoryEntry(String id, long size, long timestamp) {
+      mId = id;
+      mSize = size;
+      mTimestamp = timestamp;
+    }
+
+    @Override
+    public String getId() {
+      return mId;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return mTimestamp;
+    }
+
+    @Override
+    public long getSize() {
+      return mSize;
+    }
+
+    @Override
+    public BinaryResource getResource() {
+      return new BinaryResource() {
+        @Override
+        public InputStream openStream() {
+          return new ByteArrayInputStream(read());
+        }
+
+        @Override
+        public byte[] read() {
+          return new byte[(int) mSize];
+        }
+
+        @Override
+        public long size() {
+          return mSize;
+        }
+      };
+    }
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+
+    long mCount;
+
+    @Override
+    public void write(int b) {
+      mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      mCount += len;
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.facebook.cache.disk.DefaultEntryEvictionComparatorSupplier;
+import com.facebook.cache.disk.ScoreBasedEvictionComparatorSupplier;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CacheTraceReplayerTest {
+
+  private static final int KEY_COUNT = 2000;
+  private static final int REQUEST_COUNT = 20000;
+  private static final int MAX_ENTRY_SIZE = 10 * 1024;
+
+  @Test
+  public void testTraceRoundTrip() throws IOException {
+    List<CacheTrace.Event> events = newZipfTrace(CacheTrace.LAYER_BITMAP_MEMORY, 100, 1);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    CacheTrace.write(events, outputStream);
+    List<CacheTrace.Event> readEvents =
+        CacheTrace.read(new ByteArrayInputStream(outputStream.toByteArray()));
+
+    assertThat(readEvents).isEqualTo(events);
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadInvalidTrace() throws IOException {
+    CacheTrace.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+  }
+
+  @Test
+  public void testReplayCountsHitsOfReplayedLayer() {
+    List<CacheTrace.Event> events =
+        Arrays.asList(
+            new CacheTrace.Event(0, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_MISS, 1, 0),
+            new CacheTrace.Event(1, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_PUT, 1, 300),
+            new CacheTrace.Event(2, CacheTrace.LAYER_DISK, CacheTrace.TYPE_MISS, 2, 0),
+            new CacheTrace.Event(3, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_HIT, 1, 0),
+            new CacheTrace.Event(4, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_MISS, 3, 0));
+
+    CacheTraceReplayer.Result result =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_BITMAP_MEMORY,
+            CacheTraceReplayer.newLruMemoryCache(newMemoryCacheParams(10000)),
+            100);
+
+    assertThat(result.requests).isEqualTo(3L);
+    assertThat(result.hits).isEqualTo(1L);
+    // the size of key 1 comes from its put, key 3 has the default size
+    assertThat(result.requestedBytes).isEqualTo(700L);
+    assertThat(result.hitBytes).isEqualTo(300L);
+    assertThat(result.evictions).isEqualTo(0L);
+  }
+
+  @Test
+  public void testLruMemoryCacheReplay() {
+    List<CacheTrace.Event> events = newZipfTrace(CacheTrace.LAYER_BITMAP_MEMORY, REQUEST_COUNT, 2);
+
+    CacheTraceReplayer.Result small =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_BITMAP_MEMORY,
+            CacheTraceReplayer.newLruMemoryCache(newMemoryCacheParams(500 * 1024)),
+            0);
+    CacheTraceReplayer.Result large =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_BITMAP_MEMORY,
+            CacheTraceReplayer.newLruMemoryCache(newMemoryCacheParams(4 * 1024 * 1024)),
+            0);
+
+    assertThat(small.requests).isEqualTo((long) REQUEST_COUNT);
+    assertThat(small.getHitRatio()).isGreaterThan(0.0);
+    assertThat(small.evictions).isGreaterThan(0L);
+    assertThat(large.getHitRatio()).isGreaterThan(small.getHitRatio());
+    assertThat(large.getByteHitRatio()).isGreaterThan(small.getByteHitRatio());
+    assertThat(large.getEvictionChurn()).isLessThan(small.getEvictionChurn());
+  }
+
+  @Test
+  public void testAdaptiveMemoryCacheReplay() {
+    List<CacheTrace.Event> events = newZipfTrace(CacheTrace.LAYER_BITMAP_MEMORY, REQUEST_COUNT, 3);
+
+    CacheTraceReplayer.Result adaptive =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_BITMAP_MEMORY,
+            CacheTraceReplayer.newAdaptiveMemoryCache(
+                newMemoryCacheParams(500 * 1024), 10, 2, 100, 500),
+            0);
+    CacheTraceReplayer.Result lru =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_BITMAP_MEMORY,
+            CacheTraceReplayer.newLruMemoryCache(newMemoryCacheParams(500 * 1024)),
+            0);
+
+    assertThat(adaptive.requests).isEqualTo((long) REQUEST_COUNT);
+    assertThat(adaptive.getHitRatio()).isLessThan(1.0);
+    assertThat(adaptive.evictions).isGreaterThan(0L);
+    // frequently used keys survive the one-off ones in the adaptive cache
+    assertThat(adaptive.getHitRatio()).isGreaterThan(lru.getHitRatio());
+    assertThat(adaptive.getEvictionChurn()).isLessThan(lru.getEvictionChurn());
+  }
+
+  @Test
+  public void testDiskStorageCacheReplay() {
+    List<CacheTrace.Event> events = newZipfTrace(CacheTrace.LAYER_DISK, REQUEST_COUNT, 4);
+
+    CacheTraceReplayer.Result small =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_DISK,
+            CacheTraceReplayer.newDiskStorageCache(
+                500 * 1024, new DefaultEntryEvictionComparatorSupplier()),
+            0);
+    CacheTraceReplayer.Result large =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_DISK,
+            CacheTraceReplayer.newDiskStorageCache(
+                4 * 1024 * 1024, new DefaultEntryEvictionComparatorSupplier()),
+            0);
+
+    assertThat(small.getHitRatio()).isGreaterThan(0.0);
+    assertThat(small.evictions).isGreaterThan(0L);
+    assertThat(large.getHitRatio()).isGreaterThan(small.getHitRatio());
+  }
+
+  @Test
+  public void testSizeWeightedDiskEvictionFavorsHitRatio() {
+    List<CacheTrace.Event> events = newZipfTrace(CacheTrace.LAYER_DISK, REQUEST_COUNT, 5);
+
+    CacheTraceReplayer.Result lru =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_DISK,
+            CacheTraceReplayer.newDiskStorageCache(
+                500 * 1024, new DefaultEntryEvictionComparatorSupplier()),
+            0);
+    // evicting large entries first keeps more entries in the same space
+    CacheTraceReplayer.Result sizeWeighted =
+        CacheTraceReplayer.replay(
+            events,
+            CacheTrace.LAYER_DISK,
+            CacheTraceReplayer.newDiskStorageCache(
+                500 * 1024, new ScoreBasedEvictionComparatorSupplier(1f, 10f)),
+            0);
+
+    assertThat(sizeWeighted.getHitRatio()).isGreaterThan(lru.getHitRatio());
+  }
+
+  /**
+   * Generates a trace where the popularity of the keys follows a Zipf distribution, each request
+   * being a miss followed by a put, as the replay does not depend on the recorded outcome.
+   */
+  private static List<CacheTrace.Event> newZipfTrace(int layer, int requestCount, long seed) {
+    Random random = new Random(seed);
+    double[] cumulativeWeights = new double[KEY_COUNT];
+    double total = 0;
+    for (int i = 0; i < KEY_COUNT; i++) {
+      total += 1.0 / Math.pow(i + 1, 0.9);
+      cumulativeWeights[i] = total;
+    }
+    int[] sizes = new int[KEY_COUNT];
+    for (int i = 0; i < KEY_COUNT; i++) {
+      sizes[i] = 1 + random.nextInt(MAX_ENTRY_SIZE);
+    }
+    List<CacheTrace.Event> events = new ArrayList<>(2 * requestCount);
+    long timestampMs = 0;
+    for (int i = 0; i < requestCount; i++) {
+      int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * total);
+      int key = index >= 0 ? index : -index - 1;
+      timestampMs += 1 + random.nextInt((int) TimeUnit.SECONDS.toMillis(1));
+      events.add(new CacheTrace.Event(timestampMs, layer, CacheTrace.TYPE_MISS, key, 0));
+      events.add(new CacheTrace.Event(timestampMs, layer, CacheTrace.TYPE_PUT, key, sizes[key]));
+    }
+    return events;
+  }
+
+  private static MemoryCacheParams newMemoryCacheParams(int maxSizeInBytes) {
+    return new MemoryCacheParams(
+        maxSizeInBytes,
+        Integer.MAX_VALUE,
+        maxSizeInBytes,
+        Integer.MAX_VALUE,
+        MAX_ENTRY_SIZE,
+        TimeUnit.MINUTES.toMillis(5));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FrequencySketchTest {
+
+  @Test
+  public void testIncrement() {
+    FrequencySketch sketch = new FrequencySketch(64);
+
+    assertThat(sketch.frequency(1)).isEqualTo(0);
+    sketch.increment(1);
+    sketch.increment(1);
+    sketch.increment(2);
+
+    assertThat(sketch.frequency(1)).isEqualTo(2);
+    assertThat(sketch.frequency(2)).isEqualTo(1);
+    assertThat(sketch.frequency(3)).isEqualTo(0);
+  }
+
+  @Test
+  public void testFrequencySaturates() {
+    FrequencySketch sketch = new FrequencySketch(64);
+
+    for (int i = 0; i < 2 * FrequencySketch.MAX_FREQUENCY; i++) {
+      sketch.increment(1);
+    }
+
+    assertThat(sketch.frequency(1)).isEqualTo(FrequencySketch.MAX_FREQUENCY);
+  }
+
+  @Test
+  public void testAge() {
+    FrequencySketch sketch = new FrequencySketch(64);
+    for (int i = 0; i < 9; i++) {
+      sketch.increment(1);
+    }
+
+    sketch.age();
+
+    assertThat(sketch.frequency(1)).isEqualTo(4);
+  }
+
+  @Test
+  public void testAgeHalvesBothCountersOfEachByte() {
+    FrequencySketch sketch = new FrequencySketch(64);
+    for (int hash = 0; hash < 64; hash++) {
+      for (int i = 0; i < FrequencySketch.MAX_FREQUENCY; i++) {
+        sketch.increment(hash);
+      }
+    }
+
+    sketch.age();
+
+    for (int hash = 0; hash < 64; hash++) {
+      assertThat(sketch.frequency(hash)).isEqualTo(FrequencySketch.MAX_FREQUENCY / 2);
+    }
+  }
+}
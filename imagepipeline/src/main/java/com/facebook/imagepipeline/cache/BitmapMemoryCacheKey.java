@@ -20,7 +20,12 @@ import java.util.Locale;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
-/** Cache key for BitmapMemoryCache */
+/**
+ * Cache key for BitmapMemoryCache
+ *
+ * <p>Besides the hash code, the key precomputes a 64-bit fingerprint of all its fields, so that
+ * comparing two different keys almost never has to compare the fields.
+ */
 @Immutable
 public class BitmapMemoryCacheKey implements CacheKey {
 
@@ -31,6 +36,7 @@ public class BitmapMemoryCacheKey implements CacheKey {
   private final @Nullable CacheKey mPostprocessorCacheKey;
   private final @Nullable String mPostprocessorName;
   private final int mHash;
+  private final long mFingerprint;
   private final Object mCallerContext;
   private final long mCacheTime;
 
@@ -56,17 +62,50 @@ public class BitmapMemoryCacheKey implements CacheKey {
             mImageDecodeOptions,
             mPostprocessorCacheKey,
             postprocessorName);
+    mFingerprint =
+        fingerprint(
+            sourceString,
+            (resizeOptions != null) ? resizeOptions.hashCode() : 0,
+            rotationOptions.hashCode(),
+            (imageDecodeOptions != null) ? imageDecodeOptions.hashCode() : 0,
+            (postprocessorCacheKey != null) ? postprocessorCacheKey.hashCode() : 0,
+            (postprocessorName != null) ? postprocessorName.hashCode() : 0);
+    mCallerContext = callerContext;
+    mCacheTime = RealtimeSinceBootClock.get().now();
+  }
+
+  private BitmapMemoryCacheKey(BitmapMemoryCacheKey key, @Nullable Object callerContext) {
+    mSourceString = key.mSourceString;
+    mResizeOptions = key.mResizeOptions;
+    mRotationOptions = key.mRotationOptions;
+    mImageDecodeOptions = key.mImageDecodeOptions;
+    mPostprocessorCacheKey = key.mPostprocessorCacheKey;
+    mPostprocessorName = key.mPostprocessorName;
+    mHash = key.mHash;
+    mFingerprint = key.mFingerprint;
     mCallerContext = callerContext;
     mCacheTime = RealtimeSinceBootClock.get().now();
   }
 
+  /**
+   * Returns a key equal to this one for another caller context, without computing the hash code
+   * and the fingerprint again.
+   */
+  BitmapMemoryCacheKey withCallerContext(@Nullable Object callerContext) {
+    return new BitmapMemoryCacheKey(this, callerContext);
+  }
+
   @Override
   public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
     if (!(o instanceof BitmapMemoryCacheKey)) {
       return false;
     }
     BitmapMemoryCacheKey otherKey = (BitmapMemoryCacheKey) o;
     return mHash == otherKey.mHash
+        && mFingerprint == otherKey.mFingerprint
         && mSourceString.equals(otherKey.mSourceString)
         && Objects.equal(this.mResizeOptions, otherKey.mResizeOptions)
         && Objects.equal(this.mRotationOptions, otherKey.mRotationOptions)
@@ -90,6 +129,24 @@ public class BitmapMemoryCacheKey implements CacheKey {
     return mSourceString;
   }
 
+  @Nullable
+  public ResizeOptions getResizeOptions() {
+    return mResizeOptions;
+  }
+
+  public RotationOptions getRotationOptions() {
+    return mRotationOptions;
+  }
+
+  public ImageDecodeOptions getImageDecodeOptions() {
+    return mImageDecodeOptions;
+  }
+
+  @Nullable
+  public CacheKey getPostprocessorCacheKey() {
+    return mPostprocessorCacheKey;
+  }
+
   @Nullable
   public String getPostprocessorName() {
     return mPostprocessorName;
@@ -121,4 +178,37 @@ public class BitmapMemoryCacheKey implements CacheKey {
   public long getInBitmapCacheSince() {
     return mCacheTime;
   }
+
+  /** Returns the 64-bit fingerprint of the fields compared by {@link #equals(Object)}. */
+  public long getFingerprint() {
+    return mFingerprint;
+  }
+
+  private static long fingerprint(
+      String sourceString,
+      int resizeOptionsHash,
+      int rotationOptionsHash,
+      int imageDecodeOptionsHash,
+      int postprocessorCacheKeyHash,
+      int postprocessorNameHash) {
+    long fingerprint = sourceString.length();
+    for (int i = 0; i < sourceString.length(); i++) {
+      fingerprint = fingerprint * 0x100000001b3L + sourceString.charAt(i);
+    }
+    fingerprint = mix(fingerprint) ^ resizeOptionsHash;
+    fingerprint = mix(fingerprint) ^ rotationOptionsHash;
+    fingerprint = mix(fingerprint) ^ imageDecodeOptionsHash;
+    fingerprint = mix(fingerprint) ^ postprocessorCacheKeyHash;
+    fingerprint = mix(fingerprint) ^ postprocessorNameHash;
+    return mix(fingerprint);
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
 }
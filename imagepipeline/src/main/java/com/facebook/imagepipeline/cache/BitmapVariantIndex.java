@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Objects;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.CloseableStaticBitmap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Index of the sizes at which the images of each uri are in the bitmap memory cache.
+ *
+ * <p>The bitmap memory cache keys include the resize options, so a request for a smaller size of an
+ * image misses the cache even though the image is already decoded at a larger size. This index
+ * finds such a larger bitmap, which can be scaled down instead of decoding the image again.
+ *
+ * <p>The index is not notified of the evictions from the cache: an evicted variant is dropped when
+ * it is looked up. The number of uris and of variants per uri are bounded, the least recently
+ * indexed ones being dropped first. The indexed keys do not hold the caller contexts.
+ */
+@ThreadSafe
+public class BitmapVariantIndex {
+
+  private static final int MAX_VARIANTS_PER_SOURCE = 4;
+
+  private final int mMaxSources;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<String, List<Variant>> mVariants;
+
+  public BitmapVariantIndex(final int maxSources) {
+    mMaxSources = maxSources;
+    mVariants =
+        new LinkedHashMap<String, List<Variant>>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, List<Variant>> eldest) {
+            return size() > mMaxSources;
+          }
+        };
+  }
+
+  /**
+   * Indexes the image cached with the given key, if it is a full quality static bitmap that is not
+   * postprocessed.
+   */
+  public void onCached(CacheKey key, CloseableImage image) {
+    if (!(key instanceof BitmapMemoryCacheKey)
+        || !(image instanceof CloseableStaticBitmap)
+        || !image.getQualityInfo().isOfFullQuality()) {
+      return;
+    }
+    BitmapMemoryCacheKey bitmapKey = (BitmapMemoryCacheKey) key;
+    if (bitmapKey.getPostprocessorCacheKey() != null) {
+      return;
+    }
+    // copy of the key without the caller context
+    BitmapMemoryCacheKey indexedKey =
+        new BitmapMemoryCacheKey(
+            bitmapKey.getUriString(),
+            bitmapKey.getResizeOptions(),
+            bitmapKey.getRotationOptions(),
+            bitmapKey.getImageDecodeOptions(),
+            null,
+            null,
+            null);
+    Variant variant = new Variant(indexedKey, image.getWidth(), image.getHeight());
+    synchronized (this) {
+      List<Variant> variants = mVariants.get(bitmapKey.getUriString());
+      if (variants == null) {
+        variants = new ArrayList<>(2);
+        mVariants.put(bitmapKey.getUriString(), variants);
+      }
+      removeVariant(variants, indexedKey);
+      if (variants.size() >= MAX_VARIANTS_PER_SOURCE) {
+        variants.remove(0);
+      }
+      variants.add(variant);
+    }
+  }
+
+  /**
+   * Returns the smallest cached bitmap of the same image as the given key that is at least as large
+   * as its resize options in both dimensions, or null if there is none. The key must not be in the
+   * cache already.
+   *
+   * @param key key of a request with resize options and without postprocessor
+   * @param memoryCache the bitmap memory cache
+   * @return a reference to a {@link CloseableStaticBitmap}, to be closed by the caller
+   */
+  public @Nullable CloseableReference<CloseableImage> getLargerVariant(
+      CacheKey key, MemoryCache<CacheKey, CloseableImage> memoryCache) {
+    if (!(key instanceof BitmapMemoryCacheKey)) {
+      return null;
+    }
+    BitmapMemoryCacheKey requestedKey = (BitmapMemoryCacheKey) key;
+    ResizeOptions resizeOptions = requestedKey.getResizeOptions();
+    if (resizeOptions == null || requestedKey.getPostprocessorCacheKey() != null) {
+      return null;
+    }
+    while (true) {
+      Variant best = null;
+      synchronized (this) {
+        List<Variant> variants = mVariants.get(requestedKey.getUriString());
+        if (variants == null) {
+          return null;
+        }
+        for (int i = 0; i < variants.size(); i++) {
+          Variant variant = variants.get(i);
+          if (variant.mWidth >= resizeOptions.width
+              && variant.mHeight >= resizeOptions.height
+              && variant.isCompatibleWith(requestedKey)
+              && (best == null || variant.getArea() < best.getArea())) {
+            best = variant;
+          }
+        }
+      }
+      if (best == null) {
+        return null;
+      }
+      CloseableReference<CloseableImage> reference = memoryCache.get(best.mKey);
+      if (reference != null && reference.get() instanceof CloseableStaticBitmap) {
+        return reference;
+      }
+      CloseableReference.closeSafely(reference);
+      remove(best.mKey);
+    }
+  }
+
+  /** Removes a variant, e.g. once it has been evicted from the cache. */
+  public synchronized void remove(BitmapMemoryCacheKey key) {
+    List<Variant> variants = mVariants.get(key.getUriString());
+    if (variants != null) {
+      removeVariant(variants, key);
+      if (variants.isEmpty()) {
+        mVariants.remove(key.getUriString());
+      }
+    }
+  }
+
+  public synchronized int getVariantCount(String sourceString) {
+    List<Variant> variants = mVariants.get(sourceString);
+    return variants == null ? 0 : variants.size();
+  }
+
+  private static void removeVariant(List<Variant> variants, BitmapMemoryCacheKey key) {
+    Iterator<Variant> iterator = variants.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().mKey.equals(key)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static class Variant {
+
+    final BitmapMemoryCacheKey mKey;
+    final int mWidth;
+    final int mHeight;
+
+    Variant(BitmapMemoryCacheKey key, int width, int height) {
+      mKey = key;
+      mWidth = width;
+      mHeight = height;
+    }
+
+    long getArea() {
+      return (long) mWidth * mHeight;
+    }
+
+    boolean isCompatibleWith(BitmapMemoryCacheKey key) {
+      return Objects.equal(mKey.getRotationOptions(), key.getRotationOptions())
+          && Objects.equal(mKey.getImageDecodeOptions(), key.getImageDecodeOptions());
+    }
+  }
+}
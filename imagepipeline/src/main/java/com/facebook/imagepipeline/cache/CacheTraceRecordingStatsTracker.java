@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.common.time.RealtimeSinceBootClock;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link ImageCacheStatsTracker} recording an anonymized {@link CacheTrace} of the cache accesses,
+ * to be replayed offline when tuning the cache parameters.
+ *
+ * <p>Keys are recorded as a salted 64 bit hash, the salt being random for each recorder so that
+ * the URIs cannot be recovered from the trace. Only the last {@code maxEvents} events are kept.
+ * All the events are forwarded to the delegate tracker, the hardware bitmap events only if it is a
+ * {@link HardwareBitmapStatsTracker}.
+ */
+@ThreadSafe
+public class CacheTraceRecordingStatsTracker
+    implements ImageCacheStatsTracker, HardwareBitmapStatsTracker {
+
+  /** Estimates the size of the image identified by a cache key, e.g. from app-side metadata. */
+  public interface SizeEstimator {
+
+    /** @return the size in bytes, or {@link CacheTrace#UNKNOWN_SIZE} */
+    int estimateSizeInBytes(CacheKey cacheKey, int layer);
+  }
+
+  private final ImageCacheStatsTracker mDelegate;
+  private final @Nullable SizeEstimator mSizeEstimator;
+  private final MonotonicClock mClock;
+  private final long mSalt;
+  private final long mStartTimeMs;
+
+  @GuardedBy("this")
+  private final CacheTrace.Event[] mEvents;
+
+  @GuardedBy("this")
+  private int mNextIndex;
+
+  @GuardedBy("this")
+  private int mCount;
+
+  public CacheTraceRecordingStatsTracker(ImageCacheStatsTracker delegate, int maxEvents) {
+    this(delegate, maxEvents, null, RealtimeSinceBootClock.get(), new SecureRandom().nextLong());
+  }
+
+  public CacheTraceRecordingStatsTracker(
+      ImageCacheStatsTracker delegate,
+      int maxEvents,
+      @Nullable SizeEstimator sizeEstimator,
+      MonotonicClock clock,
+      long salt) {
+    Preconditions.checkArgument(maxEvents > 0);
+    mDelegate = delegate;
+    mSizeEstimator = sizeEstimator;
+    mClock = clock;
+    mSalt = salt;
+    mStartTimeMs = clock.now();
+    mEvents = new CacheTrace.Event[maxEvents];
+  }
+
+  @Override
+  public void onBitmapCachePut(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_PUT);
+    mDelegate.onBitmapCachePut(cacheKey);
+  }
+
+  @Override
+  public void onHardwareBitmapCachePut(CacheKey cacheKey, int sizeInBytes) {
+    // already recorded by onBitmapCachePut
+    if (mDelegate instanceof HardwareBitmapStatsTracker) {
+      ((HardwareBitmapStatsTracker) mDelegate).onHardwareBitmapCachePut(cacheKey, sizeInBytes);
+    }
+  }
+
+  @Override
+  public void onHardwareBitmapReleased(int sizeInBytes) {
+    if (mDelegate instanceof HardwareBitmapStatsTracker) {
+      ((HardwareBitmapStatsTracker) mDelegate).onHardwareBitmapReleased(sizeInBytes);
+    }
+  }
+
+  @Override
+  public void onBitmapCacheHit(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_HIT);
+    mDelegate.onBitmapCacheHit(cacheKey);
+  }
+
+  @Override
+  public void onBitmapCacheMiss(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_MISS);
+    mDelegate.onBitmapCacheMiss(cacheKey);
+  }
+
+  @Override
+  public void onMemoryCachePut(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_ENCODED_MEMORY, CacheTrace.TYPE_PUT);
+    mDelegate.onMemoryCachePut(cacheKey);
+  }
+
+  @Override
+  public void onMemoryCacheHit(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_ENCODED_MEMORY, CacheTrace.TYPE_HIT);
+    mDelegate.onMemoryCacheHit(cacheKey);
+  }
+
+  @Override
+  public void onMemoryCacheMiss(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_ENCODED_MEMORY, CacheTrace.TYPE_MISS);
+    mDelegate.onMemoryCacheMiss(cacheKey);
+  }
+
+  @Override
+  public void onStagingAreaHit(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_STAGING_AREA, CacheTrace.TYPE_HIT);
+    mDelegate.onStagingAreaHit(cacheKey);
+  }
+
+  @Override
+  public void onStagingAreaMiss(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_STAGING_AREA, CacheTrace.TYPE_MISS);
+    mDelegate.onStagingAreaMiss(cacheKey);
+  }
+
+  @Override
+  public void onDiskCacheHit(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_DISK, CacheTrace.TYPE_HIT);
+    mDelegate.onDiskCacheHit(cacheKey);
+  }
+
+  @Override
+  public void onDiskCacheMiss(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_DISK, CacheTrace.TYPE_MISS);
+    mDelegate.onDiskCacheMiss(cacheKey);
+  }
+
+  @Override
+  public void onDiskCacheGetFail(CacheKey cacheKey) {
+    // a failed read is a miss from the point of view of the cache policy
+    record(cacheKey, CacheTrace.LAYER_DISK, CacheTrace.TYPE_MISS);
+    mDelegate.onDiskCacheGetFail(cacheKey);
+  }
+
+  @Override
+  public void onDiskCachePut(CacheKey cacheKey) {
+    record(cacheKey, CacheTrace.LAYER_DISK, CacheTrace.TYPE_PUT);
+    mDelegate.onDiskCachePut(cacheKey);
+  }
+
+  @Override
+  public void registerBitmapMemoryCache(MemoryCache<?, ?> bitmapMemoryCache) {
+    mDelegate.registerBitmapMemoryCache(bitmapMemoryCache);
+  }
+
+  @Override
+  public void registerEncodedMemoryCache(MemoryCache<?, ?> encodedMemoryCache) {
+    mDelegate.registerEncodedMemoryCache(encodedMemoryCache);
+  }
+
+  /** Returns the recorded events, oldest first. */
+  public synchronized List<CacheTrace.Event> getEvents() {
+    List<CacheTrace.Event> events = new ArrayList<>(mCount);
+    int first = mNextIndex - mCount;
+    if (first < 0) {
+      first += mEvents.length;
+    }
+    for (int i = 0; i < mCount; i++) {
+      events.add(mEvents[(first + i) % mEvents.length]);
+    }
+    return events;
+  }
+
+  /** Writes the recorded events in the {@link CacheTrace} format. */
+  public void writeTo(OutputStream outputStream) throws IOException {
+    CacheTrace.write(getEvents(), outputStream);
+  }
+
+  public synchronized void clear() {
+    for (int i = 0; i < mEvents.length; i++) {
+      mEvents[i] = null;
+    }
+    mNextIndex = 0;
+    mCount = 0;
+  }
+
+  /** Returns the anonymized hash the given key is recorded with. */
+  public long getKeyHash(CacheKey cacheKey) {
+    long hash = mSalt;
+    hash = mix(hash ^ cacheKey.getUriString().hashCode());
+    hash = mix(hash ^ cacheKey.hashCode());
+    return hash;
+  }
+
+  private void record(CacheKey cacheKey, int layer, int type) {
+    int size =
+        mSizeEstimator == null
+            ? CacheTrace.UNKNOWN_SIZE
+            : mSizeEstimator.estimateSizeInBytes(cacheKey, layer);
+    CacheTrace.Event event =
+        new CacheTrace.Event(
+            mClock.now() - mStartTimeMs, layer, type, getKeyHash(cacheKey), size);
+    synchronized (this) {
+      mEvents[mNextIndex] = event;
+      mNextIndex = (mNextIndex + 1) % mEvents.length;
+      mCount = Math.min(mCount + 1, mEvents.length);
+    }
+  }
+
+  /** Finalizer of MurmurHash3, spreading the bits of the 64 bit value. */
+  private static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
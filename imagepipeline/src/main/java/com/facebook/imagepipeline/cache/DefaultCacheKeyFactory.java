@@ -31,7 +31,7 @@ public class DefaultCacheKeyFactory implements CacheKeyFactory {
   @Override
   public CacheKey getBitmapCacheKey(ImageRequest request, @Nullable Object callerContext) {
     return new BitmapMemoryCacheKey(
-        getCacheKeySourceUri(request.getSourceUri()).toString(),
+        getCacheKeySourceString(request.getSourceUri()),
         request.getResizeOptions(),
         request.getRotationOptions(),
         request.getImageDecodeOptions(),
@@ -54,7 +54,7 @@ public class DefaultCacheKeyFactory implements CacheKeyFactory {
       postprocessorName = null;
     }
     return new BitmapMemoryCacheKey(
-        getCacheKeySourceUri(request.getSourceUri()).toString(),
+        getCacheKeySourceString(request.getSourceUri()),
         request.getResizeOptions(),
         request.getRotationOptions(),
         request.getImageDecodeOptions(),
@@ -71,11 +71,16 @@ public class DefaultCacheKeyFactory implements CacheKeyFactory {
   @Override
   public CacheKey getEncodedCacheKey(
       ImageRequest request, Uri sourceUri, @Nullable Object callerContext) {
-    return new SimpleCacheKey(getCacheKeySourceUri(sourceUri).toString());
+    return new SimpleCacheKey(getCacheKeySourceString(sourceUri));
   }
 
   /** @return a {@link Uri} that unambiguously indicates the source of the image. */
   protected Uri getCacheKeySourceUri(Uri sourceUri) {
     return sourceUri;
   }
+
+  /** @return the interned string of {@link #getCacheKeySourceUri(Uri)}. */
+  private String getCacheKeySourceString(Uri sourceUri) {
+    return UriStringInterner.getInstance().intern(getCacheKeySourceUri(sourceUri).toString());
+  }
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.imagepipeline.memory.BitmapCounter;
+
+/**
+ * Optional interface of an {@link ImageCacheStatsTracker}, to be notified of the hardware bitmaps
+ * of the bitmap cache.
+ *
+ * <p>The pixels of hardware bitmaps are in graphics memory rather than in the memory of the app, so
+ * their size is reported separately. Implement this interface in addition to {@link
+ * ImageCacheStatsTracker} to receive these events.
+ */
+public interface HardwareBitmapStatsTracker extends BitmapCounter.HardwareBitmapReleaseListener {
+
+  /**
+   * Called whenever a decoded image backed by a hardware bitmap has been put into the bitmap cache,
+   * in addition to {@link ImageCacheStatsTracker#onBitmapCachePut}.
+   */
+  void onHardwareBitmapCachePut(CacheKey cacheKey, int sizeInBytes);
+}
@@ -7,9 +7,14 @@
 
 package com.facebook.imagepipeline.cache;
 
+import android.graphics.Bitmap;
 import com.facebook.cache.common.CacheKey;
+import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.CloseableStaticBitmap;
+import com.facebook.imageutils.BitmapUtil;
 import com.facebook.infer.annotation.Nullsafe;
+import javax.annotation.Nullable;
 
 @Nullsafe(Nullsafe.Mode.STRICT)
 public class InstrumentedMemoryCacheBitmapMemoryCacheFactory {
@@ -38,6 +43,26 @@ public class InstrumentedMemoryCacheBitmapMemoryCacheFactory {
           }
         };
 
-    return new InstrumentedMemoryCache<>(bitmapMemoryCache, memoryCacheTracker);
+    if (!(imageCacheStatsTracker instanceof HardwareBitmapStatsTracker)) {
+      return new InstrumentedMemoryCache<>(bitmapMemoryCache, memoryCacheTracker);
+    }
+    final HardwareBitmapStatsTracker hardwareBitmapStatsTracker =
+        (HardwareBitmapStatsTracker) imageCacheStatsTracker;
+    return new InstrumentedMemoryCache<CacheKey, CloseableImage>(
+        bitmapMemoryCache, memoryCacheTracker) {
+      @Override
+      public @Nullable CloseableReference<CloseableImage> cache(
+          CacheKey cacheKey, CloseableReference<CloseableImage> value) {
+        CloseableReference<CloseableImage> cachedRef = super.cache(cacheKey, value);
+        CloseableImage image = value.get();
+        if (cachedRef != null && image instanceof CloseableStaticBitmap) {
+          Bitmap bitmap = ((CloseableStaticBitmap) image).getUnderlyingBitmap();
+          if (BitmapUtil.isHardwareBitmap(bitmap)) {
+            hardwareBitmapStatsTracker.onHardwareBitmapCachePut(cacheKey, image.getSizeInBytes());
+          }
+        }
+        return cachedRef;
+      }
+    };
   }
 }
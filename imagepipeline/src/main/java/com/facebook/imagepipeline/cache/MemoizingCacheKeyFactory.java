@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import android.net.Uri;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.internal.Objects;
+import com.facebook.imagepipeline.request.ImageRequest;
+import com.facebook.imagepipeline.request.Postprocessor;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link CacheKeyFactory} creating the keys of each {@link ImageRequest} only once, with another
+ * factory.
+ *
+ * <p>The pipeline asks for the keys of a request several times: when looking up each cache, in
+ * the probe producers, and again for every new data source of the same request. This factory
+ * keeps the keys of the requests in use in weak maps, sharded so that concurrent requests rarely
+ * wait for each other. The requests are compared by identity, computing their hash code and
+ * comparing them would cost about as much as creating the keys again.
+ *
+ * <p>The memoized keys must not keep the caller context, which often references the request back
+ * and would never let the entry go. The bitmap keys are kept without it, together with a weak
+ * reference to the last key returned, which is returned again as long as it is in use, e.g. by
+ * the bitmap memory cache. Otherwise a copy with the caller context is made, which does not need
+ * to compute the hash code and the fingerprint again. The caller context the keys were created
+ * for is only weakly referenced, the keys for another caller context are created again and
+ * replace the memoized ones. Only {@link BitmapMemoryCacheKey}s and {@link SimpleCacheKey}s are
+ * memoized, the other keys are created by the other factory every time.
+ */
+@ThreadSafe
+public class MemoizingCacheKeyFactory implements CacheKeyFactory {
+
+  private static final int SHARD_COUNT = 8;
+
+  private final CacheKeyFactory mDelegate;
+  private final List<Shard> mShards;
+
+  public MemoizingCacheKeyFactory(CacheKeyFactory delegate) {
+    mDelegate = delegate;
+    mShards = new ArrayList<>(SHARD_COUNT);
+    for (int i = 0; i < SHARD_COUNT; i++) {
+      mShards.add(new Shard());
+    }
+  }
+
+  @Override
+  public CacheKey getBitmapCacheKey(ImageRequest request, @Nullable Object callerContext) {
+    MemoizedKeys keys = getMemoizedKeys(request);
+    MemoizedKey memoizedKey = keys.mBitmapCacheKey;
+    if (memoizedKey != null && memoizedKey.isFor(callerContext)) {
+      return memoizedKey.getBitmapCacheKey(callerContext);
+    }
+    CacheKey key = mDelegate.getBitmapCacheKey(request, callerContext);
+    if (key instanceof BitmapMemoryCacheKey) {
+      keys.mBitmapCacheKey = new MemoizedKey((BitmapMemoryCacheKey) key, callerContext, null);
+    }
+    return key;
+  }
+
+  @Override
+  public CacheKey getPostprocessedBitmapCacheKey(
+      ImageRequest request, @Nullable Object callerContext) {
+    MemoizedKeys keys = getMemoizedKeys(request);
+    // the key of a postprocessor may change, e.g. when its parameters are updated
+    Postprocessor postprocessor = request.getPostprocessor();
+    CacheKey postprocessorCacheKey =
+        postprocessor != null ? postprocessor.getPostprocessorCacheKey() : null;
+    MemoizedKey memoizedKey = keys.mPostprocessedBitmapCacheKey;
+    if (memoizedKey != null
+        && memoizedKey.isFor(callerContext)
+        && Objects.equal(memoizedKey.mPostprocessorCacheKey, postprocessorCacheKey)) {
+      return memoizedKey.getBitmapCacheKey(callerContext);
+    }
+    CacheKey key = mDelegate.getPostprocessedBitmapCacheKey(request, callerContext);
+    if (key instanceof BitmapMemoryCacheKey) {
+      keys.mPostprocessedBitmapCacheKey =
+          new MemoizedKey((BitmapMemoryCacheKey) key, callerContext, postprocessorCacheKey);
+    }
+    return key;
+  }
+
+  @Override
+  public CacheKey getEncodedCacheKey(ImageRequest request, @Nullable Object callerContext) {
+    MemoizedKeys keys = getMemoizedKeys(request);
+    MemoizedKey memoizedKey = keys.mEncodedCacheKey;
+    if (memoizedKey != null && memoizedKey.isFor(callerContext)) {
+      return memoizedKey.mKey;
+    }
+    CacheKey key = mDelegate.getEncodedCacheKey(request, callerContext);
+    if (key instanceof SimpleCacheKey) {
+      keys.mEncodedCacheKey = new MemoizedKey(key, callerContext, null);
+    }
+    return key;
+  }
+
+  @Override
+  public CacheKey getEncodedCacheKey(
+      ImageRequest request, Uri sourceUri, @Nullable Object callerContext) {
+    if (sourceUri == request.getSourceUri()) {
+      return getEncodedCacheKey(request, callerContext);
+    }
+    return mDelegate.getEncodedCacheKey(request, sourceUri, callerContext);
+  }
+
+  private MemoizedKeys getMemoizedKeys(ImageRequest request) {
+    int hash = System.identityHashCode(request);
+    return mShards.get((hash ^ (hash >>> 16)) & (SHARD_COUNT - 1)).get(request, hash);
+  }
+
+  /** Weak identity map from the requests to their keys. */
+  private static class Shard {
+
+    @GuardedBy("this")
+    private final Map<Object, MemoizedKeys> mKeys = new HashMap<>();
+
+    private final ReferenceQueue<ImageRequest> mCollectedRequests = new ReferenceQueue<>();
+
+    // reused for every lookup, so that hits do not allocate
+    @GuardedBy("this")
+    private final LookupKey mLookupKey = new LookupKey();
+
+    synchronized MemoizedKeys get(ImageRequest request, int hash) {
+      Reference<? extends ImageRequest> collectedRequest;
+      while ((collectedRequest = mCollectedRequests.poll()) != null) {
+        mKeys.remove(collectedRequest);
+      }
+      mLookupKey.mRequest = request;
+      mLookupKey.mHash = hash;
+      MemoizedKeys keys = mKeys.get(mLookupKey);
+      mLookupKey.mRequest = null;
+      if (keys == null) {
+        keys = new MemoizedKeys();
+        mKeys.put(new RequestReference(request, hash, mCollectedRequests), keys);
+      }
+      return keys;
+    }
+  }
+
+  /** Key of a request in a {@link Shard}, equal to the lookup key of the same request. */
+  private static class RequestReference extends WeakReference<ImageRequest> {
+
+    private final int mHash;
+
+    RequestReference(ImageRequest request, int hash, ReferenceQueue<ImageRequest> queue) {
+      super(request, queue);
+      mHash = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return mHash;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (o == this) {
+        return true;
+      }
+      // a collected request is only equal to its own reference, so that it can be removed
+      ImageRequest request = get();
+      return request != null
+          && o instanceof RequestReference
+          && ((RequestReference) o).get() == request;
+    }
+  }
+
+  /** Looks up the key of a request in a {@link Shard} without creating a reference to it. */
+  private static class LookupKey {
+
+    @Nullable ImageRequest mRequest;
+    int mHash;
+
+    @Override
+    public int hashCode() {
+      return mHash;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      return mRequest != null
+          && o instanceof RequestReference
+          && ((RequestReference) o).get() == mRequest;
+    }
+  }
+
+  /** Keys of a request. Concurrent calls may both replace a key, which is harmless. */
+  private static class MemoizedKeys {
+
+    volatile @Nullable MemoizedKey mBitmapCacheKey;
+    volatile @Nullable MemoizedKey mPostprocessedBitmapCacheKey;
+    volatile @Nullable MemoizedKey mEncodedCacheKey;
+  }
+
+  /** Key without caller context, for the caller context it was created for. */
+  private static class MemoizedKey {
+
+    final CacheKey mKey;
+    final @Nullable WeakReference<Object> mCallerContext;
+    final @Nullable CacheKey mPostprocessorCacheKey;
+
+    // the last bitmap key returned, with the caller context
+    volatile @Nullable WeakReference<BitmapMemoryCacheKey> mBitmapCacheKey;
+
+    MemoizedKey(
+        CacheKey key, @Nullable Object callerContext, @Nullable CacheKey postprocessorCacheKey) {
+      mKey = key;
+      mCallerContext = callerContext != null ? new WeakReference<>(callerContext) : null;
+      mPostprocessorCacheKey = postprocessorCacheKey;
+    }
+
+    MemoizedKey(
+        BitmapMemoryCacheKey key,
+        @Nullable Object callerContext,
+        @Nullable CacheKey postprocessorCacheKey) {
+      this(key.withCallerContext(null), callerContext, postprocessorCacheKey);
+      mBitmapCacheKey = new WeakReference<>(key);
+    }
+
+    /** Returns the bitmap key for the caller context this key is for. */
+    BitmapMemoryCacheKey getBitmapCacheKey(@Nullable Object callerContext) {
+      WeakReference<BitmapMemoryCacheKey> reference = mBitmapCacheKey;
+      BitmapMemoryCacheKey key = reference != null ? reference.get() : null;
+      if (key == null) {
+        key = ((BitmapMemoryCacheKey) mKey).withCallerContext(callerContext);
+        mBitmapCacheKey = new WeakReference<>(key);
+      }
+      return key;
+    }
+
+    boolean isFor(@Nullable Object callerContext) {
+      if (mCallerContext == null) {
+        return callerContext == null;
+      }
+      return callerContext != null && mCallerContext.get() == callerContext;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import android.net.Uri;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.util.HashCodeUtil;
+import java.util.Locale;
+import javax.annotation.concurrent.Immutable;
+
+/** Cache key for a tile of a larger image, stored in the bitmap memory cache. */
+@Immutable
+public class TileCacheKey implements CacheKey {
+
+  private final CacheKey mSourceKey;
+  private final int mSampleSize;
+  private final int mLeft;
+  private final int mTop;
+  private final int mTileSizePx;
+  private final int mHash;
+
+  /**
+   * @param sourceKey key of the full image the tile belongs to
+   * @param sampleSize sample size the tile is decoded with
+   * @param left left edge of the tile, in source image coordinates
+   * @param top top edge of the tile, in source image coordinates
+   * @param tileSizePx size of the decoded tile
+   */
+  public TileCacheKey(CacheKey sourceKey, int sampleSize, int left, int top, int tileSizePx) {
+    mSourceKey = Preconditions.checkNotNull(sourceKey);
+    mSampleSize = sampleSize;
+    mLeft = left;
+    mTop = top;
+    mTileSizePx = tileSizePx;
+    mHash = HashCodeUtil.hashCode(sourceKey.hashCode(), sampleSize, left, top, tileSizePx);
+  }
+
+  public CacheKey getSourceKey() {
+    return mSourceKey;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof TileCacheKey)) {
+      return false;
+    }
+    TileCacheKey otherKey = (TileCacheKey) o;
+    return mHash == otherKey.mHash
+        && mSampleSize == otherKey.mSampleSize
+        && mLeft == otherKey.mLeft
+        && mTop == otherKey.mTop
+        && mTileSizePx == otherKey.mTileSizePx
+        && mSourceKey.equals(otherKey.mSourceKey);
+  }
+
+  @Override
+  public int hashCode() {
+    return mHash;
+  }
+
+  @Override
+  public boolean containsUri(Uri uri) {
+    return mSourceKey.containsUri(uri);
+  }
+
+  @Override
+  public String getUriString() {
+    return mSourceKey.getUriString();
+  }
+
+  @Override
+  public boolean isResourceIdForDebugging() {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        (Locale) null, "%s_tile_%d_%d_%d_%d", mSourceKey, mSampleSize, mLeft, mTop, mTileSizePx);
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Canonicalizes the uri strings of the cache keys, so that the keys of the same image share the
+ * same string instance. Comparing the keys then compares the strings by reference instead of
+ * character by character, and the duplicated strings can be collected.
+ *
+ * <p>The strings are only weakly referenced, and are dropped once no key uses them anymore.
+ */
+@ThreadSafe
+public class UriStringInterner {
+
+  private static final UriStringInterner sInstance = new UriStringInterner();
+
+  @GuardedBy("this")
+  private final Map<String, WeakReference<String>> mStrings = new WeakHashMap<>();
+
+  public static UriStringInterner getInstance() {
+    return sInstance;
+  }
+
+  /** Returns the canonical instance of the string, which is the string itself if it is new. */
+  public synchronized String intern(String string) {
+    WeakReference<String> reference = mStrings.get(string);
+    if (reference != null) {
+      String canonical = reference.get();
+      if (canonical != null) {
+        return canonical;
+      }
+    }
+    mStrings.put(string, new WeakReference<>(string));
+    return string;
+  }
+
+  synchronized int size() {
+    return mStrings.size();
+  }
+}
@@ -48,7 +48,9 @@ public class DiskStorageCacheFactory implements FileCacheFactory {
         diskCacheConfig.getCacheErrorLogger(),
         diskCacheConfig.getDiskTrimmableRegistry(),
         executorForBackgroundInit,
-        diskCacheConfig.getIndexPopulateAtStartupEnabled());
+        diskCacheConfig.getIndexPopulateAtStartupEnabled(),
+        diskCacheConfig.getIncrementalEvictionEnabled(),
+        diskCacheConfig.getResourceIdHasher());
   }
 
   @Override
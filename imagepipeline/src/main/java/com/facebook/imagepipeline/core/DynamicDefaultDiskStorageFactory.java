@@ -7,21 +7,52 @@
 
 package com.facebook.imagepipeline.core;
 
+import com.facebook.cache.disk.ContentAddressedDiskStorage;
 import com.facebook.cache.disk.DiskCacheConfig;
 import com.facebook.cache.disk.DiskStorage;
+import com.facebook.cache.disk.DiskStorageCache;
 import com.facebook.cache.disk.DynamicDefaultDiskStorage;
 import com.facebook.infer.annotation.Nullsafe;
+import javax.annotation.Nullable;
 
 /** Factory for the default implementation of the DiskStorage. */
 @Nullsafe(Nullsafe.Mode.LOCAL)
 public class DynamicDefaultDiskStorageFactory implements DiskStorageFactory {
 
+  private final @Nullable ExecutorSupplier mExecutorSupplier;
+
+  /** Creates a factory whose storages write the access times of the files on read. */
+  public DynamicDefaultDiskStorageFactory() {
+    mExecutorSupplier = null;
+  }
+
+  /**
+   * Creates a factory whose storages write the access times of the files on the background tasks
+   * executor, if {@link DiskCacheConfig#getDeferredTouchEnabled()}.
+   */
+  public DynamicDefaultDiskStorageFactory(ExecutorSupplier executorSupplier) {
+    mExecutorSupplier = executorSupplier;
+  }
+
   @Override
   public DiskStorage get(DiskCacheConfig diskCacheConfig) {
-    return new DynamicDefaultDiskStorage(
-        diskCacheConfig.getVersion(),
-        diskCacheConfig.getBaseDirectoryPathSupplier(),
-        diskCacheConfig.getBaseDirectoryName(),
-        diskCacheConfig.getCacheErrorLogger());
+    int version =
+        DiskStorageCache.getStorageVersion(
+            diskCacheConfig.getVersion(), diskCacheConfig.getResourceIdHasher());
+    boolean contentDeduplicationEnabled = diskCacheConfig.getContentDeduplicationEnabled();
+    DiskStorage diskStorage =
+        new DynamicDefaultDiskStorage(
+            contentDeduplicationEnabled
+                ? ContentAddressedDiskStorage.getStorageVersion(version)
+                : version,
+            diskCacheConfig.getBaseDirectoryPathSupplier(),
+            diskCacheConfig.getBaseDirectoryName(),
+            diskCacheConfig.getCacheErrorLogger(),
+            diskCacheConfig.getDeferredTouchEnabled() && mExecutorSupplier != null
+                ? mExecutorSupplier.forBackgroundTasks()
+                : null);
+    return contentDeduplicationEnabled
+        ? new ContentAddressedDiskStorage(diskStorage, diskCacheConfig.getCompressionEnabled())
+        : diskStorage;
   }
 }
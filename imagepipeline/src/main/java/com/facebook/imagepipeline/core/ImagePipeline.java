@@ -27,6 +27,7 @@ import com.facebook.imagepipeline.cache.CacheKeyFactory;
 import com.facebook.imagepipeline.cache.MemoryCache;
 import com.facebook.imagepipeline.common.Priority;
 import com.facebook.imagepipeline.datasource.CloseableProducerToDataSourceAdapter;
+import com.facebook.imagepipeline.datasource.LazyDataSource;
 import com.facebook.imagepipeline.datasource.ProducerToDataSourceAdapter;
 import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.imagepipeline.listener.ForwardingRequestListener;
@@ -317,6 +318,35 @@ public class ImagePipeline {
    * @return a DataSource representing the pending decoded image(s)
    */
   public DataSource<CloseableReference<CloseableImage>> fetchDecodedImage(
+      final ImageRequest imageRequest,
+      final Object callerContext,
+      final ImageRequest.RequestLevel lowestPermittedRequestLevelOnSubmit,
+      final @Nullable RequestListener requestListener,
+      final @Nullable String uiComponentId) {
+    if (shouldSubmitLazily()) {
+      return LazyDataSource.create(
+          imageRequest,
+          new Supplier<DataSource<CloseableReference<CloseableImage>>>() {
+            @Override
+            public DataSource<CloseableReference<CloseableImage>> get() {
+              return submitDecodedImageFetch(
+                  imageRequest,
+                  callerContext,
+                  lowestPermittedRequestLevelOnSubmit,
+                  requestListener,
+                  uiComponentId);
+            }
+          });
+    }
+    return submitDecodedImageFetch(
+        imageRequest,
+        callerContext,
+        lowestPermittedRequestLevelOnSubmit,
+        requestListener,
+        uiComponentId);
+  }
+
+  private DataSource<CloseableReference<CloseableImage>> submitDecodedImageFetch(
       ImageRequest imageRequest,
       Object callerContext,
       ImageRequest.RequestLevel lowestPermittedRequestLevelOnSubmit,
@@ -365,8 +395,25 @@ public class ImagePipeline {
    * @return a DataSource representing the pending encoded image(s)
    */
   public DataSource<CloseableReference<PooledByteBuffer>> fetchEncodedImage(
-      ImageRequest imageRequest, Object callerContext, @Nullable RequestListener requestListener) {
+      final ImageRequest imageRequest,
+      final Object callerContext,
+      final @Nullable RequestListener requestListener) {
     Preconditions.checkNotNull(imageRequest.getSourceUri());
+    if (shouldSubmitLazily()) {
+      return LazyDataSource.create(
+          imageRequest,
+          new Supplier<DataSource<CloseableReference<PooledByteBuffer>>>() {
+            @Override
+            public DataSource<CloseableReference<PooledByteBuffer>> get() {
+              return submitEncodedImageFetch(imageRequest, callerContext, requestListener);
+            }
+          });
+    }
+    return submitEncodedImageFetch(imageRequest, callerContext, requestListener);
+  }
+
+  private DataSource<CloseableReference<PooledByteBuffer>> submitEncodedImageFetch(
+      ImageRequest imageRequest, Object callerContext, @Nullable RequestListener requestListener) {
     try {
       Producer<CloseableReference<PooledByteBuffer>> producerSequence =
           mProducerSequenceFactory.getEncodedImageProducerSequence(imageRequest);
@@ -997,6 +1044,14 @@ public class ImagePipeline {
     return mLazyDataSource;
   }
 
+  /**
+   * Whether fetches should be submitted only once the returned data source gets its first
+   * subscriber. See {@link LazyDataSource}.
+   */
+  private boolean shouldSubmitLazily() {
+    return mLazyDataSource != null && mLazyDataSource.get();
+  }
+
   /** @return The CacheKeyFactory implementation used by ImagePipeline */
   public CacheKeyFactory getCacheKeyFactory() {
     return mCacheKeyFactory;
@@ -34,6 +34,7 @@ import com.facebook.imagepipeline.cache.DefaultBitmapMemoryCacheParamsSupplier;
 import com.facebook.imagepipeline.cache.DefaultCacheKeyFactory;
 import com.facebook.imagepipeline.cache.DefaultEncodedMemoryCacheParamsSupplier;
 import com.facebook.imagepipeline.cache.ImageCacheStatsTracker;
+import com.facebook.imagepipeline.cache.MemoizingCacheKeyFactory;
 import com.facebook.imagepipeline.cache.MemoryCache;
 import com.facebook.imagepipeline.cache.MemoryCacheParams;
 import com.facebook.imagepipeline.cache.NoOpImageCacheStatsTracker;
@@ -133,15 +134,15 @@ public class ImagePipelineConfig {
             : builder.mBitmapMemoryCacheTrimStrategy;
     mBitmapMemoryCacheEntryStateObserver = builder.mBitmapMemoryCacheEntryStateObserver;
     mBitmapConfig = builder.mBitmapConfig == null ? Bitmap.Config.ARGB_8888 : builder.mBitmapConfig;
-    mCacheKeyFactory =
+    CacheKeyFactory cacheKeyFactory =
         builder.mCacheKeyFactory == null
             ? DefaultCacheKeyFactory.getInstance()
             : builder.mCacheKeyFactory;
+    mCacheKeyFactory =
+        mImagePipelineExperiments.shouldMemoizeCacheKeys()
+            ? new MemoizingCacheKeyFactory(cacheKeyFactory)
+            : cacheKeyFactory;
     mContext = Preconditions.checkNotNull(builder.mContext);
-    mFileCacheFactory =
-        builder.mFileCacheFactory == null
-            ? new DiskStorageCacheFactory(new DynamicDefaultDiskStorageFactory())
-            : builder.mFileCacheFactory;
     mDownsampleEnabled = builder.mDownsampleEnabled;
     mEncodedMemoryCacheParamsSupplier =
         builder.mEncodedMemoryCacheParamsSupplier == null
@@ -215,6 +216,10 @@ public class ImagePipelineConfig {
         builder.mExecutorSupplier == null
             ? new DefaultExecutorSupplier(numCpuBoundThreads)
             : builder.mExecutorSupplier;
+    mFileCacheFactory =
+        builder.mFileCacheFactory == null
+            ? new DiskStorageCacheFactory(new DynamicDefaultDiskStorageFactory(mExecutorSupplier))
+            : builder.mFileCacheFactory;
     mDiskCacheEnabled = builder.mDiskCacheEnabled;
     mCallerContextVerifier = builder.mCallerContextVerifier;
     mCloseableReferenceLeakTracker = builder.mCloseableReferenceLeakTracker;
@@ -25,6 +25,8 @@ import com.facebook.imagepipeline.decoder.ImageDecoder;
 import com.facebook.imagepipeline.decoder.ProgressiveJpegConfig;
 import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.imageutils.BitmapUtil;
+import java.io.File;
+import javax.annotation.Nullable;
 
 /**
  * Encapsulates additional elements of the {@link ImagePipelineConfig} which are currently in an
@@ -64,6 +66,16 @@ public class ImagePipelineExperiments {
   private final int mTrackedKeysSize;
   private final boolean mUseCombinedNetworkAndCacheProducer;
   private final boolean mAllowDelay;
+  private final boolean mBatchDataSourceNotifications;
+  private final int mCacheAdmissionFilterSize;
+  private final boolean mMemoizeCacheKeys;
+  private final int mBitmapVariantIndexSize;
+  private final boolean mCacheDownscaledBitmapVariants;
+  private final boolean mDecodeToHardwareBitmaps;
+  private final int mAnimationFrameBudgetInBytes;
+  private final boolean mDecodeAnimationFramesByDeadline;
+  @Nullable private final File mAnimationFrameSpillDirectory;
+  private final long mAnimationFrameSpillMaxSizeInBytes;
 
   private ImagePipelineExperiments(Builder builder) {
     mWebpSupportEnabled = builder.mWebpSupportEnabled;
@@ -79,7 +91,11 @@ public class ImagePipelineExperiments {
     mNativeCodeDisabled = builder.mNativeCodeDisabled;
     mPartialImageCachingEnabled = builder.mPartialImageCachingEnabled;
     if (builder.mProducerFactoryMethod == null) {
-      mProducerFactoryMethod = new DefaultProducerFactoryMethod();
+      mProducerFactoryMethod =
+          new DefaultProducerFactoryMethod(
+              builder.mCacheAdmissionFilterSize,
+              builder.mBitmapVariantIndexSize,
+              builder.mCacheDownscaledBitmapVariants);
     } else {
       mProducerFactoryMethod = builder.mProducerFactoryMethod;
     }
@@ -99,6 +115,16 @@ public class ImagePipelineExperiments {
     mTrackedKeysSize = builder.mTrackedKeysSize;
     mUseCombinedNetworkAndCacheProducer = builder.mUseCombinedNetworkAndCacheProducer;
     mAllowDelay = builder.mAllowDelay;
+    mBatchDataSourceNotifications = builder.mBatchDataSourceNotifications;
+    mCacheAdmissionFilterSize = builder.mCacheAdmissionFilterSize;
+    mMemoizeCacheKeys = builder.mMemoizeCacheKeys;
+    mBitmapVariantIndexSize = builder.mBitmapVariantIndexSize;
+    mCacheDownscaledBitmapVariants = builder.mCacheDownscaledBitmapVariants;
+    mDecodeToHardwareBitmaps = builder.mDecodeToHardwareBitmaps;
+    mAnimationFrameBudgetInBytes = builder.mAnimationFrameBudgetInBytes;
+    mDecodeAnimationFramesByDeadline = builder.mDecodeAnimationFramesByDeadline;
+    mAnimationFrameSpillDirectory = builder.mAnimationFrameSpillDirectory;
+    mAnimationFrameSpillMaxSizeInBytes = builder.mAnimationFrameSpillMaxSizeInBytes;
   }
 
   public boolean isEncodedCacheEnabled() {
@@ -222,6 +248,47 @@ public class ImagePipelineExperiments {
     return mAllowDelay;
   }
 
+  public boolean shouldBatchDataSourceNotifications() {
+    return mBatchDataSourceNotifications;
+  }
+
+  public int getCacheAdmissionFilterSize() {
+    return mCacheAdmissionFilterSize;
+  }
+
+  public boolean shouldMemoizeCacheKeys() {
+    return mMemoizeCacheKeys;
+  }
+
+  public int getBitmapVariantIndexSize() {
+    return mBitmapVariantIndexSize;
+  }
+
+  public boolean shouldCacheDownscaledBitmapVariants() {
+    return mCacheDownscaledBitmapVariants;
+  }
+
+  public boolean shouldDecodeToHardwareBitmaps() {
+    return mDecodeToHardwareBitmaps;
+  }
+
+  public int getAnimationFrameBudgetInBytes() {
+    return mAnimationFrameBudgetInBytes;
+  }
+
+  public boolean shouldDecodeAnimationFramesByDeadline() {
+    return mDecodeAnimationFramesByDeadline;
+  }
+
+  @Nullable
+  public File getAnimationFrameSpillDirectory() {
+    return mAnimationFrameSpillDirectory;
+  }
+
+  public long getAnimationFrameSpillMaxSizeInBytes() {
+    return mAnimationFrameSpillMaxSizeInBytes;
+  }
+
   public static class Builder {
 
     private final ImagePipelineConfig.Builder mConfigBuilder;
@@ -254,6 +321,16 @@ public class ImagePipelineExperiments {
     private int mTrackedKeysSize = 20;
     private boolean mUseCombinedNetworkAndCacheProducer = false;
     private boolean mAllowDelay = false;
+    private boolean mBatchDataSourceNotifications = false;
+    private int mCacheAdmissionFilterSize = 0;
+    private boolean mMemoizeCacheKeys = false;
+    private int mBitmapVariantIndexSize = 0;
+    private boolean mCacheDownscaledBitmapVariants = false;
+    private boolean mDecodeToHardwareBitmaps = false;
+    private int mAnimationFrameBudgetInBytes = 0;
+    private boolean mDecodeAnimationFramesByDeadline = false;
+    @Nullable private File mAnimationFrameSpillDirectory;
+    private long mAnimationFrameSpillMaxSizeInBytes = 0;
 
     public Builder(ImagePipelineConfig.Builder configBuilder) {
       mConfigBuilder = configBuilder;
@@ -452,6 +529,137 @@ public class ImagePipelineExperiments {
       return mConfigBuilder;
     }
 
+    /**
+     * If true, data sources notify all subscribers sharing an executor with a single runnable, and
+     * coalesce progress updates that are posted faster than the executor runs them.
+     *
+     * @param batchDataSourceNotifications set true for batching data source notifications
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setBatchDataSourceNotifications(
+        boolean batchDataSourceNotifications) {
+      mBatchDataSourceNotifications = batchDataSourceNotifications;
+      return mConfigBuilder;
+    }
+
+    /**
+     * Only writes images to the encoded memory cache and to the disk cache once they have been
+     * requested at least twice recently, so that images seen only once do not evict popular ones.
+     * Prefetches are always written.
+     *
+     * @param cacheAdmissionFilterSize number of distinct keys tracked by each of the admission
+     *     filters, or 0 to admit all the images
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setCacheAdmissionFilterSize(int cacheAdmissionFilterSize) {
+      mCacheAdmissionFilterSize = cacheAdmissionFilterSize;
+      return mConfigBuilder;
+    }
+
+    /**
+     * If true, the cache keys of each image request are only created once, and reused by all the
+     * cache lookups of the request. See {@link
+     * com.facebook.imagepipeline.cache.MemoizingCacheKeyFactory}.
+     *
+     * @param memoizeCacheKeys set true for memoizing the cache keys of the requests
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setMemoizeCacheKeys(boolean memoizeCacheKeys) {
+      mMemoizeCacheKeys = memoizeCacheKeys;
+      return mConfigBuilder;
+    }
+
+    /**
+     * Serves the requests missing the bitmap memory cache because of their resize options from a
+     * larger cached bitmap of the same image, scaled down, instead of decoding the image again.
+     *
+     * @param bitmapVariantIndexSize number of images whose cached sizes are indexed, or 0 to only
+     *     serve the exact matches from the cache
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setBitmapVariantIndexSize(int bitmapVariantIndexSize) {
+      mBitmapVariantIndexSize = bitmapVariantIndexSize;
+      return mConfigBuilder;
+    }
+
+    /**
+     * If true, the bitmaps scaled down from a larger cached bitmap are cached too. See {@link
+     * #setBitmapVariantIndexSize(int)}.
+     *
+     * @param cacheDownscaledBitmapVariants set true for caching the downscaled bitmaps
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setCacheDownscaledBitmapVariants(
+        boolean cacheDownscaledBitmapVariants) {
+      mCacheDownscaledBitmapVariants = cacheDownscaledBitmapVariants;
+      return mConfigBuilder;
+    }
+
+    /**
+     * On Android O and up, decodes the static images into {@link
+     * android.graphics.Bitmap.Config#HARDWARE} bitmaps, whose pixels are only in graphics memory.
+     * Images are decoded into software bitmaps as usual if their pixels are needed, i.e. for
+     * requests with a postprocessor, a bitmap transformation, a region to decode or a bitmap config
+     * other than the default, and once the hardware bitmap limits of the {@link
+     * com.facebook.imagepipeline.memory.BitmapCounter} are reached.
+     *
+     * @param decodeToHardwareBitmaps set true for decoding into hardware bitmaps
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setDecodeToHardwareBitmaps(
+        boolean decodeToHardwareBitmaps) {
+      mDecodeToHardwareBitmaps = decodeToHardwareBitmaps;
+      return mConfigBuilder;
+    }
+
+    /**
+     * Shares a memory budget between the frames of all animations, see {@link
+     * com.facebook.fresco.animation.bitmap.cache.AnimationFrameBudgetManager}. The animations off
+     * screen give up their frames first, once the budget is exceeded or memory is trimmed.
+     *
+     * @param animationFrameBudgetInBytes the budget for the frames of all animations, or 0 for
+     *     caching the frames of each animation separately
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setAnimationFrameBudgetInBytes(
+        int animationFrameBudgetInBytes) {
+      mAnimationFrameBudgetInBytes = animationFrameBudgetInBytes;
+      return mConfigBuilder;
+    }
+
+    /**
+     * If true, the frames of all animations are decoded earliest deadline first, see {@link
+     * com.facebook.fresco.animation.bitmap.preparation.FrameDecodeScheduler}, and the frames
+     * queued for an animation are dropped once it is cleared. Otherwise frames are decoded in the
+     * order they are requested.
+     *
+     * @param decodeAnimationFramesByDeadline set true for decoding the frames by deadline
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setDecodeAnimationFramesByDeadline(
+        boolean decodeAnimationFramesByDeadline) {
+      mDecodeAnimationFramesByDeadline = decodeAnimationFramesByDeadline;
+      return mConfigBuilder;
+    }
+
+    /**
+     * Keeps a copy of the rendered frames of animations in memory-mapped files, so that the frames
+     * evicted from memory are copied back instead of being decoded again, see {@link
+     * com.facebook.fresco.animation.bitmap.cache.SpillingBitmapFrameCache}. Not used together with
+     * {@link #setAnimationFrameBudgetInBytes(int)}, which takes precedence.
+     *
+     * @param animationFrameSpillDirectory the directory of the frame files, used for them only, or
+     *     null for not keeping the frames in files
+     * @param animationFrameSpillMaxSizeInBytes the maximum total size of the frame files
+     * @return The Builder itself for chaining
+     */
+    public ImagePipelineConfig.Builder setAnimationFrameSpill(
+        @Nullable File animationFrameSpillDirectory, long animationFrameSpillMaxSizeInBytes) {
+      mAnimationFrameSpillDirectory = animationFrameSpillDirectory;
+      mAnimationFrameSpillMaxSizeInBytes = animationFrameSpillMaxSizeInBytes;
+      return mConfigBuilder;
+    }
+
     public ImagePipelineExperiments build() {
       return new ImagePipelineExperiments(this);
     }
@@ -487,6 +695,29 @@ public class ImagePipelineExperiments {
 
   public static class DefaultProducerFactoryMethod implements ProducerFactoryMethod {
 
+    private final int mCacheAdmissionFilterSize;
+    private final int mBitmapVariantIndexSize;
+    private final boolean mCacheDownscaledBitmapVariants;
+
+    public DefaultProducerFactoryMethod() {
+      this(0, 0, false);
+    }
+
+    /**
+     * @param cacheAdmissionFilterSize see {@link Builder#setCacheAdmissionFilterSize(int)}
+     * @param bitmapVariantIndexSize see {@link Builder#setBitmapVariantIndexSize(int)}
+     * @param cacheDownscaledBitmapVariants see {@link
+     *     Builder#setCacheDownscaledBitmapVariants(boolean)}
+     */
+    public DefaultProducerFactoryMethod(
+        int cacheAdmissionFilterSize,
+        int bitmapVariantIndexSize,
+        boolean cacheDownscaledBitmapVariants) {
+      mCacheAdmissionFilterSize = cacheAdmissionFilterSize;
+      mBitmapVariantIndexSize = bitmapVariantIndexSize;
+      mCacheDownscaledBitmapVariants = cacheDownscaledBitmapVariants;
+    }
+
     @Override
     public ProducerFactory createProducerFactory(
         Context context,
@@ -534,7 +765,10 @@ public class ImagePipelineExperiments {
           maxBitmapSize,
           closeableReferenceFactory,
           keepCancelledFetchAsLowPriority,
-          trackedKeysSize);
+          trackedKeysSize,
+          mCacheAdmissionFilterSize,
+          mBitmapVariantIndexSize,
+          mCacheDownscaledBitmapVariants);
     }
   }
 }
@@ -18,8 +18,10 @@ import com.facebook.common.internal.Preconditions;
 import com.facebook.common.logging.FLog;
 import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.datasource.AbstractDataSource;
 import com.facebook.imageformat.ImageFormatChecker;
 import com.facebook.imagepipeline.animated.factory.AnimatedFactory;
+import com.facebook.imagepipeline.animated.factory.AnimatedFactoryOptions;
 import com.facebook.imagepipeline.animated.factory.AnimatedFactoryProvider;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactoryProvider;
@@ -27,6 +29,8 @@ import com.facebook.imagepipeline.cache.BufferedDiskCache;
 import com.facebook.imagepipeline.cache.CountingMemoryCache;
 import com.facebook.imagepipeline.cache.EncodedCountingMemoryCacheFactory;
 import com.facebook.imagepipeline.cache.EncodedMemoryCacheFactory;
+import com.facebook.imagepipeline.cache.HardwareBitmapStatsTracker;
+import com.facebook.imagepipeline.cache.ImageCacheStatsTracker;
 import com.facebook.imagepipeline.cache.InstrumentedMemoryCache;
 import com.facebook.imagepipeline.cache.InstrumentedMemoryCacheBitmapMemoryCacheFactory;
 import com.facebook.imagepipeline.cache.MemoryCache;
@@ -34,6 +38,7 @@ import com.facebook.imagepipeline.decoder.DefaultImageDecoder;
 import com.facebook.imagepipeline.decoder.ImageDecoder;
 import com.facebook.imagepipeline.drawable.DrawableFactory;
 import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.memory.BitmapCounterProvider;
 import com.facebook.imagepipeline.platform.PlatformDecoder;
 import com.facebook.imagepipeline.platform.PlatformDecoderFactory;
 import com.facebook.imagepipeline.producers.ExperimentalThreadHandoffProducerQueueImpl;
@@ -163,6 +168,8 @@ public class ImagePipelineFactory {
                 config.getExecutorSupplier().forLightweightBackgroundTasks());
     CloseableReference.setDisableCloseableReferencesForBitmaps(
         config.getExperiments().getBitmapCloseableRefType());
+    AbstractDataSource.setBatchNotificationsEnabled(
+        config.getExperiments().shouldBatchDataSourceNotifications());
     mCloseableReferenceFactory =
         new CloseableReferenceFactory(config.getCloseableReferenceLeakTracker());
     if (FrescoSystrace.isTracing()) {
@@ -178,7 +185,18 @@ public class ImagePipelineFactory {
               getPlatformBitmapFactory(),
               mConfig.getExecutorSupplier(),
               getBitmapCountingMemoryCache(),
-              mConfig.getExperiments().shouldDownscaleFrameToDrawableDimensions());
+              mConfig.getMemoryTrimmableRegistry(),
+              AnimatedFactoryOptions.newBuilder()
+                  .setDownscaleFrameToDrawableDimensions(
+                      mConfig.getExperiments().shouldDownscaleFrameToDrawableDimensions())
+                  .setAnimationFrameBudgetInBytes(
+                      mConfig.getExperiments().getAnimationFrameBudgetInBytes())
+                  .setDecodeAnimationFramesByDeadline(
+                      mConfig.getExperiments().shouldDecodeAnimationFramesByDeadline())
+                  .setAnimationFrameSpill(
+                      mConfig.getExperiments().getAnimationFrameSpillDirectory(),
+                      mConfig.getExperiments().getAnimationFrameSpillMaxSizeInBytes())
+                  .build());
     }
     return mAnimatedFactory;
   }
@@ -206,9 +224,13 @@ public class ImagePipelineFactory {
   public InstrumentedMemoryCache<CacheKey, CloseableImage> getBitmapMemoryCache() {
     if (mBitmapMemoryCache == null) {
       MemoryCache<CacheKey, CloseableImage> backingCache = getBitmapCountingMemoryCache();
+      ImageCacheStatsTracker imageCacheStatsTracker = mConfig.getImageCacheStatsTracker();
+      if (imageCacheStatsTracker instanceof HardwareBitmapStatsTracker) {
+        BitmapCounterProvider.get()
+            .setHardwareBitmapReleaseListener((HardwareBitmapStatsTracker) imageCacheStatsTracker);
+      }
       mBitmapMemoryCache =
-          InstrumentedMemoryCacheBitmapMemoryCacheFactory.get(
-              backingCache, mConfig.getImageCacheStatsTracker());
+          InstrumentedMemoryCacheBitmapMemoryCacheFactory.get(backingCache, imageCacheStatsTracker);
     }
     return mBitmapMemoryCache;
   }
@@ -19,8 +19,10 @@ import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.memory.PooledByteBufferFactory;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.cache.BitmapVariantIndex;
 import com.facebook.imagepipeline.cache.BoundedLinkedHashSet;
 import com.facebook.imagepipeline.cache.BufferedDiskCache;
+import com.facebook.imagepipeline.cache.CacheAdmissionFilter;
 import com.facebook.imagepipeline.cache.CacheKeyFactory;
 import com.facebook.imagepipeline.cache.MemoryCache;
 import com.facebook.imagepipeline.decoder.ImageDecoder;
@@ -98,6 +100,10 @@ public class ProducerFactory {
   protected final CacheKeyFactory mCacheKeyFactory;
   protected final BoundedLinkedHashSet<CacheKey> mEncodedMemoryCacheHistory;
   protected final BoundedLinkedHashSet<CacheKey> mDiskCacheHistory;
+  protected final @Nullable CacheAdmissionFilter mEncodedMemoryCacheAdmissionFilter;
+  protected final @Nullable CacheAdmissionFilter mDiskCacheAdmissionFilter;
+  protected final @Nullable BitmapVariantIndex mBitmapVariantIndex;
+  protected final boolean mCacheDownscaledBitmapVariants;
 
   // Postproc dependencies
   protected final PlatformBitmapFactory mPlatformBitmapFactory;
@@ -137,6 +143,60 @@ public class ProducerFactory {
       CloseableReferenceFactory closeableReferenceFactory,
       boolean keepCancelledFetchAsLowPriority,
       int trackedKeysSize) {
+    this(
+        context,
+        byteArrayPool,
+        imageDecoder,
+        progressiveJpegConfig,
+        downsampleEnabled,
+        resizeAndRotateEnabledForNetwork,
+        decodeCancellationEnabled,
+        executorSupplier,
+        pooledByteBufferFactory,
+        bitmapMemoryCache,
+        encodedMemoryCache,
+        defaultBufferedDiskCache,
+        smallImageBufferedDiskCache,
+        cacheKeyFactory,
+        platformBitmapFactory,
+        bitmapPrepareToDrawMinSizeBytes,
+        bitmapPrepareToDrawMaxSizeBytes,
+        bitmapPrepareToDrawForPrefetch,
+        maxBitmapSize,
+        closeableReferenceFactory,
+        keepCancelledFetchAsLowPriority,
+        trackedKeysSize,
+        0,
+        0,
+        false);
+  }
+
+  public ProducerFactory(
+      Context context,
+      ByteArrayPool byteArrayPool,
+      ImageDecoder imageDecoder,
+      ProgressiveJpegConfig progressiveJpegConfig,
+      boolean downsampleEnabled,
+      boolean resizeAndRotateEnabledForNetwork,
+      boolean decodeCancellationEnabled,
+      ExecutorSupplier executorSupplier,
+      PooledByteBufferFactory pooledByteBufferFactory,
+      MemoryCache<CacheKey, CloseableImage> bitmapMemoryCache,
+      MemoryCache<CacheKey, PooledByteBuffer> encodedMemoryCache,
+      BufferedDiskCache defaultBufferedDiskCache,
+      BufferedDiskCache smallImageBufferedDiskCache,
+      CacheKeyFactory cacheKeyFactory,
+      PlatformBitmapFactory platformBitmapFactory,
+      int bitmapPrepareToDrawMinSizeBytes,
+      int bitmapPrepareToDrawMaxSizeBytes,
+      boolean bitmapPrepareToDrawForPrefetch,
+      int maxBitmapSize,
+      CloseableReferenceFactory closeableReferenceFactory,
+      boolean keepCancelledFetchAsLowPriority,
+      int trackedKeysSize,
+      int cacheAdmissionFilterSize,
+      int bitmapVariantIndexSize,
+      boolean cacheDownscaledBitmapVariants) {
     mContentResolver = context.getApplicationContext().getContentResolver();
     mResources = context.getApplicationContext().getResources();
     mAssetManager = context.getApplicationContext().getAssets();
@@ -159,6 +219,16 @@ public class ProducerFactory {
     mPlatformBitmapFactory = platformBitmapFactory;
     mEncodedMemoryCacheHistory = new BoundedLinkedHashSet<>(trackedKeysSize);
     mDiskCacheHistory = new BoundedLinkedHashSet<>(trackedKeysSize);
+    if (cacheAdmissionFilterSize > 0) {
+      mEncodedMemoryCacheAdmissionFilter = new CacheAdmissionFilter(cacheAdmissionFilterSize);
+      mDiskCacheAdmissionFilter = new CacheAdmissionFilter(cacheAdmissionFilterSize);
+    } else {
+      mEncodedMemoryCacheAdmissionFilter = null;
+      mDiskCacheAdmissionFilter = null;
+    }
+    mBitmapVariantIndex =
+        bitmapVariantIndexSize > 0 ? new BitmapVariantIndex(bitmapVariantIndexSize) : null;
+    mCacheDownscaledBitmapVariants = cacheDownscaledBitmapVariants;
 
     mBitmapPrepareToDrawMinSizeBytes = bitmapPrepareToDrawMinSizeBytes;
     mBitmapPrepareToDrawMaxSizeBytes = bitmapPrepareToDrawMaxSizeBytes;
@@ -187,7 +257,13 @@ public class ProducerFactory {
 
   public BitmapMemoryCacheProducer newBitmapMemoryCacheProducer(
       Producer<CloseableReference<CloseableImage>> inputProducer) {
-    return new BitmapMemoryCacheProducer(mBitmapMemoryCache, mCacheKeyFactory, inputProducer);
+    return new BitmapMemoryCacheProducer(
+        mBitmapMemoryCache,
+        mCacheKeyFactory,
+        inputProducer,
+        mBitmapVariantIndex,
+        mPlatformBitmapFactory,
+        mCacheDownscaledBitmapVariants);
   }
 
   public static BranchOnSeparateImagesProducer newBranchOnSeparateImagesProducer(
@@ -222,7 +298,11 @@ public class ProducerFactory {
 
   public DiskCacheWriteProducer newDiskCacheWriteProducer(Producer<EncodedImage> inputProducer) {
     return new DiskCacheWriteProducer(
-        mDefaultBufferedDiskCache, mSmallImageBufferedDiskCache, mCacheKeyFactory, inputProducer);
+        mDefaultBufferedDiskCache,
+        mSmallImageBufferedDiskCache,
+        mCacheKeyFactory,
+        mDiskCacheAdmissionFilter,
+        inputProducer);
   }
 
   public PartialDiskCacheProducer newPartialDiskCacheProducer(
@@ -265,7 +345,8 @@ public class ProducerFactory {
 
   public EncodedMemoryCacheProducer newEncodedMemoryCacheProducer(
       Producer<EncodedImage> inputProducer) {
-    return new EncodedMemoryCacheProducer(mEncodedMemoryCache, mCacheKeyFactory, inputProducer);
+    return new EncodedMemoryCacheProducer(
+        mEncodedMemoryCache, mCacheKeyFactory, mEncodedMemoryCacheAdmissionFilter, inputProducer);
   }
 
   public LocalAssetFetchProducer newLocalAssetFetchProducer() {
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.datasource;
+
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.internal.Supplier;
+import com.facebook.datasource.DataSource;
+import com.facebook.datasource.DataSubscriber;
+import com.facebook.imagepipeline.request.HasImageRequest;
+import com.facebook.imagepipeline.request.ImageRequest;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * DataSource that submits its request only when the first subscriber attaches.
+ *
+ * <p>The supplier is expected to build the producer sequence and the producer context, and to
+ * start the request. Until then, this data source reports being in progress without a result. If it
+ * gets closed before any subscription, the supplier is never called, so neither caches nor
+ * executors are touched.
+ *
+ * @param <T>
+ */
+@ThreadSafe
+public class LazyDataSource<T> implements DataSource<T>, HasImageRequest {
+
+  private final ImageRequest mImageRequest;
+  private final Supplier<DataSource<T>> mDataSourceSupplier;
+
+  @GuardedBy("this")
+  private @Nullable DataSource<T> mDelegate;
+
+  @GuardedBy("this")
+  private boolean mIsClosed;
+
+  public static <T> DataSource<T> create(
+      ImageRequest imageRequest, Supplier<DataSource<T>> dataSourceSupplier) {
+    return new LazyDataSource<>(imageRequest, dataSourceSupplier);
+  }
+
+  private LazyDataSource(ImageRequest imageRequest, Supplier<DataSource<T>> dataSourceSupplier) {
+    mImageRequest = Preconditions.checkNotNull(imageRequest);
+    mDataSourceSupplier = Preconditions.checkNotNull(dataSourceSupplier);
+  }
+
+  @Override
+  public void subscribe(DataSubscriber<T> dataSubscriber, Executor executor) {
+    Preconditions.checkNotNull(dataSubscriber);
+    Preconditions.checkNotNull(executor);
+    DataSource<T> dataSource = getOrSubmit();
+    if (dataSource != null) {
+      dataSource.subscribe(dataSubscriber, executor);
+    }
+  }
+
+  /**
+   * Submits the request if this is the first subscription and returns the started source.
+   *
+   * <p>The supplier is called without the lock, as it runs the request listeners and may start
+   * producing. If several subscriptions race, only the first source set is kept and the others are
+   * closed right away.
+   */
+  private @Nullable DataSource<T> getOrSubmit() {
+    synchronized (this) {
+      if (mIsClosed || mDelegate != null) {
+        return mDelegate;
+      }
+    }
+    DataSource<T> dataSource = mDataSourceSupplier.get();
+    DataSource<T> delegate;
+    synchronized (this) {
+      if (!mIsClosed && mDelegate == null) {
+        mDelegate = dataSource;
+        return dataSource;
+      }
+      delegate = mIsClosed ? null : mDelegate;
+    }
+    // closed, or submitted by another subscription in the meantime
+    dataSource.close();
+    return delegate;
+  }
+
+  private synchronized @Nullable DataSource<T> getDelegate() {
+    return mDelegate;
+  }
+
+  @VisibleForTesting
+  synchronized boolean isSubmitted() {
+    return mDelegate != null;
+  }
+
+  @Override
+  public synchronized boolean isClosed() {
+    return mIsClosed;
+  }
+
+  @Override
+  @Nullable
+  public T getResult() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null ? dataSource.getResult() : null;
+  }
+
+  @Override
+  public boolean hasResult() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null && dataSource.hasResult();
+  }
+
+  @Override
+  @Nullable
+  public Map<String, Object> getExtras() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null ? dataSource.getExtras() : null;
+  }
+
+  @Override
+  public boolean hasMultipleResults() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null && dataSource.hasMultipleResults();
+  }
+
+  @Override
+  public boolean isFinished() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null && dataSource.isFinished();
+  }
+
+  @Override
+  public boolean hasFailed() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null && dataSource.hasFailed();
+  }
+
+  @Override
+  @Nullable
+  public Throwable getFailureCause() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null ? dataSource.getFailureCause() : null;
+  }
+
+  @Override
+  public float getProgress() {
+    DataSource<T> dataSource = getDelegate();
+    return dataSource != null ? dataSource.getProgress() : 0;
+  }
+
+  @Override
+  public boolean close() {
+    DataSource<T> dataSource;
+    synchronized (this) {
+      if (mIsClosed) {
+        return false;
+      }
+      mIsClosed = true;
+      dataSource = mDelegate;
+    }
+    if (dataSource != null) {
+      dataSource.close();
+    }
+    return true;
+  }
+
+  @Override
+  public ImageRequest getImageRequest() {
+    return mImageRequest;
+  }
+}
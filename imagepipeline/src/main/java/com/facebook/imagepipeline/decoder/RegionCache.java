@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imageutils.BitmapUtil;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded LRU cache of decoded regions of images, indexed by their rectangle.
+ *
+ * <p>The regions of an image decoded with the same sample size are kept in a {@link
+ * RegionQuadTree}, so that the cached regions overlapping a requested region are found without
+ * testing all the regions of the image. Once the cached bitmaps take more than the max size, the
+ * least recently used regions are evicted. All the regions are evicted when the memory is trimmed,
+ * they can be decoded again.
+ */
+@ThreadSafe
+public class RegionCache implements MemoryTrimmable {
+
+  /** A cached region, in source image coordinates. The caller must close the bitmap reference. */
+  public static final class CachedRegion {
+    public final Rect rect;
+    public final CloseableReference<Bitmap> bitmapRef;
+
+    CachedRegion(Rect rect, CloseableReference<Bitmap> bitmapRef) {
+      this.rect = rect;
+      this.bitmapRef = bitmapRef;
+    }
+  }
+
+  private final int mMaxSizeInBytes;
+
+  @GuardedBy("this")
+  private final Map<LevelKey, RegionQuadTree<Entry>> mLevels = new HashMap<>();
+
+  @GuardedBy("this")
+  private final LinkedHashMap<Entry, Entry> mEntries =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+
+  @GuardedBy("this")
+  private int mSizeInBytes;
+
+  /**
+   * @param memoryTrimmableRegistry the registry the cache registers with, to be trimmed
+   * @param maxSizeInBytes the maximum total size of the cached bitmaps
+   */
+  public RegionCache(MemoryTrimmableRegistry memoryTrimmableRegistry, int maxSizeInBytes) {
+    mMaxSizeInBytes = maxSizeInBytes;
+    memoryTrimmableRegistry.registerMemoryTrimmable(this);
+  }
+
+  /**
+   * Returns the cached regions of the image that overlap the rectangle.
+   *
+   * @param imageKey key identifying the encoded image
+   * @param sampleSize sample size the regions were decoded with
+   * @param rect the requested region, in source image coordinates
+   */
+  public synchronized List<CachedRegion> get(CacheKey imageKey, int sampleSize, Rect rect) {
+    List<CachedRegion> regions = new ArrayList<>();
+    RegionQuadTree<Entry> level = mLevels.get(new LevelKey(imageKey, sampleSize));
+    if (level == null) {
+      return regions;
+    }
+    for (Entry entry : level.query(rect)) {
+      // touches the entry so that it becomes the most recently used
+      mEntries.get(entry);
+      regions.add(new CachedRegion(new Rect(entry.mRect), entry.mBitmapRef.clone()));
+    }
+    return regions;
+  }
+
+  /**
+   * Caches a decoded region. If the same region is already cached, the cached bitmap is kept.
+   *
+   * @param imageKey key identifying the encoded image
+   * @param imageWidth width of the source image
+   * @param imageHeight height of the source image
+   * @param sampleSize sample size the region was decoded with
+   * @param rect the region, in source image coordinates
+   * @param bitmapRef the decoded region, not closed by this method
+   * @return a reference to the cached bitmap, or null if the bitmap is too big to be cached
+   */
+  public @Nullable CloseableReference<Bitmap> cache(
+      CacheKey imageKey,
+      int imageWidth,
+      int imageHeight,
+      int sampleSize,
+      Rect rect,
+      CloseableReference<Bitmap> bitmapRef) {
+    Preconditions.checkArgument(sampleSize > 0);
+    final int sizeInBytes = BitmapUtil.getSizeInBytes(bitmapRef.get());
+    if (sizeInBytes > mMaxSizeInBytes) {
+      return null;
+    }
+    final List<Entry> evictedEntries;
+    final CloseableReference<Bitmap> cachedRef;
+    synchronized (this) {
+      final LevelKey levelKey = new LevelKey(imageKey, sampleSize);
+      RegionQuadTree<Entry> level = mLevels.get(levelKey);
+      if (level == null) {
+        level = new RegionQuadTree<>(imageWidth, imageHeight);
+        mLevels.put(levelKey, level);
+      }
+      for (Entry entry : level.query(rect)) {
+        if (entry.mRect.equals(rect)) {
+          mEntries.get(entry);
+          return entry.mBitmapRef.clone();
+        }
+      }
+      final Entry entry = new Entry(levelKey, new Rect(rect), bitmapRef.clone(), sizeInBytes);
+      level.insert(entry.mRect, entry);
+      mEntries.put(entry, entry);
+      mSizeInBytes += sizeInBytes;
+      cachedRef = entry.mBitmapRef.clone();
+      evictedEntries = trimToMaxSize();
+    }
+    close(evictedEntries);
+    return cachedRef;
+  }
+
+  /** Evicts all the regions of the image. */
+  public void removeAll(CacheKey imageKey) {
+    final List<Entry> removedEntries = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Entry> iterator = mEntries.keySet().iterator();
+      while (iterator.hasNext()) {
+        Entry entry = iterator.next();
+        if (entry.mLevelKey.mImageKey.equals(imageKey)) {
+          iterator.remove();
+          mSizeInBytes -= entry.mSizeInBytes;
+          removedEntries.add(entry);
+        }
+      }
+      Iterator<LevelKey> levelIterator = mLevels.keySet().iterator();
+      while (levelIterator.hasNext()) {
+        if (levelIterator.next().mImageKey.equals(imageKey)) {
+          levelIterator.remove();
+        }
+      }
+    }
+    close(removedEntries);
+  }
+
+  /** Evicts all the regions. */
+  public void clear() {
+    final List<Entry> removedEntries;
+    synchronized (this) {
+      removedEntries = new ArrayList<>(mEntries.keySet());
+      mEntries.clear();
+      mLevels.clear();
+      mSizeInBytes = 0;
+    }
+    close(removedEntries);
+  }
+
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    clear();
+  }
+
+  @VisibleForTesting
+  synchronized int getCount() {
+    return mEntries.size();
+  }
+
+  @VisibleForTesting
+  synchronized int getSizeInBytes() {
+    return mSizeInBytes;
+  }
+
+  /** Removes the least recently used entries down to the max size. */
+  @GuardedBy("this")
+  private List<Entry> trimToMaxSize() {
+    final List<Entry> evictedEntries = new ArrayList<>();
+    Iterator<Entry> iterator = mEntries.keySet().iterator();
+    while (mSizeInBytes > mMaxSizeInBytes && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      iterator.remove();
+      mSizeInBytes -= entry.mSizeInBytes;
+      RegionQuadTree<Entry> level = mLevels.get(entry.mLevelKey);
+      if (level != null) {
+        level.remove(entry.mRect, entry);
+        if (level.size() == 0) {
+          mLevels.remove(entry.mLevelKey);
+        }
+      }
+      evictedEntries.add(entry);
+    }
+    return evictedEntries;
+  }
+
+  private static void close(List<Entry> entries) {
+    for (Entry entry : entries) {
+      CloseableReference.closeSafely(entry.mBitmapRef);
+    }
+  }
+
+  /** A cached region, compared by identity. */
+  private static final class Entry {
+    private final LevelKey mLevelKey;
+    private final Rect mRect;
+    private final CloseableReference<Bitmap> mBitmapRef;
+    private final int mSizeInBytes;
+
+    private Entry(
+        LevelKey levelKey, Rect rect, CloseableReference<Bitmap> bitmapRef, int sizeInBytes) {
+      mLevelKey = levelKey;
+      mRect = rect;
+      mBitmapRef = bitmapRef;
+      mSizeInBytes = sizeInBytes;
+    }
+  }
+
+  private static final class LevelKey {
+    private final CacheKey mImageKey;
+    private final int mSampleSize;
+
+    private LevelKey(CacheKey imageKey, int sampleSize) {
+      mImageKey = imageKey;
+      mSampleSize = sampleSize;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (!(o instanceof LevelKey)) {
+        return false;
+      }
+      LevelKey other = (LevelKey) o;
+      return mSampleSize == other.mSampleSize && mImageKey.equals(other.mImageKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return mImageKey.hashCode() * 31 + mSampleSize;
+    }
+  }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import com.facebook.imagepipeline.image.EncodedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Decodes regions of images for zoomable views, reusing what was decoded for earlier regions.
+ *
+ * <p>A region is decoded as the tiles of its {@link TileGrid}, so that the regions requested while
+ * panning and zooming share their tiles. The tiles are kept in a {@link RegionCache}, only the
+ * missing ones are decoded, with region decoders from a {@link RegionDecoderPool}, and the tiles
+ * are then drawn into the bitmap of the region.
+ *
+ * <p>If a tile decode executor is given, the missing tiles are spread over up to {@link
+ * RegionDecoderPool#getMaxDecodersPerImage()} decoders of the image, decoded in parallel on the
+ * calling thread and on the executor. The calling thread waits for the tiles decoded on the
+ * executor, so the executor must not be the one the regions are decoded on.
+ *
+ * <p>Regions are expressed in source image coordinates, no EXIF rotation is applied to them.
+ */
+@ThreadSafe
+public class RegionDecodeService {
+
+  private final RegionDecoderPool mDecoderPool;
+  private final RegionCache mRegionCache;
+  private final PlatformBitmapFactory mBitmapFactory;
+  private final int mTileSizePx;
+  private final @Nullable Executor mTileDecodeExecutor;
+
+  public RegionDecodeService(
+      RegionDecoderPool decoderPool,
+      RegionCache regionCache,
+      PlatformBitmapFactory bitmapFactory,
+      int tileSizePx) {
+    this(decoderPool, regionCache, bitmapFactory, tileSizePx, null);
+  }
+
+  /**
+   * @param tileDecodeExecutor executor the missing tiles are decoded on in parallel, or null to
+   *     decode them one after another on the calling thread
+   */
+  public RegionDecodeService(
+      RegionDecoderPool decoderPool,
+      RegionCache regionCache,
+      PlatformBitmapFactory bitmapFactory,
+      int tileSizePx,
+      @Nullable Executor tileDecodeExecutor) {
+    Preconditions.checkArgument(tileSizePx > 0);
+    mDecoderPool = Preconditions.checkNotNull(decoderPool);
+    mRegionCache = Preconditions.checkNotNull(regionCache);
+    mBitmapFactory = Preconditions.checkNotNull(bitmapFactory);
+    mTileSizePx = tileSizePx;
+    mTileDecodeExecutor = tileDecodeExecutor;
+  }
+
+  /**
+   * Decodes a region of the image.
+   *
+   * <p>The region is decoded with the sample size of {@link TileGrid#getSampleSizeForScale}, so the
+   * returned bitmap is at least as big as the region is displayed, but not scaled to it.
+   *
+   * @param imageKey key identifying the encoded image, e.g. its encoded cache key
+   * @param encodedImage the image, its width and height must be known
+   * @param region the region to decode, in source image coordinates
+   * @param scale ratio between displayed and source pixels
+   * @param bitmapConfig config of the decoded bitmap, hardware bitmaps are decoded as ARGB_8888
+   * @return the decoded region, the caller must close it
+   * @throws DecodeException if the region is outside of the image or cannot be decoded
+   */
+  public CloseableReference<Bitmap> decodeRegion(
+      CacheKey imageKey,
+      EncodedImage encodedImage,
+      Rect region,
+      float scale,
+      Bitmap.Config bitmapConfig) {
+    final int imageWidth = encodedImage.getWidth();
+    final int imageHeight = encodedImage.getHeight();
+    if (imageWidth == EncodedImage.UNKNOWN_WIDTH || imageHeight == EncodedImage.UNKNOWN_HEIGHT) {
+      throw new DecodeException("image width or height is incorrect", encodedImage);
+    }
+    final Rect clampedRegion = new Rect(region);
+    if (!clampedRegion.intersect(0, 0, imageWidth, imageHeight)) {
+      throw new DecodeException("region is outside of the image", encodedImage);
+    }
+    final Bitmap.Config config = getSoftwareConfig(bitmapConfig);
+    final TileGrid grid =
+        TileGrid.forViewport(imageWidth, imageHeight, clampedRegion, scale, mTileSizePx);
+    final int sampleSize = grid.getSampleSize();
+
+    final Map<Rect, CloseableReference<Bitmap>> tileRefs = new HashMap<>();
+    try {
+      for (RegionCache.CachedRegion cachedRegion :
+          mRegionCache.get(imageKey, sampleSize, clampedRegion)) {
+        CloseableReference<Bitmap> previousRef =
+            tileRefs.put(cachedRegion.rect, cachedRegion.bitmapRef);
+        CloseableReference.closeSafely(previousRef);
+      }
+      final List<TileGrid.Tile> missingTiles = new ArrayList<>();
+      for (TileGrid.Tile tile : grid.getTiles()) {
+        if (!tileRefs.containsKey(tile.toRect())) {
+          missingTiles.add(tile);
+        }
+      }
+      if (!missingTiles.isEmpty()) {
+        decodeTiles(imageKey, encodedImage, grid, missingTiles, config, tileRefs);
+      }
+
+      if (grid.getTiles().size() == 1) {
+        CloseableReference<Bitmap> tileRef = tileRefs.get(clampedRegion);
+        if (tileRef != null) {
+          return tileRef.clone();
+        }
+      }
+      return drawTiles(clampedRegion, sampleSize, config, grid.getTiles(), tileRefs);
+    } finally {
+      CloseableReference.closeSafely(tileRefs.values());
+    }
+  }
+
+  /** Recycles the region decoders and evicts the cached regions of the image. */
+  public void evict(CacheKey imageKey) {
+    mDecoderPool.remove(imageKey);
+    mRegionCache.removeAll(imageKey);
+  }
+
+  private void decodeTiles(
+      CacheKey imageKey,
+      EncodedImage encodedImage,
+      TileGrid grid,
+      List<TileGrid.Tile> tiles,
+      Bitmap.Config config,
+      Map<Rect, CloseableReference<Bitmap>> tileRefs) {
+    final Executor executor = mTileDecodeExecutor;
+    final int decoderCount =
+        executor == null ? 1 : Math.min(tiles.size(), mDecoderPool.getMaxDecodersPerImage());
+    if (decoderCount <= 1) {
+      decodeTilesWithOneDecoder(imageKey, encodedImage, grid, tiles, config, tileRefs);
+      return;
+    }
+
+    final CountDownLatch executorTasksDone = new CountDownLatch(decoderCount - 1);
+    final List<TileDecodeTask> tasks = new ArrayList<>(decoderCount);
+    for (int i = 0; i < decoderCount; i++) {
+      tasks.add(
+          new TileDecodeTask(
+              imageKey, encodedImage, grid, config, i == 0 ? null : executorTasksDone));
+    }
+    for (int i = 0; i < tiles.size(); i++) {
+      tasks.get(i % decoderCount).mTiles.add(tiles.get(i));
+    }
+    for (int i = 1; i < decoderCount; i++) {
+      try {
+        executor.execute(tasks.get(i));
+      } catch (RejectedExecutionException e) {
+        tasks.get(i).run();
+      }
+    }
+    tasks.get(0).run();
+    awaitUninterruptibly(executorTasksDone);
+
+    RuntimeException failure = null;
+    for (TileDecodeTask task : tasks) {
+      tileRefs.putAll(task.mTileRefs);
+      if (failure == null) {
+        failure = task.mFailure;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void decodeTilesWithOneDecoder(
+      CacheKey imageKey,
+      EncodedImage encodedImage,
+      TileGrid grid,
+      List<TileGrid.Tile> tiles,
+      Bitmap.Config config,
+      Map<Rect, CloseableReference<Bitmap>> tileRefs) {
+    final BitmapRegionDecoder decoder;
+    try {
+      decoder = mDecoderPool.acquire(imageKey, encodedImage);
+    } catch (IOException e) {
+      throw new DecodeException("could not open the image", e, encodedImage);
+    }
+    try {
+      final BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = grid.getSampleSize();
+      options.inPreferredConfig = config;
+      for (TileGrid.Tile tile : tiles) {
+        final Rect tileRect = tile.toRect();
+        final Bitmap bitmap = decoder.decodeRegion(tileRect, options);
+        if (bitmap == null) {
+          throw new DecodeException("could not decode a region of the image", encodedImage);
+        }
+        CloseableReference<Bitmap> bitmapRef =
+            CloseableReference.of(bitmap, SimpleBitmapReleaser.getInstance());
+        try {
+          CloseableReference<Bitmap> cachedRef =
+              mRegionCache.cache(
+                  imageKey,
+                  grid.getImageWidth(),
+                  grid.getImageHeight(),
+                  grid.getSampleSize(),
+                  tileRect,
+                  bitmapRef);
+          tileRefs.put(tileRect, cachedRef != null ? cachedRef : bitmapRef.clone());
+        } finally {
+          CloseableReference.closeSafely(bitmapRef);
+        }
+      }
+    } finally {
+      mDecoderPool.release(decoder);
+    }
+  }
+
+  /** Draws the parts of the tiles that overlap the region into a new bitmap. */
+  private CloseableReference<Bitmap> drawTiles(
+      Rect region,
+      int sampleSize,
+      Bitmap.Config config,
+      List<TileGrid.Tile> tiles,
+      Map<Rect, CloseableReference<Bitmap>> tileRefs) {
+    final CloseableReference<Bitmap> regionRef =
+        mBitmapFactory.createBitmap(
+            divideRoundingUp(region.width(), sampleSize),
+            divideRoundingUp(region.height(), sampleSize),
+            config);
+    final Canvas canvas = new Canvas(regionRef.get());
+    final Rect src = new Rect();
+    final Rect dst = new Rect();
+    for (TileGrid.Tile tile : tiles) {
+      final Rect tileRect = tile.toRect();
+      final CloseableReference<Bitmap> tileRef = tileRefs.get(tileRect);
+      if (tileRef != null && getTileDrawingRects(tileRect, region, sampleSize, src, dst)) {
+        canvas.drawBitmap(tileRef.get(), src, dst, null);
+      }
+    }
+    return regionRef;
+  }
+
+  /**
+   * Computes the part of the tile bitmap overlapping the region, and where it is drawn in the
+   * region bitmap. Both bitmaps are decoded with the sample size, the rects are rounded outwards so
+   * that the tiles leave no gap between them.
+   *
+   * @param tileRect the tile, in source image coordinates
+   * @param region the region, in source image coordinates
+   * @param src set to the rect to draw, in tile bitmap coordinates
+   * @param dst set to the rect to draw into, in region bitmap coordinates
+   * @return false if the tile does not overlap the region
+   */
+  @VisibleForTesting
+  static boolean getTileDrawingRects(
+      Rect tileRect, Rect region, int sampleSize, Rect src, Rect dst) {
+    if (!dst.setIntersect(tileRect, region)) {
+      return false;
+    }
+    src.set(
+        (dst.left - tileRect.left) / sampleSize,
+        (dst.top - tileRect.top) / sampleSize,
+        divideRoundingUp(dst.right - tileRect.left, sampleSize),
+        divideRoundingUp(dst.bottom - tileRect.top, sampleSize));
+    dst.set(
+        (dst.left - region.left) / sampleSize,
+        (dst.top - region.top) / sampleSize,
+        divideRoundingUp(dst.right - region.left, sampleSize),
+        divideRoundingUp(dst.bottom - region.top, sampleSize));
+    return true;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Bitmap.Config getSoftwareConfig(@Nullable Bitmap.Config config) {
+    if (config == null
+        || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.HARDWARE)) {
+      return Bitmap.Config.ARGB_8888;
+    }
+    return config;
+  }
+
+  private static int divideRoundingUp(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
+  /** Decodes a share of the missing tiles with one decoder of the pool. */
+  private final class TileDecodeTask implements Runnable {
+    private final CacheKey mImageKey;
+    private final EncodedImage mEncodedImage;
+    private final TileGrid mGrid;
+    private final Bitmap.Config mConfig;
+    private final @Nullable CountDownLatch mDone;
+    private final List<TileGrid.Tile> mTiles = new ArrayList<>();
+    private final Map<Rect, CloseableReference<Bitmap>> mTileRefs = new HashMap<>();
+    private @Nullable RuntimeException mFailure;
+
+    private TileDecodeTask(
+        CacheKey imageKey,
+        EncodedImage encodedImage,
+        TileGrid grid,
+        Bitmap.Config config,
+        @Nullable CountDownLatch done) {
+      mImageKey = imageKey;
+      mEncodedImage = encodedImage;
+      mGrid = grid;
+      mConfig = config;
+      mDone = done;
+    }
+
+    @Override
+    public void run() {
+      try {
+        decodeTilesWithOneDecoder(mImageKey, mEncodedImage, mGrid, mTiles, mConfig, mTileRefs);
+      } catch (RuntimeException e) {
+        mFailure = e;
+      } finally {
+        if (mDone != null) {
+          mDone.countDown();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import android.graphics.BitmapRegionDecoder;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Closeables;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.imagepipeline.image.EncodedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded pool of open {@link BitmapRegionDecoder}s, per encoded image.
+ *
+ * <p>Opening a region decoder reads and parses the whole image, so the decoders are kept open
+ * between the regions decoded from the same image. A decoder decodes one region at a time, each
+ * image has up to {@code maxDecodersPerImage} idle decoders so that its regions can be decoded in
+ * parallel. Once more than {@code maxImages} images have open decoders, the idle decoders of the
+ * least recently used images are recycled.
+ */
+@ThreadSafe
+public class RegionDecoderPool {
+
+  private final int mMaxDecodersPerImage;
+  private final int mMaxImages;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<CacheKey, ImageDecoders> mImageDecoders =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+
+  // the image of each decoder in use, which may have been removed from the pool in the meantime
+  @GuardedBy("this")
+  private final Map<BitmapRegionDecoder, ImageDecoders> mDecodersInUse = new IdentityHashMap<>();
+
+  public RegionDecoderPool(int maxDecodersPerImage, int maxImages) {
+    Preconditions.checkArgument(maxDecodersPerImage > 0);
+    Preconditions.checkArgument(maxImages > 0);
+    mMaxDecodersPerImage = maxDecodersPerImage;
+    mMaxImages = maxImages;
+  }
+
+  /** Returns the max number of idle decoders kept per image, to decode its regions in parallel. */
+  public int getMaxDecodersPerImage() {
+    return mMaxDecodersPerImage;
+  }
+
+  /**
+   * Returns an idle decoder of the image, or opens a new one. The decoder must be given back with
+   * {@link #release} once the region is decoded.
+   *
+   * @param imageKey key identifying the encoded image, e.g. its encoded cache key
+   * @param encodedImage the image, only read if no decoder of the image is idle
+   * @throws IOException if the image cannot be opened
+   */
+  public BitmapRegionDecoder acquire(CacheKey imageKey, EncodedImage encodedImage)
+      throws IOException {
+    final ImageDecoders imageDecoders;
+    final List<BitmapRegionDecoder> decodersToRecycle;
+    synchronized (this) {
+      ImageDecoders existingDecoders = mImageDecoders.get(imageKey);
+      if (existingDecoders == null) {
+        existingDecoders = new ImageDecoders(imageKey);
+        mImageDecoders.put(imageKey, existingDecoders);
+      }
+      imageDecoders = existingDecoders;
+      imageDecoders.mInUseCount++;
+      if (!imageDecoders.mIdleDecoders.isEmpty()) {
+        BitmapRegionDecoder decoder =
+            imageDecoders.mIdleDecoders.remove(imageDecoders.mIdleDecoders.size() - 1);
+        mDecodersInUse.put(decoder, imageDecoders);
+        return decoder;
+      }
+      decodersToRecycle = trimToMaxImages();
+    }
+    recycle(decodersToRecycle);
+
+    BitmapRegionDecoder decoder = null;
+    InputStream inputStream = encodedImage.getInputStream();
+    try {
+      decoder = BitmapRegionDecoder.newInstance(Preconditions.checkNotNull(inputStream), false);
+    } finally {
+      Closeables.closeQuietly(inputStream);
+      synchronized (this) {
+        if (decoder != null) {
+          mDecodersInUse.put(decoder, imageDecoders);
+        } else {
+          imageDecoders.mInUseCount--;
+        }
+      }
+    }
+    if (decoder == null) {
+      throw new IOException("Could not open a region decoder");
+    }
+    return decoder;
+  }
+
+  /**
+   * Gives back a decoder returned by {@link #acquire}. It is kept open for the next region of the
+   * image, unless the image already has enough idle decoders.
+   */
+  public void release(BitmapRegionDecoder decoder) {
+    synchronized (this) {
+      ImageDecoders imageDecoders = mDecodersInUse.remove(decoder);
+      if (imageDecoders != null) {
+        imageDecoders.mInUseCount--;
+        if (mImageDecoders.get(imageDecoders.mImageKey) == imageDecoders
+            && imageDecoders.mIdleDecoders.size() < mMaxDecodersPerImage) {
+          imageDecoders.mIdleDecoders.add(decoder);
+          return;
+        }
+      }
+    }
+    decoder.recycle();
+  }
+
+  /**
+   * Recycles the idle decoders of the image. Decoders in use are recycled when they are released.
+   */
+  public void remove(CacheKey imageKey) {
+    ImageDecoders imageDecoders;
+    synchronized (this) {
+      imageDecoders = mImageDecoders.remove(imageKey);
+    }
+    if (imageDecoders != null) {
+      recycle(imageDecoders.mIdleDecoders);
+    }
+  }
+
+  /** Recycles all the idle decoders. */
+  public void clear() {
+    List<BitmapRegionDecoder> decodersToRecycle = new ArrayList<>();
+    synchronized (this) {
+      for (ImageDecoders imageDecoders : mImageDecoders.values()) {
+        decodersToRecycle.addAll(imageDecoders.mIdleDecoders);
+      }
+      mImageDecoders.clear();
+    }
+    recycle(decodersToRecycle);
+  }
+
+  @VisibleForTesting
+  synchronized int getIdleDecoderCount(CacheKey imageKey) {
+    ImageDecoders imageDecoders = mImageDecoders.get(imageKey);
+    return imageDecoders == null ? 0 : imageDecoders.mIdleDecoders.size();
+  }
+
+  @VisibleForTesting
+  synchronized int getImageCount() {
+    return mImageDecoders.size();
+  }
+
+  /** Removes the least recently used images without decoders in use, down to the max count. */
+  @GuardedBy("this")
+  private List<BitmapRegionDecoder> trimToMaxImages() {
+    List<BitmapRegionDecoder> decodersToRecycle = new ArrayList<>();
+    Iterator<Map.Entry<CacheKey, ImageDecoders>> iterator = mImageDecoders.entrySet().iterator();
+    int imageCount = mImageDecoders.size();
+    while (imageCount > mMaxImages && iterator.hasNext()) {
+      ImageDecoders imageDecoders = iterator.next().getValue();
+      if (imageDecoders.mInUseCount == 0) {
+        decodersToRecycle.addAll(imageDecoders.mIdleDecoders);
+        iterator.remove();
+        imageCount--;
+      }
+    }
+    return decodersToRecycle;
+  }
+
+  private static void recycle(List<BitmapRegionDecoder> decoders) {
+    for (BitmapRegionDecoder decoder : decoders) {
+      decoder.recycle();
+    }
+  }
+
+  private static final class ImageDecoders {
+    private final CacheKey mImageKey;
+    private final List<BitmapRegionDecoder> mIdleDecoders = new ArrayList<>();
+    private int mInUseCount;
+
+    private ImageDecoders(CacheKey imageKey) {
+      mImageKey = imageKey;
+    }
+  }
+}
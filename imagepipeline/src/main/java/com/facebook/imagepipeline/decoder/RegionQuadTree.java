@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import android.graphics.Rect;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Spatial index of the rectangles of an image, to find the ones that overlap a given rectangle
+ * without testing all of them.
+ *
+ * <p>Each node covers a quadrant of its parent. A value is stored in the deepest node whose
+ * quadrant contains its whole rectangle, and a node is split in four once it holds more than
+ * {@link #MAX_VALUES_PER_NODE} values.
+ */
+@NotThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class RegionQuadTree<T> {
+
+  @VisibleForTesting static final int MAX_VALUES_PER_NODE = 8;
+  private static final int MAX_DEPTH = 12;
+
+  private final Node<T> mRoot;
+  private int mSize;
+
+  /**
+   * @param width width of the area covered by the tree
+   * @param height height of the area covered by the tree
+   */
+  public RegionQuadTree(int width, int height) {
+    Preconditions.checkArgument(width > 0 && height > 0);
+    mRoot = new Node<>(0, 0, width, height, 0);
+  }
+
+  /** Adds a value, its rectangle must be within the area covered by the tree. */
+  public void insert(Rect rect, T value) {
+    Preconditions.checkArgument(
+        rect.left >= mRoot.mLeft
+            && rect.top >= mRoot.mTop
+            && rect.right <= mRoot.mRight
+            && rect.bottom <= mRoot.mBottom
+            && rect.left < rect.right
+            && rect.top < rect.bottom);
+    mRoot.insert(new Entry<>(rect.left, rect.top, rect.right, rect.bottom, value));
+    mSize++;
+  }
+
+  /**
+   * Removes a value added with the same rectangle.
+   *
+   * @return true if the value was found
+   */
+  public boolean remove(Rect rect, T value) {
+    Node<T> node = mRoot;
+    while (true) {
+      for (int i = 0; i < node.mEntries.size(); i++) {
+        Entry<T> entry = node.mEntries.get(i);
+        if (entry.mValue == value
+            && entry.mLeft == rect.left
+            && entry.mTop == rect.top
+            && entry.mRight == rect.right
+            && entry.mBottom == rect.bottom) {
+          node.mEntries.remove(i);
+          mSize--;
+          return true;
+        }
+      }
+      Node<T> child = node.getChildContaining(rect.left, rect.top, rect.right, rect.bottom);
+      if (child == null) {
+        return false;
+      }
+      node = child;
+    }
+  }
+
+  /** Returns the values whose rectangle overlaps the given rectangle. */
+  public List<T> query(Rect rect) {
+    List<T> values = new ArrayList<>();
+    if (rect.left < rect.right && rect.top < rect.bottom) {
+      mRoot.query(rect.left, rect.top, rect.right, rect.bottom, values);
+    }
+    return values;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  private static boolean intersects(
+      int left1, int top1, int right1, int bottom1, int left2, int top2, int right2, int bottom2) {
+    return left1 < right2 && left2 < right1 && top1 < bottom2 && top2 < bottom1;
+  }
+
+  private static final class Entry<T> {
+    private final int mLeft;
+    private final int mTop;
+    private final int mRight;
+    private final int mBottom;
+    private final T mValue;
+
+    private Entry(int left, int top, int right, int bottom, T value) {
+      mLeft = left;
+      mTop = top;
+      mRight = right;
+      mBottom = bottom;
+      mValue = value;
+    }
+  }
+
+  private static final class Node<T> {
+    private final int mLeft;
+    private final int mTop;
+    private final int mRight;
+    private final int mBottom;
+    private final int mDepth;
+    private final List<Entry<T>> mEntries = new ArrayList<>();
+    // top left, top right, bottom left and bottom right quadrants, once split
+    private @Nullable Node<T>[] mChildren;
+
+    private Node(int left, int top, int right, int bottom, int depth) {
+      mLeft = left;
+      mTop = top;
+      mRight = right;
+      mBottom = bottom;
+      mDepth = depth;
+    }
+
+    private void insert(Entry<T> entry) {
+      Node<T> node = this;
+      while (true) {
+        Node<T> child =
+            node.getChildContaining(entry.mLeft, entry.mTop, entry.mRight, entry.mBottom);
+        if (child == null) {
+          break;
+        }
+        node = child;
+      }
+      node.mEntries.add(entry);
+      if (node.mChildren == null
+          && node.mEntries.size() > MAX_VALUES_PER_NODE
+          && node.mDepth < MAX_DEPTH
+          && node.mRight - node.mLeft > 1
+          && node.mBottom - node.mTop > 1) {
+        node.split();
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void split() {
+      final int centerX = (mLeft + mRight) >>> 1;
+      final int centerY = (mTop + mBottom) >>> 1;
+      final Node<T>[] children = new Node[4];
+      children[0] = new Node<>(mLeft, mTop, centerX, centerY, mDepth + 1);
+      children[1] = new Node<>(centerX, mTop, mRight, centerY, mDepth + 1);
+      children[2] = new Node<>(mLeft, centerY, centerX, mBottom, mDepth + 1);
+      children[3] = new Node<>(centerX, centerY, mRight, mBottom, mDepth + 1);
+      mChildren = children;
+      // move the entries that fit in a quadrant down, the others stay in this node
+      List<Entry<T>> entries = new ArrayList<>(mEntries);
+      mEntries.clear();
+      for (Entry<T> entry : entries) {
+        Node<T> child = getChildContaining(entry.mLeft, entry.mTop, entry.mRight, entry.mBottom);
+        (child != null ? child.mEntries : mEntries).add(entry);
+      }
+    }
+
+    private @Nullable Node<T> getChildContaining(int left, int top, int right, int bottom) {
+      final Node<T>[] children = mChildren;
+      if (children == null) {
+        return null;
+      }
+      final int centerX = children[0].mRight;
+      final int centerY = children[0].mBottom;
+      final int column;
+      if (right <= centerX) {
+        column = 0;
+      } else if (left >= centerX) {
+        column = 1;
+      } else {
+        return null;
+      }
+      if (bottom <= centerY) {
+        return children[column];
+      } else if (top >= centerY) {
+        return children[2 + column];
+      }
+      return null;
+    }
+
+    private void query(int left, int top, int right, int bottom, List<T> values) {
+      for (Entry<T> entry : mEntries) {
+        if (intersects(
+            entry.mLeft, entry.mTop, entry.mRight, entry.mBottom, left, top, right, bottom)) {
+          values.add(entry.mValue);
+        }
+      }
+      final Node<T>[] children = mChildren;
+      if (children != null) {
+        for (Node<T> child : children) {
+          if (intersects(
+              child.mLeft, child.mTop, child.mRight, child.mBottom, left, top, right, bottom)) {
+            child.query(left, top, right, bottom, values);
+          }
+        }
+      }
+    }
+  }
+}
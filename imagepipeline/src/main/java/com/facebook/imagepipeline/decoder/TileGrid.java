@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import android.graphics.Rect;
+import com.facebook.common.internal.Preconditions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The set of tiles of an image that cover a viewport at a given zoom level.
+ *
+ * <p>Tiles are aligned on a grid in source image coordinates, so that the same tile is produced for
+ * any viewport that overlaps it. Each tile is decoded with the same sample size, which is the
+ * largest power of two that does not make the decoded tile smaller than it is displayed.
+ */
+@Immutable
+public class TileGrid {
+
+  /** Default size of a decoded tile, in pixels. */
+  public static final int DEFAULT_TILE_SIZE_PX = 512;
+
+  /** A tile of the grid, in source image coordinates. */
+  @Immutable
+  public static class Tile {
+    public final int column;
+    public final int row;
+    public final int left;
+    public final int top;
+    public final int right;
+    public final int bottom;
+
+    Tile(int column, int row, int left, int top, int right, int bottom) {
+      this.column = column;
+      this.row = row;
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+    }
+
+    public Rect toRect() {
+      return new Rect(left, top, right, bottom);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          (Locale) null, "Tile(%d, %d: %d,%d-%d,%d)", column, row, left, top, right, bottom);
+    }
+  }
+
+  private final int mImageWidth;
+  private final int mImageHeight;
+  private final int mSampleSize;
+  private final int mTileSizePx;
+  private final List<Tile> mTiles;
+
+  private TileGrid(
+      int imageWidth, int imageHeight, int sampleSize, int tileSizePx, List<Tile> tiles) {
+    mImageWidth = imageWidth;
+    mImageHeight = imageHeight;
+    mSampleSize = sampleSize;
+    mTileSizePx = tileSizePx;
+    mTiles = Collections.unmodifiableList(tiles);
+  }
+
+  /**
+   * Computes the tiles that cover a viewport.
+   *
+   * @param imageWidth width of the source image
+   * @param imageHeight height of the source image
+   * @param viewport visible part of the image, in source image coordinates
+   * @param scale ratio between displayed and source pixels, e.g. 0.25 when a 4000 pixel wide image
+   *     is shown 1000 pixels wide
+   * @param tileSizePx size of a decoded tile, in pixels
+   */
+  public static TileGrid forViewport(
+      int imageWidth, int imageHeight, Rect viewport, float scale, int tileSizePx) {
+    return forViewport(
+        imageWidth,
+        imageHeight,
+        viewport.left,
+        viewport.top,
+        viewport.right,
+        viewport.bottom,
+        scale,
+        tileSizePx);
+  }
+
+  public static TileGrid forViewport(
+      int imageWidth,
+      int imageHeight,
+      int viewportLeft,
+      int viewportTop,
+      int viewportRight,
+      int viewportBottom,
+      float scale,
+      int tileSizePx) {
+    Preconditions.checkArgument(imageWidth > 0 && imageHeight > 0);
+    Preconditions.checkArgument(scale > 0);
+    Preconditions.checkArgument(tileSizePx > 0);
+    int sampleSize = getSampleSizeForScale(scale);
+    int sourceTileSize = tileSizePx * sampleSize;
+
+    int left = Math.max(0, viewportLeft);
+    int top = Math.max(0, viewportTop);
+    int right = Math.min(imageWidth, viewportRight);
+    int bottom = Math.min(imageHeight, viewportBottom);
+    List<Tile> tiles = new ArrayList<>();
+    if (left < right && top < bottom) {
+      int firstColumn = left / sourceTileSize;
+      int lastColumn = (right - 1) / sourceTileSize;
+      int firstRow = top / sourceTileSize;
+      int lastRow = (bottom - 1) / sourceTileSize;
+      for (int row = firstRow; row <= lastRow; row++) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+          int tileLeft = column * sourceTileSize;
+          int tileTop = row * sourceTileSize;
+          tiles.add(
+              new Tile(
+                  column,
+                  row,
+                  tileLeft,
+                  tileTop,
+                  Math.min(imageWidth, tileLeft + sourceTileSize),
+                  Math.min(imageHeight, tileTop + sourceTileSize)));
+        }
+      }
+    }
+    return new TileGrid(imageWidth, imageHeight, sampleSize, tileSizePx, tiles);
+  }
+
+  /**
+   * Returns the largest power of two sample size that keeps at least one pixel per screen pixel.
+   */
+  public static int getSampleSizeForScale(float scale) {
+    int sampleSize = 1;
+    while (sampleSize * 2 * scale <= 1f) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  public int getImageWidth() {
+    return mImageWidth;
+  }
+
+  public int getImageHeight() {
+    return mImageHeight;
+  }
+
+  public int getSampleSize() {
+    return mSampleSize;
+  }
+
+  public int getTileSizePx() {
+    return mTileSizePx;
+  }
+
+  public List<Tile> getTiles() {
+    return mTiles;
+  }
+}
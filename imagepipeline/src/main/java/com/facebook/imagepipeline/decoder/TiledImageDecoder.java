@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.datasource.DataSource;
+import com.facebook.imagepipeline.cache.MemoryCache;
+import com.facebook.imagepipeline.cache.TileCacheKey;
+import com.facebook.imagepipeline.common.ImageDecodeOptions;
+import com.facebook.imagepipeline.datasource.SettableDataSource;
+import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.CloseableStaticBitmap;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.image.ImmutableQualityInfo;
+import com.facebook.imagepipeline.platform.PlatformDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes very large images as a grid of tiles instead of a single bitmap.
+ *
+ * <p>Only the tiles that cover the viewport are decoded, each one with the region decoding support
+ * of the {@link PlatformDecoder}. Tiles are decoded in parallel on the given executor and stored in
+ * the bitmap memory cache under a {@link TileCacheKey}, so that panning back to a region or zooming
+ * back to a level does not decode the same tile again.
+ *
+ * <p>Tiles are expressed in source image coordinates, no EXIF rotation is applied to them.
+ */
+public class TiledImageDecoder {
+
+  private final PlatformDecoder mPlatformDecoder;
+  private final MemoryCache<CacheKey, CloseableImage> mBitmapMemoryCache;
+  private final Executor mDecodeExecutor;
+  private final int mTileSizePx;
+
+  public TiledImageDecoder(
+      PlatformDecoder platformDecoder,
+      MemoryCache<CacheKey, CloseableImage> bitmapMemoryCache,
+      Executor decodeExecutor) {
+    this(platformDecoder, bitmapMemoryCache, decodeExecutor, TileGrid.DEFAULT_TILE_SIZE_PX);
+  }
+
+  public TiledImageDecoder(
+      PlatformDecoder platformDecoder,
+      MemoryCache<CacheKey, CloseableImage> bitmapMemoryCache,
+      Executor decodeExecutor,
+      int tileSizePx) {
+    Preconditions.checkArgument(tileSizePx > 0);
+    mPlatformDecoder = Preconditions.checkNotNull(platformDecoder);
+    mBitmapMemoryCache = Preconditions.checkNotNull(bitmapMemoryCache);
+    mDecodeExecutor = Preconditions.checkNotNull(decodeExecutor);
+    mTileSizePx = tileSizePx;
+  }
+
+  /**
+   * Computes the tiles of the image that cover the viewport.
+   *
+   * @param encodedImage the image, its width and height must be known
+   * @param viewport visible part of the image, in source image coordinates
+   * @param scale ratio between displayed and source pixels
+   */
+  public TileGrid getTileGrid(EncodedImage encodedImage, Rect viewport, float scale) {
+    if (encodedImage.getWidth() == EncodedImage.UNKNOWN_WIDTH
+        || encodedImage.getHeight() == EncodedImage.UNKNOWN_HEIGHT) {
+      throw new DecodeException("image width or height is incorrect", encodedImage);
+    }
+    return TileGrid.forViewport(
+        encodedImage.getWidth(), encodedImage.getHeight(), viewport, scale, mTileSizePx);
+  }
+
+  /**
+   * Fetches all the tiles of the grid.
+   *
+   * <p>Tiles found in the bitmap memory cache are returned immediately, the others are decoded on
+   * the decode executor. Closing a data source before its decode has started skips the decode.
+   *
+   * @param sourceKey bitmap cache key of the full image
+   * @param encodedImage the image to decode tiles from, not retained by the caller's reference
+   * @param grid tiles to fetch, as returned by {@link #getTileGrid}
+   * @param options decode options, only the bitmap config and color space are used
+   * @return one data source per tile, in the order of {@link TileGrid#getTiles()}
+   */
+  public List<DataSource<CloseableReference<CloseableImage>>> fetchTiles(
+      CacheKey sourceKey, EncodedImage encodedImage, TileGrid grid, ImageDecodeOptions options) {
+    List<TileGrid.Tile> tiles = grid.getTiles();
+    List<DataSource<CloseableReference<CloseableImage>>> dataSources =
+        new ArrayList<>(tiles.size());
+    for (TileGrid.Tile tile : tiles) {
+      TileCacheKey tileKey =
+          new TileCacheKey(sourceKey, grid.getSampleSize(), tile.left, tile.top, mTileSizePx);
+      SettableDataSource<CloseableImage> dataSource = SettableDataSource.create();
+      dataSources.add(dataSource);
+      CloseableReference<CloseableImage> cachedRef = mBitmapMemoryCache.get(tileKey);
+      if (cachedRef != null) {
+        try {
+          dataSource.set(cachedRef);
+        } finally {
+          CloseableReference.closeSafely(cachedRef);
+        }
+        continue;
+      }
+      EncodedImage encodedImageClone = encodedImage.cloneOrNull();
+      if (encodedImageClone == null) {
+        dataSource.setException(new DecodeException("encoded image is closed", encodedImage));
+        continue;
+      }
+      mDecodeExecutor.execute(
+          new TileDecodeJob(
+              dataSource, encodedImageClone, tileKey, tile, grid.getSampleSize(), options));
+    }
+    return dataSources;
+  }
+
+  private class TileDecodeJob implements Runnable {
+
+    private final SettableDataSource<CloseableImage> mDataSource;
+    private final EncodedImage mEncodedImage;
+    private final TileCacheKey mTileKey;
+    private final TileGrid.Tile mTile;
+    private final int mSampleSize;
+    private final ImageDecodeOptions mOptions;
+
+    TileDecodeJob(
+        SettableDataSource<CloseableImage> dataSource,
+        EncodedImage encodedImage,
+        TileCacheKey tileKey,
+        TileGrid.Tile tile,
+        int sampleSize,
+        ImageDecodeOptions options) {
+      mDataSource = dataSource;
+      mEncodedImage = encodedImage;
+      mTileKey = tileKey;
+      mTile = tile;
+      mSampleSize = sampleSize;
+      mOptions = options;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (mDataSource.isClosed()) {
+          return;
+        }
+        mEncodedImage.setSampleSize(mSampleSize);
+        CloseableReference<CloseableImage> tileRef = decodeTile();
+        try {
+          mDataSource.set(tileRef);
+        } finally {
+          CloseableReference.closeSafely(tileRef);
+        }
+      } catch (Exception e) {
+        mDataSource.setException(e);
+      } finally {
+        EncodedImage.closeSafely(mEncodedImage);
+      }
+    }
+
+    private @Nullable CloseableReference<CloseableImage> decodeTile() {
+      CloseableReference<Bitmap> bitmapRef =
+          mPlatformDecoder.decodeFromEncodedImageWithColorSpace(
+              mEncodedImage, mOptions.bitmapConfig, mTile.toRect(), mOptions.colorSpace);
+      try {
+        CloseableReference<CloseableImage> imageRef =
+            CloseableReference.<CloseableImage>of(
+                new CloseableStaticBitmap(bitmapRef, ImmutableQualityInfo.FULL_QUALITY, 0));
+        try {
+          CloseableReference<CloseableImage> cachedRef =
+              mBitmapMemoryCache.cache(mTileKey, imageRef);
+          return cachedRef != null ? cachedRef : imageRef.clone();
+        } finally {
+          CloseableReference.closeSafely(imageRef);
+        }
+      } finally {
+        CloseableReference.closeSafely(bitmapRef);
+      }
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.filter;
+
+import android.graphics.Bitmap;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.imageutils.BitmapUtil;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Rounds bitmaps in place to a circle or to rounded corners by scaling the alpha channel with a
+ * precomputed coverage mask.
+ *
+ * <p>Masks are computed once per bitmap size, radius and anti-aliasing, and kept in a bounded LRU
+ * cache, so rounding the many same-sized avatars of a list does not compute the circle again for
+ * every bitmap. Only the top left quadrant of the shape is stored, the other quadrants are its
+ * mirror images. Rounding reads and writes only the pixels at the start and the end of each row
+ * that are not fully covered, instead of copying the whole bitmap.
+ */
+@ThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class CoverageMaskRoundingFilter {
+
+  /** The radius that rounds a bitmap to a circle, see {@link #roundBitmapInPlace}. */
+  public static final int RADIUS_CIRCLE = -1;
+
+  private static final int DEFAULT_MAX_SIZE_IN_BYTES = 512 * 1024;
+
+  private static @Nullable CoverageMaskRoundingFilter sInstance;
+
+  private final int mMaxSizeInBytes;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<MaskKey, CoverageMask> mMasks =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+
+  @GuardedBy("this")
+  private int mSizeInBytes;
+
+  /** Returns a shared instance with a cache of 512 KB. */
+  public static synchronized CoverageMaskRoundingFilter getInstance() {
+    if (sInstance == null) {
+      sInstance = new CoverageMaskRoundingFilter(DEFAULT_MAX_SIZE_IN_BYTES);
+    }
+    return sInstance;
+  }
+
+  /** @param maxSizeInBytes the maximum total size of the cached masks */
+  public CoverageMaskRoundingFilter(int maxSizeInBytes) {
+    mMaxSizeInBytes = maxSizeInBytes;
+  }
+
+  /**
+   * Rounds the bitmap to a circle with the diameter of its shorter side, centered in the bitmap.
+   * Pixels outside of the circle become transparent.
+   */
+  public void roundToCircle(Bitmap bitmap, boolean antiAliased) {
+    roundBitmapInPlace(bitmap, RADIUS_CIRCLE, antiAliased);
+  }
+
+  /**
+   * Rounds the corners of the bitmap. Pixels outside of the rounded corners become transparent.
+   *
+   * @param radius the radius of the corners in pixels, or {@link #RADIUS_CIRCLE}
+   */
+  public void roundBitmapInPlace(Bitmap bitmap, int radius, boolean antiAliased) {
+    Preconditions.checkNotNull(bitmap);
+    Preconditions.checkArgument(bitmap.isMutable());
+    final int w = bitmap.getWidth();
+    final int h = bitmap.getHeight();
+    Preconditions.checkArgument(w > 0 && w <= BitmapUtil.MAX_BITMAP_SIZE);
+    Preconditions.checkArgument(h > 0 && h <= BitmapUtil.MAX_BITMAP_SIZE);
+    Preconditions.checkArgument(radius == RADIUS_CIRCLE || radius >= 0);
+    final CoverageMask mask = getMask(w, h, radius, antiAliased);
+
+    final int[] pixels = new int[w];
+    for (int y = 0; y < mask.mQuadrantHeight; y++) {
+      final int uncovered = mask.mUncoveredCounts[y];
+      if (uncovered == 0) {
+        continue;
+      }
+      roundRow(bitmap, pixels, mask, y, y, uncovered);
+      if (h - 1 - y != y) {
+        roundRow(bitmap, pixels, mask, h - 1 - y, y, uncovered);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getCachedMaskCount() {
+    return mMasks.size();
+  }
+
+  @VisibleForTesting
+  CoverageMask getMask(int w, int h, int radius, boolean antiAliased) {
+    final MaskKey key = new MaskKey(w, h, radius, antiAliased);
+    synchronized (this) {
+      CoverageMask mask = mMasks.get(key);
+      if (mask != null) {
+        return mask;
+      }
+    }
+    // masks are immutable, so computing one twice at the same time is only wasted work
+    final CoverageMask mask = CoverageMask.create(w, h, radius, antiAliased);
+    if (mask.getSizeInBytes() > mMaxSizeInBytes) {
+      // it would evict all the other masks and then itself
+      return mask;
+    }
+    synchronized (this) {
+      if (mMasks.put(key, mask) == null) {
+        mSizeInBytes += mask.getSizeInBytes();
+      }
+      Iterator<Map.Entry<MaskKey, CoverageMask>> iterator = mMasks.entrySet().iterator();
+      while (mSizeInBytes > mMaxSizeInBytes && iterator.hasNext()) {
+        mSizeInBytes -= iterator.next().getValue().getSizeInBytes();
+        iterator.remove();
+      }
+    }
+    return mask;
+  }
+
+  /** Applies the mask row {@code maskRow} to the row {@code y} of the bitmap. */
+  private static void roundRow(
+      Bitmap bitmap, int[] pixels, CoverageMask mask, int y, int maskRow, int uncovered) {
+    final int w = bitmap.getWidth();
+    if (uncovered * 2 >= w) {
+      bitmap.getPixels(pixels, 0, w, 0, y, w, 1);
+      mask.apply(pixels, 0, w, maskRow, w);
+      bitmap.setPixels(pixels, 0, w, 0, y, w, 1);
+    } else {
+      bitmap.getPixels(pixels, 0, w, 0, y, uncovered, 1);
+      bitmap.getPixels(pixels, w - uncovered, w, w - uncovered, y, uncovered, 1);
+      mask.apply(pixels, 0, uncovered, maskRow, w);
+      mask.apply(pixels, w - uncovered, w, maskRow, w);
+      bitmap.setPixels(pixels, 0, w, 0, y, uncovered, 1);
+      bitmap.setPixels(pixels, w - uncovered, w, w - uncovered, y, uncovered, 1);
+    }
+  }
+
+  /** The coverage of the top left quadrant of a rounded shape, from 0 (outside) to 255. */
+  @VisibleForTesting
+  static final class CoverageMask {
+
+    final int mQuadrantWidth;
+    final int mQuadrantHeight;
+    final byte[] mCoverage;
+    // the number of pixels from the left edge of each row that are not fully covered
+    final int[] mUncoveredCounts;
+
+    private CoverageMask(int quadrantWidth, int quadrantHeight) {
+      mQuadrantWidth = quadrantWidth;
+      mQuadrantHeight = quadrantHeight;
+      mCoverage = new byte[quadrantWidth * quadrantHeight];
+      mUncoveredCounts = new int[quadrantHeight];
+    }
+
+    static CoverageMask create(int w, int h, int radius, boolean antiAliased) {
+      final CoverageMask mask = new CoverageMask((w + 1) / 2, (h + 1) / 2);
+      // half of the size of the rounded rectangle and the radius of its corners
+      final float halfWidth;
+      final float halfHeight;
+      final float cornerRadius;
+      if (radius == RADIUS_CIRCLE) {
+        halfWidth = Math.min(w, h) / 2f;
+        halfHeight = halfWidth;
+        cornerRadius = halfWidth;
+      } else {
+        halfWidth = w / 2f;
+        halfHeight = h / 2f;
+        cornerRadius = Math.min(radius, Math.min(halfWidth, halfHeight));
+      }
+      for (int y = 0; y < mask.mQuadrantHeight; y++) {
+        final float qy = h / 2f - (y + 0.5f) - (halfHeight - cornerRadius);
+        int uncovered = 0;
+        for (int x = 0; x < mask.mQuadrantWidth; x++) {
+          final float qx = w / 2f - (x + 0.5f) - (halfWidth - cornerRadius);
+          // signed distance of the pixel center to the outline, negative inside
+          final float distance =
+              (float) Math.hypot(Math.max(qx, 0), Math.max(qy, 0))
+                  + Math.min(Math.max(qx, qy), 0)
+                  - cornerRadius;
+          final int coverage;
+          if (antiAliased) {
+            coverage = Math.round(Math.max(0f, Math.min(1f, 0.5f - distance)) * 255);
+          } else {
+            coverage = distance <= 0 ? 255 : 0;
+          }
+          mask.mCoverage[y * mask.mQuadrantWidth + x] = (byte) coverage;
+          if (coverage != 255) {
+            uncovered = x + 1;
+          }
+        }
+        mask.mUncoveredCounts[y] = uncovered;
+      }
+      return mask;
+    }
+
+    int getCoverage(int x, int y) {
+      return mCoverage[y * mQuadrantWidth + x] & 0xFF;
+    }
+
+    int getSizeInBytes() {
+      return mCoverage.length + mUncoveredCounts.length * 4;
+    }
+
+    /**
+     * Scales the alpha of the non-premultiplied colors in [start, end) of a row of width {@code
+     * w}.
+     */
+    void apply(int[] pixels, int start, int end, int y, int w) {
+      final int rowOffset = y * mQuadrantWidth;
+      for (int x = start; x < end; x++) {
+        final int coverage = mCoverage[rowOffset + Math.min(x, w - 1 - x)] & 0xFF;
+        if (coverage == 0) {
+          pixels[x] = 0;
+        } else if (coverage != 255) {
+          final int pixel = pixels[x];
+          final int alpha = ((pixel >>> 24) * coverage + 127) / 255;
+          pixels[x] = (alpha << 24) | (pixel & 0xFFFFFF);
+        }
+      }
+    }
+  }
+
+  private static final class MaskKey {
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRadius;
+    private final boolean mAntiAliased;
+
+    private MaskKey(int width, int height, int radius, boolean antiAliased) {
+      mWidth = width;
+      mHeight = height;
+      mRadius = radius;
+      mAntiAliased = antiAliased;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (!(o instanceof MaskKey)) {
+        return false;
+      }
+      MaskKey other = (MaskKey) o;
+      return mWidth == other.mWidth
+          && mHeight == other.mHeight
+          && mRadius == other.mRadius
+          && mAntiAliased == other.mAntiAliased;
+    }
+
+    @Override
+    public int hashCode() {
+      return ((mWidth * 31 + mHeight) * 31 + mRadius) * 2 + (mAntiAliased ? 1 : 0);
+    }
+  }
+}
@@ -8,6 +8,7 @@
 package com.facebook.imagepipeline.filter;
 
 import android.graphics.Bitmap;
+import androidx.annotation.VisibleForTesting;
 import com.facebook.common.internal.Preconditions;
 import com.facebook.common.logging.FLog;
 import com.facebook.imageutils.BitmapUtil;
@@ -64,7 +65,14 @@ public abstract class IterativeBoxBlurFilter {
     final int h = bitmap.getHeight();
     final int[] pixels = new int[w * h];
     bitmap.getPixels(pixels, 0, w, 0, 0, w, h);
+    fastBoxBlur(pixels, w, h, iterations, radius);
+    bitmap.setPixels(pixels, 0, w, 0, 0, w, h);
+  }
 
+  /** Blurs the given ARGB pixels of a {@code w} x {@code h} image in place. */
+  @VisibleForTesting
+  static void fastBoxBlur(
+      final int[] pixels, final int w, final int h, final int iterations, final int radius) {
     // The information written to an output pixels `x` are from `[x-radius, x+radius]` (inclusive)
     final int diameter = radius + 1 + radius;
     // Pre-compute division table: speed-up by factor 5(!)
@@ -101,7 +109,6 @@ public abstract class IterativeBoxBlurFilter {
         }
       }
     }
-    bitmap.setPixels(pixels, 0, w, 0, 0, w, h);
   }
 
   /**
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.filter;
+
+import android.graphics.Bitmap;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.logging.FLog;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
+import com.facebook.common.memory.NoOpMemoryTrimmableRegistry;
+import com.facebook.imageutils.BitmapUtil;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Iterative box blur that splits every pass into stripes which are blurred on an executor at the
+ * same time. The result is identical to {@link IterativeBoxBlurFilter}.
+ *
+ * <p>Rows are blurred in horizontal stripes and columns in vertical stripes. Columns are walked row
+ * by row with a running sum per column, so that memory is read sequentially like in the horizontal
+ * pass. The inner loops divide by multiplying and shifting instead of looking up a table. Each
+ * call takes its pixel and working buffers from a small pool, so that concurrent calls do not wait
+ * for each other and blurring bitmaps of similar size does not allocate. The idle buffers are
+ * released when memory is trimmed.
+ *
+ * <p>Small bitmaps are blurred on the calling thread only. The calling thread always blurs one of
+ * the stripes itself and waits for the others, so the executor must not be one whose threads wait
+ * for this filter.
+ */
+@ThreadSafe
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class ParallelBoxBlurFilter implements MemoryTrimmable {
+  private static final String TAG = "ParallelBoxBlurFilter";
+
+  /** Bitmaps are not split into stripes of fewer pixels than this. */
+  static final int MIN_PIXELS_PER_STRIPE = 16 * 1024;
+
+  // x / d == (x * ceil(2^DIVISION_SHIFT / d)) >>> DIVISION_SHIFT for all the sums of a window
+  private static final int DIVISION_SHIFT = 23;
+
+  /** Buffers of the calls that are done are kept for the next calls, up to this many. */
+  static final int MAX_IDLE_BUFFERS = 2;
+
+  private final Executor mExecutor;
+  private final int mParallelism;
+
+  @GuardedBy("mIdleBuffers")
+  private final ArrayDeque<Buffers> mIdleBuffers = new ArrayDeque<>(MAX_IDLE_BUFFERS);
+
+  /**
+   * @param executor the executor to blur stripes on
+   * @param parallelism the maximum number of stripes blurred at the same time, including the one
+   *     blurred on the calling thread
+   */
+  public ParallelBoxBlurFilter(Executor executor, int parallelism) {
+    this(executor, parallelism, NoOpMemoryTrimmableRegistry.getInstance());
+  }
+
+  /**
+   * @param executor the executor to blur stripes on
+   * @param parallelism the maximum number of stripes blurred at the same time, including the one
+   *     blurred on the calling thread
+   * @param memoryTrimmableRegistry the registry to release the idle buffers with
+   */
+  public ParallelBoxBlurFilter(
+      Executor executor, int parallelism, MemoryTrimmableRegistry memoryTrimmableRegistry) {
+    Preconditions.checkArgument(parallelism > 0);
+    mExecutor = executor;
+    mParallelism = parallelism;
+    memoryTrimmableRegistry.registerMemoryTrimmable(this);
+  }
+
+  /**
+   * Blurs the bitmap in place, see {@link IterativeBoxBlurFilter#boxBlurBitmapInPlace}.
+   *
+   * @param bitmap The {@link Bitmap} containing the image. The bitmap dimension need to be smaller
+   *     than {@link BitmapUtil#MAX_BITMAP_SIZE}
+   * @param iterations The number of iterations of the blurring algorithm > 0.
+   * @param radius The radius of the blur with a supported range 0 < radius <= {@link
+   *     RenderScriptBlurFilter#BLUR_MAX_RADIUS}
+   */
+  public void boxBlurBitmapInPlace(
+      final Bitmap bitmap, final int iterations, final int radius) {
+    Preconditions.checkNotNull(bitmap);
+    Preconditions.checkArgument(bitmap.isMutable());
+    Preconditions.checkArgument(bitmap.getHeight() <= BitmapUtil.MAX_BITMAP_SIZE);
+    Preconditions.checkArgument(bitmap.getWidth() <= BitmapUtil.MAX_BITMAP_SIZE);
+    Preconditions.checkArgument(radius > 0 && radius <= RenderScriptBlurFilter.BLUR_MAX_RADIUS);
+    Preconditions.checkArgument(iterations > 0);
+    final int w = bitmap.getWidth();
+    final int h = bitmap.getHeight();
+    final Buffers buffers = acquireBuffers();
+    try {
+      if (buffers.mPixels.length < w * h) {
+        buffers.mPixels = new int[w * h];
+      }
+      bitmap.getPixels(buffers.mPixels, 0, w, 0, 0, w, h);
+      boxBlur(buffers.mPixels, w, h, iterations, radius, buffers.mStripes);
+      bitmap.setPixels(buffers.mPixels, 0, w, 0, 0, w, h);
+    } catch (OutOfMemoryError oom) {
+      FLog.e(
+          TAG,
+          String.format(
+              (Locale) null,
+              "OOM: %d iterations on %dx%d with %d radius",
+              iterations,
+              w,
+              h,
+              radius));
+      throw oom;
+    } finally {
+      releaseBuffers(buffers);
+    }
+  }
+
+  /**
+   * Blurs the first {@code w * h} ARGB pixels of the given array in place.
+   *
+   * @param iterations The number of iterations of the blurring algorithm > 0.
+   * @param radius The radius of the blur > 0
+   */
+  public void boxBlur(
+      final int[] pixels, final int w, final int h, final int iterations, final int radius) {
+    Preconditions.checkArgument(w > 0 && h > 0 && pixels.length >= w * h);
+    Preconditions.checkArgument(radius > 0 && radius <= RenderScriptBlurFilter.BLUR_MAX_RADIUS);
+    Preconditions.checkArgument(iterations > 0);
+    final Buffers buffers = acquireBuffers();
+    try {
+      boxBlur(pixels, w, h, iterations, radius, buffers.mStripes);
+    } finally {
+      releaseBuffers(buffers);
+    }
+  }
+
+  /** Releases the buffers of the calls that are done. */
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    synchronized (mIdleBuffers) {
+      mIdleBuffers.clear();
+    }
+  }
+
+  @VisibleForTesting
+  int getIdleBufferCount() {
+    synchronized (mIdleBuffers) {
+      return mIdleBuffers.size();
+    }
+  }
+
+  private Buffers acquireBuffers() {
+    synchronized (mIdleBuffers) {
+      @Nullable Buffers buffers = mIdleBuffers.pollLast();
+      if (buffers != null) {
+        return buffers;
+      }
+    }
+    return new Buffers(mParallelism);
+  }
+
+  private void releaseBuffers(Buffers buffers) {
+    synchronized (mIdleBuffers) {
+      if (mIdleBuffers.size() < MAX_IDLE_BUFFERS) {
+        mIdleBuffers.addLast(buffers);
+      }
+    }
+  }
+
+  private void boxBlur(
+      final int[] pixels,
+      final int w,
+      final int h,
+      final int iterations,
+      final int radius,
+      final Stripe[] stripes) {
+    final int stripeCount = getStripeCount(w, h);
+    final int rowStripeCount = Math.min(stripeCount, h);
+    final int columnStripeCount = Math.min(stripeCount, w);
+    for (int i = 0; i < Math.max(rowStripeCount, columnStripeCount); i++) {
+      stripes[i].prepare(w, Math.min(w, (w + columnStripeCount - 1) / columnStripeCount), radius);
+    }
+    final int multiplier = getDivisionMultiplier(radius + 1 + radius);
+    for (int i = 0; i < iterations; i++) {
+      runStripes(
+          stripes,
+          rowStripeCount,
+          new StripeBlur() {
+            @Override
+            public void blur(Stripe stripe, int index, int count) {
+              horizontalBlur(
+                  pixels,
+                  stripe.mRow,
+                  w,
+                  h * index / count,
+                  h * (index + 1) / count,
+                  radius,
+                  multiplier);
+            }
+          });
+      runStripes(
+          stripes,
+          columnStripeCount,
+          new StripeBlur() {
+            @Override
+            public void blur(Stripe stripe, int index, int count) {
+              verticalBlur(
+                  pixels,
+                  stripe.mColumnSums,
+                  stripe.mRing,
+                  w,
+                  h,
+                  w * index / count,
+                  w * (index + 1) / count,
+                  radius,
+                  multiplier);
+            }
+          });
+    }
+  }
+
+  private int getStripeCount(int w, int h) {
+    final long pixelCount = (long) w * h;
+    return (int) Math.max(1, Math.min(mParallelism, pixelCount / MIN_PIXELS_PER_STRIPE));
+  }
+
+  /** Blurs the stripes on the executor and the last one on the calling thread. */
+  private void runStripes(final Stripe[] stripes, final int count, final StripeBlur stripeBlur) {
+    if (count == 1) {
+      stripeBlur.blur(stripes[0], 0, 1);
+      return;
+    }
+    final CountDownLatch latch = new CountDownLatch(count - 1);
+    final Throwable[] failure = new Throwable[1];
+    for (int i = 0; i < count - 1; i++) {
+      final Stripe stripe = stripes[i];
+      final int index = i;
+      mExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                stripeBlur.blur(stripe, index, count);
+              } catch (Throwable t) {
+                synchronized (failure) {
+                  failure[0] = t;
+                }
+              } finally {
+                latch.countDown();
+              }
+            }
+          });
+    }
+    try {
+      stripeBlur.blur(stripes[count - 1], count - 1, count);
+    } finally {
+      // the other stripes still write to the pixels, so they are waited for in any case
+      awaitUninterruptibly(latch);
+    }
+    synchronized (failure) {
+      if (failure[0] instanceof Error) {
+        throw (Error) failure[0];
+      }
+      if (failure[0] != null) {
+        throw new RuntimeException(failure[0]);
+      }
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the multiplier that divides sums of {@code diameter} channel values by {@code
+   * diameter}, rounded like {@link IterativeBoxBlurFilter}: {@code (sum + radius) / diameter}.
+   */
+  private static int getDivisionMultiplier(int diameter) {
+    // exact as long as (sum + radius) < 2^DIVISION_SHIFT / diameter, and the product fits into
+    // an unsigned int since sum + radius < 256 * diameter
+    return ((1 << DIVISION_SHIFT) + diameter - 1) / diameter;
+  }
+
+  /** Blurs the rows in [firstRow, endRow), repeating the edge pixels. */
+  private static void horizontalBlur(
+      int[] pixels, int[] row, int w, int firstRow, int endRow, int radius, int multiplier) {
+    final int last = w - 1;
+    for (int y = firstRow; y < endRow; y++) {
+      final int offset = y * w;
+      System.arraycopy(pixels, offset, row, 0, w);
+
+      // the window of the first pixel repeats it radius times to the left
+      int pixel = row[0];
+      int a = (pixel >>> 24) * (radius + 1);
+      int r = ((pixel >> 16) & 0xFF) * (radius + 1);
+      int g = ((pixel >> 8) & 0xFF) * (radius + 1);
+      int b = (pixel & 0xFF) * (radius + 1);
+      for (int x = 1; x <= radius; x++) {
+        pixel = row[Math.min(x, last)];
+        a += pixel >>> 24;
+        r += (pixel >> 16) & 0xFF;
+        g += (pixel >> 8) & 0xFF;
+        b += pixel & 0xFF;
+      }
+
+      for (int x = 0; x < w; x++) {
+        pixels[offset + x] =
+            (((a + radius) * multiplier) >>> DIVISION_SHIFT) << 24
+                | (((r + radius) * multiplier) >>> DIVISION_SHIFT) << 16
+                | (((g + radius) * multiplier) >>> DIVISION_SHIFT) << 8
+                | (((b + radius) * multiplier) >>> DIVISION_SHIFT);
+
+        final int in = row[Math.min(x + radius + 1, last)];
+        final int out = row[Math.max(x - radius, 0)];
+        a += (in >>> 24) - (out >>> 24);
+        r += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+        g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+        b += (in & 0xFF) - (out & 0xFF);
+      }
+    }
+  }
+
+  /**
+   * Blurs the columns in [firstColumn, endColumn), repeating the edge pixels.
+   *
+   * <p>The rows are walked top to bottom, keeping a running sum per column and channel in {@code
+   * sums}. Rows are blurred in place, so their original pixels are kept in {@code ring} for as long
+   * as they are part of a window.
+   */
+  private static void verticalBlur(
+      int[] pixels,
+      int[] sums,
+      int[] ring,
+      int w,
+      int h,
+      int firstColumn,
+      int endColumn,
+      int radius,
+      int multiplier) {
+    final int columnCount = endColumn - firstColumn;
+    final int ringRows = radius + 1;
+    final int last = h - 1;
+
+    // the window of the first row repeats it radius times to the top
+    for (int x = 0; x < columnCount; x++) {
+      final int pixel = pixels[firstColumn + x];
+      final int s = x << 2;
+      sums[s] = (pixel >>> 24) * (radius + 1);
+      sums[s + 1] = ((pixel >> 16) & 0xFF) * (radius + 1);
+      sums[s + 2] = ((pixel >> 8) & 0xFF) * (radius + 1);
+      sums[s + 3] = (pixel & 0xFF) * (radius + 1);
+    }
+    for (int y = 1; y <= radius; y++) {
+      final int offset = Math.min(y, last) * w + firstColumn;
+      for (int x = 0; x < columnCount; x++) {
+        final int pixel = pixels[offset + x];
+        final int s = x << 2;
+        sums[s] += pixel >>> 24;
+        sums[s + 1] += (pixel >> 16) & 0xFF;
+        sums[s + 2] += (pixel >> 8) & 0xFF;
+        sums[s + 3] += pixel & 0xFF;
+      }
+    }
+
+    for (int y = 0; y < h; y++) {
+      final int offset = y * w + firstColumn;
+      System.arraycopy(pixels, offset, ring, (y % ringRows) * columnCount, columnCount);
+      for (int x = 0; x < columnCount; x++) {
+        final int s = x << 2;
+        pixels[offset + x] =
+            (((sums[s] + radius) * multiplier) >>> DIVISION_SHIFT) << 24
+                | (((sums[s + 1] + radius) * multiplier) >>> DIVISION_SHIFT) << 16
+                | (((sums[s + 2] + radius) * multiplier) >>> DIVISION_SHIFT) << 8
+                | (((sums[s + 3] + radius) * multiplier) >>> DIVISION_SHIFT);
+      }
+      if (y == last) {
+        break;
+      }
+
+      // rows below y are not blurred yet, rows up to y are read from the ring
+      final int inOffset = Math.min(y + radius + 1, last) * w + firstColumn;
+      final int outOffset = (Math.max(y - radius, 0) % ringRows) * columnCount;
+      for (int x = 0; x < columnCount; x++) {
+        final int in = pixels[inOffset + x];
+        final int out = ring[outOffset + x];
+        final int s = x << 2;
+        sums[s] += (in >>> 24) - (out >>> 24);
+        sums[s + 1] += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+        sums[s + 2] += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+        sums[s + 3] += (in & 0xFF) - (out & 0xFF);
+      }
+    }
+  }
+
+  private interface StripeBlur {
+    void blur(Stripe stripe, int index, int count);
+  }
+
+  /** Pixel buffer and stripes of a call, kept between calls. */
+  private static final class Buffers {
+    private int[] mPixels = new int[0];
+    private final Stripe[] mStripes;
+
+    Buffers(int parallelism) {
+      mStripes = new Stripe[parallelism];
+      for (int i = 0; i < parallelism; i++) {
+        mStripes[i] = new Stripe();
+      }
+    }
+  }
+
+  /** Working buffers of a stripe, kept between calls. */
+  private static final class Stripe {
+    private int[] mRow = new int[0];
+    private int[] mColumnSums = new int[0];
+    private int[] mRing = new int[0];
+
+    void prepare(int rowLength, int maxColumnCount, int radius) {
+      if (mRow.length < rowLength) {
+        mRow = new int[rowLength];
+      }
+      if (mColumnSums.length < 4 * maxColumnCount) {
+        mColumnSums = new int[4 * maxColumnCount];
+      }
+      if (mRing.length < (radius + 1) * maxColumnCount) {
+        mRing = new int[(radius + 1) * maxColumnCount];
+      }
+    }
+  }
+}
@@ -12,27 +12,58 @@ import com.facebook.common.internal.Preconditions;
 import com.facebook.common.references.ResourceReleaser;
 import com.facebook.imageutils.BitmapUtil;
 import com.facebook.infer.annotation.Nullsafe;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
-/** Counts bitmaps - keeps track of both, count and total size in bytes. */
+/**
+ * Counts bitmaps - keeps track of both, count and total size in bytes.
+ *
+ * <p>Hardware bitmaps, whose pixels are in graphics memory, are counted separately with their own
+ * limits.
+ */
 @Nullsafe(Nullsafe.Mode.STRICT)
 public class BitmapCounter {
 
+  /** Listener notified when a hardware bitmap is released, e.g. to track graphics memory. */
+  public interface HardwareBitmapReleaseListener {
+
+    /** Called when a hardware bitmap counted by a {@link BitmapCounter} has been released. */
+    void onHardwareBitmapReleased(int sizeInBytes);
+  }
+
   @GuardedBy("this")
   private int mCount;
 
   @GuardedBy("this")
   private long mSize;
 
+  @GuardedBy("this")
+  private int mHardwareCount;
+
+  @GuardedBy("this")
+  private long mHardwareSize;
+
   private final int mMaxCount;
   private final int mMaxSize;
+  private final int mMaxHardwareCount;
+  private final int mMaxHardwareSize;
   private final ResourceReleaser<Bitmap> mUnpooledBitmapsReleaser;
+  private final ResourceReleaser<Bitmap> mHardwareBitmapsReleaser;
+  private volatile @Nullable HardwareBitmapReleaseListener mHardwareBitmapReleaseListener;
 
   public BitmapCounter(int maxCount, int maxSize) {
+    this(maxCount, maxSize, maxCount, maxSize);
+  }
+
+  public BitmapCounter(int maxCount, int maxSize, int maxHardwareCount, int maxHardwareSize) {
     Preconditions.checkArgument(maxCount > 0);
     Preconditions.checkArgument(maxSize > 0);
+    Preconditions.checkArgument(maxHardwareCount > 0);
+    Preconditions.checkArgument(maxHardwareSize > 0);
     mMaxCount = maxCount;
     mMaxSize = maxSize;
+    mMaxHardwareCount = maxHardwareCount;
+    mMaxHardwareSize = maxHardwareSize;
     mUnpooledBitmapsReleaser =
         new ResourceReleaser<Bitmap>() {
           @Override
@@ -44,6 +75,22 @@ public class BitmapCounter {
             }
           }
         };
+    mHardwareBitmapsReleaser =
+        new ResourceReleaser<Bitmap>() {
+          @Override
+          public void release(Bitmap value) {
+            final int bitmapSize = BitmapUtil.getSizeInBytes(value);
+            try {
+              decreaseHardware(value);
+            } finally {
+              value.recycle();
+            }
+            HardwareBitmapReleaseListener listener = mHardwareBitmapReleaseListener;
+            if (listener != null) {
+              listener.onHardwareBitmapReleased(bitmapSize);
+            }
+          }
+        };
   }
 
   /**
@@ -80,6 +127,49 @@ public class BitmapCounter {
     mCount--;
   }
 
+  /**
+   * Returns whether a hardware bitmap of the given size can be included in the count without
+   * violating the configured limits. Used to decode into a software bitmap right away rather than
+   * to decode a hardware bitmap that {@link #increaseHardware} then rejects.
+   */
+  public synchronized boolean hasHardwareCapacity(int bitmapSize) {
+    return mHardwareCount < mMaxHardwareCount && mHardwareSize + bitmapSize <= mMaxHardwareSize;
+  }
+
+  /**
+   * Includes given hardware bitmap in the hardware bitmap count. The bitmap is included only if
+   * doing so does not violate configured limit
+   *
+   * @param bitmap to include in the count
+   * @return true if and only if bitmap is successfully included in the count
+   */
+  public synchronized boolean increaseHardware(Bitmap bitmap) {
+    final int bitmapSize = BitmapUtil.getSizeInBytes(bitmap);
+    if (!hasHardwareCapacity(bitmapSize)) {
+      return false;
+    }
+    mHardwareCount++;
+    mHardwareSize += bitmapSize;
+    return true;
+  }
+
+  /**
+   * Excludes given hardware bitmap from the count.
+   *
+   * @param bitmap to be excluded from the count
+   */
+  public synchronized void decreaseHardware(Bitmap bitmap) {
+    final int bitmapSize = BitmapUtil.getSizeInBytes(bitmap);
+    Preconditions.checkArgument(mHardwareCount > 0, "No hardware bitmaps registered.");
+    Preconditions.checkArgument(
+        bitmapSize <= mHardwareSize,
+        "Bitmap size bigger than the total registered hardware size: %d, %d",
+        bitmapSize,
+        mHardwareSize);
+    mHardwareSize -= bitmapSize;
+    mHardwareCount--;
+  }
+
   /** @return number of counted bitmaps */
   public synchronized int getCount() {
     return mCount;
@@ -98,7 +188,35 @@ public class BitmapCounter {
     return mMaxSize;
   }
 
+  /** @return number of counted hardware bitmaps */
+  public synchronized int getHardwareCount() {
+    return mHardwareCount;
+  }
+
+  /** @return total size in bytes of counted hardware bitmaps, held in graphics memory */
+  public synchronized long getHardwareSize() {
+    return mHardwareSize;
+  }
+
+  public synchronized int getMaxHardwareCount() {
+    return mMaxHardwareCount;
+  }
+
+  public synchronized int getMaxHardwareSize() {
+    return mMaxHardwareSize;
+  }
+
   public ResourceReleaser<Bitmap> getReleaser() {
     return mUnpooledBitmapsReleaser;
   }
+
+  /** Sets the listener notified by the releaser of the hardware bitmaps. */
+  public void setHardwareBitmapReleaseListener(@Nullable HardwareBitmapReleaseListener listener) {
+    mHardwareBitmapReleaseListener = listener;
+  }
+
+  /** Returns the releaser of the hardware bitmaps, excluding them from the count. */
+  public ResourceReleaser<Bitmap> getHardwareReleaser() {
+    return mHardwareBitmapsReleaser;
+  }
 }
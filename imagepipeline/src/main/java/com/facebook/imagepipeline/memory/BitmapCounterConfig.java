@@ -14,10 +14,18 @@ public class BitmapCounterConfig {
 
   public static final int DEFAULT_MAX_BITMAP_COUNT = 384;
 
+  /**
+   * Every hardware bitmap holds a file descriptor for its graphics buffer, their count is kept
+   * well below the file descriptor limit of the process.
+   */
+  public static final int DEFAULT_MAX_HARDWARE_BITMAP_COUNT = 256;
+
   private int mMaxBitmapCount = DEFAULT_MAX_BITMAP_COUNT;
+  private int mMaxHardwareBitmapCount = DEFAULT_MAX_HARDWARE_BITMAP_COUNT;
 
   public BitmapCounterConfig(Builder builder) {
     mMaxBitmapCount = builder.getMaxBitmapCount();
+    mMaxHardwareBitmapCount = builder.getMaxHardwareBitmapCount();
   }
 
   public int getMaxBitmapCount() {
@@ -28,6 +36,14 @@ public class BitmapCounterConfig {
     mMaxBitmapCount = maxBitmapCount;
   }
 
+  public int getMaxHardwareBitmapCount() {
+    return mMaxHardwareBitmapCount;
+  }
+
+  public void setMaxHardwareBitmapCount(int maxHardwareBitmapCount) {
+    mMaxHardwareBitmapCount = maxHardwareBitmapCount;
+  }
+
   public static Builder newBuilder() {
     return new Builder();
   }
@@ -37,6 +53,7 @@ public class BitmapCounterConfig {
     private Builder() {}
 
     private int mMaxBitmapCount = DEFAULT_MAX_BITMAP_COUNT;
+    private int mMaxHardwareBitmapCount = DEFAULT_MAX_HARDWARE_BITMAP_COUNT;
 
     public Builder setMaxBitmapCount(int maxBitmapCount) {
       mMaxBitmapCount = maxBitmapCount;
@@ -47,6 +64,15 @@ public class BitmapCounterConfig {
       return mMaxBitmapCount;
     }
 
+    public Builder setMaxHardwareBitmapCount(int maxHardwareBitmapCount) {
+      mMaxHardwareBitmapCount = maxHardwareBitmapCount;
+      return this;
+    }
+
+    public int getMaxHardwareBitmapCount() {
+      return mMaxHardwareBitmapCount;
+    }
+
     public BitmapCounterConfig build() {
       return new BitmapCounterConfig(this);
     }
@@ -26,6 +26,8 @@ public class BitmapCounterProvider {
   public static final int MAX_BITMAP_TOTAL_SIZE = getMaxSizeHardCap();
 
   private static int sMaxBitmapCount = BitmapCounterConfig.DEFAULT_MAX_BITMAP_COUNT;
+  private static int sMaxHardwareBitmapCount =
+      BitmapCounterConfig.DEFAULT_MAX_HARDWARE_BITMAP_COUNT;
 
   private static volatile BitmapCounter sBitmapCounter;
 
@@ -44,6 +46,7 @@ public class BitmapCounterProvider {
           "BitmapCounter has already been created! `BitmapCounterProvider.initialize(...)` should only be called before `BitmapCounterProvider.get()` or not at all!");
     } else {
       sMaxBitmapCount = bitmapCounterConfig.getMaxBitmapCount();
+      sMaxHardwareBitmapCount = bitmapCounterConfig.getMaxHardwareBitmapCount();
     }
   }
 
@@ -52,7 +55,13 @@ public class BitmapCounterProvider {
     if (sBitmapCounter == null) {
       synchronized (BitmapCounterProvider.class) {
         if (sBitmapCounter == null) {
-          sBitmapCounter = new BitmapCounter(sMaxBitmapCount, MAX_BITMAP_TOTAL_SIZE);
+          // hardware bitmaps are in graphics memory, which shares the RAM of the device
+          sBitmapCounter =
+              new BitmapCounter(
+                  sMaxBitmapCount,
+                  MAX_BITMAP_TOTAL_SIZE,
+                  sMaxHardwareBitmapCount,
+                  MAX_BITMAP_TOTAL_SIZE);
         }
       }
     }
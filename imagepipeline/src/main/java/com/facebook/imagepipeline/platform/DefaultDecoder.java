@@ -22,8 +22,12 @@ import com.facebook.common.references.CloseableReference;
 import com.facebook.common.streams.LimitedInputStream;
 import com.facebook.common.streams.TailAppendingInputStream;
 import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import com.facebook.imagepipeline.common.TooManyBitmapsException;
 import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.memory.BitmapCounter;
+import com.facebook.imagepipeline.memory.BitmapCounterProvider;
 import com.facebook.imagepipeline.memory.BitmapPool;
+import com.facebook.imageutils.BitmapUtil;
 import com.facebook.imageutils.JfifUtil;
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,6 +47,9 @@ public abstract class DefaultDecoder implements PlatformDecoder {
 
   private final BitmapPool mBitmapPool;
 
+  /** Counts the hardware bitmaps, which are not pooled. */
+  private final BitmapCounter mHardwareBitmapCounter;
+
   private final @Nullable PreverificationHelper mPreverificationHelper;
 
   {
@@ -61,7 +68,16 @@ public abstract class DefaultDecoder implements PlatformDecoder {
       new byte[] {(byte) JfifUtil.MARKER_FIRST_BYTE, (byte) JfifUtil.MARKER_EOI};
 
   public DefaultDecoder(BitmapPool bitmapPool, int maxNumThreads, SynchronizedPool decodeBuffers) {
+    this(bitmapPool, maxNumThreads, decodeBuffers, BitmapCounterProvider.get());
+  }
+
+  public DefaultDecoder(
+      BitmapPool bitmapPool,
+      int maxNumThreads,
+      SynchronizedPool decodeBuffers,
+      BitmapCounter hardwareBitmapCounter) {
     mBitmapPool = bitmapPool;
+    mHardwareBitmapCounter = hardwareBitmapCounter;
     mDecodeBuffers = decodeBuffers;
     for (int i = 0; i < maxNumThreads; i++) {
       mDecodeBuffers.release(ByteBuffer.allocate(DECODE_BUFFER_SIZE));
@@ -211,14 +227,23 @@ public abstract class DefaultDecoder implements PlatformDecoder {
           mPreverificationHelper != null
               && mPreverificationHelper.shouldUseHardwareBitmapConfig(options.inPreferredConfig);
     }
-    if (regionToDecode == null && shouldUseHardwareBitmapConfig) {
+    if (shouldUseHardwareBitmapConfig
+        && (regionToDecode != null
+            || !mHardwareBitmapCounter.hasHardwareCapacity(
+                getBitmapSize(targetWidth, targetHeight, options)))) {
+      // If region decoding was requested or there are too many hardware bitmaps we need to
+      // fallback to default config
+      options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+      shouldUseHardwareBitmapConfig = false;
+    }
+    if (shouldUseHardwareBitmapConfig) {
       // Cannot reuse bitmaps with Bitmap.Config.HARDWARE
       options.inMutable = false;
-    } else {
-      if (regionToDecode != null && shouldUseHardwareBitmapConfig) {
-        // If region decoding was requested we need to fallback to default config
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+      // Marks the start of the stream to decode it again if the hardware capacity runs out
+      if (inputStream.markSupported()) {
+        inputStream.mark(Integer.MAX_VALUE);
       }
+    } else {
       final int sizeInBytes = getBitmapSize(targetWidth, targetHeight, options);
       bitmapToReuse = mBitmapPool.get(sizeInBytes);
       if (bitmapToReuse == null) {
@@ -298,6 +323,22 @@ public abstract class DefaultDecoder implements PlatformDecoder {
       throw new IllegalStateException();
     }
 
+    if (bitmapToReuse == null && BitmapUtil.isHardwareBitmap(decodedBitmap)) {
+      if (!mHardwareBitmapCounter.increaseHardware(decodedBitmap)) {
+        // Another decode took the remaining capacity, decode into a pooled bitmap instead
+        decodedBitmap.recycle();
+        try {
+          inputStream.reset();
+        } catch (IOException e) {
+          throw new TooManyBitmapsException();
+        }
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        return decodeFromStream(inputStream, options, regionToDecode, colorSpace);
+      }
+      return CloseableReference.of(decodedBitmap, mHardwareBitmapCounter.getHardwareReleaser());
+    }
+
     return CloseableReference.of(decodedBitmap, mBitmapPool);
   }
 
@@ -12,6 +12,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build;
 import androidx.core.util.Pools.SynchronizedPool;
+import com.facebook.imagepipeline.memory.BitmapCounter;
 import com.facebook.imagepipeline.memory.BitmapPool;
 import com.facebook.imageutils.BitmapUtil;
 import javax.annotation.concurrent.ThreadSafe;
@@ -25,6 +26,18 @@ public class OreoDecoder extends DefaultDecoder {
     super(bitmapPool, maxNumThreads, decodeBuffers);
   }
 
+  /**
+   * @param hardwareBitmapCounter counts the bitmaps decoded with {@link Bitmap.Config#HARDWARE};
+   *     once its limits are reached, images are decoded into software bitmaps instead
+   */
+  public OreoDecoder(
+      BitmapPool bitmapPool,
+      int maxNumThreads,
+      SynchronizedPool decodeBuffers,
+      BitmapCounter hardwareBitmapCounter) {
+    super(bitmapPool, maxNumThreads, decodeBuffers, hardwareBitmapCounter);
+  }
+
   @Override
   public int getBitmapSize(final int width, final int height, final BitmapFactory.Options options) {
     // If the color is wide gamut but the Bitmap Config doesn't use 8 bytes per pixel, the size of
@@ -14,6 +14,7 @@ import com.facebook.cache.common.CacheKey;
 import com.facebook.cache.common.SimpleCacheKey;
 import com.facebook.common.internal.Preconditions;
 import com.facebook.imagepipeline.filter.IterativeBoxBlurFilter;
+import com.facebook.imagepipeline.filter.ParallelBoxBlurFilter;
 import com.facebook.imagepipeline.filter.RenderScriptBlurFilter;
 import com.facebook.imagepipeline.request.BasePostprocessor;
 import java.util.Locale;
@@ -23,6 +24,9 @@ import javax.annotation.Nullable;
  * A java implementation of a blur post processor. This provide two different blurring algorithm,
  * one Gaussian blur using {@link ScriptIntrinsicBlur} for Android version >= 4.2 and the other one
  * is an in-place iterative box blur algorithm that runs faster than a traditional box blur.
+ *
+ * <p>If a {@link ParallelBoxBlurFilter} is given, the iterative box blur is always used and runs
+ * on several threads, which pays off for large bitmaps.
  */
 public class BlurPostProcessor extends BasePostprocessor {
 
@@ -31,6 +35,7 @@ public class BlurPostProcessor extends BasePostprocessor {
   private final int mIterations;
   private final Context mContext;
   private final int mBlurRadius;
+  private final @Nullable ParallelBoxBlurFilter mParallelBoxBlurFilter;
   private CacheKey mCacheKey;
 
   /**
@@ -42,6 +47,24 @@ public class BlurPostProcessor extends BasePostprocessor {
    * @param iterations The number of iterations of the blurring algorithm > 0.
    */
   public BlurPostProcessor(final int blurRadius, final Context context, final int iterations) {
+    this(blurRadius, context, iterations, null);
+  }
+
+  /**
+   * Creates an instance of {@link BlurPostProcessor}.
+   *
+   * @param blurRadius The radius of the blur in range 0 < radius <= {@link
+   *     RenderScriptBlurFilter#BLUR_MAX_RADIUS}.
+   * @param context A valid {@link Context}.
+   * @param iterations The number of iterations of the blurring algorithm > 0.
+   * @param parallelBoxBlurFilter The filter to blur with instead of RenderScript or the
+   *     single-threaded iterative box blur, can be shared between post processors.
+   */
+  public BlurPostProcessor(
+      final int blurRadius,
+      final Context context,
+      final int iterations,
+      final @Nullable ParallelBoxBlurFilter parallelBoxBlurFilter) {
     Preconditions.checkArgument(
         blurRadius > 0 && blurRadius <= RenderScriptBlurFilter.BLUR_MAX_RADIUS);
     Preconditions.checkArgument(iterations > 0);
@@ -49,6 +72,7 @@ public class BlurPostProcessor extends BasePostprocessor {
     mIterations = iterations;
     mBlurRadius = blurRadius;
     mContext = context;
+    mParallelBoxBlurFilter = parallelBoxBlurFilter;
   }
 
   /**
@@ -64,7 +88,7 @@ public class BlurPostProcessor extends BasePostprocessor {
 
   @Override
   public void process(final Bitmap destBitmap, final Bitmap sourceBitmap) {
-    if (canUseRenderScript) {
+    if (canUseRenderScript && mParallelBoxBlurFilter == null) {
       RenderScriptBlurFilter.blurBitmap(destBitmap, sourceBitmap, mContext, mBlurRadius);
     } else {
       super.process(destBitmap, sourceBitmap);
@@ -73,7 +97,11 @@ public class BlurPostProcessor extends BasePostprocessor {
 
   @Override
   public void process(final Bitmap bitmap) {
-    IterativeBoxBlurFilter.boxBlurBitmapInPlace(bitmap, mIterations, mBlurRadius);
+    if (mParallelBoxBlurFilter != null) {
+      mParallelBoxBlurFilter.boxBlurBitmapInPlace(bitmap, mIterations, mBlurRadius);
+    } else {
+      IterativeBoxBlurFilter.boxBlurBitmapInPlace(bitmap, mIterations, mBlurRadius);
+    }
   }
 
   @Nullable
@@ -81,9 +109,10 @@ public class BlurPostProcessor extends BasePostprocessor {
   public CacheKey getPostprocessorCacheKey() {
     if (mCacheKey == null) {
       final String key;
-      if (canUseRenderScript) {
+      if (canUseRenderScript && mParallelBoxBlurFilter == null) {
         key = String.format((Locale) null, "IntrinsicBlur;%d", mBlurRadius);
       } else {
+        // both box blurs give the same result
         key = String.format((Locale) null, "IterativeBoxBlur;%d;%d", mIterations, mBlurRadius);
       }
       mCacheKey = new SimpleCacheKey(key);
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import android.graphics.Bitmap;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.MultiCacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.request.BasePostprocessor;
+import com.facebook.imagepipeline.request.Postprocessor;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Postprocessor that runs a chain of postprocessors, one after the other, as a single
+ * postprocessor.
+ *
+ * <p>Stacking postprocessors, e.g. blur, round and tint, with a bitmap copy each is avoided:
+ *
+ * <ul>
+ *   <li>Postprocessors that only override {@link BasePostprocessor#process(Bitmap)} run in place
+ *       on the bitmap of the previous step.
+ *   <li>Postprocessors that override {@link BasePostprocessor#process(Bitmap, Bitmap)} write to a
+ *       second bitmap, and the two bitmaps are swapped between such steps.
+ *   <li>Consecutive {@link PerPixelPostprocessor}s are applied in a single pass.
+ *   <li>Other postprocessors, e.g. ones that change the size, run as they would on their own.
+ * </ul>
+ *
+ * <p>The cache key is derived from the keys of the chain, so identical chains share the
+ * postprocessed bitmap cache entry. If any postprocessor of the chain has no cache key, neither has
+ * the composite.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class CompositePostprocessor extends BasePostprocessor {
+
+  private static final int STEP_PER_PIXEL = 0;
+  private static final int STEP_IN_PLACE = 1;
+  private static final int STEP_TO_DESTINATION = 2;
+  private static final int STEP_OTHER = 3;
+
+  private final List<Postprocessor> mPostprocessors;
+  private final int[] mStepTypes;
+
+  private @Nullable CacheKey mCacheKey;
+  private boolean mCacheKeyComputed;
+
+  public CompositePostprocessor(List<Postprocessor> postprocessors) {
+    Preconditions.checkArgument(!postprocessors.isEmpty());
+    mPostprocessors = Collections.unmodifiableList(new ArrayList<>(postprocessors));
+    mStepTypes = new int[mPostprocessors.size()];
+    for (int i = 0; i < mStepTypes.length; i++) {
+      mStepTypes[i] = getStepType(mPostprocessors.get(i));
+    }
+  }
+
+  public static CompositePostprocessor of(Postprocessor... postprocessors) {
+    return new CompositePostprocessor(Arrays.asList(postprocessors));
+  }
+
+  public List<Postprocessor> getPostprocessors() {
+    return mPostprocessors;
+  }
+
+  @Override
+  public String getName() {
+    StringBuilder name = new StringBuilder("CompositePostprocessor[");
+    for (int i = 0; i < mPostprocessors.size(); i++) {
+      if (i > 0) {
+        name.append(',');
+      }
+      name.append(mPostprocessors.get(i).getName());
+    }
+    return name.append(']').toString();
+  }
+
+  @Override
+  public CloseableReference<Bitmap> process(
+      Bitmap sourceBitmap, PlatformBitmapFactory bitmapFactory) {
+    // the bitmap of the last step, null while it is still the shared source bitmap
+    CloseableReference<Bitmap> currentRef = null;
+    // a bitmap of the same size as currentRef that can be overwritten
+    CloseableReference<Bitmap> spareRef = null;
+    try {
+      int i = 0;
+      while (i < mPostprocessors.size()) {
+        final Bitmap current = currentRef != null ? currentRef.get() : sourceBitmap;
+        final Postprocessor postprocessor = mPostprocessors.get(i);
+        switch (mStepTypes[i]) {
+          case STEP_PER_PIXEL:
+            List<PerPixelPostprocessor> run = new ArrayList<>();
+            while (i < mPostprocessors.size() && mStepTypes[i] == STEP_PER_PIXEL) {
+              run.add((PerPixelPostprocessor) mPostprocessors.get(i));
+              i++;
+            }
+            if (currentRef == null) {
+              currentRef = createBitmap(current, bitmapFactory);
+            }
+            PerPixelPostprocessor.transformPixels(currentRef.get(), current, run);
+            continue;
+          case STEP_IN_PLACE:
+            if (currentRef != null) {
+              ((BasePostprocessor) postprocessor).process(currentRef.get());
+            } else {
+              currentRef = createBitmap(current, bitmapFactory);
+              ((BasePostprocessor) postprocessor).process(currentRef.get(), current);
+            }
+            break;
+          case STEP_TO_DESTINATION:
+            if (spareRef == null) {
+              spareRef = createBitmap(current, bitmapFactory);
+            }
+            ((BasePostprocessor) postprocessor).process(spareRef.get(), current);
+            CloseableReference<Bitmap> previousRef = currentRef;
+            currentRef = spareRef;
+            spareRef = previousRef;
+            break;
+          default:
+            CloseableReference<Bitmap> resultRef = postprocessor.process(current, bitmapFactory);
+            CloseableReference.closeSafely(currentRef);
+            CloseableReference.closeSafely(spareRef);
+            spareRef = null;
+            currentRef = resultRef;
+            break;
+        }
+        i++;
+      }
+      return Preconditions.checkNotNull(CloseableReference.cloneOrNull(currentRef));
+    } finally {
+      CloseableReference.closeSafely(currentRef);
+      CloseableReference.closeSafely(spareRef);
+    }
+  }
+
+  @Nullable
+  @Override
+  public synchronized CacheKey getPostprocessorCacheKey() {
+    if (!mCacheKeyComputed) {
+      List<CacheKey> cacheKeys = new ArrayList<>(mPostprocessors.size());
+      for (Postprocessor postprocessor : mPostprocessors) {
+        CacheKey cacheKey = postprocessor.getPostprocessorCacheKey();
+        if (cacheKey == null) {
+          cacheKeys = null;
+          break;
+        }
+        cacheKeys.add(cacheKey);
+      }
+      mCacheKey = cacheKeys != null ? new MultiCacheKey(cacheKeys) : null;
+      mCacheKeyComputed = true;
+    }
+    return mCacheKey;
+  }
+
+  private static CloseableReference<Bitmap> createBitmap(
+      Bitmap sourceBitmap, PlatformBitmapFactory bitmapFactory) {
+    final Bitmap.Config sourceBitmapConfig = sourceBitmap.getConfig();
+    return bitmapFactory.createBitmapInternal(
+        sourceBitmap.getWidth(),
+        sourceBitmap.getHeight(),
+        sourceBitmapConfig != null ? sourceBitmapConfig : FALLBACK_BITMAP_CONFIGURATION);
+  }
+
+  /**
+   * Finds out which of the process methods of {@link BasePostprocessor} the postprocessor
+   * overrides. The default implementation of {@link BasePostprocessor#process(Bitmap, Bitmap)}
+   * copies the bitmap and calls {@link BasePostprocessor#process(Bitmap)}, so the copy can be
+   * skipped if only the latter is overridden.
+   */
+  private static int getStepType(Postprocessor postprocessor) {
+    if (postprocessor instanceof PerPixelPostprocessor) {
+      return STEP_PER_PIXEL;
+    }
+    if (!(postprocessor instanceof BasePostprocessor)) {
+      return STEP_OTHER;
+    }
+    try {
+      final Class<?> clazz = postprocessor.getClass();
+      if (clazz.getMethod("process", Bitmap.class, PlatformBitmapFactory.class).getDeclaringClass()
+          != BasePostprocessor.class) {
+        return STEP_OTHER;
+      }
+      if (clazz.getMethod("process", Bitmap.class, Bitmap.class).getDeclaringClass()
+          != BasePostprocessor.class) {
+        return STEP_TO_DESTINATION;
+      }
+      return STEP_IN_PLACE;
+    } catch (NoSuchMethodException e) {
+      return STEP_OTHER;
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import android.graphics.Bitmap;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.imagepipeline.filter.CoverageMaskRoundingFilter;
+import com.facebook.imagepipeline.request.BasePostprocessor;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Postprocessor that rounds an image to a circle or to rounded corners with the cached coverage
+ * masks of a {@link CoverageMaskRoundingFilter}.
+ *
+ * <p>The rounding is done in place, so it adds no bitmap copy when it follows other in-place
+ * postprocessors in a {@link CompositePostprocessor}.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class CoverageMaskRoundPostprocessor extends BasePostprocessor {
+  private static final boolean ENABLE_ANTI_ALIASING = true;
+
+  private final CoverageMaskRoundingFilter mRoundingFilter;
+  private final int mRadius;
+  private final boolean mEnableAntiAliasing;
+
+  private @Nullable CacheKey mCacheKey;
+
+  /** Creates a postprocessor that rounds images to an anti-aliased circle. */
+  public CoverageMaskRoundPostprocessor() {
+    this(
+        CoverageMaskRoundingFilter.getInstance(),
+        CoverageMaskRoundingFilter.RADIUS_CIRCLE,
+        ENABLE_ANTI_ALIASING);
+  }
+
+  /**
+   * @param roundingFilter the filter whose masks are used
+   * @param radius the radius of the corners in pixels, or {@link
+   *     CoverageMaskRoundingFilter#RADIUS_CIRCLE} to round to a circle
+   * @param enableAntiAliasing whether the outline is anti-aliased
+   */
+  public CoverageMaskRoundPostprocessor(
+      CoverageMaskRoundingFilter roundingFilter, int radius, boolean enableAntiAliasing) {
+    Preconditions.checkArgument(radius == CoverageMaskRoundingFilter.RADIUS_CIRCLE || radius >= 0);
+    mRoundingFilter = roundingFilter;
+    mRadius = radius;
+    mEnableAntiAliasing = enableAntiAliasing;
+  }
+
+  @Override
+  public void process(Bitmap bitmap) {
+    mRoundingFilter.roundBitmapInPlace(bitmap, mRadius, mEnableAntiAliasing);
+  }
+
+  @Override
+  public String getName() {
+    return "CoverageMaskRoundPostprocessor";
+  }
+
+  @Nullable
+  @Override
+  public CacheKey getPostprocessorCacheKey() {
+    if (mCacheKey == null) {
+      final String shape =
+          mRadius == CoverageMaskRoundingFilter.RADIUS_CIRCLE
+              ? "Circle"
+              : String.format((Locale) null, "Corners;%d", mRadius);
+      mCacheKey =
+          new SimpleCacheKey(
+              "CoverageMaskRound;" + shape + (mEnableAntiAliasing ? "#AntiAliased" : ""));
+    }
+    return mCacheKey;
+  }
+}
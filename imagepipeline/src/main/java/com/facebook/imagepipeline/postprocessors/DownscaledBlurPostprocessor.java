@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import androidx.annotation.VisibleForTesting;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.internal.Preconditions;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import com.facebook.imagepipeline.filter.IterativeBoxBlurFilter;
+import com.facebook.imagepipeline.filter.RenderScriptBlurFilter;
+import com.facebook.imagepipeline.request.BasePostprocessor;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Blur post processor for heavily blurred images, e.g. blurred backgrounds, that blurs at a reduced
+ * resolution and scales the result up to the target size.
+ *
+ * <p>A strong blur removes the details that a high resolution would show, so the image is scaled
+ * down by a factor derived from the blur radius, blurred with a proportionally smaller radius and
+ * scaled up with bitmap filtering. To decode at the reduced resolution too, set the {@link
+ * #getResizeOptions() resize options} of this post processor on the image request:
+ *
+ * <pre>{@code
+ * DownscaledBlurPostprocessor blur = new DownscaledBlurPostprocessor(width, height, 25);
+ * ImageRequestBuilder.newBuilderWithSource(uri)
+ *     .setResizeOptions(blur.getResizeOptions())
+ *     .setPostprocessor(blur)
+ *     .build();
+ * }</pre>
+ *
+ * <p>The result covers the target size and keeps the aspect ratio of the image.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class DownscaledBlurPostprocessor extends BasePostprocessor {
+
+  private static final int DEFAULT_ITERATIONS = 3;
+  // the blur radius at the reduced resolution is not made smaller than this
+  private static final int MIN_DOWNSCALED_RADIUS = 3;
+  @VisibleForTesting static final int MAX_DOWNSCALE_FACTOR = 8;
+
+  private final int mTargetWidth;
+  private final int mTargetHeight;
+  private final int mBlurRadius;
+  private final int mIterations;
+  private final int mDownscaleFactor;
+  private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  private @Nullable CacheKey mCacheKey;
+
+  /**
+   * @param targetWidth the width of the view showing the image
+   * @param targetHeight the height of the view showing the image
+   * @param blurRadius the radius of the blur at the target size, in range 0 < radius <= {@link
+   *     RenderScriptBlurFilter#BLUR_MAX_RADIUS}
+   */
+  public DownscaledBlurPostprocessor(int targetWidth, int targetHeight, int blurRadius) {
+    this(targetWidth, targetHeight, blurRadius, DEFAULT_ITERATIONS);
+  }
+
+  /**
+   * @param targetWidth the width of the view showing the image
+   * @param targetHeight the height of the view showing the image
+   * @param blurRadius the radius of the blur at the target size, in range 0 < radius <= {@link
+   *     RenderScriptBlurFilter#BLUR_MAX_RADIUS}
+   * @param iterations the number of iterations of the box blur > 0
+   */
+  public DownscaledBlurPostprocessor(
+      int targetWidth, int targetHeight, int blurRadius, int iterations) {
+    Preconditions.checkArgument(targetWidth > 0 && targetHeight > 0);
+    Preconditions.checkArgument(
+        blurRadius > 0 && blurRadius <= RenderScriptBlurFilter.BLUR_MAX_RADIUS);
+    Preconditions.checkArgument(iterations > 0);
+    mTargetWidth = targetWidth;
+    mTargetHeight = targetHeight;
+    mBlurRadius = blurRadius;
+    mIterations = iterations;
+    mDownscaleFactor = getDownscaleFactor(blurRadius);
+  }
+
+  /** Returns the resize options to decode the image at the resolution it is blurred at. */
+  public ResizeOptions getResizeOptions() {
+    return new ResizeOptions(
+        divideRoundingUp(mTargetWidth, mDownscaleFactor),
+        divideRoundingUp(mTargetHeight, mDownscaleFactor));
+  }
+
+  public int getDownscaleFactor() {
+    return mDownscaleFactor;
+  }
+
+  @Override
+  public String getName() {
+    return "DownscaledBlurPostprocessor";
+  }
+
+  @Override
+  public CloseableReference<Bitmap> process(
+      Bitmap sourceBitmap, PlatformBitmapFactory bitmapFactory) {
+    // the size that covers the target size with the aspect ratio of the image
+    final float scale =
+        Math.max(
+            (float) mTargetWidth / sourceBitmap.getWidth(),
+            (float) mTargetHeight / sourceBitmap.getHeight());
+    final int width = Math.max(1, Math.round(sourceBitmap.getWidth() * scale));
+    final int height = Math.max(1, Math.round(sourceBitmap.getHeight() * scale));
+    final int downscaledWidth = divideRoundingUp(width, mDownscaleFactor);
+    final int downscaledHeight = divideRoundingUp(height, mDownscaleFactor);
+
+    CloseableReference<Bitmap> downscaledRef =
+        scale(sourceBitmap, downscaledWidth, downscaledHeight, bitmapFactory);
+    try {
+      IterativeBoxBlurFilter.boxBlurBitmapInPlace(
+          downscaledRef.get(), mIterations, getDownscaledBlurRadius(mBlurRadius, mDownscaleFactor));
+      if (downscaledWidth == width && downscaledHeight == height) {
+        return downscaledRef.clone();
+      }
+      return scale(downscaledRef.get(), width, height, bitmapFactory);
+    } finally {
+      CloseableReference.closeSafely(downscaledRef);
+    }
+  }
+
+  @Nullable
+  @Override
+  public CacheKey getPostprocessorCacheKey() {
+    if (mCacheKey == null) {
+      mCacheKey =
+          new SimpleCacheKey(
+              String.format(
+                  (Locale) null,
+                  "DownscaledBlur;%d;%d;%dx%d",
+                  mIterations,
+                  mBlurRadius,
+                  mTargetWidth,
+                  mTargetHeight));
+    }
+    return mCacheKey;
+  }
+
+  private CloseableReference<Bitmap> scale(
+      Bitmap bitmap, int width, int height, PlatformBitmapFactory bitmapFactory) {
+    CloseableReference<Bitmap> scaledRef =
+        bitmapFactory.createBitmapInternal(width, height, FALLBACK_BITMAP_CONFIGURATION);
+    Canvas canvas = new Canvas(scaledRef.get());
+    canvas.drawBitmap(bitmap, null, new Rect(0, 0, width, height), mPaint);
+    return scaledRef;
+  }
+
+  /**
+   * Returns the largest power of two up to {@link #MAX_DOWNSCALE_FACTOR} that keeps the blur
+   * radius at the reduced resolution at least {@link #MIN_DOWNSCALED_RADIUS}.
+   */
+  @VisibleForTesting
+  static int getDownscaleFactor(int blurRadius) {
+    int downscaleFactor = 1;
+    while (downscaleFactor < MAX_DOWNSCALE_FACTOR
+        && blurRadius / (downscaleFactor * 2) >= MIN_DOWNSCALED_RADIUS) {
+      downscaleFactor *= 2;
+    }
+    return downscaleFactor;
+  }
+
+  @VisibleForTesting
+  static int getDownscaledBlurRadius(int blurRadius, int downscaleFactor) {
+    return Math.max(1, Math.round((float) blurRadius / downscaleFactor));
+  }
+
+  private static int divideRoundingUp(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import android.graphics.Bitmap;
+import com.facebook.imagepipeline.request.BasePostprocessor;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Postprocessor that maps every pixel to a new color independently of the other pixels, like a
+ * tint or a color matrix.
+ *
+ * <p>Consecutive per-pixel postprocessors of a {@link CompositePostprocessor} are applied in a
+ * single pass over the bitmap.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public abstract class PerPixelPostprocessor extends BasePostprocessor {
+
+  /**
+   * Maps a pixel to its new color.
+   *
+   * @param color the non-premultiplied ARGB color of the pixel
+   * @return the new non-premultiplied ARGB color of the pixel
+   */
+  public abstract int transformPixel(int color);
+
+  @Override
+  public final void process(Bitmap destBitmap, Bitmap sourceBitmap) {
+    transformPixels(destBitmap, sourceBitmap, Collections.singletonList(this));
+  }
+
+  @Override
+  public final void process(Bitmap bitmap) {
+    transformPixels(bitmap, bitmap, Collections.singletonList(this));
+  }
+
+  /**
+   * Applies the given postprocessors to the pixels of {@code sourceBitmap} and writes the result to
+   * {@code destBitmap}, row by row. Both bitmaps must have the same size and may be the same.
+   */
+  static void transformPixels(
+      Bitmap destBitmap, Bitmap sourceBitmap, List<PerPixelPostprocessor> postprocessors) {
+    final int w = sourceBitmap.getWidth();
+    final int h = sourceBitmap.getHeight();
+    final int[] row = new int[w];
+    final int count = postprocessors.size();
+    for (int y = 0; y < h; y++) {
+      sourceBitmap.getPixels(row, 0, w, 0, y, w, 1);
+      for (int x = 0; x < w; x++) {
+        int color = row[x];
+        for (int i = 0; i < count; i++) {
+          color = postprocessors.get(i).transformPixel(color);
+        }
+        row[x] = color;
+      }
+      destBitmap.setPixels(row, 0, w, 0, y, w, 1);
+    }
+  }
+}
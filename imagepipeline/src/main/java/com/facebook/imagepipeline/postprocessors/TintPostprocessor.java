@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Postprocessor that blends a color over the image, keeping its alpha channel like {@code
+ * PorterDuff.Mode.SRC_ATOP}.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class TintPostprocessor extends PerPixelPostprocessor {
+
+  private final int mColor;
+  private final int mAlpha;
+  // the color channels of the tint, premultiplied by its alpha
+  private final int mPremultipliedRed;
+  private final int mPremultipliedGreen;
+  private final int mPremultipliedBlue;
+
+  private @Nullable CacheKey mCacheKey;
+
+  /** @param color the ARGB color to blend over the image, its alpha is the strength of the tint */
+  public TintPostprocessor(int color) {
+    mColor = color;
+    mAlpha = color >>> 24;
+    mPremultipliedRed = ((color >> 16) & 0xFF) * mAlpha;
+    mPremultipliedGreen = ((color >> 8) & 0xFF) * mAlpha;
+    mPremultipliedBlue = (color & 0xFF) * mAlpha;
+  }
+
+  @Override
+  public int transformPixel(int color) {
+    final int inverseAlpha = 255 - mAlpha;
+    final int r = (mPremultipliedRed + ((color >> 16) & 0xFF) * inverseAlpha + 127) / 255;
+    final int g = (mPremultipliedGreen + ((color >> 8) & 0xFF) * inverseAlpha + 127) / 255;
+    final int b = (mPremultipliedBlue + (color & 0xFF) * inverseAlpha + 127) / 255;
+    return (color & 0xFF000000) | (r << 16) | (g << 8) | b;
+  }
+
+  @Override
+  public String getName() {
+    return "TintPostprocessor";
+  }
+
+  @Nullable
+  @Override
+  public CacheKey getPostprocessorCacheKey() {
+    if (mCacheKey == null) {
+      mCacheKey = new SimpleCacheKey(String.format((Locale) null, "Tint;%08x", mColor));
+    }
+    return mCacheKey;
+  }
+}
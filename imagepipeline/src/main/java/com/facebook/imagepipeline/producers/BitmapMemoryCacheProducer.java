@@ -7,16 +7,26 @@
 
 package com.facebook.imagepipeline.producers;
 
+import android.graphics.Bitmap;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.ImmutableMap;
+import com.facebook.common.logging.FLog;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.cache.BitmapMemoryCacheKey;
+import com.facebook.imagepipeline.cache.BitmapVariantIndex;
 import com.facebook.imagepipeline.cache.CacheKeyFactory;
 import com.facebook.imagepipeline.cache.MemoryCache;
+import com.facebook.imagepipeline.common.ResizeOptions;
 import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.CloseableStaticBitmap;
 import com.facebook.imagepipeline.image.HasImageMetadata;
+import com.facebook.imagepipeline.image.ImmutableQualityInfo;
 import com.facebook.imagepipeline.image.QualityInfo;
 import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.systrace.FrescoSystrace;
+import com.facebook.imageutils.BitmapUtil;
+import javax.annotation.Nullable;
 
 /** Memory cache producer for the bitmap memory cache. */
 public class BitmapMemoryCacheProducer implements Producer<CloseableReference<CloseableImage>> {
@@ -24,19 +34,47 @@ public class BitmapMemoryCacheProducer implements Producer<CloseableReference<Cl
   public static final String PRODUCER_NAME = "BitmapMemoryCacheProducer";
   public static final String EXTRA_CACHED_VALUE_FOUND = ProducerConstants.EXTRA_CACHED_VALUE_FOUND;
 
+  public static final String EXTRA_DOWNSCALED_VARIANT = "downscaled_variant";
+
+  private static final Class<?> TAG = BitmapMemoryCacheProducer.class;
   private static final String ORIGIN_SUBCATEGORY = "pipe_bg";
+  // Larger variants needing less scaling than this are served as they are
+  private static final float MAX_SCALE_TO_DOWNSCALE = 0.8f;
 
   private final MemoryCache<CacheKey, CloseableImage> mMemoryCache;
   private final CacheKeyFactory mCacheKeyFactory;
   private final Producer<CloseableReference<CloseableImage>> mInputProducer;
+  private final @Nullable BitmapVariantIndex mBitmapVariantIndex;
+  private final @Nullable PlatformBitmapFactory mPlatformBitmapFactory;
+  private final boolean mCacheDownscaledVariants;
 
   public BitmapMemoryCacheProducer(
       MemoryCache<CacheKey, CloseableImage> memoryCache,
       CacheKeyFactory cacheKeyFactory,
       Producer<CloseableReference<CloseableImage>> inputProducer) {
+    this(memoryCache, cacheKeyFactory, inputProducer, null, null, false);
+  }
+
+  /**
+   * @param bitmapVariantIndex if set, the cached bitmaps are indexed, and a miss for a request with
+   *     resize options is served by scaling down a larger cached bitmap of the same image if there
+   *     is one
+   * @param platformBitmapFactory the factory of the downscaled bitmaps, required with the index
+   * @param cacheDownscaledVariants whether to cache the downscaled bitmaps
+   */
+  public BitmapMemoryCacheProducer(
+      MemoryCache<CacheKey, CloseableImage> memoryCache,
+      CacheKeyFactory cacheKeyFactory,
+      Producer<CloseableReference<CloseableImage>> inputProducer,
+      @Nullable BitmapVariantIndex bitmapVariantIndex,
+      @Nullable PlatformBitmapFactory platformBitmapFactory,
+      boolean cacheDownscaledVariants) {
     mMemoryCache = memoryCache;
     mCacheKeyFactory = cacheKeyFactory;
     mInputProducer = inputProducer;
+    mBitmapVariantIndex = bitmapVariantIndex;
+    mPlatformBitmapFactory = platformBitmapFactory;
+    mCacheDownscaledVariants = cacheDownscaledVariants;
   }
 
   @Override
@@ -54,6 +92,14 @@ public class BitmapMemoryCacheProducer implements Producer<CloseableReference<Cl
       final CacheKey cacheKey = mCacheKeyFactory.getBitmapCacheKey(imageRequest, callerContext);
 
       CloseableReference<CloseableImage> cachedReference = mMemoryCache.get(cacheKey);
+      if (cachedReference == null && mBitmapVariantIndex != null) {
+        cachedReference =
+            getDownscaledVariant(
+                mBitmapVariantIndex, cacheKey, imageRequest.isMemoryCacheEnabled(), callerContext);
+        if (cachedReference != null) {
+          producerContext.setExtra(EXTRA_DOWNSCALED_VARIANT, true);
+        }
+      }
 
       if (cachedReference != null) {
         maybeSetExtrasFromCloseableImage(cachedReference.get(), producerContext);
@@ -161,6 +207,9 @@ public class BitmapMemoryCacheProducer implements Producer<CloseableReference<Cl
           CloseableReference<CloseableImage> newCachedResult = null;
           if (isMemoryCacheEnabled) {
             newCachedResult = mMemoryCache.cache(cacheKey, newResult);
+            if (newCachedResult != null && isLast && mBitmapVariantIndex != null) {
+              mBitmapVariantIndex.onCached(cacheKey, newCachedResult.get());
+            }
           }
           try {
             if (isLast) {
@@ -184,6 +233,76 @@ public class BitmapMemoryCacheProducer implements Producer<CloseableReference<Cl
     return PRODUCER_NAME;
   }
 
+  /**
+   * Returns a larger cached bitmap of the same image, scaled down to the resize options of the key
+   * unless it is only slightly larger, or null if there is none.
+   */
+  private @Nullable CloseableReference<CloseableImage> getDownscaledVariant(
+      BitmapVariantIndex bitmapVariantIndex,
+      CacheKey cacheKey,
+      boolean isMemoryCacheEnabled,
+      @Nullable Object callerContext) {
+    CloseableReference<CloseableImage> variantReference =
+        bitmapVariantIndex.getLargerVariant(cacheKey, mMemoryCache);
+    if (variantReference == null) {
+      return null;
+    }
+    try {
+      CloseableStaticBitmap variant = (CloseableStaticBitmap) variantReference.get();
+      ResizeOptions resizeOptions = ((BitmapMemoryCacheKey) cacheKey).getResizeOptions();
+      float scale =
+          Math.max(
+              resizeOptions.width / (float) variant.getWidth(),
+              resizeOptions.height / (float) variant.getHeight());
+      if (scale >= MAX_SCALE_TO_DOWNSCALE || mPlatformBitmapFactory == null) {
+        return variantReference.clone();
+      }
+
+      // the underlying bitmap is not rotated, the scale applies to both orientations
+      Bitmap bitmap = variant.getUnderlyingBitmap();
+      if (BitmapUtil.isHardwareBitmap(bitmap)) {
+        // hardware bitmaps cannot be drawn on a software canvas, the image is decoded instead
+        return null;
+      }
+      CloseableReference<Bitmap> scaledBitmap =
+          mPlatformBitmapFactory.createScaledBitmap(
+              bitmap,
+              Math.max(1, Math.round(bitmap.getWidth() * scale)),
+              Math.max(1, Math.round(bitmap.getHeight() * scale)),
+              true,
+              callerContext);
+      CloseableReference<CloseableImage> scaledReference;
+      try {
+        scaledReference =
+            CloseableReference.<CloseableImage>of(
+                new CloseableStaticBitmap(
+                    scaledBitmap,
+                    ImmutableQualityInfo.FULL_QUALITY,
+                    variant.getRotationAngle(),
+                    variant.getExifOrientation()));
+      } finally {
+        scaledBitmap.close();
+      }
+      if (!mCacheDownscaledVariants || !isMemoryCacheEnabled) {
+        return scaledReference;
+      }
+      CloseableReference<CloseableImage> cachedReference =
+          mMemoryCache.cache(cacheKey, scaledReference);
+      if (cachedReference == null) {
+        return scaledReference;
+      }
+      scaledReference.close();
+      bitmapVariantIndex.onCached(cacheKey, cachedReference.get());
+      return cachedReference;
+    } catch (RuntimeException e) {
+      // e.g. the bitmap pool is full, the image is decoded instead
+      FLog.w(TAG, e, "Failed to downscale a cached bitmap");
+      return null;
+    } finally {
+      variantReference.close();
+    }
+  }
+
   private static void maybeSetExtrasFromCloseableImage(
       HasImageMetadata imageWithMeta, ProducerContext producerContext) {
     producerContext.putExtras(imageWithMeta.getExtras());
@@ -12,12 +12,13 @@ import com.facebook.common.internal.Preconditions;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.imagepipeline.image.CloseableStaticBitmap;
+import com.facebook.imageutils.BitmapUtil;
 import com.facebook.infer.annotation.Nullsafe;
 
 /**
  * This producer issues to a call to {@link android.graphics.Bitmap#prepareToDraw()} to allow the
  * RendererThread upload the bitmap to GPU asynchronously before it is used. This has no affect on
- * Android versions before N.
+ * Android versions before N. Hardware bitmaps are skipped, they are already in graphics memory.
  *
  * <p>Controlled via {@link
  * com.facebook.imagepipeline.core.ImagePipelineExperiments#mUseBitmapPrepareToDraw}
@@ -101,7 +102,7 @@ public class BitmapPrepareProducer implements Producer<CloseableReference<Closea
       if (closeableImage instanceof CloseableStaticBitmap) {
         final CloseableStaticBitmap staticBitmap = (CloseableStaticBitmap) closeableImage;
         final Bitmap bitmap = staticBitmap.getUnderlyingBitmap();
-        if (bitmap == null) {
+        if (bitmap == null || BitmapUtil.isHardwareBitmap(bitmap)) {
           return;
         }
 
@@ -11,6 +11,7 @@ import static com.facebook.imagepipeline.producers.JobScheduler.JobRunnable;
 
 import android.graphics.Bitmap;
 import android.os.Build;
+import androidx.annotation.VisibleForTesting;
 import com.facebook.common.internal.ImmutableMap;
 import com.facebook.common.internal.Preconditions;
 import com.facebook.common.internal.Supplier;
@@ -142,6 +143,30 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
     }
   }
 
+  /**
+   * Returns the decode options of the request, set to decode into a {@link Bitmap.Config#HARDWARE}
+   * bitmap if enabled and the pixels of the bitmap are not needed after decoding. The format is not
+   * known yet, animated images map the hardware config back to ARGB_8888 for their frames.
+   */
+  @VisibleForTesting
+  static ImageDecodeOptions getImageDecodeOptions(
+      ImageRequest imageRequest, boolean decodeToHardwareBitmaps) {
+    final ImageDecodeOptions options = imageRequest.getImageDecodeOptions();
+    if (!decodeToHardwareBitmaps
+        // postprocessors and transformations change the pixels of the bitmap
+        || imageRequest.getPostprocessor() != null
+        || options.bitmapTransformation != null
+        // custom decoders, e.g. region decoders, may not support hardware bitmaps
+        || options.customImageDecoder != null
+        || options.bitmapConfig != Bitmap.Config.ARGB_8888) {
+      return options;
+    }
+    return ImageDecodeOptions.newBuilder()
+        .setFrom(options)
+        .setBitmapConfig(Bitmap.Config.HARDWARE)
+        .build();
+  }
+
   private abstract class ProgressiveDecoder
       extends DelegatingConsumer<EncodedImage, CloseableReference<CloseableImage>> {
 
@@ -165,7 +190,14 @@ public class DecodeProducer implements Producer<CloseableReference<CloseableImag
       super(consumer);
       mProducerContext = producerContext;
       mProducerListener = producerContext.getProducerListener();
-      mImageDecodeOptions = producerContext.getImageRequest().getImageDecodeOptions();
+      mImageDecodeOptions =
+          getImageDecodeOptions(
+              producerContext.getImageRequest(),
+              Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                  && producerContext
+                      .getImagePipelineConfig()
+                      .getExperiments()
+                      .shouldDecodeToHardwareBitmaps());
       mIsFinished = false;
       JobRunnable job =
           new JobRunnable() {
@@ -11,9 +11,11 @@ import androidx.annotation.VisibleForTesting;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.imageformat.ImageFormat;
 import com.facebook.imagepipeline.cache.BufferedDiskCache;
+import com.facebook.imagepipeline.cache.CacheAdmissionFilter;
 import com.facebook.imagepipeline.cache.CacheKeyFactory;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.request.ImageRequest;
+import javax.annotation.Nullable;
 
 /**
  * Disk cache write producer.
@@ -25,6 +27,9 @@ import com.facebook.imagepipeline.request.ImageRequest;
  *
  * <p>This implementation delegates disk cache requests to BufferedDiskCache.
  *
+ * <p>If an admission filter is set, results are only written once their key has been requested
+ * often enough, except for prefetches which are always written.
+ *
  * <p>This producer is currently used only if the media variations experiment is turned on, to
  * enable another producer to sit between cache read and write.
  */
@@ -34,6 +39,7 @@ public class DiskCacheWriteProducer implements Producer<EncodedImage> {
   private final BufferedDiskCache mDefaultBufferedDiskCache;
   private final BufferedDiskCache mSmallImageBufferedDiskCache;
   private final CacheKeyFactory mCacheKeyFactory;
+  private final @Nullable CacheAdmissionFilter mAdmissionFilter;
   private final Producer<EncodedImage> mInputProducer;
 
   public DiskCacheWriteProducer(
@@ -41,9 +47,24 @@ public class DiskCacheWriteProducer implements Producer<EncodedImage> {
       BufferedDiskCache smallImageBufferedDiskCache,
       CacheKeyFactory cacheKeyFactory,
       Producer<EncodedImage> inputProducer) {
+    this(
+        defaultBufferedDiskCache,
+        smallImageBufferedDiskCache,
+        cacheKeyFactory,
+        null,
+        inputProducer);
+  }
+
+  public DiskCacheWriteProducer(
+      BufferedDiskCache defaultBufferedDiskCache,
+      BufferedDiskCache smallImageBufferedDiskCache,
+      CacheKeyFactory cacheKeyFactory,
+      @Nullable CacheAdmissionFilter admissionFilter,
+      Producer<EncodedImage> inputProducer) {
     mDefaultBufferedDiskCache = defaultBufferedDiskCache;
     mSmallImageBufferedDiskCache = smallImageBufferedDiskCache;
     mCacheKeyFactory = cacheKeyFactory;
+    mAdmissionFilter = admissionFilter;
     mInputProducer = inputProducer;
   }
 
@@ -61,13 +82,19 @@ public class DiskCacheWriteProducer implements Producer<EncodedImage> {
     } else {
       Consumer<EncodedImage> consumer;
       if (producerContext.getImageRequest().isDiskCacheEnabled()) {
+        if (mAdmissionFilter != null) {
+          mAdmissionFilter.recordAccess(
+              mCacheKeyFactory.getEncodedCacheKey(
+                  producerContext.getImageRequest(), producerContext.getCallerContext()));
+        }
         consumer =
             new DiskCacheWriteConsumer(
                 consumerOfDiskCacheWriteProducer,
                 producerContext,
                 mDefaultBufferedDiskCache,
                 mSmallImageBufferedDiskCache,
-                mCacheKeyFactory);
+                mCacheKeyFactory,
+                mAdmissionFilter);
       } else {
         consumer = consumerOfDiskCacheWriteProducer;
       }
@@ -89,18 +116,21 @@ public class DiskCacheWriteProducer implements Producer<EncodedImage> {
     private final BufferedDiskCache mDefaultBufferedDiskCache;
     private final BufferedDiskCache mSmallImageBufferedDiskCache;
     private final CacheKeyFactory mCacheKeyFactory;
+    private final @Nullable CacheAdmissionFilter mAdmissionFilter;
 
     private DiskCacheWriteConsumer(
         final Consumer<EncodedImage> consumer,
         final ProducerContext producerContext,
         final BufferedDiskCache defaultBufferedDiskCache,
         final BufferedDiskCache smallImageBufferedDiskCache,
-        final CacheKeyFactory cacheKeyFactory) {
+        final CacheKeyFactory cacheKeyFactory,
+        final @Nullable CacheAdmissionFilter admissionFilter) {
       super(consumer);
       mProducerContext = producerContext;
       mDefaultBufferedDiskCache = defaultBufferedDiskCache;
       mSmallImageBufferedDiskCache = smallImageBufferedDiskCache;
       mCacheKeyFactory = cacheKeyFactory;
+      mAdmissionFilter = admissionFilter;
     }
 
     @Override
@@ -123,10 +153,17 @@ public class DiskCacheWriteProducer implements Producer<EncodedImage> {
       final CacheKey cacheKey =
           mCacheKeyFactory.getEncodedCacheKey(imageRequest, mProducerContext.getCallerContext());
 
-      if (imageRequest.getCacheChoice() == ImageRequest.CacheChoice.SMALL) {
-        mSmallImageBufferedDiskCache.put(cacheKey, newResult);
-      } else {
-        mDefaultBufferedDiskCache.put(cacheKey, newResult);
+      // images not requested often enough yet must not evict more popular ones
+      final boolean isAdmitted =
+          mAdmissionFilter == null
+              || mProducerContext.isPrefetch()
+              || mAdmissionFilter.shouldAdmit(cacheKey);
+      if (isAdmitted) {
+        if (imageRequest.getCacheChoice() == ImageRequest.CacheChoice.SMALL) {
+          mSmallImageBufferedDiskCache.put(cacheKey, newResult);
+        } else {
+          mDefaultBufferedDiskCache.put(cacheKey, newResult);
+        }
       }
       mProducerContext
           .getProducerListener()
@@ -12,13 +12,20 @@ import com.facebook.common.internal.ImmutableMap;
 import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imageformat.ImageFormat;
+import com.facebook.imagepipeline.cache.CacheAdmissionFilter;
 import com.facebook.imagepipeline.cache.CacheKeyFactory;
 import com.facebook.imagepipeline.cache.MemoryCache;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.systrace.FrescoSystrace;
+import javax.annotation.Nullable;
 
-/** Memory cache producer for the encoded memory cache. */
+/**
+ * Memory cache producer for the encoded memory cache.
+ *
+ * <p>If an admission filter is set, results are only cached once their key has been requested often
+ * enough, except for prefetches which are always cached.
+ */
 public class EncodedMemoryCacheProducer implements Producer<EncodedImage> {
 
   public static final String PRODUCER_NAME = "EncodedMemoryCacheProducer";
@@ -26,14 +33,24 @@ public class EncodedMemoryCacheProducer implements Producer<EncodedImage> {
 
   private final MemoryCache<CacheKey, PooledByteBuffer> mMemoryCache;
   private final CacheKeyFactory mCacheKeyFactory;
+  private final @Nullable CacheAdmissionFilter mAdmissionFilter;
   private final Producer<EncodedImage> mInputProducer;
 
   public EncodedMemoryCacheProducer(
       MemoryCache<CacheKey, PooledByteBuffer> memoryCache,
       CacheKeyFactory cacheKeyFactory,
       Producer<EncodedImage> inputProducer) {
+    this(memoryCache, cacheKeyFactory, null, inputProducer);
+  }
+
+  public EncodedMemoryCacheProducer(
+      MemoryCache<CacheKey, PooledByteBuffer> memoryCache,
+      CacheKeyFactory cacheKeyFactory,
+      @Nullable CacheAdmissionFilter admissionFilter,
+      Producer<EncodedImage> inputProducer) {
     mMemoryCache = memoryCache;
     mCacheKeyFactory = cacheKeyFactory;
+    mAdmissionFilter = admissionFilter;
     mInputProducer = inputProducer;
   }
 
@@ -49,6 +66,9 @@ public class EncodedMemoryCacheProducer implements Producer<EncodedImage> {
       final ImageRequest imageRequest = producerContext.getImageRequest();
       final CacheKey cacheKey =
           mCacheKeyFactory.getEncodedCacheKey(imageRequest, producerContext.getCallerContext());
+      if (mAdmissionFilter != null) {
+        mAdmissionFilter.recordAccess(cacheKey);
+      }
 
       CloseableReference<PooledByteBuffer> cachedReference = mMemoryCache.get(cacheKey);
       try {
@@ -93,7 +113,8 @@ public class EncodedMemoryCacheProducer implements Producer<EncodedImage> {
                 mMemoryCache,
                 cacheKey,
                 isMemoryCacheEnabled,
-                producerContext.getImagePipelineConfig().getExperiments().isEncodedCacheEnabled());
+                producerContext.getImagePipelineConfig().getExperiments().isEncodedCacheEnabled(),
+                producerContext.isPrefetch() ? null : mAdmissionFilter);
 
         listener.onProducerFinishWithSuccess(
             producerContext,
@@ -119,18 +140,21 @@ public class EncodedMemoryCacheProducer implements Producer<EncodedImage> {
     private final CacheKey mRequestedCacheKey;
     private final boolean mIsMemoryCacheEnabled;
     private final boolean mEncodedCacheEnabled;
+    private final @Nullable CacheAdmissionFilter mAdmissionFilter;
 
     public EncodedMemoryCacheConsumer(
         Consumer<EncodedImage> consumer,
         MemoryCache<CacheKey, PooledByteBuffer> memoryCache,
         CacheKey requestedCacheKey,
         boolean isMemoryCacheEnabled,
-        boolean encodedCacheEnabled) {
+        boolean encodedCacheEnabled,
+        @Nullable CacheAdmissionFilter admissionFilter) {
       super(consumer);
       mMemoryCache = memoryCache;
       mRequestedCacheKey = requestedCacheKey;
       mIsMemoryCacheEnabled = isMemoryCacheEnabled;
       mEncodedCacheEnabled = encodedCacheEnabled;
+      mAdmissionFilter = admissionFilter;
     }
 
     @Override
@@ -154,7 +178,9 @@ public class EncodedMemoryCacheProducer implements Producer<EncodedImage> {
         if (ref != null) {
           CloseableReference<PooledByteBuffer> cachedResult = null;
           try {
-            if (mEncodedCacheEnabled && mIsMemoryCacheEnabled) {
+            if (mEncodedCacheEnabled
+                && mIsMemoryCacheEnabled
+                && (mAdmissionFilter == null || mAdmissionFilter.shouldAdmit(mRequestedCacheKey))) {
               cachedResult = mMemoryCache.cache(mRequestedCacheKey, ref);
             }
           } finally {
@@ -0,0 +1,629 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.producers;
+
+import androidx.annotation.VisibleForTesting;
+import com.facebook.common.logging.FLog;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.common.time.RealtimeSinceBootClock;
+import com.facebook.imagepipeline.common.BytesRange;
+import com.facebook.imagepipeline.image.EncodedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * HedgingNetworkFetcher wraps another fetcher to reduce tail latency and to survive transient
+ * failures.
+ *
+ * <ul>
+ *   <li>Hedging: if an attempt has not produced a response within a deadline, a second attempt is
+ *       issued. Whichever responds first wins, and the other one is cancelled. The deadline is the
+ *       configured percentile of recently observed time-to-first-byte, or a default value while
+ *       not enough samples have been collected.
+ *   <li>Retries: when all attempts of a round fail, a new round is started after an exponential
+ *       backoff with jitter, up to 'maxRetries' times.
+ *   <li>Circuit breaking: after 'circuitFailureThreshold' consecutive failures for a host, requests
+ *       to that host fail immediately for 'circuitOpenDurationMs'. After that, one trial request is
+ *       let through; its outcome closes or re-opens the circuit.
+ * </ul>
+ *
+ * <p>Each attempt is given its own {@link SettableProducerContext}, so that the delegate can be
+ * asked to cancel a losing attempt without cancelling the request itself.
+ */
+public class HedgingNetworkFetcher<FETCH_STATE extends FetchState>
+    implements NetworkFetcher<HedgingNetworkFetcher.HedgingFetchState<FETCH_STATE>> {
+  public static final String TAG = HedgingNetworkFetcher.class.getSimpleName();
+
+  /** Pass as 'hedgePercentile' to disable hedging. */
+  public static final float HEDGING_DISABLED = 0f;
+
+  @VisibleForTesting static final int LATENCY_WINDOW_SIZE = 64;
+  @VisibleForTesting static final int MIN_LATENCY_SAMPLES = 8;
+
+  private final NetworkFetcher<FETCH_STATE> mDelegate;
+  private final ScheduledExecutorService mScheduledExecutorService;
+  private final MonotonicClock mClock;
+  private final Random mRandom;
+
+  private final float mHedgePercentile;
+  private final long mDefaultHedgeDelayMs;
+  private final int mMaxRetries;
+  private final long mBaseBackoffMs;
+  private final long mMaxBackoffMs;
+  private final int mCircuitFailureThreshold;
+  private final long mCircuitOpenDurationMs;
+
+  private final long[] mLatencyWindow = new long[LATENCY_WINDOW_SIZE];
+  private int mLatencySampleCount = 0;
+  private int mNextLatencySample = 0;
+
+  private final Map<String, HostCircuit> mCircuits = new HashMap<>();
+
+  /**
+   * @param scheduledExecutorService used to schedule hedges and delayed retries; the delegate's
+   *     fetch method may be called on this executor
+   * @param hedgePercentile percentile (in ]0, 1]) of recent time-to-first-byte after which a hedge
+   *     is issued, or {@link #HEDGING_DISABLED}
+   * @param defaultHedgeDelayMs hedge deadline used until enough latency samples are available
+   * @param maxRetries number of extra rounds after the first one fails
+   * @param baseBackoffMs backoff before the first retry; doubled on each subsequent retry
+   * @param maxBackoffMs upper bound of the backoff
+   * @param circuitFailureThreshold consecutive failures after which a host's circuit opens, or 0
+   *     to disable circuit breaking
+   * @param circuitOpenDurationMs how long an open circuit rejects requests
+   */
+  public HedgingNetworkFetcher(
+      NetworkFetcher<FETCH_STATE> delegate,
+      ScheduledExecutorService scheduledExecutorService,
+      float hedgePercentile,
+      long defaultHedgeDelayMs,
+      int maxRetries,
+      long baseBackoffMs,
+      long maxBackoffMs,
+      int circuitFailureThreshold,
+      long circuitOpenDurationMs) {
+    this(
+        delegate,
+        scheduledExecutorService,
+        hedgePercentile,
+        defaultHedgeDelayMs,
+        maxRetries,
+        baseBackoffMs,
+        maxBackoffMs,
+        circuitFailureThreshold,
+        circuitOpenDurationMs,
+        RealtimeSinceBootClock.get(),
+        new Random());
+  }
+
+  @VisibleForTesting
+  public HedgingNetworkFetcher(
+      NetworkFetcher<FETCH_STATE> delegate,
+      ScheduledExecutorService scheduledExecutorService,
+      float hedgePercentile,
+      long defaultHedgeDelayMs,
+      int maxRetries,
+      long baseBackoffMs,
+      long maxBackoffMs,
+      int circuitFailureThreshold,
+      long circuitOpenDurationMs,
+      MonotonicClock clock,
+      Random random) {
+    if (hedgePercentile < 0 || hedgePercentile > 1) {
+      throw new IllegalArgumentException("hedgePercentile should be in [0, 1]");
+    }
+    if (maxRetries < 0 || baseBackoffMs < 0 || maxBackoffMs < baseBackoffMs) {
+      throw new IllegalArgumentException("invalid retry configuration");
+    }
+    mDelegate = delegate;
+    mScheduledExecutorService = scheduledExecutorService;
+    mHedgePercentile = hedgePercentile;
+    mDefaultHedgeDelayMs = defaultHedgeDelayMs;
+    mMaxRetries = maxRetries;
+    mBaseBackoffMs = baseBackoffMs;
+    mMaxBackoffMs = maxBackoffMs;
+    mCircuitFailureThreshold = circuitFailureThreshold;
+    mCircuitOpenDurationMs = circuitOpenDurationMs;
+    mClock = clock;
+    mRandom = random;
+  }
+
+  @Override
+  public HedgingFetchState<FETCH_STATE> createFetchState(
+      Consumer<EncodedImage> consumer, ProducerContext producerContext) {
+    return new HedgingFetchState<>(consumer, producerContext);
+  }
+
+  @Override
+  public void fetch(final HedgingFetchState<FETCH_STATE> fetchState, final Callback callback) {
+    fetchState.callback = callback;
+    fetchState
+        .getContext()
+        .addCallbacks(
+            new BaseProducerContextCallbacks() {
+              @Override
+              public void onCancellationRequested() {
+                cancel(fetchState);
+              }
+
+              @Override
+              public void onPriorityChanged() {
+                List<Attempt<FETCH_STATE>> attempts;
+                synchronized (fetchState) {
+                  attempts = new ArrayList<>(fetchState.attempts);
+                }
+                for (Attempt<FETCH_STATE> attempt : attempts) {
+                  attempt.context.setPriority(fetchState.getContext().getPriority());
+                }
+              }
+            });
+    startRound(fetchState);
+  }
+
+  private void startRound(final HedgingFetchState<FETCH_STATE> fetchState) {
+    String host = fetchState.getUri().getHost();
+    if (!allowRequest(host)) {
+      FLog.v(TAG, "circuit open: %s", fetchState.getUri());
+      synchronized (fetchState) {
+        fetchState.rejectedByCircuit = true;
+      }
+      finishWithFailure(fetchState, new IOException("Circuit open for host " + host));
+      return;
+    }
+
+    final int round;
+    final long hedgeDelayMs = getHedgeDelayMs();
+    synchronized (fetchState) {
+      if (fetchState.finished) {
+        return;
+      }
+      round = fetchState.round;
+      if (hedgeDelayMs >= 0) {
+        fetchState.hedgeDelayMs = hedgeDelayMs;
+        fetchState.pendingHedge =
+            mScheduledExecutorService.schedule(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    maybeHedge(fetchState, round);
+                  }
+                },
+                hedgeDelayMs,
+                TimeUnit.MILLISECONDS);
+      }
+    }
+    startAttempt(fetchState);
+  }
+
+  private void maybeHedge(HedgingFetchState<FETCH_STATE> fetchState, int round) {
+    synchronized (fetchState) {
+      fetchState.pendingHedge = null;
+      if (fetchState.finished
+          || fetchState.winner != null
+          || fetchState.round != round
+          || fetchState.outstandingAttempts == 0) {
+        return;
+      }
+      fetchState.hedgeCount++;
+    }
+    FLog.v(TAG, "hedge: %s", fetchState.getUri());
+    startAttempt(fetchState);
+  }
+
+  private void startAttempt(HedgingFetchState<FETCH_STATE> fetchState) {
+    final Attempt<FETCH_STATE> attempt;
+    synchronized (fetchState) {
+      if (fetchState.finished) {
+        return;
+      }
+      SettableProducerContext attemptContext = new SettableProducerContext(fetchState.getContext());
+      attempt =
+          new Attempt<>(
+              fetchState.attempts.size(),
+              attemptContext,
+              mDelegate.createFetchState(fetchState.getConsumer(), attemptContext),
+              mClock.now());
+      fetchState.attempts.add(attempt);
+      fetchState.outstandingAttempts++;
+    }
+    try {
+      mDelegate.fetch(attempt.delegatedState, new AttemptCallback(fetchState, attempt));
+    } catch (Exception e) {
+      onAttemptFailure(fetchState, attempt, e);
+    }
+  }
+
+  private void onAttemptResponse(
+      HedgingFetchState<FETCH_STATE> fetchState,
+      Attempt<FETCH_STATE> attempt,
+      InputStream response,
+      int responseLength)
+      throws IOException {
+    List<Attempt<FETCH_STATE>> losers = new ArrayList<>();
+    synchronized (fetchState) {
+      if (fetchState.finished || attempt.done || fetchState.winner != null) {
+        return;
+      }
+      fetchState.winner = attempt;
+      cancelPendingLocked(fetchState);
+      for (Attempt<FETCH_STATE> other : fetchState.attempts) {
+        if (other != attempt && !other.done) {
+          other.done = true;
+          fetchState.outstandingAttempts--;
+          losers.add(other);
+        }
+      }
+    }
+    for (Attempt<FETCH_STATE> loser : losers) {
+      FLog.v(TAG, "cancel loser: %s attempt %d", fetchState.getUri(), loser.index);
+      loser.context.cancel();
+    }
+    recordLatency(mClock.now() - attempt.startedTimestamp);
+    recordSuccess(fetchState.getUri().getHost());
+
+    BytesRange bytesRange = attempt.delegatedState.getResponseBytesRange();
+    if (bytesRange != null) {
+      fetchState.setResponseBytesRange(bytesRange);
+    }
+    fetchState.setOnNewResultStatusFlags(attempt.delegatedState.getOnNewResultStatusFlags());
+    fetchState.callback.onResponse(response, responseLength);
+  }
+
+  private void onAttemptFailure(
+      final HedgingFetchState<FETCH_STATE> fetchState,
+      Attempt<FETCH_STATE> attempt,
+      Throwable throwable) {
+    boolean isWinner;
+    synchronized (fetchState) {
+      if (fetchState.finished) {
+        return;
+      }
+      isWinner = fetchState.winner == attempt;
+      if (!isWinner) {
+        if (attempt.done) {
+          return;
+        }
+        attempt.done = true;
+        fetchState.outstandingAttempts--;
+      }
+    }
+    if (isWinner) {
+      // The response has already been handed over, so the failure happened while reading it.
+      finishWithFailure(fetchState, throwable);
+      return;
+    }
+
+    recordFailure(fetchState.getUri().getHost());
+    synchronized (fetchState) {
+      if (fetchState.outstandingAttempts > 0) {
+        // Another attempt of this round may still succeed.
+        return;
+      }
+      if (fetchState.retryCount < mMaxRetries) {
+        cancelPendingLocked(fetchState);
+        fetchState.retryCount++;
+        fetchState.round++;
+        long backoffMs = getBackoffMs(fetchState.retryCount);
+        FLog.v(TAG, "retry: %s in %d ms", fetchState.getUri(), backoffMs);
+        fetchState.pendingRetry =
+            mScheduledExecutorService.schedule(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    synchronized (fetchState) {
+                      fetchState.pendingRetry = null;
+                    }
+                    startRound(fetchState);
+                  }
+                },
+                backoffMs,
+                TimeUnit.MILLISECONDS);
+        return;
+      }
+    }
+    finishWithFailure(fetchState, throwable);
+  }
+
+  private void onAttemptCancellation(
+      HedgingFetchState<FETCH_STATE> fetchState, Attempt<FETCH_STATE> attempt) {
+    boolean shouldNotify = false;
+    synchronized (fetchState) {
+      if (fetchState.finished) {
+        return;
+      }
+      if (fetchState.winner == attempt) {
+        shouldNotify = true;
+      } else if (!attempt.done) {
+        attempt.done = true;
+        fetchState.outstandingAttempts--;
+        shouldNotify = fetchState.outstandingAttempts == 0 && fetchState.pendingRetry == null;
+      }
+      if (shouldNotify) {
+        fetchState.finished = true;
+        cancelPendingLocked(fetchState);
+      }
+    }
+    if (shouldNotify) {
+      fetchState.callback.onCancellation();
+    }
+  }
+
+  private void cancel(HedgingFetchState<FETCH_STATE> fetchState) {
+    List<Attempt<FETCH_STATE>> toCancel = new ArrayList<>();
+    synchronized (fetchState) {
+      if (fetchState.finished) {
+        return;
+      }
+      fetchState.finished = true;
+      cancelPendingLocked(fetchState);
+      for (Attempt<FETCH_STATE> attempt : fetchState.attempts) {
+        if (!attempt.done) {
+          attempt.done = true;
+          toCancel.add(attempt);
+        }
+      }
+      fetchState.outstandingAttempts = 0;
+    }
+    FLog.v(TAG, "cancel: %s", fetchState.getUri());
+    for (Attempt<FETCH_STATE> attempt : toCancel) {
+      attempt.context.cancel();
+    }
+    fetchState.callback.onCancellation();
+  }
+
+  private void finishWithFailure(HedgingFetchState<FETCH_STATE> fetchState, Throwable throwable) {
+    synchronized (fetchState) {
+      if (fetchState.finished) {
+        return;
+      }
+      fetchState.finished = true;
+      cancelPendingLocked(fetchState);
+    }
+    FLog.v(TAG, "fail: %s", fetchState.getUri());
+    fetchState.callback.onFailure(throwable);
+  }
+
+  private static void cancelPendingLocked(HedgingFetchState<?> fetchState) {
+    if (fetchState.pendingHedge != null) {
+      fetchState.pendingHedge.cancel(false);
+      fetchState.pendingHedge = null;
+    }
+    if (fetchState.pendingRetry != null) {
+      fetchState.pendingRetry.cancel(false);
+      fetchState.pendingRetry = null;
+    }
+  }
+
+  /** Returns the delay after which a hedge is issued, or -1 if hedging is disabled. */
+  @VisibleForTesting
+  long getHedgeDelayMs() {
+    if (mHedgePercentile <= HEDGING_DISABLED) {
+      return -1;
+    }
+    long[] samples;
+    synchronized (mLatencyWindow) {
+      if (mLatencySampleCount < MIN_LATENCY_SAMPLES) {
+        return mDefaultHedgeDelayMs;
+      }
+      samples = Arrays.copyOf(mLatencyWindow, mLatencySampleCount);
+    }
+    Arrays.sort(samples);
+    int index = (int) Math.ceil(mHedgePercentile * samples.length) - 1;
+    return samples[Math.max(0, Math.min(index, samples.length - 1))];
+  }
+
+  private void recordLatency(long latencyMs) {
+    synchronized (mLatencyWindow) {
+      mLatencyWindow[mNextLatencySample] = latencyMs;
+      mNextLatencySample = (mNextLatencySample + 1) % LATENCY_WINDOW_SIZE;
+      if (mLatencySampleCount < LATENCY_WINDOW_SIZE) {
+        mLatencySampleCount++;
+      }
+    }
+  }
+
+  /** Exponential backoff with "equal jitter": half fixed, half random. */
+  @VisibleForTesting
+  long getBackoffMs(int retryCount) {
+    long backoffMs = mBaseBackoffMs << Math.min(retryCount - 1, 30);
+    if (backoffMs <= 0 || backoffMs > mMaxBackoffMs) {
+      backoffMs = mMaxBackoffMs;
+    }
+    long half = backoffMs / 2;
+    return half + (long) (mRandom.nextDouble() * (backoffMs - half));
+  }
+
+  @VisibleForTesting
+  boolean allowRequest(@Nullable String host) {
+    if (mCircuitFailureThreshold <= 0 || host == null) {
+      return true;
+    }
+    synchronized (mCircuits) {
+      HostCircuit circuit = mCircuits.get(host);
+      if (circuit == null || circuit.consecutiveFailures < mCircuitFailureThreshold) {
+        return true;
+      }
+      long now = mClock.now();
+      if (now - circuit.openedTimestamp < mCircuitOpenDurationMs) {
+        return false;
+      }
+      // Half-open: let this request through, and keep rejecting others until it completes.
+      circuit.openedTimestamp = now;
+      return true;
+    }
+  }
+
+  private void recordSuccess(@Nullable String host) {
+    if (mCircuitFailureThreshold <= 0 || host == null) {
+      return;
+    }
+    synchronized (mCircuits) {
+      mCircuits.remove(host);
+    }
+  }
+
+  private void recordFailure(@Nullable String host) {
+    if (mCircuitFailureThreshold <= 0 || host == null) {
+      return;
+    }
+    synchronized (mCircuits) {
+      HostCircuit circuit = mCircuits.get(host);
+      if (circuit == null) {
+        circuit = new HostCircuit();
+        mCircuits.put(host, circuit);
+      }
+      circuit.consecutiveFailures++;
+      if (circuit.consecutiveFailures == mCircuitFailureThreshold) {
+        FLog.w(TAG, "opening circuit for host %s", host);
+        circuit.openedTimestamp = mClock.now();
+      } else if (circuit.consecutiveFailures > mCircuitFailureThreshold) {
+        // The half-open trial failed.
+        circuit.openedTimestamp = mClock.now();
+      }
+    }
+  }
+
+  @Override
+  public boolean shouldPropagate(HedgingFetchState<FETCH_STATE> fetchState) {
+    Attempt<FETCH_STATE> attempt = fetchState.getReportedAttempt();
+    return attempt == null || mDelegate.shouldPropagate(attempt.delegatedState);
+  }
+
+  @Override
+  public void onFetchCompletion(HedgingFetchState<FETCH_STATE> fetchState, int byteSize) {
+    synchronized (fetchState) {
+      fetchState.finished = true;
+      cancelPendingLocked(fetchState);
+    }
+    Attempt<FETCH_STATE> attempt = fetchState.getReportedAttempt();
+    if (attempt != null) {
+      mDelegate.onFetchCompletion(attempt.delegatedState, byteSize);
+    }
+  }
+
+  @Nullable
+  @Override
+  public Map<String, String> getExtraMap(HedgingFetchState<FETCH_STATE> fetchState, int byteSize) {
+    Attempt<FETCH_STATE> attempt = fetchState.getReportedAttempt();
+    Map<String, String> delegateExtras =
+        attempt != null ? mDelegate.getExtraMap(attempt.delegatedState, byteSize) : null;
+    HashMap<String, String> extras =
+        delegateExtras != null ? new HashMap<>(delegateExtras) : new HashMap<String, String>();
+    synchronized (fetchState) {
+      extras.put("hedge_delay_ms", "" + fetchState.hedgeDelayMs);
+      extras.put("hedge_count", "" + fetchState.hedgeCount);
+      extras.put("attempt_count", "" + fetchState.attempts.size());
+      extras.put("retry_count", "" + fetchState.retryCount);
+      extras.put("winning_attempt", "" + (attempt != null ? attempt.index : -1));
+      extras.put("circuit_open", "" + fetchState.rejectedByCircuit);
+    }
+    return extras;
+  }
+
+  private static class HostCircuit {
+    int consecutiveFailures;
+    long openedTimestamp;
+  }
+
+  private static class Attempt<FETCH_STATE extends FetchState> {
+    final int index;
+    final SettableProducerContext context;
+    final FETCH_STATE delegatedState;
+    final long startedTimestamp;
+    boolean done;
+
+    Attempt(
+        int index,
+        SettableProducerContext context,
+        FETCH_STATE delegatedState,
+        long startedTimestamp) {
+      this.index = index;
+      this.context = context;
+      this.delegatedState = delegatedState;
+      this.startedTimestamp = startedTimestamp;
+    }
+  }
+
+  private class AttemptCallback implements NetworkFetcher.Callback {
+    private final HedgingFetchState<FETCH_STATE> mFetchState;
+    private final Attempt<FETCH_STATE> mAttempt;
+
+    AttemptCallback(HedgingFetchState<FETCH_STATE> fetchState, Attempt<FETCH_STATE> attempt) {
+      mFetchState = fetchState;
+      mAttempt = attempt;
+    }
+
+    @Override
+    public void onResponse(InputStream response, int responseLength) throws IOException {
+      onAttemptResponse(mFetchState, mAttempt, response, responseLength);
+    }
+
+    @Override
+    public void onFailure(Throwable throwable) {
+      onAttemptFailure(mFetchState, mAttempt, throwable);
+    }
+
+    @Override
+    public void onCancellation() {
+      onAttemptCancellation(mFetchState, mAttempt);
+    }
+  }
+
+  public static class HedgingFetchState<FETCH_STATE extends FetchState> extends FetchState {
+    final List<Attempt<FETCH_STATE>> attempts = new ArrayList<>(2);
+    @Nullable Attempt<FETCH_STATE> winner;
+    @Nullable ScheduledFuture<?> pendingHedge;
+    @Nullable ScheduledFuture<?> pendingRetry;
+    NetworkFetcher.Callback callback;
+    long hedgeDelayMs = -1;
+    int outstandingAttempts;
+    int round;
+    int hedgeCount;
+    int retryCount;
+    boolean rejectedByCircuit;
+    boolean finished;
+
+    private HedgingFetchState(Consumer<EncodedImage> consumer, ProducerContext producerContext) {
+      super(consumer, producerContext);
+    }
+
+    /** The winning attempt, or the latest one if there is no winner yet. */
+    @Nullable
+    synchronized Attempt<FETCH_STATE> getReportedAttempt() {
+      if (winner != null) {
+        return winner;
+      }
+      return attempts.isEmpty() ? null : attempts.get(attempts.size() - 1);
+    }
+
+    @VisibleForTesting
+    synchronized int getAttemptCount() {
+      return attempts.size();
+    }
+
+    @VisibleForTesting
+    synchronized FETCH_STATE getDelegatedState(int attemptIndex) {
+      return attempts.get(attemptIndex).delegatedState;
+    }
+
+    @VisibleForTesting
+    synchronized SettableProducerContext getAttemptContext(int attemptIndex) {
+      return attempts.get(attemptIndex).context;
+    }
+  }
+}
@@ -18,6 +18,7 @@ import com.facebook.imagepipeline.image.CloseableStaticBitmap;
 import com.facebook.imagepipeline.request.Postprocessor;
 import com.facebook.imagepipeline.request.RepeatedPostprocessor;
 import com.facebook.imagepipeline.request.RepeatedPostprocessorRunner;
+import com.facebook.imageutils.BitmapUtil;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import javax.annotation.Nullable;
@@ -241,7 +242,19 @@ public class PostprocessorProducer implements Producer<CloseableReference<Closea
     private CloseableReference<CloseableImage> postprocessInternal(CloseableImage sourceImage) {
       CloseableStaticBitmap staticBitmap = (CloseableStaticBitmap) sourceImage;
       Bitmap sourceBitmap = staticBitmap.getUnderlyingBitmap();
-      CloseableReference<Bitmap> bitmapRef = mPostprocessor.process(sourceBitmap, mBitmapFactory);
+      CloseableReference<Bitmap> bitmapRef;
+      if (BitmapUtil.isHardwareBitmap(sourceBitmap)) {
+        // The pixels of a hardware bitmap, e.g. cached for a request without postprocessor, cannot
+        // be read. The postprocessor gets a software copy instead.
+        Bitmap softwareBitmap = sourceBitmap.copy(Bitmap.Config.ARGB_8888, false);
+        try {
+          bitmapRef = mPostprocessor.process(softwareBitmap, mBitmapFactory);
+        } finally {
+          softwareBitmap.recycle();
+        }
+      } else {
+        bitmapRef = mPostprocessor.process(sourceBitmap, mBitmapFactory);
+      }
       int rotationAngle = staticBitmap.getRotationAngle();
       int exifOrientation = staticBitmap.getExifOrientation();
       try {
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.common.ImageDecodeOptions;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import com.facebook.imagepipeline.common.RotationOptions;
+import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.CloseableStaticBitmap;
+import com.facebook.imagepipeline.image.ImmutableQualityInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BitmapVariantIndexTest {
+
+  private static final String URI = "http://fresco.com/image.jpg";
+
+  private MemoryCache<CacheKey, CloseableImage> mMemoryCache;
+  private BitmapVariantIndex mIndex;
+
+  @Before
+  public void setUp() {
+    mMemoryCache = mock(MemoryCache.class);
+    mIndex = new BitmapVariantIndex(2);
+  }
+
+  @Test
+  public void testReturnsSmallestLargerVariant() {
+    CloseableReference<CloseableImage> large = cache(newKey(URI, 1000), 1000, 800);
+    CloseableReference<CloseableImage> medium = cache(newKey(URI, 500), 500, 400);
+    cache(newKey(URI, 100), 100, 80);
+
+    assertSame(medium.get(), getLargerVariant(newKey(URI, 300)));
+    assertSame(large.get(), getLargerVariant(newKey(URI, 800)));
+    assertNull(getLargerVariant(newKey(URI, 2000)));
+  }
+
+  @Test
+  public void testIgnoresIncompatibleKeys() {
+    cache(newKey(URI, 1000), 1000, 800);
+
+    BitmapMemoryCacheKey rotatedKey =
+        new BitmapMemoryCacheKey(
+            URI,
+            new ResizeOptions(100, 100),
+            RotationOptions.forceRotation(RotationOptions.ROTATE_90),
+            ImageDecodeOptions.defaults(),
+            null,
+            null,
+            null);
+    BitmapMemoryCacheKey postprocessedKey =
+        new BitmapMemoryCacheKey(
+            URI,
+            new ResizeOptions(100, 100),
+            RotationOptions.autoRotate(),
+            ImageDecodeOptions.defaults(),
+            new SimpleCacheKey("blur"),
+            "blur",
+            null);
+    assertNull(getLargerVariant(rotatedKey));
+    assertNull(getLargerVariant(postprocessedKey));
+    assertNull(getLargerVariant(newKey("http://fresco.com/other.jpg", 100)));
+    assertNull(getLargerVariant(new SimpleCacheKey(URI)));
+  }
+
+  @Test
+  public void testEvictedVariantIsDropped() {
+    BitmapMemoryCacheKey key = newKey(URI, 1000);
+    cache(key, 1000, 800);
+    when(mMemoryCache.get(key)).thenReturn(null);
+
+    assertNull(getLargerVariant(newKey(URI, 100)));
+    assertEquals(0, mIndex.getVariantCount(URI));
+  }
+
+  @Test
+  public void testNumberOfSourcesIsBounded() {
+    cache(newKey("http://fresco.com/1.jpg", 1000), 1000, 800);
+    cache(newKey("http://fresco.com/2.jpg", 1000), 1000, 800);
+    cache(newKey("http://fresco.com/3.jpg", 1000), 1000, 800);
+
+    assertEquals(0, mIndex.getVariantCount("http://fresco.com/1.jpg"));
+    assertEquals(1, mIndex.getVariantCount("http://fresco.com/3.jpg"));
+  }
+
+  @Test
+  public void testIntermediateResultsAreNotIndexed() {
+    CloseableStaticBitmap image = mock(CloseableStaticBitmap.class);
+    when(image.getQualityInfo()).thenReturn(ImmutableQualityInfo.of(1, false, false));
+    mIndex.onCached(newKey(URI, 1000), image);
+
+    assertEquals(0, mIndex.getVariantCount(URI));
+  }
+
+  private CloseableReference<CloseableImage> cache(
+      BitmapMemoryCacheKey key, int width, int height) {
+    CloseableStaticBitmap image = mock(CloseableStaticBitmap.class);
+    when(image.getWidth()).thenReturn(width);
+    when(image.getHeight()).thenReturn(height);
+    when(image.getQualityInfo()).thenReturn(ImmutableQualityInfo.FULL_QUALITY);
+    CloseableReference<CloseableImage> reference = CloseableReference.<CloseableImage>of(image);
+    when(mMemoryCache.get(key)).thenReturn(reference);
+    mIndex.onCached(key, image);
+    return reference;
+  }
+
+  private CloseableImage getLargerVariant(CacheKey key) {
+    CloseableReference<CloseableImage> reference = mIndex.getLargerVariant(key, mMemoryCache);
+    return reference == null ? null : reference.get();
+  }
+
+  private static BitmapMemoryCacheKey newKey(String uri, int size) {
+    return new BitmapMemoryCacheKey(
+        uri,
+        new ResizeOptions(size, size * 8 / 10),
+        RotationOptions.autoRotate(),
+        ImageDecodeOptions.defaults(),
+        null,
+        null,
+        new Object());
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.imagepipeline.testing.FakeClock;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CacheTraceRecordingStatsTrackerTest {
+
+  private static final long SALT = 42;
+
+  private ImageCacheStatsTracker mDelegate;
+  private FakeClock mClock;
+  private CacheKey mCacheKey;
+  private CacheTraceRecordingStatsTracker mTracker;
+
+  @Before
+  public void setUp() {
+    mDelegate = mock(ImageCacheStatsTracker.class);
+    mClock = new FakeClock(1000);
+    mCacheKey = new SimpleCacheKey("http://fresco.com/image.jpg");
+    mTracker =
+        new CacheTraceRecordingStatsTracker(
+            mDelegate,
+            3,
+            new CacheTraceRecordingStatsTracker.SizeEstimator() {
+              @Override
+              public int estimateSizeInBytes(CacheKey cacheKey, int layer) {
+                return layer == CacheTrace.LAYER_BITMAP_MEMORY ? 100 : CacheTrace.UNKNOWN_SIZE;
+              }
+            },
+            mClock,
+            SALT);
+  }
+
+  @Test
+  public void testRecordsEventsAndForwardsToDelegate() {
+    mTracker.onBitmapCacheMiss(mCacheKey);
+    mClock.incrementBy(10);
+    mTracker.onDiskCacheHit(mCacheKey);
+
+    verify(mDelegate).onBitmapCacheMiss(mCacheKey);
+    verify(mDelegate).onDiskCacheHit(mCacheKey);
+    List<CacheTrace.Event> events = mTracker.getEvents();
+    assertEquals(2, events.size());
+    long keyHash = mTracker.getKeyHash(mCacheKey);
+    assertEquals(
+        new CacheTrace.Event(0, CacheTrace.LAYER_BITMAP_MEMORY, CacheTrace.TYPE_MISS, keyHash, 100),
+        events.get(0));
+    assertEquals(
+        new CacheTrace.Event(
+            10, CacheTrace.LAYER_DISK, CacheTrace.TYPE_HIT, keyHash, CacheTrace.UNKNOWN_SIZE),
+        events.get(1));
+  }
+
+  @Test
+  public void testKeysAreAnonymized() {
+    CacheKey sameKey = new SimpleCacheKey("http://fresco.com/image.jpg");
+    CacheKey otherKey = new SimpleCacheKey("http://fresco.com/other.jpg");
+    CacheTraceRecordingStatsTracker otherTracker =
+        new CacheTraceRecordingStatsTracker(mDelegate, 3, null, mClock, SALT + 1);
+
+    assertEquals(mTracker.getKeyHash(mCacheKey), mTracker.getKeyHash(sameKey));
+    assertNotEquals(mTracker.getKeyHash(mCacheKey), mTracker.getKeyHash(otherKey));
+    assertNotEquals(mTracker.getKeyHash(mCacheKey), otherTracker.getKeyHash(mCacheKey));
+  }
+
+  @Test
+  public void testKeepsLastEvents() {
+    mTracker.onMemoryCacheMiss(mCacheKey);
+    mTracker.onMemoryCachePut(mCacheKey);
+    mTracker.onMemoryCacheHit(mCacheKey);
+    mTracker.onDiskCacheGetFail(mCacheKey);
+
+    List<CacheTrace.Event> events = mTracker.getEvents();
+    assertEquals(3, events.size());
+    assertEquals(CacheTrace.TYPE_PUT, events.get(0).type);
+    assertEquals(CacheTrace.TYPE_HIT, events.get(1).type);
+    assertEquals(CacheTrace.LAYER_DISK, events.get(2).layer);
+    assertEquals(CacheTrace.TYPE_MISS, events.get(2).type);
+
+    mTracker.clear();
+    assertTrue(mTracker.getEvents().isEmpty());
+  }
+
+  @Test
+  public void testWriteTo() throws Exception {
+    mTracker.onStagingAreaHit(mCacheKey);
+    mTracker.onBitmapCachePut(mCacheKey);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    mTracker.writeTo(outputStream);
+
+    assertEquals(
+        mTracker.getEvents(),
+        CacheTrace.read(new ByteArrayInputStream(outputStream.toByteArray())));
+  }
+}
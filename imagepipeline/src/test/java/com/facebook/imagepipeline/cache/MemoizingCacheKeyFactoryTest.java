@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.net.Uri;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import com.facebook.imagepipeline.request.ImageRequest;
+import com.facebook.imagepipeline.request.ImageRequestBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MemoizingCacheKeyFactoryTest {
+
+  private static final String URI = "https://cdn.fresco.com/v/t1.0-9/12345_n.jpg?oh=abc";
+
+  private CountingCacheKeyFactory mDelegate;
+  private MemoizingCacheKeyFactory mFactory;
+  private ImageRequest mRequest;
+  private Object mCallerContext;
+
+  @Before
+  public void setUp() {
+    mDelegate = new CountingCacheKeyFactory();
+    mFactory = new MemoizingCacheKeyFactory(mDelegate);
+    mRequest = ImageRequestBuilder.newBuilderWithSource(Uri.parse(URI)).build();
+    mCallerContext = new Object();
+  }
+
+  @Test
+  public void testKeysAreCreatedOnce() {
+    CacheKey bitmapKey = mFactory.getBitmapCacheKey(mRequest, mCallerContext);
+    CacheKey postprocessedKey = mFactory.getPostprocessedBitmapCacheKey(mRequest, mCallerContext);
+    CacheKey encodedKey = mFactory.getEncodedCacheKey(mRequest, mCallerContext);
+
+    assertSame(bitmapKey, mFactory.getBitmapCacheKey(mRequest, mCallerContext));
+    assertSame(postprocessedKey, mFactory.getPostprocessedBitmapCacheKey(mRequest, mCallerContext));
+    assertSame(encodedKey, mFactory.getEncodedCacheKey(mRequest, mCallerContext));
+    assertSame(
+        encodedKey, mFactory.getEncodedCacheKey(mRequest, mRequest.getSourceUri(), mCallerContext));
+    assertEquals(3, mDelegate.mCreatedKeys);
+  }
+
+  @Test
+  public void testMemoizedBitmapKeysHaveTheCallerContext() {
+    mFactory.getBitmapCacheKey(mRequest, mCallerContext);
+    BitmapMemoryCacheKey key =
+        (BitmapMemoryCacheKey) mFactory.getBitmapCacheKey(mRequest, mCallerContext);
+
+    assertSame(mCallerContext, key.getCallerContext());
+    assertEquals(1, mDelegate.mCreatedKeys);
+  }
+
+  @Test
+  public void testKeysAreMemoizedPerRequestInstance() {
+    ImageRequest otherRequest = ImageRequestBuilder.newBuilderWithSource(Uri.parse(URI)).build();
+    CacheKey encodedKey = mFactory.getEncodedCacheKey(mRequest, mCallerContext);
+    CacheKey otherEncodedKey = mFactory.getEncodedCacheKey(otherRequest, mCallerContext);
+
+    assertEquals(encodedKey, otherEncodedKey);
+    // the uri strings are interned, so that comparing the keys compares them by reference
+    assertSame(encodedKey.getUriString(), otherEncodedKey.getUriString());
+    assertEquals(2, mDelegate.mCreatedKeys);
+  }
+
+  @Test
+  public void testOtherCallerContextCreatesNewKeys() {
+    CacheKey bitmapKey = mFactory.getBitmapCacheKey(mRequest, mCallerContext);
+    Object otherCallerContext = new Object();
+    BitmapMemoryCacheKey otherKey =
+        (BitmapMemoryCacheKey) mFactory.getBitmapCacheKey(mRequest, otherCallerContext);
+
+    assertNotSame(bitmapKey, otherKey);
+    assertEquals(bitmapKey, otherKey);
+    assertSame(otherCallerContext, otherKey.getCallerContext());
+    assertEquals(2, mDelegate.mCreatedKeys);
+  }
+
+  @Test
+  public void testOtherSourceUriIsNotMemoized() {
+    Uri otherUri = Uri.parse(URI + "&other");
+    CacheKey key = mFactory.getEncodedCacheKey(mRequest, otherUri, mCallerContext);
+
+    assertEquals(otherUri.toString(), key.getUriString());
+    assertNotSame(key, mFactory.getEncodedCacheKey(mRequest, otherUri, mCallerContext));
+  }
+
+  @Test
+  public void testEqualKeysHaveEqualFingerprints() {
+    mFactory = new MemoizingCacheKeyFactory(DefaultCacheKeyFactory.getInstance());
+    BitmapMemoryCacheKey key =
+        (BitmapMemoryCacheKey) mFactory.getBitmapCacheKey(mRequest, mCallerContext);
+    BitmapMemoryCacheKey otherKey =
+        (BitmapMemoryCacheKey) mFactory.getBitmapCacheKey(mRequest, new Object());
+
+    assertNotSame(key, otherKey);
+    assertEquals(key, otherKey);
+    assertEquals(key.getFingerprint(), otherKey.getFingerprint());
+  }
+
+  @Test
+  public void testFingerprintDiffersWithFields() {
+    ImageRequest resizedRequest =
+        ImageRequestBuilder.newBuilderWithSource(Uri.parse(URI))
+            .setResizeOptions(new ResizeOptions(100, 100))
+            .build();
+    BitmapMemoryCacheKey key =
+        (BitmapMemoryCacheKey) mFactory.getBitmapCacheKey(mRequest, mCallerContext);
+    BitmapMemoryCacheKey resizedKey =
+        (BitmapMemoryCacheKey) mFactory.getBitmapCacheKey(resizedRequest, mCallerContext);
+
+    assertNotEquals(key.getFingerprint(), resizedKey.getFingerprint());
+    assertNotEquals(key, resizedKey);
+  }
+
+  private static class CountingCacheKeyFactory extends DefaultCacheKeyFactory {
+
+    int mCreatedKeys;
+
+    @Override
+    public CacheKey getBitmapCacheKey(ImageRequest request, Object callerContext) {
+      mCreatedKeys++;
+      return super.getBitmapCacheKey(request, callerContext);
+    }
+
+    @Override
+    public CacheKey getPostprocessedBitmapCacheKey(ImageRequest request, Object callerContext) {
+      mCreatedKeys++;
+      return super.getPostprocessedBitmapCacheKey(request, callerContext);
+    }
+
+    @Override
+    public CacheKey getEncodedCacheKey(ImageRequest request, Uri sourceUri, Object callerContext) {
+      mCreatedKeys++;
+      return super.getEncodedCacheKey(request, sourceUri, callerContext);
+    }
+  }
+}
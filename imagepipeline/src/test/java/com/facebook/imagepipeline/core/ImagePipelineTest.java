@@ -24,12 +24,14 @@ import android.net.Uri;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.cache.common.MultiCacheKey;
 import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.executors.CallerThreadExecutor;
 import com.facebook.common.internal.Predicate;
 import com.facebook.common.internal.Sets;
 import com.facebook.common.internal.Supplier;
 import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.datasource.DataSource;
+import com.facebook.datasource.DataSubscriber;
 import com.facebook.imagepipeline.cache.BitmapMemoryCacheKey;
 import com.facebook.imagepipeline.cache.BufferedDiskCache;
 import com.facebook.imagepipeline.cache.CacheKeyFactory;
@@ -307,6 +309,41 @@ public class ImagePipelineTest {
     assertEquals(producerContextArgumentCaptor.getValue().getPriority(), Priority.HIGH);
   }
 
+  @Test
+  public void testFetchDecodedImageLazily_submitsOnFirstSubscribe() {
+    when(mLazyDataSourceSupplier.get()).thenReturn(true);
+    Producer<CloseableReference<CloseableImage>> decodedSequence = mock(Producer.class);
+    when(mProducerSequenceFactory.getDecodedImageProducerSequence(mImageRequest))
+        .thenReturn(decodedSequence);
+    DataSource<CloseableReference<CloseableImage>> dataSource =
+        mImagePipeline.fetchDecodedImage(mImageRequest, mCallerContext);
+    assertFalse(dataSource.isFinished());
+    verifyNoMoreInteractions(
+        mProducerSequenceFactory, decodedSequence, mRequestListener1, mRequestListener2);
+
+    dataSource.subscribe(mock(DataSubscriber.class), CallerThreadExecutor.getInstance());
+
+    verify(mRequestListener1).onRequestStart(mImageRequest, mCallerContext, "0", false);
+    verify(mRequestListener2).onRequestStart(mImageRequest, mCallerContext, "0", false);
+    verify(decodedSequence).produceResults(any(Consumer.class), any(ProducerContext.class));
+  }
+
+  @Test
+  public void testFetchDecodedImageLazily_whenClosedBeforeSubscribe_neverSubmits() {
+    when(mLazyDataSourceSupplier.get()).thenReturn(true);
+    Producer<CloseableReference<CloseableImage>> decodedSequence = mock(Producer.class);
+    when(mProducerSequenceFactory.getDecodedImageProducerSequence(mImageRequest))
+        .thenReturn(decodedSequence);
+    DataSource<CloseableReference<CloseableImage>> dataSource =
+        mImagePipeline.fetchDecodedImage(mImageRequest, mCallerContext);
+
+    assertTrue(dataSource.close());
+    dataSource.subscribe(mock(DataSubscriber.class), CallerThreadExecutor.getInstance());
+
+    verifyNoMoreInteractions(
+        mProducerSequenceFactory, decodedSequence, mRequestListener1, mRequestListener2);
+  }
+
   @Test
   public void testFetchDecodedImageWithRequestLevel() {
     Producer<CloseableReference<CloseableImage>> decodedSequence = mock(Producer.class);
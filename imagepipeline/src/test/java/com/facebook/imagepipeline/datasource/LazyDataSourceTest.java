@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.datasource;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.common.internal.Supplier;
+import com.facebook.datasource.DataSource;
+import com.facebook.datasource.DataSubscriber;
+import com.facebook.imagepipeline.request.ImageRequest;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class LazyDataSourceTest {
+
+  private ImageRequest mImageRequest;
+  private Supplier<DataSource<Object>> mSupplier;
+  private DataSource<Object> mDelegate;
+  private DataSubscriber<Object> mDataSubscriber;
+  private Executor mExecutor;
+  private LazyDataSource<Object> mDataSource;
+
+  @Before
+  public void setUp() {
+    mImageRequest = mock(ImageRequest.class);
+    mSupplier = mock(Supplier.class);
+    mDelegate = mock(DataSource.class);
+    mDataSubscriber = mock(DataSubscriber.class);
+    mExecutor = CallerThreadExecutor.getInstance();
+    when(mSupplier.get()).thenReturn(mDelegate);
+    mDataSource = (LazyDataSource<Object>) LazyDataSource.create(mImageRequest, mSupplier);
+  }
+
+  @Test
+  public void testNotSubmittedBeforeSubscription() {
+    assertFalse(mDataSource.isSubmitted());
+    assertFalse(mDataSource.isFinished());
+    assertFalse(mDataSource.hasResult());
+    assertNull(mDataSource.getResult());
+    assertEquals(0, mDataSource.getProgress(), 0);
+    assertSame(mImageRequest, mDataSource.getImageRequest());
+    verifyZeroInteractions(mSupplier);
+  }
+
+  @Test
+  public void testCloseBeforeSubscription() {
+    assertTrue(mDataSource.close());
+    assertTrue(mDataSource.isClosed());
+    assertFalse(mDataSource.close());
+
+    mDataSource.subscribe(mDataSubscriber, mExecutor);
+    verifyZeroInteractions(mSupplier, mDelegate, mDataSubscriber);
+  }
+
+  @Test
+  public void testSubmittedOnFirstSubscription() {
+    mDataSource.subscribe(mDataSubscriber, mExecutor);
+    assertTrue(mDataSource.isSubmitted());
+    verify(mDelegate).subscribe(mDataSubscriber, mExecutor);
+
+    DataSubscriber<Object> otherSubscriber = mock(DataSubscriber.class);
+    mDataSource.subscribe(otherSubscriber, mExecutor);
+    verify(mDelegate).subscribe(otherSubscriber, mExecutor);
+    verify(mSupplier, times(1)).get();
+  }
+
+  @Test
+  public void testDelegatesStateOnceSubmitted() {
+    Object result = new Object();
+    Throwable throwable = new Throwable();
+    when(mDelegate.isFinished()).thenReturn(true);
+    when(mDelegate.hasResult()).thenReturn(true);
+    when(mDelegate.getResult()).thenReturn(result);
+    when(mDelegate.hasFailed()).thenReturn(true);
+    when(mDelegate.getFailureCause()).thenReturn(throwable);
+    when(mDelegate.getProgress()).thenReturn(0.5f);
+
+    mDataSource.subscribe(mDataSubscriber, mExecutor);
+    assertTrue(mDataSource.isFinished());
+    assertTrue(mDataSource.hasResult());
+    assertSame(result, mDataSource.getResult());
+    assertTrue(mDataSource.hasFailed());
+    assertSame(throwable, mDataSource.getFailureCause());
+    assertEquals(0.5f, mDataSource.getProgress(), 0);
+  }
+
+  @Test
+  public void testCloseAfterSubscription() {
+    mDataSource.subscribe(mDataSubscriber, mExecutor);
+    assertTrue(mDataSource.close());
+    verify(mDelegate).close();
+    assertTrue(mDataSource.isClosed());
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RegionCacheTest {
+
+  // a 10x10 ARGB_8888 bitmap
+  private static final int BITMAP_SIZE = 400;
+
+  private final CacheKey mImageKey = new SimpleCacheKey("image");
+  private MemoryTrimmableRegistry mMemoryTrimmableRegistry;
+  private RegionCache mRegionCache;
+
+  @Before
+  public void setup() {
+    mMemoryTrimmableRegistry = mock(MemoryTrimmableRegistry.class);
+    mRegionCache = new RegionCache(mMemoryTrimmableRegistry, 3 * BITMAP_SIZE);
+  }
+
+  @Test
+  public void testGetReturnsOverlappingRegionsOfSameSampleSize() {
+    cache(mImageKey, 1, new Rect(0, 0, 10, 10));
+    cache(mImageKey, 1, new Rect(10, 0, 20, 10));
+    cache(mImageKey, 2, new Rect(0, 0, 20, 20));
+
+    List<RegionCache.CachedRegion> regions = mRegionCache.get(mImageKey, 1, new Rect(5, 5, 8, 8));
+
+    assertEquals(1, regions.size());
+    assertEquals(new Rect(0, 0, 10, 10), regions.get(0).rect);
+    assertTrue(regions.get(0).bitmapRef.isValid());
+    closeAll(regions);
+    assertTrue(mRegionCache.get(new SimpleCacheKey("other"), 1, new Rect(0, 0, 20, 20)).isEmpty());
+  }
+
+  @Test
+  public void testCachingSameRegionKeepsCachedBitmap() {
+    CloseableReference<Bitmap> first = cache(mImageKey, 1, new Rect(0, 0, 10, 10));
+    CloseableReference<Bitmap> second = cache(mImageKey, 1, new Rect(0, 0, 10, 10));
+
+    assertSame(first.get(), second.get());
+    assertEquals(1, mRegionCache.getCount());
+    assertEquals(BITMAP_SIZE, mRegionCache.getSizeInBytes());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedRegionsAreEvicted() {
+    CloseableReference<Bitmap> first = cache(mImageKey, 1, new Rect(0, 0, 10, 10));
+    cache(mImageKey, 1, new Rect(10, 0, 20, 10));
+    cache(mImageKey, 1, new Rect(20, 0, 30, 10));
+    closeAll(mRegionCache.get(mImageKey, 1, new Rect(0, 0, 10, 10)));
+    first.close();
+
+    cache(mImageKey, 1, new Rect(30, 0, 40, 10));
+
+    assertEquals(3, mRegionCache.getCount());
+    assertEquals(3 * BITMAP_SIZE, mRegionCache.getSizeInBytes());
+    List<RegionCache.CachedRegion> regions = mRegionCache.get(mImageKey, 1, new Rect(0, 0, 40, 10));
+    assertEquals(3, regions.size());
+    for (RegionCache.CachedRegion region : regions) {
+      assertNotEquals(new Rect(10, 0, 20, 10), region.rect);
+    }
+    closeAll(regions);
+  }
+
+  @Test
+  public void testTooBigBitmapIsNotCached() {
+    CloseableReference<Bitmap> bitmapRef =
+        CloseableReference.of(
+            Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888),
+            SimpleBitmapReleaser.getInstance());
+
+    assertNull(mRegionCache.cache(mImageKey, 100, 100, 1, new Rect(0, 0, 20, 20), bitmapRef));
+    assertEquals(0, mRegionCache.getCount());
+    bitmapRef.close();
+  }
+
+  @Test
+  public void testRemoveAllClosesRegionsOfImage() {
+    CloseableReference<Bitmap> otherRef =
+        cache(new SimpleCacheKey("other"), 1, new Rect(0, 0, 10, 10));
+    cache(mImageKey, 1, new Rect(0, 0, 10, 10));
+    CloseableReference<Bitmap> cachedRef = cache(mImageKey, 2, new Rect(0, 0, 20, 20));
+    Bitmap bitmap = cachedRef.get();
+    cachedRef.close();
+
+    mRegionCache.removeAll(mImageKey);
+
+    assertEquals(1, mRegionCache.getCount());
+    assertEquals(BITMAP_SIZE, mRegionCache.getSizeInBytes());
+    assertTrue(bitmap.isRecycled());
+    assertFalse(otherRef.get().isRecycled());
+    assertTrue(mRegionCache.get(mImageKey, 2, new Rect(0, 0, 20, 20)).isEmpty());
+  }
+
+  @Test
+  public void testTrimEvictsAllRegions() {
+    verify(mMemoryTrimmableRegistry).registerMemoryTrimmable(mRegionCache);
+    CloseableReference<Bitmap> cachedRef = cache(mImageKey, 1, new Rect(0, 0, 10, 10));
+    Bitmap bitmap = cachedRef.get();
+    cachedRef.close();
+    cache(new SimpleCacheKey("other"), 1, new Rect(0, 0, 10, 10)).close();
+
+    mRegionCache.trim(MemoryTrimType.OnSystemLowMemoryWhileAppInForeground);
+
+    assertEquals(0, mRegionCache.getCount());
+    assertEquals(0, mRegionCache.getSizeInBytes());
+    assertTrue(bitmap.isRecycled());
+    assertTrue(mRegionCache.get(mImageKey, 1, new Rect(0, 0, 10, 10)).isEmpty());
+  }
+
+  private CloseableReference<Bitmap> cache(CacheKey imageKey, int sampleSize, Rect rect) {
+    CloseableReference<Bitmap> bitmapRef =
+        CloseableReference.of(
+            Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888),
+            SimpleBitmapReleaser.getInstance());
+    try {
+      CloseableReference<Bitmap> cachedRef =
+          mRegionCache.cache(imageKey, 100, 100, sampleSize, rect, bitmapRef);
+      assertNotNull(cachedRef);
+      return cachedRef;
+    } finally {
+      bitmapRef.close();
+    }
+  }
+
+  private static void closeAll(List<RegionCache.CachedRegion> regions) {
+    for (RegionCache.CachedRegion region : regions) {
+      region.bitmapRef.close();
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.memory.NoOpMemoryTrimmableRegistry;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.testing.TrivialPooledByteBuffer;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RegionDecodeServiceTest {
+
+  private static final int TILE_SIZE_PX = 512;
+
+  @Test
+  public void testMissingTilesAreDecodedInParallel_andCachedTilesAreReused() throws IOException {
+    final AtomicInteger decodeCount = new AtomicInteger();
+    // released once both tiles of the region are being decoded at the same time
+    final CountDownLatch concurrentDecodes = new CountDownLatch(2);
+    Answer<Bitmap> decodeTile =
+        new Answer<Bitmap>() {
+          @Override
+          public Bitmap answer(InvocationOnMock invocation) throws InterruptedException {
+            concurrentDecodes.countDown();
+            if (!concurrentDecodes.await(5, TimeUnit.SECONDS)) {
+              throw new IllegalStateException("tiles were not decoded in parallel");
+            }
+            decodeCount.incrementAndGet();
+            return Bitmap.createBitmap(TILE_SIZE_PX, TILE_SIZE_PX, Bitmap.Config.ARGB_8888);
+          }
+        };
+    BitmapRegionDecoder firstDecoder = mock(BitmapRegionDecoder.class);
+    BitmapRegionDecoder secondDecoder = mock(BitmapRegionDecoder.class);
+    when(firstDecoder.decodeRegion(any(Rect.class), any(BitmapFactory.Options.class)))
+        .thenAnswer(decodeTile);
+    when(secondDecoder.decodeRegion(any(Rect.class), any(BitmapFactory.Options.class)))
+        .thenAnswer(decodeTile);
+
+    CacheKey imageKey = new SimpleCacheKey("large_image");
+    EncodedImage encodedImage =
+        new EncodedImage(CloseableReference.of(new TrivialPooledByteBuffer(new byte[16])));
+    encodedImage.setWidth(2 * TILE_SIZE_PX);
+    encodedImage.setHeight(TILE_SIZE_PX);
+    RegionDecoderPool decoderPool = mock(RegionDecoderPool.class);
+    when(decoderPool.getMaxDecodersPerImage()).thenReturn(2);
+    when(decoderPool.acquire(imageKey, encodedImage)).thenReturn(firstDecoder, secondDecoder);
+    PlatformBitmapFactory bitmapFactory = mock(PlatformBitmapFactory.class);
+    when(bitmapFactory.createBitmap(anyInt(), anyInt(), any(Bitmap.Config.class)))
+        .thenAnswer(
+            new Answer<CloseableReference<Bitmap>>() {
+              @Override
+              public CloseableReference<Bitmap> answer(InvocationOnMock invocation) {
+                return CloseableReference.of(
+                    Bitmap.createBitmap(
+                        (Integer) invocation.getArgument(0),
+                        (Integer) invocation.getArgument(1),
+                        (Bitmap.Config) invocation.getArgument(2)),
+                    SimpleBitmapReleaser.getInstance());
+              }
+            });
+    ExecutorService tileDecodeExecutor = Executors.newSingleThreadExecutor();
+    RegionDecodeService regionDecodeService =
+        new RegionDecodeService(
+            decoderPool,
+            new RegionCache(NoOpMemoryTrimmableRegistry.getInstance(), 4 * 1024 * 1024),
+            bitmapFactory,
+            TILE_SIZE_PX,
+            tileDecodeExecutor);
+    Rect region = new Rect(256, 0, 2 * TILE_SIZE_PX - 256, TILE_SIZE_PX);
+
+    try {
+      CloseableReference<Bitmap> regionRef =
+          regionDecodeService.decodeRegion(
+              imageKey, encodedImage, region, 1f, Bitmap.Config.ARGB_8888);
+      assertEquals(TILE_SIZE_PX, regionRef.get().getWidth());
+      assertEquals(2, decodeCount.get());
+      verify(decoderPool).release(firstDecoder);
+      verify(decoderPool).release(secondDecoder);
+      CloseableReference.closeSafely(regionRef);
+
+      // an overlapping region is drawn from the cached tiles
+      regionRef =
+          regionDecodeService.decodeRegion(
+              imageKey, encodedImage, new Rect(region), 1f, Bitmap.Config.ARGB_8888);
+      assertEquals(2, decodeCount.get());
+      CloseableReference.closeSafely(regionRef);
+    } finally {
+      tileDecodeExecutor.shutdownNow();
+      EncodedImage.closeSafely(encodedImage);
+    }
+  }
+
+  @Test
+  public void testTileDrawingRects_withoutSampling() {
+    Rect src = new Rect();
+    Rect dst = new Rect();
+
+    assertTrue(
+        RegionDecodeService.getTileDrawingRects(
+            new Rect(512, 0, 1024, 512), new Rect(101, 51, 901, 651), 1, src, dst));
+
+    assertEquals(new Rect(0, 51, 389, 512), src);
+    assertEquals(new Rect(411, 0, 800, 461), dst);
+  }
+
+  @Test
+  public void testTileDrawingRects_withSampling() {
+    // a 800x600 region decoded with a sample size of 2 is 400x300
+    Rect region = new Rect(101, 51, 901, 651);
+    Rect src = new Rect();
+    Rect dst = new Rect();
+
+    assertTrue(
+        RegionDecodeService.getTileDrawingRects(new Rect(0, 0, 512, 512), region, 2, src, dst));
+    assertEquals(new Rect(50, 25, 256, 256), src);
+    assertEquals(new Rect(0, 0, 206, 231), dst);
+
+    assertTrue(
+        RegionDecodeService.getTileDrawingRects(new Rect(512, 0, 1024, 512), region, 2, src, dst));
+    assertEquals(new Rect(0, 25, 195, 256), src);
+    // rounded outwards, overlapping the previous tile rather than leaving a gap
+    assertEquals(new Rect(205, 0, 400, 231), dst);
+
+    assertTrue(
+        RegionDecodeService.getTileDrawingRects(
+            new Rect(512, 512, 1024, 1024), region, 2, src, dst));
+    assertEquals(new Rect(0, 0, 195, 70), src);
+    assertEquals(new Rect(205, 230, 400, 300), dst);
+  }
+
+  @Test
+  public void testTileDrawingRects_whenTileOutsideOfRegion() {
+    assertFalse(
+        RegionDecodeService.getTileDrawingRects(
+            new Rect(1024, 0, 1536, 512),
+            new Rect(101, 51, 901, 651),
+            2,
+            new Rect(),
+            new Rect()));
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+import android.graphics.BitmapRegionDecoder;
+import android.os.Build;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.testing.TrivialPooledByteBuffer;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareOnlyThisForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@PrepareOnlyThisForTest(BitmapRegionDecoder.class)
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP)
+@PowerMockIgnore({"org.mockito.*", "org.robolectric.*", "androidx.*", "android.*"})
+public class RegionDecoderPoolTest {
+
+  @Rule public PowerMockRule rule = new PowerMockRule();
+
+  private final CacheKey mFirstKey = new SimpleCacheKey("first");
+  private final CacheKey mSecondKey = new SimpleCacheKey("second");
+  private final CacheKey mThirdKey = new SimpleCacheKey("third");
+
+  private EncodedImage mEncodedImage;
+  private int mOpenedDecoderCount;
+
+  @Before
+  public void setUp() throws IOException {
+    mEncodedImage =
+        new EncodedImage(CloseableReference.of(new TrivialPooledByteBuffer(new byte[16])));
+    mockStatic(BitmapRegionDecoder.class);
+    when(BitmapRegionDecoder.newInstance(any(InputStream.class), anyBoolean()))
+        .thenAnswer(
+            new Answer<BitmapRegionDecoder>() {
+              @Override
+              public BitmapRegionDecoder answer(InvocationOnMock invocation) {
+                mOpenedDecoderCount++;
+                return mock(BitmapRegionDecoder.class);
+              }
+            });
+  }
+
+  @Test
+  public void testReleasedDecoderIsReused() throws IOException {
+    RegionDecoderPool pool = new RegionDecoderPool(2, 2);
+
+    BitmapRegionDecoder decoder = pool.acquire(mFirstKey, mEncodedImage);
+    pool.release(decoder);
+
+    assertEquals(1, pool.getIdleDecoderCount(mFirstKey));
+    assertSame(decoder, pool.acquire(mFirstKey, mEncodedImage));
+    assertEquals(0, pool.getIdleDecoderCount(mFirstKey));
+    assertEquals(1, mOpenedDecoderCount);
+    verify(decoder, never()).recycle();
+  }
+
+  @Test
+  public void testDecoderInUseIsNotShared() throws IOException {
+    RegionDecoderPool pool = new RegionDecoderPool(1, 2);
+
+    BitmapRegionDecoder first = pool.acquire(mFirstKey, mEncodedImage);
+    BitmapRegionDecoder second = pool.acquire(mFirstKey, mEncodedImage);
+    assertNotSame(first, second);
+    assertEquals(2, mOpenedDecoderCount);
+
+    pool.release(first);
+    pool.release(second);
+
+    // only one idle decoder is kept per image
+    assertEquals(1, pool.getIdleDecoderCount(mFirstKey));
+    verify(first, never()).recycle();
+    verify(second).recycle();
+  }
+
+  @Test
+  public void testLeastRecentlyUsedImageIsTrimmed() throws IOException {
+    RegionDecoderPool pool = new RegionDecoderPool(1, 2);
+    BitmapRegionDecoder first = acquireAndRelease(pool, mFirstKey);
+    BitmapRegionDecoder second = acquireAndRelease(pool, mSecondKey);
+    assertSame(first, acquireAndRelease(pool, mFirstKey));
+
+    acquireAndRelease(pool, mThirdKey);
+
+    assertEquals(2, pool.getImageCount());
+    verify(second).recycle();
+    verify(first, never()).recycle();
+    assertEquals(1, pool.getIdleDecoderCount(mFirstKey));
+    assertEquals(0, pool.getIdleDecoderCount(mSecondKey));
+  }
+
+  @Test
+  public void testImageWithDecoderInUseIsNotTrimmed() throws IOException {
+    RegionDecoderPool pool = new RegionDecoderPool(1, 1);
+    BitmapRegionDecoder first = pool.acquire(mFirstKey, mEncodedImage);
+
+    BitmapRegionDecoder second = acquireAndRelease(pool, mSecondKey);
+
+    assertEquals(2, pool.getImageCount());
+    pool.release(first);
+    verify(first, never()).recycle();
+    assertEquals(1, pool.getIdleDecoderCount(mFirstKey));
+
+    // the first image is trimmed once it is not in use anymore
+    acquireAndRelease(pool, mThirdKey);
+
+    assertEquals(1, pool.getImageCount());
+    verify(first).recycle();
+    verify(second).recycle();
+    assertEquals(1, pool.getIdleDecoderCount(mThirdKey));
+  }
+
+  @Test
+  public void testRemove_recyclesIdleDecodersNow_andDecodersInUseOnRelease() throws IOException {
+    RegionDecoderPool pool = new RegionDecoderPool(2, 2);
+    BitmapRegionDecoder idle = pool.acquire(mFirstKey, mEncodedImage);
+    BitmapRegionDecoder inUse = pool.acquire(mFirstKey, mEncodedImage);
+    pool.release(idle);
+
+    pool.remove(mFirstKey);
+
+    verify(idle).recycle();
+    verify(inUse, never()).recycle();
+    assertEquals(0, pool.getImageCount());
+
+    // a decoder opened after the removal is kept, the one in use before is not
+    BitmapRegionDecoder reopened = pool.acquire(mFirstKey, mEncodedImage);
+    pool.release(inUse);
+    pool.release(reopened);
+
+    verify(inUse).recycle();
+    verify(reopened, never()).recycle();
+    assertEquals(1, pool.getIdleDecoderCount(mFirstKey));
+  }
+
+  @Test
+  public void testClearRecyclesIdleDecoders() throws IOException {
+    RegionDecoderPool pool = new RegionDecoderPool(1, 2);
+    BitmapRegionDecoder first = acquireAndRelease(pool, mFirstKey);
+    BitmapRegionDecoder second = acquireAndRelease(pool, mSecondKey);
+
+    pool.clear();
+
+    assertEquals(0, pool.getImageCount());
+    verify(first).recycle();
+    verify(second).recycle();
+  }
+
+  private BitmapRegionDecoder acquireAndRelease(RegionDecoderPool pool, CacheKey imageKey)
+      throws IOException {
+    BitmapRegionDecoder decoder = pool.acquire(imageKey, mEncodedImage);
+    pool.release(decoder);
+    return decoder;
+  }
+}
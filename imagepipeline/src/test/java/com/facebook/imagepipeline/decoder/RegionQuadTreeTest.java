@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Rect;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RegionQuadTreeTest {
+
+  @Test
+  public void testQueryReturnsOverlappingValues() {
+    RegionQuadTree<String> tree = new RegionQuadTree<>(1000, 1000);
+    tree.insert(new Rect(0, 0, 100, 100), "topLeft");
+    tree.insert(new Rect(900, 900, 1000, 1000), "bottomRight");
+    tree.insert(new Rect(0, 0, 1000, 1000), "whole");
+
+    List<String> values = tree.query(new Rect(50, 50, 150, 150));
+
+    assertEquals(2, values.size());
+    assertTrue(values.contains("topLeft"));
+    assertTrue(values.contains("whole"));
+    // touching edges do not overlap
+    assertEquals(1, tree.query(new Rect(100, 100, 900, 900)).size());
+    assertTrue(tree.query(new Rect(10, 10, 10, 20)).isEmpty());
+  }
+
+  @Test
+  public void testQueryAfterSplit() {
+    RegionQuadTree<Integer> tree = new RegionQuadTree<>(1024, 1024);
+    // a grid of 16 x 16 tiles, enough to split the tree several times
+    for (int row = 0; row < 16; row++) {
+      for (int column = 0; column < 16; column++) {
+        tree.insert(
+            new Rect(column * 64, row * 64, (column + 1) * 64, (row + 1) * 64), row * 16 + column);
+      }
+    }
+    assertEquals(256, tree.size());
+
+    List<Integer> values = tree.query(new Rect(100, 100, 200, 140));
+
+    assertEquals(6, values.size());
+    for (int column = 1; column <= 3; column++) {
+      assertTrue(values.contains(16 + column));
+      assertTrue(values.contains(32 + column));
+    }
+    assertEquals(256, tree.query(new Rect(0, 0, 1024, 1024)).size());
+  }
+
+  @Test
+  public void testRemove() {
+    RegionQuadTree<String> tree = new RegionQuadTree<>(1000, 1000);
+    for (int i = 0; i <= RegionQuadTree.MAX_VALUES_PER_NODE; i++) {
+      tree.insert(new Rect(i * 10, 0, i * 10 + 10, 10), "tile" + i);
+    }
+    String value = "value";
+    Rect rect = new Rect(10, 10, 20, 20);
+    tree.insert(rect, value);
+
+    assertFalse(tree.remove(new Rect(10, 10, 20, 21), value));
+    assertFalse(tree.remove(rect, "other"));
+    assertTrue(tree.remove(rect, value));
+
+    assertFalse(tree.query(rect).contains(value));
+    assertEquals(RegionQuadTree.MAX_VALUES_PER_NODE + 1, tree.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInsertOutsideOfTree() {
+    new RegionQuadTree<String>(100, 100).insert(new Rect(50, 50, 150, 100), "value");
+  }
+}
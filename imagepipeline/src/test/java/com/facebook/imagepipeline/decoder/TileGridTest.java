@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class TileGridTest {
+
+  @Test
+  public void testGetSampleSizeForScale() {
+    assertEquals(1, TileGrid.getSampleSizeForScale(2f));
+    assertEquals(1, TileGrid.getSampleSizeForScale(1f));
+    assertEquals(1, TileGrid.getSampleSizeForScale(0.6f));
+    assertEquals(2, TileGrid.getSampleSizeForScale(0.5f));
+    assertEquals(2, TileGrid.getSampleSizeForScale(0.3f));
+    assertEquals(4, TileGrid.getSampleSizeForScale(0.25f));
+    assertEquals(8, TileGrid.getSampleSizeForScale(0.1f));
+  }
+
+  @Test
+  public void testTilesAreAlignedAndClamped() {
+    TileGrid grid = TileGrid.forViewport(4000, 3000, 1000, 1000, 3000, 2500, 0.25f, 512);
+
+    assertEquals(4, grid.getSampleSize());
+    List<TileGrid.Tile> tiles = grid.getTiles();
+    assertEquals(4, tiles.size());
+    assertTile(tiles.get(0), 0, 0, 0, 0, 2048, 2048);
+    assertTile(tiles.get(1), 1, 0, 2048, 0, 4000, 2048);
+    assertTile(tiles.get(2), 0, 1, 0, 2048, 2048, 3000);
+    assertTile(tiles.get(3), 1, 1, 2048, 2048, 4000, 3000);
+  }
+
+  @Test
+  public void testSameTileForOverlappingViewports() {
+    TileGrid first = TileGrid.forViewport(4000, 3000, 0, 0, 100, 100, 1f, 512);
+    TileGrid second = TileGrid.forViewport(4000, 3000, 400, 400, 500, 500, 1f, 512);
+
+    assertEquals(1, first.getTiles().size());
+    assertEquals(1, second.getTiles().size());
+    assertTile(first.getTiles().get(0), 0, 0, 0, 0, 512, 512);
+    assertTile(second.getTiles().get(0), 0, 0, 0, 0, 512, 512);
+  }
+
+  @Test
+  public void testViewportOutsideOfImage() {
+    TileGrid grid = TileGrid.forViewport(4000, 3000, 5000, 0, 6000, 100, 1f, 512);
+
+    assertTrue(grid.getTiles().isEmpty());
+  }
+
+  @Test
+  public void testViewportPartiallyOutsideOfImage() {
+    TileGrid grid = TileGrid.forViewport(1000, 1000, -200, -200, 300, 300, 1f, 512);
+
+    assertEquals(1, grid.getTiles().size());
+    assertTile(grid.getTiles().get(0), 0, 0, 0, 0, 512, 512);
+  }
+
+  private static void assertTile(
+      TileGrid.Tile tile, int column, int row, int left, int top, int right, int bottom) {
+    assertEquals(column, tile.column);
+    assertEquals(row, tile.row);
+    assertEquals(left, tile.left);
+    assertEquals(top, tile.top);
+    assertEquals(right, tile.right);
+    assertEquals(bottom, tile.bottom);
+  }
+}
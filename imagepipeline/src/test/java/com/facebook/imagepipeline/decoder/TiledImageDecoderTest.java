@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import android.graphics.ColorSpace;
+import android.graphics.Rect;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.datasource.DataSource;
+import com.facebook.datasource.DataSources;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import com.facebook.imagepipeline.cache.MemoryCache;
+import com.facebook.imagepipeline.cache.TileCacheKey;
+import com.facebook.imagepipeline.common.ImageDecodeOptions;
+import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.platform.PlatformDecoder;
+import com.facebook.imagepipeline.testing.TrivialPooledByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class TiledImageDecoderTest {
+
+  private static final int TILE_SIZE_PX = 512;
+
+  private final CacheKey mSourceKey = new SimpleCacheKey("large_image");
+  private final Map<CacheKey, CloseableReference<CloseableImage>> mCachedTiles =
+      new ConcurrentHashMap<>();
+  private final AtomicInteger mDecodeCount = new AtomicInteger();
+  // released once both tiles of the first viewport are being decoded at the same time
+  private final CountDownLatch mConcurrentDecodes = new CountDownLatch(2);
+
+  private ExecutorService mDecodeExecutor;
+  private EncodedImage mEncodedImage;
+  private TiledImageDecoder mTiledImageDecoder;
+
+  @Before
+  public void setUp() {
+    PlatformDecoder platformDecoder = mock(PlatformDecoder.class);
+    when(platformDecoder.decodeFromEncodedImageWithColorSpace(
+            any(EncodedImage.class),
+            any(Bitmap.Config.class),
+            any(Rect.class),
+            nullable(ColorSpace.class)))
+        .thenAnswer(
+            new Answer<CloseableReference<Bitmap>>() {
+              @Override
+              public CloseableReference<Bitmap> answer(InvocationOnMock invocation)
+                  throws InterruptedException {
+                mConcurrentDecodes.countDown();
+                if (!mConcurrentDecodes.await(5, TimeUnit.SECONDS)) {
+                  throw new IllegalStateException("tiles were not decoded concurrently");
+                }
+                mDecodeCount.incrementAndGet();
+                return CloseableReference.of(
+                    Bitmap.createBitmap(TILE_SIZE_PX, TILE_SIZE_PX, Bitmap.Config.ARGB_8888),
+                    SimpleBitmapReleaser.getInstance());
+              }
+            });
+
+    MemoryCache<CacheKey, CloseableImage> bitmapMemoryCache = mock(MemoryCache.class);
+    when(bitmapMemoryCache.get(any(CacheKey.class)))
+        .thenAnswer(
+            new Answer<CloseableReference<CloseableImage>>() {
+              @Override
+              public CloseableReference<CloseableImage> answer(InvocationOnMock invocation) {
+                return CloseableReference.cloneOrNull(
+                    mCachedTiles.get((CacheKey) invocation.getArgument(0)));
+              }
+            });
+    when(bitmapMemoryCache.cache(any(CacheKey.class), any(CloseableReference.class)))
+        .thenAnswer(
+            new Answer<CloseableReference<CloseableImage>>() {
+              @Override
+              public CloseableReference<CloseableImage> answer(InvocationOnMock invocation) {
+                CloseableReference<CloseableImage> imageRef = invocation.getArgument(1);
+                mCachedTiles.put((CacheKey) invocation.getArgument(0), imageRef.clone());
+                return imageRef.clone();
+              }
+            });
+
+    mDecodeExecutor = Executors.newFixedThreadPool(2);
+    mEncodedImage =
+        new EncodedImage(CloseableReference.of(new TrivialPooledByteBuffer(new byte[16])));
+    mEncodedImage.setWidth(4 * TILE_SIZE_PX);
+    mEncodedImage.setHeight(TILE_SIZE_PX);
+    mTiledImageDecoder =
+        new TiledImageDecoder(platformDecoder, bitmapMemoryCache, mDecodeExecutor, TILE_SIZE_PX);
+  }
+
+  @After
+  public void tearDown() {
+    mDecodeExecutor.shutdownNow();
+    EncodedImage.closeSafely(mEncodedImage);
+  }
+
+  @Test
+  public void testTilesAreDecodedConcurrently_andServedFromCacheWhenPanningBack()
+      throws Throwable {
+    Rect leftViewport = new Rect(0, 0, 2 * TILE_SIZE_PX, TILE_SIZE_PX);
+    Rect rightViewport = new Rect(2 * TILE_SIZE_PX, 0, 4 * TILE_SIZE_PX, TILE_SIZE_PX);
+
+    List<CloseableImage> leftTiles = fetchTiles(leftViewport);
+    assertEquals(2, leftTiles.size());
+    assertEquals(2, mDecodeCount.get());
+
+    fetchTiles(rightViewport);
+    assertEquals(4, mDecodeCount.get());
+    assertEquals(4, mCachedTiles.size());
+
+    // panning back to the left serves the tiles from the bitmap memory cache
+    List<CloseableImage> cachedLeftTiles = fetchTiles(leftViewport);
+    assertEquals(4, mDecodeCount.get());
+    assertSame(leftTiles.get(0), cachedLeftTiles.get(0));
+    assertSame(leftTiles.get(1), cachedLeftTiles.get(1));
+    assertSame(
+        leftTiles.get(1),
+        mCachedTiles.get(new TileCacheKey(mSourceKey, 1, TILE_SIZE_PX, 0, TILE_SIZE_PX)).get());
+  }
+
+  private List<CloseableImage> fetchTiles(Rect viewport) throws Throwable {
+    TileGrid grid = mTiledImageDecoder.getTileGrid(mEncodedImage, viewport, 1f);
+    List<DataSource<CloseableReference<CloseableImage>>> dataSources =
+        mTiledImageDecoder.fetchTiles(
+            mSourceKey, mEncodedImage, grid, ImageDecodeOptions.defaults());
+    List<CloseableImage> tiles = new ArrayList<>(dataSources.size());
+    for (DataSource<CloseableReference<CloseableImage>> dataSource : dataSources) {
+      CloseableReference<CloseableImage> tileRef = DataSources.waitForFinalResult(dataSource);
+      assertNotNull(tileRef);
+      tiles.add(tileRef.get());
+      CloseableReference.closeSafely(tileRef);
+      dataSource.close();
+    }
+    return tiles;
+  }
+}
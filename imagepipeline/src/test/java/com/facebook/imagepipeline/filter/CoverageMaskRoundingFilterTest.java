@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CoverageMaskRoundingFilterTest {
+
+  private CoverageMaskRoundingFilter mRoundingFilter;
+
+  @Before
+  public void setup() {
+    mRoundingFilter = new CoverageMaskRoundingFilter(1024 * 1024);
+  }
+
+  @Test
+  public void testCircleMask() {
+    CoverageMaskRoundingFilter.CoverageMask mask =
+        mRoundingFilter.getMask(20, 20, CoverageMaskRoundingFilter.RADIUS_CIRCLE, true);
+
+    assertEquals(10, mask.mQuadrantWidth);
+    assertEquals(10, mask.mQuadrantHeight);
+    assertEquals(0, mask.getCoverage(0, 0));
+    assertEquals(255, mask.getCoverage(9, 9));
+    // the outline is anti-aliased
+    int edgeCoverage = mask.getCoverage(2, 3);
+    assertTrue(edgeCoverage > 0 && edgeCoverage < 255);
+    // the circle is symmetric
+    assertEquals(edgeCoverage, mask.getCoverage(3, 2));
+    // no pixel of the top row is fully covered, the middle row only misses its first pixel
+    assertEquals(10, mask.mUncoveredCounts[0]);
+    assertEquals(1, mask.mUncoveredCounts[9]);
+  }
+
+  @Test
+  public void testMaskWithoutAntiAliasing() {
+    CoverageMaskRoundingFilter.CoverageMask mask =
+        mRoundingFilter.getMask(15, 15, CoverageMaskRoundingFilter.RADIUS_CIRCLE, false);
+
+    for (int y = 0; y < mask.mQuadrantHeight; y++) {
+      for (int x = 0; x < mask.mQuadrantWidth; x++) {
+        int coverage = mask.getCoverage(x, y);
+        assertTrue(coverage == 0 || coverage == 255);
+      }
+    }
+  }
+
+  @Test
+  public void testRoundedCornersMask() {
+    CoverageMaskRoundingFilter.CoverageMask mask = mRoundingFilter.getMask(40, 30, 6, true);
+
+    assertEquals(0, mask.getCoverage(0, 0));
+    assertEquals(255, mask.getCoverage(0, 6));
+    assertEquals(255, mask.getCoverage(6, 0));
+    for (int y = 6; y < mask.mQuadrantHeight; y++) {
+      assertEquals(0, mask.mUncoveredCounts[y]);
+    }
+    assertEquals(0, mRoundingFilter.getMask(40, 30, 0, true).mUncoveredCounts[0]);
+  }
+
+  @Test
+  public void testMasksAreCached() {
+    CoverageMaskRoundingFilter.CoverageMask mask = mRoundingFilter.getMask(20, 20, 4, true);
+
+    assertSame(mask, mRoundingFilter.getMask(20, 20, 4, true));
+    assertNotSame(mask, mRoundingFilter.getMask(20, 20, 4, false));
+    assertNotSame(mask, mRoundingFilter.getMask(20, 20, 5, true));
+    assertEquals(3, mRoundingFilter.getCachedMaskCount());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedMasksAreEvicted() {
+    // a 20x20 mask takes 10 * 10 + 10 * 4 bytes
+    mRoundingFilter = new CoverageMaskRoundingFilter(300);
+    CoverageMaskRoundingFilter.CoverageMask first = mRoundingFilter.getMask(20, 20, 4, true);
+    CoverageMaskRoundingFilter.CoverageMask second = mRoundingFilter.getMask(20, 20, 5, true);
+    mRoundingFilter.getMask(20, 20, 4, true);
+
+    mRoundingFilter.getMask(20, 20, 6, true);
+
+    assertEquals(2, mRoundingFilter.getCachedMaskCount());
+    assertSame(first, mRoundingFilter.getMask(20, 20, 4, true));
+    assertNotSame(second, mRoundingFilter.getMask(20, 20, 5, true));
+  }
+
+  @Test
+  public void testMasksLargerThanTheCacheAreNotCached() {
+    mRoundingFilter = new CoverageMaskRoundingFilter(300);
+    CoverageMaskRoundingFilter.CoverageMask small = mRoundingFilter.getMask(20, 20, 4, true);
+    // a 40x40 mask takes 20 * 20 + 20 * 4 bytes
+    CoverageMaskRoundingFilter.CoverageMask large = mRoundingFilter.getMask(40, 40, 4, true);
+
+    assertEquals(480, large.getSizeInBytes());
+    assertEquals(1, mRoundingFilter.getCachedMaskCount());
+    assertSame(small, mRoundingFilter.getMask(20, 20, 4, true));
+    assertNotSame(large, mRoundingFilter.getMask(40, 40, 4, true));
+  }
+
+  @Test
+  public void testRoundToCircle() {
+    Bitmap bitmap = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+    bitmap.eraseColor(Color.WHITE);
+
+    mRoundingFilter.roundToCircle(bitmap, true);
+
+    assertEquals(Color.TRANSPARENT, bitmap.getPixel(0, 0));
+    assertEquals(Color.TRANSPARENT, bitmap.getPixel(19, 0));
+    assertEquals(Color.TRANSPARENT, bitmap.getPixel(0, 19));
+    assertEquals(Color.TRANSPARENT, bitmap.getPixel(19, 19));
+    assertEquals(Color.WHITE, bitmap.getPixel(10, 10));
+    assertEquals(Color.WHITE, bitmap.getPixel(10, 1));
+    int edgeAlpha = Color.alpha(bitmap.getPixel(2, 3));
+    assertTrue(edgeAlpha > 0 && edgeAlpha < 255);
+    assertEquals(edgeAlpha, Color.alpha(bitmap.getPixel(17, 16)));
+  }
+
+  @Test
+  public void testRoundToCircle_whenBitmapIsNotSquare() {
+    Bitmap bitmap = Bitmap.createBitmap(10, 20, Bitmap.Config.ARGB_8888);
+    bitmap.eraseColor(Color.WHITE);
+
+    mRoundingFilter.roundToCircle(bitmap, false);
+
+    // the circle is centered, the rows above and below it are cleared
+    assertEquals(Color.TRANSPARENT, bitmap.getPixel(5, 4));
+    assertEquals(Color.WHITE, bitmap.getPixel(5, 5));
+    assertEquals(Color.WHITE, bitmap.getPixel(5, 14));
+    assertEquals(Color.TRANSPARENT, bitmap.getPixel(5, 15));
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.filter;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+
+/**
+ * Compares {@link IterativeBoxBlurFilter} with {@link ParallelBoxBlurFilter} for several radii
+ * and thread counts on a full HD image.
+ *
+ * <p>Run with the test classpath, e.g. from the IDE, as {@code ParallelBoxBlurFilterBenchmark
+ * [width height iterations]}. Both filters work on pixel arrays, so no android jar is needed.
+ */
+public class ParallelBoxBlurFilterBenchmark {
+
+  private static final int[] RADII = {2, 8, 25};
+  private static final int[] THREAD_COUNTS = {1, 2, 4};
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int MEASURED_ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int w = args.length > 1 ? Integer.parseInt(args[0]) : 1920;
+    int h = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+    int[] source = new int[w * h];
+    Random random = new Random(42);
+    for (int i = 0; i < source.length; i++) {
+      source[i] = random.nextInt();
+    }
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%dx%d, %d iterations, %d processors",
+            w,
+            h,
+            iterations,
+            Runtime.getRuntime().availableProcessors()));
+
+    ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNTS.length);
+    try {
+      for (int radius : RADII) {
+        benchmark("iterative", null, source, w, h, iterations, radius);
+        for (int threadCount : THREAD_COUNTS) {
+          benchmark(
+              "parallel x" + threadCount,
+              new ParallelBoxBlurFilter(executorService, threadCount),
+              source,
+              w,
+              h,
+              iterations,
+              radius);
+        }
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /** Benchmarks the parallel filter, or the iterative one if it is null. */
+  private static void benchmark(
+      String name,
+      @Nullable ParallelBoxBlurFilter filter,
+      int[] source,
+      int w,
+      int h,
+      int iterations,
+      int radius) {
+    int[] pixels = new int[source.length];
+    int checksum = 0;
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      checksum += blur(filter, source, pixels, w, h, iterations, radius);
+    }
+    long bestNanos = Long.MAX_VALUE;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      long start = System.nanoTime();
+      checksum += blur(filter, source, pixels, w, h, iterations, radius);
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+    }
+    System.out.println(
+        String.format(
+            Locale.US,
+            "radius %2d %-12s %8.2f ms %8.1f Mpixels/s (checksum %d)",
+            radius,
+            name,
+            bestNanos / 1e6,
+            (double) w * h * iterations * 1e3 / bestNanos,
+            checksum));
+  }
+
+  private static int blur(
+      @Nullable ParallelBoxBlurFilter filter,
+      int[] source,
+      int[] pixels,
+      int w,
+      int h,
+      int iterations,
+      int radius) {
+    System.arraycopy(source, 0, pixels, 0, source.length);
+    if (filter == null) {
+      IterativeBoxBlurFilter.fastBoxBlur(pixels, w, h, iterations, radius);
+    } else {
+      filter.boxBlur(pixels, w, h, iterations, radius);
+    }
+    return pixels[pixels.length / 2];
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.filter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Tests that {@link ParallelBoxBlurFilter} blurs exactly like {@link IterativeBoxBlurFilter}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ParallelBoxBlurFilterTest {
+
+  private final Random mRandom = new Random(42);
+
+  private ExecutorService mExecutorService;
+
+  @Before
+  public void setup() {
+    mExecutorService = Executors.newFixedThreadPool(3);
+  }
+
+  @After
+  public void tearDown() {
+    mExecutorService.shutdownNow();
+  }
+
+  @Test
+  public void testSingleStripe() {
+    ParallelBoxBlurFilter filter = new ParallelBoxBlurFilter(mExecutorService, 1);
+    assertBlursLikeIterativeBoxBlur(filter, 40, 30, 1, 3);
+    assertBlursLikeIterativeBoxBlur(filter, 40, 30, 3, 25);
+  }
+
+  @Test
+  public void testSeveralStripes() {
+    ParallelBoxBlurFilter filter = new ParallelBoxBlurFilter(mExecutorService, 4);
+    assertBlursLikeIterativeBoxBlur(filter, 300, 250, 1, 1);
+    assertBlursLikeIterativeBoxBlur(filter, 300, 250, 2, 8);
+    assertBlursLikeIterativeBoxBlur(filter, 250, 300, 3, 25);
+  }
+
+  @Test
+  public void testRadiusLargerThanBitmap() {
+    ParallelBoxBlurFilter filter = new ParallelBoxBlurFilter(mExecutorService, 4);
+    assertBlursLikeIterativeBoxBlur(filter, 1, 1, 1, 25);
+    assertBlursLikeIterativeBoxBlur(filter, 7, 1, 2, 10);
+    assertBlursLikeIterativeBoxBlur(filter, 1, 9, 2, 10);
+    // more stripes than rows
+    assertBlursLikeIterativeBoxBlur(
+        filter, 2 * ParallelBoxBlurFilter.MIN_PIXELS_PER_STRIPE, 2, 1, 25);
+  }
+
+  @Test
+  public void testBuffersAreReused() {
+    ParallelBoxBlurFilter filter = new ParallelBoxBlurFilter(mExecutorService, 4);
+    assertBlursLikeIterativeBoxBlur(filter, 300, 250, 1, 25);
+    assertBlursLikeIterativeBoxBlur(filter, 120, 200, 2, 4);
+    assertBlursLikeIterativeBoxBlur(filter, 320, 260, 1, 12);
+  }
+
+  @Test
+  public void testIdleBuffersAreReleasedOnTrim() {
+    MemoryTrimmableRegistry memoryTrimmableRegistry = mock(MemoryTrimmableRegistry.class);
+    ParallelBoxBlurFilter filter =
+        new ParallelBoxBlurFilter(mExecutorService, 4, memoryTrimmableRegistry);
+    verify(memoryTrimmableRegistry).registerMemoryTrimmable(filter);
+    assertBlursLikeIterativeBoxBlur(filter, 300, 250, 1, 25);
+    assertEquals(1, filter.getIdleBufferCount());
+
+    filter.trim(MemoryTrimType.OnSystemLowMemoryWhileAppInForeground);
+
+    assertEquals(0, filter.getIdleBufferCount());
+    assertBlursLikeIterativeBoxBlur(filter, 300, 250, 1, 25);
+  }
+
+  @Test
+  public void testConcurrentCalls() throws Exception {
+    final ParallelBoxBlurFilter filter = new ParallelBoxBlurFilter(mExecutorService, 2);
+    ExecutorService callers = Executors.newFixedThreadPool(3);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        final Random random = new Random(i);
+        futures.add(
+            callers.submit(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    assertBlursLikeIterativeBoxBlur(filter, random, 300, 250, 2, 8);
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      callers.shutdownNow();
+    }
+    assertTrue(filter.getIdleBufferCount() <= ParallelBoxBlurFilter.MAX_IDLE_BUFFERS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidRadius() {
+    new ParallelBoxBlurFilter(mExecutorService, 4)
+        .boxBlur(new int[4], 2, 2, 1, RenderScriptBlurFilter.BLUR_MAX_RADIUS + 1);
+  }
+
+  private void assertBlursLikeIterativeBoxBlur(
+      ParallelBoxBlurFilter filter, int w, int h, int iterations, int radius) {
+    assertBlursLikeIterativeBoxBlur(filter, mRandom, w, h, iterations, radius);
+  }
+
+  private static void assertBlursLikeIterativeBoxBlur(
+      ParallelBoxBlurFilter filter, Random random, int w, int h, int iterations, int radius) {
+    int[] expected = new int[w * h];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = random.nextInt();
+    }
+    int[] actual = Arrays.copyOf(expected, expected.length);
+
+    IterativeBoxBlurFilter.fastBoxBlur(expected, w, h, iterations, radius);
+    filter.boxBlur(actual, w, h, iterations, radius);
+
+    assertArrayEquals(expected, actual);
+  }
+}
@@ -82,6 +82,59 @@ public class BitmapCounterTest {
     assertState(MAX_COUNT, MAX_COUNT);
   }
 
+  @Test
+  public void testHardwareBitmapsAreCountedSeparately() {
+    mBitmapCounter = new BitmapCounter(MAX_COUNT, MAX_SIZE, 2, MAX_SIZE);
+    assertTrue(mBitmapCounter.increase(bitmapForSize(1)));
+    assertTrue(mBitmapCounter.increaseHardware(bitmapForSize(3)));
+    assertState(1, 1);
+    assertEquals(1, mBitmapCounter.getHardwareCount());
+    assertEquals(3, mBitmapCounter.getHardwareSize());
+
+    assertTrue(mBitmapCounter.hasHardwareCapacity(2));
+    assertFalse(mBitmapCounter.hasHardwareCapacity(3));
+    assertFalse(mBitmapCounter.increaseHardware(bitmapForSize(3)));
+    assertTrue(mBitmapCounter.increaseHardware(bitmapForSize(2)));
+    assertFalse(mBitmapCounter.hasHardwareCapacity(0));
+
+    mBitmapCounter.decreaseHardware(bitmapForSize(3));
+    assertEquals(1, mBitmapCounter.getHardwareCount());
+    assertEquals(2, mBitmapCounter.getHardwareSize());
+    assertState(1, 1);
+  }
+
+  @Test
+  public void testHardwareReleaserDecreasesHardwareCount() {
+    Bitmap bitmap = bitmapForSize(2);
+    assertTrue(mBitmapCounter.increaseHardware(bitmap));
+
+    mBitmapCounter.getHardwareReleaser().release(bitmap);
+
+    assertEquals(0, mBitmapCounter.getHardwareCount());
+    assertEquals(0, mBitmapCounter.getHardwareSize());
+    verify(bitmap).recycle();
+  }
+
+  @Test
+  public void testHardwareReleaserNotifiesListener() {
+    BitmapCounter.HardwareBitmapReleaseListener listener =
+        mock(BitmapCounter.HardwareBitmapReleaseListener.class);
+    mBitmapCounter.setHardwareBitmapReleaseListener(listener);
+    Bitmap bitmap = bitmapForSize(2);
+    assertTrue(mBitmapCounter.increaseHardware(bitmap));
+
+    mBitmapCounter.getHardwareReleaser().release(bitmap);
+
+    verify(listener).onHardwareBitmapReleased(2);
+    assertEquals(0, mBitmapCounter.getHardwareSize());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecreaseHardwareTooMany() {
+    assertTrue(mBitmapCounter.increase(bitmapForSize(1)));
+    mBitmapCounter.decreaseHardware(bitmapForSize(1));
+  }
+
   private void assertState(int count, long size) {
     assertEquals(count, mBitmapCounter.getCount());
     assertEquals(size, mBitmapCounter.getSize());
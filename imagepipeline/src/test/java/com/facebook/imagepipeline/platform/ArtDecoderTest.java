@@ -38,6 +38,7 @@ import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imageformat.DefaultImageFormats;
 import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.memory.BitmapCounter;
 import com.facebook.imagepipeline.memory.BitmapPool;
 import com.facebook.imagepipeline.testing.MockBitmapFactory;
 import com.facebook.imagepipeline.testing.TrivialPooledByteBuffer;
@@ -179,6 +180,46 @@ public class ArtDecoderTest {
     }
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.O)
+  public void testDecodesIntoPooledBitmapWhenHardwareCapacityIsTakenDuringDecode() {
+    final Bitmap hardwareBitmap = mock(Bitmap.class);
+    when(hardwareBitmap.getConfig()).thenReturn(Bitmap.Config.HARDWARE);
+    // there is capacity before the decode, but a concurrent decode takes it in the meantime
+    BitmapCounter hardwareBitmapCounter = mock(BitmapCounter.class);
+    when(hardwareBitmapCounter.hasHardwareCapacity(anyInt())).thenReturn(true);
+    when(hardwareBitmapCounter.increaseHardware(hardwareBitmap)).thenReturn(false);
+    OreoDecoder oreoDecoder =
+        new OreoDecoder(mBitmapPool, 1, new Pools.SynchronizedPool(1), hardwareBitmapCounter);
+    whenBitmapFactoryDecodeStream()
+        .thenAnswer(
+            new Answer<Bitmap>() {
+              @Override
+              public Bitmap answer(InvocationOnMock invocation) {
+                final BitmapFactory.Options options =
+                    (BitmapFactory.Options) invocation.getArguments()[2];
+                options.outWidth = MockBitmapFactory.DEFAULT_BITMAP_WIDTH;
+                options.outHeight = MockBitmapFactory.DEFAULT_BITMAP_HEIGHT;
+                if (options.inJustDecodeBounds) {
+                  return null;
+                }
+                return options.inPreferredConfig == Bitmap.Config.HARDWARE
+                    ? hardwareBitmap
+                    : options.inBitmap;
+              }
+            });
+
+    CloseableReference<Bitmap> result =
+        oreoDecoder.decodeFromEncodedImage(mEncodedImage, Bitmap.Config.HARDWARE, null);
+
+    assertSame(mBitmap, result.get());
+    verify(hardwareBitmap).recycle();
+    verifyStatic(BitmapFactory.class, times(3));
+    BitmapFactory.decodeStream(
+        any(InputStream.class), isNull(Rect.class), any(BitmapFactory.Options.class));
+    closeAndVerifyClosed(result);
+  }
+
   @Test
   public void testDecodeJpeg_allBytes_complete() {
     jpegTestCase(true, ENCODED_BYTES_LENGTH);
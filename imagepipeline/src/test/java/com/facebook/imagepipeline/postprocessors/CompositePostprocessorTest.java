@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.cache.common.SimpleCacheKey;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import com.facebook.imagepipeline.core.NativeCodeSetup;
+import com.facebook.imagepipeline.request.BasePostprocessor;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CompositePostprocessorTest {
+
+  private static final int SIZE = 4;
+
+  private PlatformBitmapFactory mBitmapFactory;
+  private List<CloseableReference<Bitmap>> mCreatedBitmaps;
+  private Bitmap mSourceBitmap;
+
+  @Before
+  public void setup() {
+    // copies the bitmaps with a canvas instead of the native code
+    NativeCodeSetup.setUseNativeCode(false);
+    mCreatedBitmaps = new ArrayList<>();
+    mBitmapFactory = mock(PlatformBitmapFactory.class);
+    when(mBitmapFactory.createBitmapInternal(anyInt(), anyInt(), any(Bitmap.Config.class)))
+        .then(
+            new Answer<CloseableReference<Bitmap>>() {
+              @Override
+              public CloseableReference<Bitmap> answer(InvocationOnMock invocation) {
+                Object[] arguments = invocation.getArguments();
+                CloseableReference<Bitmap> bitmapReference =
+                    CloseableReference.of(
+                        Bitmap.createBitmap(
+                            (Integer) arguments[0],
+                            (Integer) arguments[1],
+                            (Bitmap.Config) arguments[2]),
+                        SimpleBitmapReleaser.getInstance());
+                mCreatedBitmaps.add(bitmapReference);
+                return bitmapReference;
+              }
+            });
+    mSourceBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    mSourceBitmap.eraseColor(Color.BLACK);
+  }
+
+  @After
+  public void tearDown() {
+    NativeCodeSetup.setUseNativeCode(true);
+  }
+
+  @Test
+  public void testPerPixelPostprocessorsAreFused() {
+    CompositePostprocessor postprocessor =
+        CompositePostprocessor.of(
+            new AddToRedPostprocessor(1, "first"), new AddToRedPostprocessor(2, "second"));
+
+    CloseableReference<Bitmap> result = postprocessor.process(mSourceBitmap, mBitmapFactory);
+
+    assertEquals(Color.BLACK, mSourceBitmap.getPixel(0, 0));
+    assertEquals(Color.rgb(3, 0, 0), result.get().getPixel(SIZE - 1, SIZE - 1));
+    assertEquals(1, mCreatedBitmaps.size());
+    result.close();
+    assertNoBitmapLeaked();
+  }
+
+  @Test
+  public void testInPlacePostprocessorsShareOneBitmap() {
+    InPlacePostprocessor first = new InPlacePostprocessor(Color.GREEN);
+    InPlacePostprocessor second = new InPlacePostprocessor(Color.BLUE);
+
+    CloseableReference<Bitmap> result =
+        CompositePostprocessor.of(first, second).process(mSourceBitmap, mBitmapFactory);
+
+    assertEquals(Color.BLUE, result.get().getPixel(0, 0));
+    assertEquals(1, mCreatedBitmaps.size());
+    assertEquals(Color.GREEN, second.mInputColor);
+    result.close();
+    assertNoBitmapLeaked();
+  }
+
+  @Test
+  public void testDestinationPostprocessorsSwapTwoBitmaps() {
+    CloseableReference<Bitmap> result =
+        CompositePostprocessor.of(
+                new DestinationPostprocessor(),
+                new DestinationPostprocessor(),
+                new InPlacePostprocessor(Color.GREEN),
+                new DestinationPostprocessor())
+            .process(mSourceBitmap, mBitmapFactory);
+
+    // every destination postprocessor adds 1 to the red channel
+    assertEquals(Color.rgb(1, 255, 0), result.get().getPixel(0, 0));
+    assertEquals(2, mCreatedBitmaps.size());
+    result.close();
+    assertNoBitmapLeaked();
+  }
+
+  @Test
+  public void testOtherPostprocessorsRunOnTheirOwn() {
+    Bitmap resizedBitmap = Bitmap.createBitmap(SIZE / 2, SIZE / 2, Bitmap.Config.ARGB_8888);
+    final CloseableReference<Bitmap> resizedReference =
+        CloseableReference.of(resizedBitmap, SimpleBitmapReleaser.getInstance());
+    BasePostprocessor resizingPostprocessor =
+        new BasePostprocessor() {
+          @Override
+          public CloseableReference<Bitmap> process(
+              Bitmap sourceBitmap, PlatformBitmapFactory bitmapFactory) {
+            return resizedReference.clone();
+          }
+        };
+
+    CloseableReference<Bitmap> result =
+        CompositePostprocessor.of(new InPlacePostprocessor(Color.GREEN), resizingPostprocessor)
+            .process(mSourceBitmap, mBitmapFactory);
+
+    assertEquals(resizedBitmap, result.get());
+    verify(mBitmapFactory, times(1))
+        .createBitmapInternal(anyInt(), anyInt(), any(Bitmap.Config.class));
+    assertNoBitmapLeaked();
+    result.close();
+    resizedReference.close();
+  }
+
+  @Test
+  public void testTintKeepsAlpha() {
+    TintPostprocessor tintPostprocessor = new TintPostprocessor(0x80FFFFFF);
+
+    assertEquals(Color.rgb(128, 128, 128), tintPostprocessor.transformPixel(Color.BLACK));
+    assertEquals(0x00808080, tintPostprocessor.transformPixel(Color.TRANSPARENT));
+    assertEquals(Color.RED, new TintPostprocessor(Color.RED).transformPixel(Color.BLUE));
+  }
+
+  @Test
+  public void testCacheKeyIsDerivedFromChain() {
+    CacheKey cacheKey =
+        CompositePostprocessor.of(
+                new AddToRedPostprocessor(1, "first"), new AddToRedPostprocessor(2, "second"))
+            .getPostprocessorCacheKey();
+    CacheKey sameCacheKey =
+        CompositePostprocessor.of(
+                new AddToRedPostprocessor(1, "first"), new AddToRedPostprocessor(2, "second"))
+            .getPostprocessorCacheKey();
+    CacheKey otherOrderCacheKey =
+        CompositePostprocessor.of(
+                new AddToRedPostprocessor(2, "second"), new AddToRedPostprocessor(1, "first"))
+            .getPostprocessorCacheKey();
+
+    assertEquals(cacheKey, sameCacheKey);
+    assertEquals(cacheKey.hashCode(), sameCacheKey.hashCode());
+    assertNotEquals(cacheKey, otherOrderCacheKey);
+  }
+
+  @Test
+  public void testCacheKeyIsNullIfAnyPostprocessorHasNone() {
+    assertNull(
+        CompositePostprocessor.of(
+                new AddToRedPostprocessor(1, "first"), new InPlacePostprocessor(Color.GREEN))
+            .getPostprocessorCacheKey());
+  }
+
+  private void assertNoBitmapLeaked() {
+    for (CloseableReference<Bitmap> bitmapReference : mCreatedBitmaps) {
+      assertFalse(bitmapReference.isValid());
+    }
+  }
+
+  private static class AddToRedPostprocessor extends PerPixelPostprocessor {
+    private final int mValue;
+    private final String mCacheKey;
+
+    AddToRedPostprocessor(int value, String cacheKey) {
+      mValue = value;
+      mCacheKey = cacheKey;
+    }
+
+    @Override
+    public int transformPixel(int color) {
+      return color + (mValue << 16);
+    }
+
+    @Nullable
+    @Override
+    public CacheKey getPostprocessorCacheKey() {
+      return new SimpleCacheKey(mCacheKey);
+    }
+  }
+
+  private static class InPlacePostprocessor extends BasePostprocessor {
+    private final int mColor;
+    private int mInputColor;
+
+    InPlacePostprocessor(int color) {
+      mColor = color;
+    }
+
+    @Override
+    public void process(Bitmap bitmap) {
+      mInputColor = bitmap.getPixel(0, 0);
+      bitmap.eraseColor(mColor);
+    }
+  }
+
+  private static class DestinationPostprocessor extends BasePostprocessor {
+    @Override
+    public void process(Bitmap destBitmap, Bitmap sourceBitmap) {
+      destBitmap.eraseColor(sourceBitmap.getPixel(0, 0) + (1 << 16));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.postprocessors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
+import com.facebook.imagepipeline.bitmaps.SimpleBitmapReleaser;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DownscaledBlurPostprocessorTest {
+
+  private PlatformBitmapFactory mBitmapFactory;
+  private List<CloseableReference<Bitmap>> mCreatedBitmaps;
+
+  @Before
+  public void setup() {
+    mCreatedBitmaps = new ArrayList<>();
+    mBitmapFactory = mock(PlatformBitmapFactory.class);
+    when(mBitmapFactory.createBitmapInternal(anyInt(), anyInt(), any(Bitmap.Config.class)))
+        .then(
+            new Answer<CloseableReference<Bitmap>>() {
+              @Override
+              public CloseableReference<Bitmap> answer(InvocationOnMock invocation) {
+                Object[] arguments = invocation.getArguments();
+                CloseableReference<Bitmap> bitmapReference =
+                    CloseableReference.of(
+                        Bitmap.createBitmap(
+                            (Integer) arguments[0],
+                            (Integer) arguments[1],
+                            (Bitmap.Config) arguments[2]),
+                        SimpleBitmapReleaser.getInstance());
+                mCreatedBitmaps.add(bitmapReference);
+                return bitmapReference;
+              }
+            });
+  }
+
+  @Test
+  public void testDownscaleFactorGrowsWithRadius() {
+    assertEquals(1, DownscaledBlurPostprocessor.getDownscaleFactor(1));
+    assertEquals(1, DownscaledBlurPostprocessor.getDownscaleFactor(5));
+    assertEquals(2, DownscaledBlurPostprocessor.getDownscaleFactor(6));
+    assertEquals(4, DownscaledBlurPostprocessor.getDownscaleFactor(12));
+    assertEquals(
+        DownscaledBlurPostprocessor.MAX_DOWNSCALE_FACTOR,
+        DownscaledBlurPostprocessor.getDownscaleFactor(25));
+    assertEquals(3, DownscaledBlurPostprocessor.getDownscaledBlurRadius(25, 8));
+  }
+
+  @Test
+  public void testResizeOptionsMatchDownscaleFactor() {
+    DownscaledBlurPostprocessor postprocessor = new DownscaledBlurPostprocessor(1080, 601, 25);
+
+    assertEquals(new ResizeOptions(135, 76), postprocessor.getResizeOptions());
+  }
+
+  @Test
+  public void testBlursAtReducedSizeAndScalesToTargetSize() {
+    DownscaledBlurPostprocessor postprocessor = new DownscaledBlurPostprocessor(400, 200, 25);
+    Bitmap sourceBitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+
+    CloseableReference<Bitmap> result = postprocessor.process(sourceBitmap, mBitmapFactory);
+
+    // the result covers the target size with the aspect ratio of the source
+    assertEquals(400, result.get().getWidth());
+    assertEquals(400, result.get().getHeight());
+    assertEquals(2, mCreatedBitmaps.size());
+    assertEquals(50, mCreatedBitmaps.get(0).get().getWidth());
+    assertFalse(mCreatedBitmaps.get(0).isValid());
+    result.close();
+  }
+
+  @Test
+  public void testSmallRadiusIsNotDownscaled() {
+    DownscaledBlurPostprocessor postprocessor = new DownscaledBlurPostprocessor(100, 100, 2);
+    Bitmap sourceBitmap = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+
+    CloseableReference<Bitmap> result = postprocessor.process(sourceBitmap, mBitmapFactory);
+
+    assertEquals(100, result.get().getWidth());
+    assertEquals(1, mCreatedBitmaps.size());
+    result.close();
+  }
+
+  @Test
+  public void testCacheKey() {
+    assertEquals(
+        new DownscaledBlurPostprocessor(100, 100, 25).getPostprocessorCacheKey(),
+        new DownscaledBlurPostprocessor(100, 100, 25).getPostprocessorCacheKey());
+    assertNotEquals(
+        new DownscaledBlurPostprocessor(100, 100, 25).getPostprocessorCacheKey(),
+        new DownscaledBlurPostprocessor(200, 100, 25).getPostprocessorCacheKey());
+    assertNotEquals(
+        new DownscaledBlurPostprocessor(100, 100, 25).getPostprocessorCacheKey(),
+        new DownscaledBlurPostprocessor(100, 100, 20).getPostprocessorCacheKey());
+  }
+}
@@ -11,13 +11,21 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.any;
 
+import android.graphics.Bitmap;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.common.internal.ImmutableMap;
 import com.facebook.common.references.CloseableReference;
+import com.facebook.common.references.ResourceReleaser;
+import com.facebook.imagepipeline.bitmaps.PlatformBitmapFactory;
 import com.facebook.imagepipeline.cache.BitmapMemoryCacheKey;
+import com.facebook.imagepipeline.cache.BitmapVariantIndex;
 import com.facebook.imagepipeline.cache.CacheKeyFactory;
 import com.facebook.imagepipeline.cache.MemoryCache;
+import com.facebook.imagepipeline.common.ImageDecodeOptions;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import com.facebook.imagepipeline.common.RotationOptions;
 import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.image.CloseableStaticBitmap;
 import com.facebook.imagepipeline.image.ImmutableQualityInfo;
 import com.facebook.imagepipeline.request.ImageRequest;
 import java.util.ArrayList;
@@ -46,6 +54,7 @@ public class BitmapMemoryCacheProducerTest {
   private static final String PRODUCER_NAME = BitmapMemoryCacheProducer.PRODUCER_NAME;
   private static final int INTERMEDIATE_SCAN_1 = 2;
   private static final int INTERMEDIATE_SCAN_2 = 5;
+  private static final String SOURCE_URI = "http://fresco.com/image.jpg";
   @Mock public MemoryCache<CacheKey, CloseableImage> mMemoryCache;
   @Mock public CacheKeyFactory mCacheKeyFactory;
   @Mock public Producer mInputProducer;
@@ -54,6 +63,7 @@ public class BitmapMemoryCacheProducerTest {
   @Mock public ImageRequest mImageRequest;
   @Mock public ProducerListener2 mProducerListener;
   @Mock public Exception mException;
+  @Mock public PlatformBitmapFactory mPlatformBitmapFactory;
   private BitmapMemoryCacheKey mBitmapMemoryCacheKey;
   private CloseableImage mCloseableImage1;
   private CloseableImage mCloseableImage2;
@@ -333,6 +343,153 @@ public class BitmapMemoryCacheProducerTest {
         .onUltimateProducerReached(eq(mProducerContext), anyString(), anyBoolean());
   }
 
+  @Test
+  public void testBitmapVariantHit_slightlyLargerVariantIsServedAsIs() {
+    BitmapVariantIndex index = new BitmapVariantIndex(10);
+    BitmapMemoryCacheKey key = setupBitmapVariantIndex(index, false);
+    CloseableStaticBitmap variant = cacheVariant(index, 110, 88);
+    List<Bitmap> results = captureResultBitmaps();
+
+    mBitmapMemoryCacheProducer.produceResults(mConsumer, mProducerContext);
+
+    Assert.assertEquals(Arrays.asList(variant.getUnderlyingBitmap()), results);
+    verify(mProducerContext).setExtra(BitmapMemoryCacheProducer.EXTRA_DOWNSCALED_VARIANT, true);
+    verify(mProducerListener).onUltimateProducerReached(mProducerContext, PRODUCER_NAME, true);
+    verify(mMemoryCache, never()).cache(eq(key), any(CloseableReference.class));
+    verifyNoMoreInteractions(mInputProducer, mPlatformBitmapFactory);
+  }
+
+  @Test
+  public void testBitmapVariantHit_largerVariantIsDownscaled() {
+    BitmapVariantIndex index = new BitmapVariantIndex(10);
+    BitmapMemoryCacheKey key = setupBitmapVariantIndex(index, false);
+    CloseableStaticBitmap variant = cacheVariant(index, 400, 320);
+    Bitmap scaledBitmap = setupScaledBitmap(variant.getUnderlyingBitmap(), 100, 80);
+    List<Bitmap> results = captureResultBitmaps();
+
+    mBitmapMemoryCacheProducer.produceResults(mConsumer, mProducerContext);
+
+    Assert.assertEquals(Arrays.asList(scaledBitmap), results);
+    verify(mProducerContext).setExtra(BitmapMemoryCacheProducer.EXTRA_DOWNSCALED_VARIANT, true);
+    verify(mMemoryCache, never()).cache(eq(key), any(CloseableReference.class));
+    Assert.assertEquals(1, index.getVariantCount(SOURCE_URI));
+    verifyNoMoreInteractions(mInputProducer);
+  }
+
+  @Test
+  public void testBitmapVariantHit_downscaledVariantIsCachedBack() {
+    BitmapVariantIndex index = new BitmapVariantIndex(10);
+    BitmapMemoryCacheKey key = setupBitmapVariantIndex(index, true);
+    CloseableStaticBitmap variant = cacheVariant(index, 400, 320);
+    setupScaledBitmap(variant.getUnderlyingBitmap(), 100, 80);
+    CloseableStaticBitmap cachedImage = mockStaticBitmap(100, 80);
+    when(mMemoryCache.cache(eq(key), any(CloseableReference.class)))
+        .thenReturn(CloseableReference.<CloseableImage>of(cachedImage));
+    List<Bitmap> results = captureResultBitmaps();
+
+    mBitmapMemoryCacheProducer.produceResults(mConsumer, mProducerContext);
+
+    Assert.assertEquals(Arrays.asList(cachedImage.getUnderlyingBitmap()), results);
+    verify(mMemoryCache).cache(eq(key), any(CloseableReference.class));
+    // the downscaled bitmap is indexed as well
+    Assert.assertEquals(2, index.getVariantCount(SOURCE_URI));
+    verifyNoMoreInteractions(mInputProducer);
+  }
+
+  @Test
+  public void testBitmapVariantMiss_requestIsPassedToInputProducer() {
+    BitmapVariantIndex index = new BitmapVariantIndex(10);
+    setupBitmapVariantIndex(index, true);
+    cacheVariant(index, 50, 40);
+    setupInputProducerNotFound();
+
+    mBitmapMemoryCacheProducer.produceResults(mConsumer, mProducerContext);
+
+    verify(mInputProducer).produceResults(any(Consumer.class), eq(mProducerContext));
+    verify(mConsumer).onNewResult(null, Consumer.IS_LAST);
+    verify(mProducerContext, never())
+        .setExtra(eq(BitmapMemoryCacheProducer.EXTRA_DOWNSCALED_VARIANT), any());
+    verifyNoMoreInteractions(mPlatformBitmapFactory);
+  }
+
+  /** Uses the index for a request of 100x80 and returns its key. */
+  private BitmapMemoryCacheKey setupBitmapVariantIndex(
+      BitmapVariantIndex index, boolean cacheDownscaledVariants) {
+    BitmapMemoryCacheKey key = newBitmapMemoryCacheKey(100, 80);
+    when(mCacheKeyFactory.getBitmapCacheKey(mImageRequest, PRODUCER_NAME)).thenReturn(key);
+    when(mMemoryCache.get(key)).thenReturn(null);
+    mBitmapMemoryCacheProducer =
+        new BitmapMemoryCacheProducer(
+            mMemoryCache,
+            mCacheKeyFactory,
+            mInputProducer,
+            index,
+            mPlatformBitmapFactory,
+            cacheDownscaledVariants);
+    return key;
+  }
+
+  private CloseableStaticBitmap cacheVariant(BitmapVariantIndex index, int width, int height) {
+    BitmapMemoryCacheKey key = newBitmapMemoryCacheKey(width, height);
+    CloseableStaticBitmap image = mockStaticBitmap(width, height);
+    when(mMemoryCache.get(key)).thenReturn(CloseableReference.<CloseableImage>of(image));
+    index.onCached(key, image);
+    return image;
+  }
+
+  private Bitmap setupScaledBitmap(Bitmap source, int width, int height) {
+    Bitmap scaledBitmap = mockBitmap(width, height);
+    when(mPlatformBitmapFactory.createScaledBitmap(source, width, height, true, PRODUCER_NAME))
+        .thenReturn(CloseableReference.of(scaledBitmap, mock(ResourceReleaser.class)));
+    return scaledBitmap;
+  }
+
+  /** Records the bitmaps of the results, which are closed once passed to the consumer. */
+  private List<Bitmap> captureResultBitmaps() {
+    final List<Bitmap> results = new ArrayList<>();
+    doAnswer(
+            new Answer<Void>() {
+              @Override
+              public Void answer(InvocationOnMock invocation) throws Throwable {
+                CloseableReference<CloseableImage> result =
+                    (CloseableReference<CloseableImage>) invocation.getArguments()[0];
+                results.add(((CloseableStaticBitmap) result.get()).getUnderlyingBitmap());
+                return null;
+              }
+            })
+        .when(mConsumer)
+        .onNewResult(any(CloseableReference.class), anyInt());
+    return results;
+  }
+
+  private static BitmapMemoryCacheKey newBitmapMemoryCacheKey(int width, int height) {
+    return new BitmapMemoryCacheKey(
+        SOURCE_URI,
+        new ResizeOptions(width, height),
+        RotationOptions.autoRotate(),
+        ImageDecodeOptions.defaults(),
+        null,
+        null,
+        null);
+  }
+
+  private static CloseableStaticBitmap mockStaticBitmap(int width, int height) {
+    CloseableStaticBitmap image = mock(CloseableStaticBitmap.class);
+    Bitmap bitmap = mockBitmap(width, height);
+    when(image.getUnderlyingBitmap()).thenReturn(bitmap);
+    when(image.getWidth()).thenReturn(width);
+    when(image.getHeight()).thenReturn(height);
+    when(image.getQualityInfo()).thenReturn(ImmutableQualityInfo.FULL_QUALITY);
+    return image;
+  }
+
+  private static Bitmap mockBitmap(int width, int height) {
+    Bitmap bitmap = mock(Bitmap.class);
+    when(bitmap.getWidth()).thenReturn(width);
+    when(bitmap.getHeight()).thenReturn(height);
+    return bitmap;
+  }
+
   private void setupBitmapMemoryCacheGetSuccess() {
     when(mMemoryCache.get(eq(mBitmapMemoryCacheKey))).thenReturn(mFinalImageReference);
   }
@@ -10,8 +10,10 @@ package com.facebook.imagepipeline.producers;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import android.graphics.Bitmap;
 import android.media.ExifInterface;
 import android.net.Uri;
+import android.os.Build;
 import com.facebook.common.internal.Suppliers;
 import com.facebook.common.memory.ByteArrayPool;
 import com.facebook.common.memory.PooledByteBuffer;
@@ -30,8 +32,10 @@ import com.facebook.imagepipeline.decoder.ProgressiveJpegParser;
 import com.facebook.imagepipeline.decoder.SimpleProgressiveJpegConfig;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.image.ImmutableQualityInfo;
+import com.facebook.imagepipeline.request.BasePostprocessor;
 import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.request.ImageRequestBuilder;
+import com.facebook.imagepipeline.transformation.BitmapTransformation;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -472,6 +476,51 @@ public class DecodeProducerTest {
             .build());
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.O)
+  public void testDecodesToHardwareBitmapsIfEnabled() {
+    ImageRequest imageRequest =
+        ImageRequestBuilder.newBuilderWithSource(Uri.parse("http://testuri")).build();
+
+    assertEquals(
+        Bitmap.Config.ARGB_8888,
+        DecodeProducer.getImageDecodeOptions(imageRequest, false).bitmapConfig);
+    assertEquals(
+        Bitmap.Config.HARDWARE,
+        DecodeProducer.getImageDecodeOptions(imageRequest, true).bitmapConfig);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.O)
+  public void testDecodesToSoftwareBitmapsIfPixelsAreNeeded() {
+    ImageRequest postprocessedRequest =
+        ImageRequestBuilder.newBuilderWithSource(Uri.parse("http://testuri"))
+            .setPostprocessor(new BasePostprocessor() {})
+            .build();
+    ImageRequest transformedRequest =
+        ImageRequestBuilder.newBuilderWithSource(Uri.parse("http://testuri"))
+            .setImageDecodeOptions(
+                ImageDecodeOptions.newBuilder()
+                    .setBitmapTransformation(mock(BitmapTransformation.class))
+                    .build())
+            .build();
+    ImageRequest rgb565Request =
+        ImageRequestBuilder.newBuilderWithSource(Uri.parse("http://testuri"))
+            .setImageDecodeOptions(
+                ImageDecodeOptions.newBuilder().setBitmapConfig(Bitmap.Config.RGB_565).build())
+            .build();
+
+    assertEquals(
+        Bitmap.Config.ARGB_8888,
+        DecodeProducer.getImageDecodeOptions(postprocessedRequest, true).bitmapConfig);
+    assertEquals(
+        Bitmap.Config.ARGB_8888,
+        DecodeProducer.getImageDecodeOptions(transformedRequest, true).bitmapConfig);
+    assertEquals(
+        Bitmap.Config.RGB_565,
+        DecodeProducer.getImageDecodeOptions(rgb565Request, true).bitmapConfig);
+  }
+
   private Consumer<EncodedImage> produceResults() {
     mDecodeProducer.produceResults(mConsumer, mProducerContext);
     ArgumentCaptor<Consumer> consumerCaptor = ArgumentCaptor.forClass(Consumer.class);
@@ -26,6 +26,7 @@ import com.facebook.common.memory.PooledByteBuffer;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imageformat.ImageFormat;
 import com.facebook.imagepipeline.cache.BufferedDiskCache;
+import com.facebook.imagepipeline.cache.CacheAdmissionFilter;
 import com.facebook.imagepipeline.cache.CacheKeyFactory;
 import com.facebook.imagepipeline.common.Priority;
 import com.facebook.imagepipeline.core.ImagePipelineConfig;
@@ -251,6 +252,62 @@ public class DiskCacheWriteProducerTest {
         mInputProducer, mDefaultBufferedDiskCache, mSmallImageBufferedDiskCache, mProducerListener);
   }
 
+  @Test
+  public void testAdmissionFilterSkipsFirstRequest() {
+    DiskCacheWriteProducer diskCacheWriteProducer =
+        new DiskCacheWriteProducer(
+            mDefaultBufferedDiskCache,
+            mSmallImageBufferedDiskCache,
+            mCacheKeyFactory,
+            new CacheAdmissionFilter(100),
+            mInputProducer);
+    setupInputProducerSuccess();
+
+    diskCacheWriteProducer.produceResults(mConsumer, mProducerContext);
+    verify(mConsumer).onNewResult(mFinalEncodedImage, Consumer.IS_LAST);
+    verify(mDefaultBufferedDiskCache, never()).put(any(CacheKey.class), any(EncodedImage.class));
+
+    diskCacheWriteProducer.produceResults(mConsumer, mProducerContext);
+    verify(mDefaultBufferedDiskCache).put(mCacheKey, mFinalEncodedImage);
+  }
+
+  @Test
+  public void testAdmissionFilterAlwaysAdmitsPrefetches() {
+    DiskCacheWriteProducer diskCacheWriteProducer =
+        new DiskCacheWriteProducer(
+            mDefaultBufferedDiskCache,
+            mSmallImageBufferedDiskCache,
+            mCacheKeyFactory,
+            new CacheAdmissionFilter(100),
+            mInputProducer);
+    SettableProducerContext prefetchProducerContext =
+        new SettableProducerContext(
+            mImageRequest,
+            mRequestId,
+            mProducerListener,
+            mCallerContext,
+            ImageRequest.RequestLevel.FULL_FETCH,
+            true,
+            true,
+            Priority.MEDIUM,
+            mConfig);
+    doAnswer(
+            new Answer<Object>() {
+              @Override
+              public Object answer(InvocationOnMock invocation) throws Throwable {
+                Consumer consumer = (Consumer) invocation.getArguments()[0];
+                consumer.onNewResult(mFinalEncodedImage, Consumer.IS_LAST);
+                return null;
+              }
+            })
+        .when(mInputProducer)
+        .produceResults(any(Consumer.class), eq(prefetchProducerContext));
+
+    diskCacheWriteProducer.produceResults(mConsumer, prefetchProducerContext);
+
+    verify(mDefaultBufferedDiskCache).put(mCacheKey, mFinalEncodedImage);
+  }
+
   private void setupInputProducerSuccessFormatUnknown() {
     setupInputProducerSuccessWithStatusFlags(0, mFinalEncodedImageFormatUnknown);
   }
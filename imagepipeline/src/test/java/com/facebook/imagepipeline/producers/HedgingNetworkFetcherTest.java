@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.imagepipeline.producers;
+
+import static com.facebook.imagepipeline.common.Priority.HIGH;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imagepipeline.producers.HedgingNetworkFetcher.HedgingFetchState;
+import com.facebook.imagepipeline.request.ImageRequest;
+import com.facebook.imagepipeline.testing.FakeClock;
+import com.facebook.imagepipeline.testing.TestScheduledExecutorService;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class HedgingNetworkFetcherTest {
+
+  private static final long DEFAULT_HEDGE_DELAY_MS = 500;
+  private static final long BASE_BACKOFF_MS = 100;
+  private static final long MAX_BACKOFF_MS = 1000;
+
+  private final NetworkFetcher<FetchState> delegate = mock(NetworkFetcher.class);
+  private final NetworkFetcher.Callback callback = mock(NetworkFetcher.Callback.class);
+  private final Random random = mock(Random.class);
+
+  private FakeClock clock;
+  private TestScheduledExecutorService executor;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock();
+    executor = new TestScheduledExecutorService(clock);
+    when(random.nextDouble()).thenReturn(1.0);
+    when(delegate.createFetchState(any(Consumer.class), any(ProducerContext.class)))
+        .thenAnswer(
+            new Answer<FetchState>() {
+              @Override
+              public FetchState answer(InvocationOnMock invocation) {
+                return new FetchState(
+                    (Consumer<EncodedImage>) invocation.getArguments()[0],
+                    (ProducerContext) invocation.getArguments()[1]);
+              }
+            });
+  }
+
+  @Test
+  public void testNoHedgeWhenResponseArrivesBeforeDeadline() throws IOException {
+    HedgingNetworkFetcher<FetchState> fetcher = newFetcher(0.9f, 0, 0);
+    HedgingFetchState<FetchState> fetchState = fetch(fetcher, "http://host/1");
+    List<NetworkFetcher.Callback> attempts = captureAttemptCallbacks(1);
+
+    clock.incrementBy(DEFAULT_HEDGE_DELAY_MS - 1);
+    InputStream response = new ByteArrayInputStream(new byte[10]);
+    attempts.get(0).onResponse(response, 10);
+    verify(callback).onResponse(response, 10);
+
+    clock.incrementBy(DEFAULT_HEDGE_DELAY_MS);
+    verify(delegate, times(1)).fetch(any(FetchState.class), any(NetworkFetcher.Callback.class));
+    assertThat(fetchState.getAttemptCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testHedgeWinsAndPrimaryIsCancelled() throws IOException {
+    HedgingNetworkFetcher<FetchState> fetcher = newFetcher(0.9f, 0, 0);
+    HedgingFetchState<FetchState> fetchState = fetch(fetcher, "http://host/1");
+    captureAttemptCallbacks(1);
+
+    clock.incrementBy(DEFAULT_HEDGE_DELAY_MS);
+    List<NetworkFetcher.Callback> attempts = captureAttemptCallbacks(2);
+    assertThat(fetchState.getAttemptCount()).isEqualTo(2);
+
+    InputStream response = new ByteArrayInputStream(new byte[10]);
+    attempts.get(1).onResponse(response, 10);
+    verify(callback).onResponse(response, 10);
+    assertThat(fetchState.getAttemptContext(0).isCancelled()).isTrue();
+    assertThat(fetchState.getAttemptContext(1).isCancelled()).isFalse();
+
+    // The loser reporting its cancellation must not reach the producer.
+    attempts.get(0).onCancellation();
+    verify(callback, never()).onCancellation();
+
+    fetcher.onFetchCompletion(fetchState, 10);
+    verify(delegate).onFetchCompletion(fetchState.getDelegatedState(1), 10);
+    Map<String, String> extras = fetcher.getExtraMap(fetchState, 10);
+    assertThat(extras).containsEntry("hedge_count", "1");
+    assertThat(extras).containsEntry("winning_attempt", "1");
+    assertThat(extras).containsEntry("retry_count", "0");
+  }
+
+  @Test
+  public void testHedgeDelayFollowsObservedLatency() throws IOException {
+    HedgingNetworkFetcher<FetchState> fetcher = newFetcher(0.5f, 0, 0);
+    assertThat(fetcher.getHedgeDelayMs()).isEqualTo(DEFAULT_HEDGE_DELAY_MS);
+
+    for (int i = 0; i < HedgingNetworkFetcher.MIN_LATENCY_SAMPLES; i++) {
+      fetch(fetcher, "http://host/" + i);
+      List<NetworkFetcher.Callback> attempts = captureAttemptCallbacks(i + 1);
+      clock.incrementBy(10 * (i + 1));
+      attempts.get(i).onResponse(new ByteArrayInputStream(new byte[1]), 1);
+    }
+    // Samples are 10, 20, ..., 80 ms; the median is 40 ms.
+    assertThat(fetcher.getHedgeDelayMs()).isEqualTo(40);
+  }
+
+  @Test
+  public void testHedgingDisabled() {
+    HedgingNetworkFetcher<FetchState> fetcher =
+        newFetcher(HedgingNetworkFetcher.HEDGING_DISABLED, 0, 0);
+    fetch(fetcher, "http://host/1");
+    clock.incrementBy(10 * DEFAULT_HEDGE_DELAY_MS);
+    verify(delegate, times(1)).fetch(any(FetchState.class), any(NetworkFetcher.Callback.class));
+  }
+
+  @Test
+  public void testRetriesWithBackoff() {
+    HedgingNetworkFetcher<FetchState> fetcher =
+        newFetcher(HedgingNetworkFetcher.HEDGING_DISABLED, 2, 0);
+    HedgingFetchState<FetchState> fetchState = fetch(fetcher, "http://host/1");
+    Throwable throwable = new IOException();
+
+    captureAttemptCallbacks(1).get(0).onFailure(throwable);
+    verify(callback, never()).onFailure(any(Throwable.class));
+    // The first retry waits for the base backoff.
+    clock.incrementBy(BASE_BACKOFF_MS - 1);
+    captureAttemptCallbacks(1);
+    clock.incrementBy(1);
+
+    captureAttemptCallbacks(2).get(1).onFailure(throwable);
+    // The second retry waits twice as long.
+    clock.incrementBy(2 * BASE_BACKOFF_MS - 1);
+    captureAttemptCallbacks(2);
+    clock.incrementBy(1);
+
+    captureAttemptCallbacks(3).get(2).onFailure(throwable);
+    verify(callback).onFailure(throwable);
+    assertThat(fetcher.getExtraMap(fetchState, 0)).containsEntry("retry_count", "2");
+  }
+
+  @Test
+  public void testBackoffIsBounded() {
+    HedgingNetworkFetcher<FetchState> fetcher =
+        newFetcher(HedgingNetworkFetcher.HEDGING_DISABLED, 20, 0);
+    assertThat(fetcher.getBackoffMs(1)).isEqualTo(BASE_BACKOFF_MS);
+    assertThat(fetcher.getBackoffMs(3)).isEqualTo(4 * BASE_BACKOFF_MS);
+    assertThat(fetcher.getBackoffMs(20)).isEqualTo(MAX_BACKOFF_MS);
+    when(random.nextDouble()).thenReturn(0.0);
+    assertThat(fetcher.getBackoffMs(20)).isEqualTo(MAX_BACKOFF_MS / 2);
+  }
+
+  @Test
+  public void testCircuitOpensAfterConsecutiveFailures() throws IOException {
+    long openDurationMs = 5000;
+    HedgingNetworkFetcher<FetchState> fetcher =
+        new HedgingNetworkFetcher<>(
+            delegate,
+            executor,
+            HedgingNetworkFetcher.HEDGING_DISABLED,
+            DEFAULT_HEDGE_DELAY_MS,
+            0,
+            BASE_BACKOFF_MS,
+            MAX_BACKOFF_MS,
+            2,
+            openDurationMs,
+            clock,
+            random);
+    fetch(fetcher, "http://bad/1");
+    captureAttemptCallbacks(1).get(0).onFailure(new IOException());
+    fetch(fetcher, "http://bad/2");
+    captureAttemptCallbacks(2).get(1).onFailure(new IOException());
+
+    // The circuit is open: requests to the host fail without reaching the delegate.
+    HedgingFetchState<FetchState> rejected = fetch(fetcher, "http://bad/3");
+    captureAttemptCallbacks(2);
+    assertThat(fetcher.getExtraMap(rejected, 0)).containsEntry("circuit_open", "true");
+    verify(callback, times(3)).onFailure(any(Throwable.class));
+
+    // Other hosts are not affected.
+    fetch(fetcher, "http://good/1");
+    captureAttemptCallbacks(3);
+
+    // After the open duration, a trial request is let through and closes the circuit.
+    clock.incrementBy(openDurationMs);
+    fetch(fetcher, "http://bad/4");
+    captureAttemptCallbacks(4).get(3).onResponse(new ByteArrayInputStream(new byte[1]), 1);
+    assertThat(fetcher.allowRequest("bad")).isTrue();
+  }
+
+  @Test
+  public void testCancellationCancelsAllAttempts() {
+    HedgingNetworkFetcher<FetchState> fetcher = newFetcher(0.9f, 0, 0);
+    HedgingFetchState<FetchState> fetchState = fetch(fetcher, "http://host/1");
+    clock.incrementBy(DEFAULT_HEDGE_DELAY_MS);
+    List<NetworkFetcher.Callback> attempts = captureAttemptCallbacks(2);
+
+    ((SettableProducerContext) fetchState.getContext()).cancel();
+    assertThat(fetchState.getAttemptContext(0).isCancelled()).isTrue();
+    assertThat(fetchState.getAttemptContext(1).isCancelled()).isTrue();
+    verify(callback).onCancellation();
+
+    attempts.get(0).onCancellation();
+    attempts.get(1).onFailure(new IOException());
+    verify(callback).onCancellation();
+    verify(callback, never()).onFailure(any(Throwable.class));
+  }
+
+  @Test
+  public void testPendingRetryIsDroppedOnCancellation() {
+    HedgingNetworkFetcher<FetchState> fetcher =
+        newFetcher(HedgingNetworkFetcher.HEDGING_DISABLED, 1, 0);
+    HedgingFetchState<FetchState> fetchState = fetch(fetcher, "http://host/1");
+    captureAttemptCallbacks(1).get(0).onFailure(new IOException());
+
+    ((SettableProducerContext) fetchState.getContext()).cancel();
+    clock.incrementBy(MAX_BACKOFF_MS);
+    captureAttemptCallbacks(1);
+    verify(callback).onCancellation();
+    verify(delegate, never()).onFetchCompletion(any(FetchState.class), anyInt());
+  }
+
+  private HedgingNetworkFetcher<FetchState> newFetcher(
+      float hedgePercentile, int maxRetries, int circuitFailureThreshold) {
+    return new HedgingNetworkFetcher<>(
+        delegate,
+        executor,
+        hedgePercentile,
+        DEFAULT_HEDGE_DELAY_MS,
+        maxRetries,
+        BASE_BACKOFF_MS,
+        MAX_BACKOFF_MS,
+        circuitFailureThreshold,
+        0,
+        clock,
+        random);
+  }
+
+  private HedgingFetchState<FetchState> fetch(
+      HedgingNetworkFetcher<FetchState> fetcher, String uri) {
+    Consumer<EncodedImage> consumer = mock(Consumer.class);
+    SettableProducerContext context =
+        new SettableProducerContext(
+            ImageRequest.fromUri(uri), "id", null, null, null, false, false, HIGH, null);
+    HedgingFetchState<FetchState> fetchState = fetcher.createFetchState(consumer, context);
+    fetcher.fetch(fetchState, callback);
+    return fetchState;
+  }
+
+  /** Verifies the number of delegated fetches so far, and returns their callbacks in order. */
+  private List<NetworkFetcher.Callback> captureAttemptCallbacks(int expectedCount) {
+    ArgumentCaptor<NetworkFetcher.Callback> captor =
+        ArgumentCaptor.forClass(NetworkFetcher.Callback.class);
+    verify(delegate, times(expectedCount)).fetch(any(FetchState.class), captor.capture());
+    return captor.getAllValues();
+  }
+}
@@ -11,6 +11,8 @@ import android.graphics.Bitmap;
 import com.facebook.cache.common.CacheKey;
 import com.facebook.cache.common.SimpleCacheKey;
 import com.facebook.common.internal.Preconditions;
+import com.facebook.imagepipeline.filter.ParallelBoxBlurFilter;
+import com.facebook.imagepipeline.filter.RenderScriptBlurFilter;
 import com.facebook.imagepipeline.nativecode.NativeBlurFilter;
 import com.facebook.imagepipeline.request.BasePostprocessor;
 import com.facebook.infer.annotation.Nullsafe;
@@ -20,6 +22,9 @@ import javax.annotation.Nullable;
 /**
  * A fast and memory-efficient post processor performing an iterative box blur. For details see
  * {@link NativeBlurFilter#iterativeBoxBlur(Bitmap, int, int)}.
+ *
+ * <p>Large bitmaps can be blurred on several threads by passing a {@link ParallelBoxBlurFilter}
+ * instead.
  */
 @Nullsafe(Nullsafe.Mode.STRICT)
 public class IterativeBoxBlurPostProcessor extends BasePostprocessor {
@@ -28,6 +33,7 @@ public class IterativeBoxBlurPostProcessor extends BasePostprocessor {
 
   private final int mIterations;
   private final int mBlurRadius;
+  private final @Nullable ParallelBoxBlurFilter mParallelBoxBlurFilter;
 
   private @Nullable CacheKey mCacheKey;
 
@@ -36,22 +42,44 @@ public class IterativeBoxBlurPostProcessor extends BasePostprocessor {
   }
 
   public IterativeBoxBlurPostProcessor(int iterations, int blurRadius) {
+    this(iterations, blurRadius, null);
+  }
+
+  /**
+   * @param parallelBoxBlurFilter the filter to blur with instead of the native one, which limits
+   *     the radius to {@link RenderScriptBlurFilter#BLUR_MAX_RADIUS}
+   */
+  public IterativeBoxBlurPostProcessor(
+      int iterations, int blurRadius, @Nullable ParallelBoxBlurFilter parallelBoxBlurFilter) {
     Preconditions.checkArgument(iterations > 0);
     Preconditions.checkArgument(blurRadius > 0);
+    Preconditions.checkArgument(
+        parallelBoxBlurFilter == null || blurRadius <= RenderScriptBlurFilter.BLUR_MAX_RADIUS);
     mIterations = iterations;
     mBlurRadius = blurRadius;
+    mParallelBoxBlurFilter = parallelBoxBlurFilter;
   }
 
   @Override
   public void process(Bitmap bitmap) {
-    NativeBlurFilter.iterativeBoxBlur(bitmap, mIterations, mBlurRadius);
+    if (mParallelBoxBlurFilter != null) {
+      mParallelBoxBlurFilter.boxBlurBitmapInPlace(bitmap, mIterations, mBlurRadius);
+    } else {
+      NativeBlurFilter.iterativeBoxBlur(bitmap, mIterations, mBlurRadius);
+    }
   }
 
   @Nullable
   @Override
   public CacheKey getPostprocessorCacheKey() {
     if (mCacheKey == null) {
-      final String key = String.format((Locale) null, "i%dr%d", mIterations, mBlurRadius);
+      // the java and the native blur round differently
+      final String key =
+          String.format(
+              (Locale) null,
+              mParallelBoxBlurFilter != null ? "i%dr%dp" : "i%dr%d",
+              mIterations,
+              mBlurRadius);
       mCacheKey = new SimpleCacheKey(key);
     }
     return mCacheKey;
@@ -49,6 +49,7 @@ public class Config {
   public final int fadeDurationMs;
 
   public final boolean decodeCancellation;
+  public final boolean viewportPrefetch;
   public final boolean webpSupportEnabled;
 
   public final int decodingThreadCount;
@@ -101,6 +102,7 @@ public class Config {
         .setGridSpanCount(
             Integer.parseInt(sharedPreferences.getString(Const.GRID_SPAN_COUNT_KEY, "3")))
         .setDecodeCancellation(sharedPreferences.getBoolean(Const.DECODE_CANCELLATION_KEY, false))
+        .setViewportPrefetch(sharedPreferences.getBoolean(Const.VIEWPORT_PREFETCH_KEY, false))
         .setWebpSupportEnabled(sharedPreferences.getBoolean(Const.WEBP_SUPPORT_KEY, false))
         .setDraweeOverlayEnabled(sharedPreferences.getBoolean(Const.DRAWEE_OVERLAY_KEY, false))
         .setInstrumentationEnabled(
@@ -132,6 +134,7 @@ public class Config {
     this.fadeDurationMs = builder.mFadeDurationMs;
     this.drawBorder = builder.mDrawBorder;
     this.decodeCancellation = builder.mDecodeCancellation;
+    this.viewportPrefetch = builder.mViewportPrefetch;
     this.webpSupportEnabled = builder.mWebpSupportEnabled;
     this.draweeOverlayEnabled = builder.mDraweeOverlayEnabled;
     this.instrumentationEnabled = builder.mInstrumentationEnabled;
@@ -160,6 +163,7 @@ public class Config {
     private int mOverridenHeight;
     private int mFadeDurationMs;
     private boolean mDecodeCancellation;
+    private boolean mViewportPrefetch;
     private boolean mWebpSupportEnabled;
     private boolean mDrawBorder;
     private boolean mDraweeOverlayEnabled;
@@ -273,6 +277,11 @@ public class Config {
       return this;
     }
 
+    public Builder setViewportPrefetch(boolean viewportPrefetch) {
+      this.mViewportPrefetch = viewportPrefetch;
+      return this;
+    }
+
     public Builder setWebpSupportEnabled(boolean webpSupportEnabled) {
       this.mWebpSupportEnabled = webpSupportEnabled;
       return this;
@@ -33,6 +33,7 @@ import com.facebook.samples.scrollperf.data.impl.DistinctUriDecorator;
 import com.facebook.samples.scrollperf.data.impl.LocalResourceSimpleAdapter;
 import com.facebook.samples.scrollperf.fragments.recycler.DraweeViewAdapter;
 import com.facebook.samples.scrollperf.fragments.recycler.DraweeViewListAdapter;
+import com.facebook.samples.scrollperf.fragments.recycler.ViewportPrefetchScrollListener;
 import com.facebook.samples.scrollperf.instrumentation.PerfListener;
 import com.facebook.samples.scrollperf.util.UI;
 
@@ -48,6 +49,8 @@ public class MainFragment extends Fragment {
 
   private DraweeViewAdapter mDraweeViewAdapter;
 
+  private ViewportPrefetchScrollListener mViewportPrefetchScrollListener;
+
   private ListAdapter mListAdapter;
 
   private SimpleAdapter<Uri> mSimpleAdapter;
@@ -169,6 +172,7 @@ public class MainFragment extends Fragment {
         mDraweeViewAdapter =
             new DraweeViewAdapter(getContext(), mSimpleAdapter, mConfig, mPerfListener);
         mRecyclerView.setAdapter(mDraweeViewAdapter);
+        updateViewportPrefetch();
         break;
       case Const.LISTVIEW_LAYOUT_VALUE:
         // Create the Adapter
@@ -182,6 +186,27 @@ public class MainFragment extends Fragment {
     }
   }
 
+  private void updateViewportPrefetch() {
+    if (mViewportPrefetchScrollListener != null) {
+      mViewportPrefetchScrollListener.cancelAll();
+      mRecyclerView.removeOnScrollListener(mViewportPrefetchScrollListener);
+      mViewportPrefetchScrollListener = null;
+    }
+    if (mConfig.viewportPrefetch) {
+      mViewportPrefetchScrollListener =
+          new ViewportPrefetchScrollListener(mRecyclerView, mSimpleAdapter, mConfig);
+      mRecyclerView.addOnScrollListener(mViewportPrefetchScrollListener);
+    }
+  }
+
+  @Override
+  public void onDestroyView() {
+    if (mViewportPrefetchScrollListener != null) {
+      mViewportPrefetchScrollListener.cancelAll();
+    }
+    super.onDestroyView();
+  }
+
   private SimpleAdapter<Uri> getExternalPhotoSimpleAdapter() {
     if (ActivityCompat.checkSelfPermission(getContext(), Manifest.permission.READ_EXTERNAL_STORAGE)
         == PackageManager.PERMISSION_GRANTED) {
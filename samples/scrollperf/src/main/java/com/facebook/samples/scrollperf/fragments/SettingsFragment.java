@@ -72,6 +72,7 @@ public class SettingsFragment extends PreferenceFragmentCompat
     updateFadeDurationSummary(findPreference(Const.FADE_DURATION_KEY));
     updateDrawBorderSummary(findPreference(Const.DRAW_BORDER_KEY));
     updateDecodeCancellationSummary(findPreference(Const.DECODE_CANCELLATION_KEY));
+    updateViewportPrefetchSummary(findPreference(Const.VIEWPORT_PREFETCH_KEY));
     // This has no meaning for Android > JELLY_BEAN_MR1 because it already supports WebP
     if (WebpSupportStatus.sIsWebpSupportRequired) {
       updateWebpSupportSummary(findPreference(Const.WEBP_SUPPORT_KEY));
@@ -148,6 +149,9 @@ public class SettingsFragment extends PreferenceFragmentCompat
         updateDecodeCancellationSummary(preference);
         getShowRestartMessageDialog().show(getChildFragmentManager(), null);
         break;
+      case Const.VIEWPORT_PREFETCH_KEY:
+        updateViewportPrefetchSummary(preference);
+        break;
       case Const.DRAWEE_OVERLAY_KEY:
         updateDraweeOverlaySummary(preference);
         getShowRestartMessageDialog().show(getChildFragmentManager(), null);
@@ -267,6 +271,14 @@ public class SettingsFragment extends PreferenceFragmentCompat
         R.string.unchecked_decode_cancellation_summary);
   }
 
+  private void updateViewportPrefetchSummary(final Preference preference) {
+    updateCheckBoxPreference(
+        getResources(),
+        (CheckBoxPreference) preference,
+        R.string.checked_viewport_prefetch_summary,
+        R.string.unchecked_viewport_prefetch_summary);
+  }
+
   private void updateWebpSupportSummary(final Preference preference) {
     updateCheckBoxPreference(
         getResources(),
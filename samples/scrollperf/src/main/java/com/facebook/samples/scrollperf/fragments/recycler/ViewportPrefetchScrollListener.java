@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.samples.scrollperf.fragments.recycler;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.facebook.datasource.DataSource;
+import com.facebook.drawee.backends.pipeline.Fresco;
+import com.facebook.fresco.viewport.ViewportPrefetchScheduler;
+import com.facebook.imagepipeline.common.Priority;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import com.facebook.imagepipeline.core.ImagePipeline;
+import com.facebook.imagepipeline.request.ImageRequest;
+import com.facebook.imagepipeline.request.ImageRequestBuilder;
+import com.facebook.samples.scrollperf.conf.Config;
+import com.facebook.samples.scrollperf.data.SimpleAdapter;
+import com.facebook.samples.scrollperf.util.PipelineUtil;
+
+/**
+ * Feeds the scroll events of a vertical RecyclerView to a {@link ViewportPrefetchScheduler} and
+ * issues the prefetches through the ImagePipeline. All the items are assumed to have the size of
+ * the first visible one, which is the case for this app.
+ */
+public class ViewportPrefetchScrollListener extends RecyclerView.OnScrollListener
+    implements ViewportPrefetchScheduler.ItemLayout, ViewportPrefetchScheduler.Prefetcher {
+
+  private final RecyclerView mRecyclerView;
+  private final SimpleAdapter<Uri> mSimpleAdapter;
+  private final Config mConfig;
+  private final ViewportPrefetchScheduler mScheduler;
+
+  private int mRowHeight;
+  private int mItemWidth;
+  private int mItemHeight;
+
+  public ViewportPrefetchScrollListener(
+      RecyclerView recyclerView, SimpleAdapter<Uri> simpleAdapter, Config config) {
+    mRecyclerView = recyclerView;
+    mSimpleAdapter = simpleAdapter;
+    mConfig = config;
+    // Prefetch one screen around the viewport when idle, keep downgraded prefetches for two
+    int screenHeight = recyclerView.getResources().getDisplayMetrics().heightPixels;
+    mScheduler = new ViewportPrefetchScheduler(this, this, screenHeight, 2 * screenHeight);
+  }
+
+  @Override
+  public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+    if (recyclerView.getChildCount() == 0) {
+      return;
+    }
+    View firstChild = recyclerView.getChildAt(0);
+    int firstPosition = recyclerView.getChildAdapterPosition(firstChild);
+    if (firstPosition == RecyclerView.NO_POSITION) {
+      return;
+    }
+    mRowHeight = firstChild.getHeight();
+    if (mRowHeight == 0) {
+      return;
+    }
+    ViewGroup.LayoutParams layoutParams = firstChild.getLayoutParams();
+    mItemWidth = layoutParams.width;
+    mItemHeight = layoutParams.height;
+    int viewportStart = clamp((long) getRow(firstPosition) * mRowHeight - firstChild.getTop());
+    mScheduler.onViewportChanged(
+        viewportStart,
+        clamp((long) viewportStart + recyclerView.getHeight()),
+        SystemClock.uptimeMillis());
+  }
+
+  @Override
+  public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+    if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+      mScheduler.onScrollStopped();
+    }
+  }
+
+  public void cancelAll() {
+    mScheduler.cancelAll();
+  }
+
+  @Override
+  public int getItemCount() {
+    return mSimpleAdapter.getSize();
+  }
+
+  @Override
+  public int getItemStart(int position) {
+    return clamp((long) getRow(position) * mRowHeight);
+  }
+
+  @Override
+  public int getItemEnd(int position) {
+    return clamp((long) (getRow(position) + 1) * mRowHeight);
+  }
+
+  @Override
+  public ViewportPrefetchScheduler.PrefetchHandle prefetch(
+      int position, ViewportPrefetchScheduler.PrefetchLevel level, boolean lowPriority) {
+    // Same request as the one of the DraweeViewHolder, so that the prefetch is a cache hit
+    ImageRequestBuilder imageRequestBuilder =
+        ImageRequestBuilder.newBuilderWithSource(mSimpleAdapter.get(position))
+            .setResizeOptions(new ResizeOptions(mItemWidth, mItemHeight));
+    PipelineUtil.addOptionalFeatures(imageRequestBuilder, mConfig);
+    ImageRequest imageRequest = imageRequestBuilder.build();
+    ImagePipeline imagePipeline = Fresco.getImagePipeline();
+    Priority priority = lowPriority ? Priority.LOW : Priority.MEDIUM;
+    final DataSource<Void> dataSource;
+    switch (level) {
+      case BITMAP_CACHE:
+        dataSource = imagePipeline.prefetchToBitmapCache(imageRequest, null);
+        break;
+      case ENCODED_CACHE:
+        dataSource = imagePipeline.prefetchToEncodedCache(imageRequest, null, priority);
+        break;
+      case DISK_CACHE:
+      default:
+        dataSource = imagePipeline.prefetchToDiskCache(imageRequest, null, priority);
+        break;
+    }
+    return new ViewportPrefetchScheduler.PrefetchHandle() {
+      @Override
+      public void cancel() {
+        dataSource.close();
+      }
+    };
+  }
+
+  private int getRow(int position) {
+    RecyclerView.LayoutManager layoutManager = mRecyclerView.getLayoutManager();
+    if (layoutManager instanceof GridLayoutManager) {
+      return position / ((GridLayoutManager) layoutManager).getSpanCount();
+    }
+    return position;
+  }
+
+  private static int clamp(long value) {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+  }
+}
@@ -16,6 +16,8 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.Nullable;
+import com.facebook.cache.common.CacheKey;
+import com.facebook.common.memory.NoOpMemoryTrimmableRegistry;
 import com.facebook.drawee.backends.pipeline.Fresco;
 import com.facebook.drawee.controller.BaseControllerListener;
 import com.facebook.drawee.controller.ControllerListener;
@@ -26,19 +28,34 @@ import com.facebook.fresco.samples.showcase.imagepipeline.widget.ResizableFrameL
 import com.facebook.fresco.samples.showcase.misc.ImageUriProvider;
 import com.facebook.fresco.vito.core.FrescoVitoImageDecodeOptions;
 import com.facebook.fresco.vito.core.FrescoVitoRegionDecoder;
+import com.facebook.imagepipeline.core.ImagePipelineFactory;
 import com.facebook.imagepipeline.decoder.ImageDecoder;
+import com.facebook.imagepipeline.decoder.RegionCache;
+import com.facebook.imagepipeline.decoder.RegionDecodeService;
+import com.facebook.imagepipeline.decoder.RegionDecoderPool;
 import com.facebook.imagepipeline.image.ImageInfo;
+import com.facebook.imagepipeline.platform.PlatformDecoder;
+import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.request.ImageRequestBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /** Simple experimental Fresco Vito fragment that just displays an image. */
 public class FrescoVitoLithoRegionDecodeFragment extends BaseShowcaseFragment {
 
+  private static final int TILE_SIZE_PX = 512;
+  private static final int DECODERS_PER_IMAGE = 2;
+  private static final int MAX_CACHED_REGIONS_SIZE = 16 * 1024 * 1024;
+
   private ImageLoader mFullDraweeView;
   private ResizableFrameLayout mSelectedParentBounds;
   private ResizableFrameLayout mSelectedFocusPoint;
   private ImageLoader mRegionDraweeView;
   private Uri mUri;
   private @Nullable ImageInfo mImageInfo;
+  private @Nullable ExecutorService mTileDecodeExecutor;
+  private @Nullable RegionDecodeService mRegionDecodeService;
+  private @Nullable CacheKey mEncodedCacheKey;
 
   private final ControllerListener<ImageInfo> mControllerListener =
       new BaseControllerListener<ImageInfo>() {
@@ -79,6 +96,22 @@ public class FrescoVitoLithoRegionDecodeFragment extends BaseShowcaseFragment {
         sampleUris()
             .createSampleUri(ImageUriProvider.ImageSize.L, ImageUriProvider.Orientation.LANDSCAPE);
 
+    // the regions of the image are decoded with the same decoders and tiles while they change
+    ImagePipelineFactory imagePipelineFactory = Fresco.getImagePipelineFactory();
+    mEncodedCacheKey =
+        imagePipelineFactory
+            .getImagePipeline()
+            .getCacheKeyFactory()
+            .getEncodedCacheKey(ImageRequest.fromUri(mUri), null);
+    mTileDecodeExecutor = Executors.newFixedThreadPool(DECODERS_PER_IMAGE - 1);
+    mRegionDecodeService =
+        new RegionDecodeService(
+            new RegionDecoderPool(DECODERS_PER_IMAGE, 1),
+            new RegionCache(NoOpMemoryTrimmableRegistry.getInstance(), MAX_CACHED_REGIONS_SIZE),
+            imagePipelineFactory.getPlatformBitmapFactory(),
+            TILE_SIZE_PX,
+            mTileDecodeExecutor);
+
     mFullDraweeView = (ImageLoader) view.findViewById(R.id.drawee_view_full);
     mFullDraweeView.setController(
         Fresco.newDraweeControllerBuilder()
@@ -104,6 +137,19 @@ public class FrescoVitoLithoRegionDecodeFragment extends BaseShowcaseFragment {
         });
   }
 
+  @Override
+  public void onDestroyView() {
+    super.onDestroyView();
+    if (mRegionDecodeService != null && mEncodedCacheKey != null) {
+      mRegionDecodeService.evict(mEncodedCacheKey);
+    }
+    if (mTileDecodeExecutor != null) {
+      mTileDecodeExecutor.shutdown();
+    }
+    mRegionDecodeService = null;
+    mTileDecodeExecutor = null;
+  }
+
   private void updateRegion() {
     if (mImageInfo == null) {
       return;
@@ -140,6 +186,10 @@ public class FrescoVitoLithoRegionDecodeFragment extends BaseShowcaseFragment {
   }
 
   private ImageDecoder createRegionDecoder() {
-    return new FrescoVitoRegionDecoder(Fresco.getImagePipelineFactory().getPlatformDecoder());
+    PlatformDecoder platformDecoder = Fresco.getImagePipelineFactory().getPlatformDecoder();
+    if (mRegionDecodeService == null || mEncodedCacheKey == null) {
+      return new FrescoVitoRegionDecoder(platformDecoder);
+    }
+    return new FrescoVitoRegionDecoder(platformDecoder, mRegionDecodeService, mEncodedCacheKey);
   }
 }
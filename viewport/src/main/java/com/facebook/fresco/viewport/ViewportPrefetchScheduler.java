@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.viewport;
+
+import com.facebook.infer.annotation.Nullsafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Schedules prefetches for the items of a scrolling list, based on the scroll velocity.
+ *
+ * <p>Items that are predicted to enter the viewport soon are prefetched to the bitmap cache, items
+ * further away to the encoded memory cache and then to the disk cache. Items that scroll away are
+ * first downgraded to a low priority disk cache prefetch and then cancelled.
+ *
+ * <p>Items are laid out along a single scroll axis, in position order. All the coordinates are in
+ * pixels along that axis and all the methods must be called from the same thread, usually the UI
+ * thread.
+ */
+@Nullsafe(Nullsafe.Mode.STRICT)
+public class ViewportPrefetchScheduler {
+
+  /** Where an item is prefetched to, from the most to the least expensive. */
+  public enum PrefetchLevel {
+    BITMAP_CACHE,
+    ENCODED_CACHE,
+    DISK_CACHE
+  }
+
+  /** Position of the items along the scroll axis. */
+  public interface ItemLayout {
+
+    int getItemCount();
+
+    int getItemStart(int position);
+
+    int getItemEnd(int position);
+  }
+
+  /** Issues the actual prefetch requests. */
+  public interface Prefetcher {
+
+    /**
+     * Starts prefetching the image of the given item.
+     *
+     * @return handle used to cancel the prefetch
+     */
+    PrefetchHandle prefetch(int position, PrefetchLevel level, boolean lowPriority);
+  }
+
+  /** A running prefetch. */
+  public interface PrefetchHandle {
+
+    void cancel();
+  }
+
+  public static final long DEFAULT_BITMAP_HORIZON_MS = 250;
+  public static final long DEFAULT_ENCODED_HORIZON_MS = 750;
+  public static final long DEFAULT_DISK_HORIZON_MS = 2000;
+
+  /** Samples further apart than this are not considered part of the same scroll gesture. */
+  private static final long MAX_SAMPLE_INTERVAL_MS = 100;
+
+  /** Weight of the newest sample in the smoothed velocity. */
+  private static final float VELOCITY_SMOOTHING = 0.5f;
+
+  private static class Entry {
+    final PrefetchLevel level;
+    final boolean lowPriority;
+    final PrefetchHandle handle;
+
+    Entry(PrefetchLevel level, boolean lowPriority, PrefetchHandle handle) {
+      this.level = level;
+      this.lowPriority = lowPriority;
+      this.handle = handle;
+    }
+  }
+
+  private final ItemLayout mItemLayout;
+  private final Prefetcher mPrefetcher;
+  private final long mBitmapHorizonMs;
+  private final long mEncodedHorizonMs;
+  private final long mDiskHorizonMs;
+  private final int mIdleDistancePx;
+  private final int mKeepDistancePx;
+
+  private final Map<Integer, Entry> mEntries = new HashMap<>();
+
+  private int mViewportStart;
+  private int mViewportEnd;
+  private long mLastSampleTimeMs = -1;
+  private float mVelocityPxPerMs;
+
+  /**
+   * @param itemLayout position of the items
+   * @param prefetcher issues the prefetches
+   * @param idleDistancePx items closer than this to the viewport are always prefetched to the
+   *     bitmap cache, even when not scrolling
+   * @param keepDistancePx items that scroll away are downgraded until they are further than this
+   *     from the viewport, and cancelled afterwards
+   */
+  public ViewportPrefetchScheduler(
+      ItemLayout itemLayout, Prefetcher prefetcher, int idleDistancePx, int keepDistancePx) {
+    this(
+        itemLayout,
+        prefetcher,
+        DEFAULT_BITMAP_HORIZON_MS,
+        DEFAULT_ENCODED_HORIZON_MS,
+        DEFAULT_DISK_HORIZON_MS,
+        idleDistancePx,
+        keepDistancePx);
+  }
+
+  /**
+   * @param bitmapHorizonMs items predicted to enter the viewport within this delay are prefetched
+   *     to the bitmap cache
+   * @param encodedHorizonMs same for the encoded memory cache
+   * @param diskHorizonMs same for the disk cache
+   */
+  public ViewportPrefetchScheduler(
+      ItemLayout itemLayout,
+      Prefetcher prefetcher,
+      long bitmapHorizonMs,
+      long encodedHorizonMs,
+      long diskHorizonMs,
+      int idleDistancePx,
+      int keepDistancePx) {
+    if (bitmapHorizonMs > encodedHorizonMs || encodedHorizonMs > diskHorizonMs) {
+      throw new IllegalArgumentException("Prefetch horizons must be increasing");
+    }
+    mItemLayout = itemLayout;
+    mPrefetcher = prefetcher;
+    mBitmapHorizonMs = bitmapHorizonMs;
+    mEncodedHorizonMs = encodedHorizonMs;
+    mDiskHorizonMs = diskHorizonMs;
+    mIdleDistancePx = idleDistancePx;
+    mKeepDistancePx = keepDistancePx;
+  }
+
+  /**
+   * Called whenever the viewport moves.
+   *
+   * @param viewportStart start of the visible area
+   * @param viewportEnd end of the visible area
+   * @param uptimeMs time of the event
+   */
+  public void onViewportChanged(int viewportStart, int viewportEnd, long uptimeMs) {
+    if (mLastSampleTimeMs >= 0) {
+      long elapsedMs = uptimeMs - mLastSampleTimeMs;
+      if (elapsedMs > MAX_SAMPLE_INTERVAL_MS) {
+        mVelocityPxPerMs = 0;
+      } else if (elapsedMs > 0) {
+        float velocity = (float) (viewportStart - mViewportStart) / elapsedMs;
+        mVelocityPxPerMs =
+            VELOCITY_SMOOTHING * velocity + (1 - VELOCITY_SMOOTHING) * mVelocityPxPerMs;
+      }
+    }
+    mLastSampleTimeMs = uptimeMs;
+    mViewportStart = viewportStart;
+    mViewportEnd = viewportEnd;
+    schedule();
+  }
+
+  /** Called when scrolling stops, so that only the items around the viewport stay prefetched. */
+  public void onScrollStopped() {
+    mVelocityPxPerMs = 0;
+    mLastSampleTimeMs = -1;
+    schedule();
+  }
+
+  /** Cancels all the prefetches, e.g. when the list is detached. */
+  public void cancelAll() {
+    for (Entry entry : mEntries.values()) {
+      entry.handle.cancel();
+    }
+    mEntries.clear();
+  }
+
+  public float getVelocityPxPerMs() {
+    return mVelocityPxPerMs;
+  }
+
+  /** Returns the level an item is currently prefetched to, or null if it is not prefetched. */
+  public @Nullable PrefetchLevel getPrefetchLevel(int position) {
+    Entry entry = mEntries.get(position);
+    return entry != null ? entry.level : null;
+  }
+
+  public boolean isLowPriority(int position) {
+    Entry entry = mEntries.get(position);
+    return entry != null && entry.lowPriority;
+  }
+
+  private void schedule() {
+    int itemCount = mItemLayout.getItemCount();
+    Map<Integer, PrefetchLevel> wanted = new HashMap<>();
+    if (itemCount > 0) {
+      long lookaheadPx = (long) Math.abs(mVelocityPxPerMs * mDiskHorizonMs);
+      int reach = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(mIdleDistancePx, lookaheadPx));
+      int first = findFirstItemEndingAfter(mViewportStart - reach, itemCount);
+      for (int position = first; position < itemCount; position++) {
+        if (mItemLayout.getItemStart(position) >= mViewportEnd + reach) {
+          break;
+        }
+        PrefetchLevel level = getWantedLevel(position);
+        if (level != null) {
+          wanted.put(position, level);
+        }
+      }
+    }
+
+    List<Integer> positions = new ArrayList<>(mEntries.keySet());
+    for (Integer position : positions) {
+      if (wanted.containsKey(position)) {
+        continue;
+      }
+      Entry entry = mEntries.get(position);
+      if (entry == null) {
+        continue;
+      }
+      if (position < itemCount
+          && !isVisible(position)
+          && getDistance(position) <= mKeepDistancePx) {
+        if (!entry.lowPriority) {
+          replace(position, entry, PrefetchLevel.DISK_CACHE, true);
+        }
+      } else {
+        entry.handle.cancel();
+        mEntries.remove(position);
+      }
+    }
+
+    for (Map.Entry<Integer, PrefetchLevel> wantedEntry : wanted.entrySet()) {
+      int position = wantedEntry.getKey();
+      PrefetchLevel level = wantedEntry.getValue();
+      Entry entry = mEntries.get(position);
+      if (entry == null) {
+        mEntries.put(
+            position, new Entry(level, false, mPrefetcher.prefetch(position, level, false)));
+      } else if (entry.lowPriority || entry.level.compareTo(level) > 0) {
+        replace(position, entry, level, false);
+      }
+    }
+  }
+
+  /**
+   * Starts the new prefetch before cancelling the old one, so that the work already done for the
+   * item is handed over instead of being restarted.
+   */
+  private void replace(int position, Entry entry, PrefetchLevel level, boolean lowPriority) {
+    PrefetchHandle handle = mPrefetcher.prefetch(position, level, lowPriority);
+    mEntries.put(position, new Entry(level, lowPriority, handle));
+    entry.handle.cancel();
+  }
+
+  private @Nullable PrefetchLevel getWantedLevel(int position) {
+    if (isVisible(position)) {
+      // the view fetches its own image
+      return null;
+    }
+    int distance = getDistance(position);
+    if (distance <= mIdleDistancePx) {
+      return PrefetchLevel.BITMAP_CACHE;
+    }
+    boolean isAhead =
+        mVelocityPxPerMs > 0
+            ? mItemLayout.getItemStart(position) >= mViewportEnd
+            : mVelocityPxPerMs < 0 && mItemLayout.getItemEnd(position) <= mViewportStart;
+    if (!isAhead) {
+      return null;
+    }
+    float timeToEnterMs = distance / Math.abs(mVelocityPxPerMs);
+    if (timeToEnterMs <= mBitmapHorizonMs) {
+      return PrefetchLevel.BITMAP_CACHE;
+    } else if (timeToEnterMs <= mEncodedHorizonMs) {
+      return PrefetchLevel.ENCODED_CACHE;
+    } else if (timeToEnterMs <= mDiskHorizonMs) {
+      return PrefetchLevel.DISK_CACHE;
+    }
+    return null;
+  }
+
+  private boolean isVisible(int position) {
+    return mItemLayout.getItemEnd(position) > mViewportStart
+        && mItemLayout.getItemStart(position) < mViewportEnd;
+  }
+
+  /** Distance between the item and the viewport, 0 if visible. */
+  private int getDistance(int position) {
+    int start = mItemLayout.getItemStart(position);
+    int end = mItemLayout.getItemEnd(position);
+    if (start >= mViewportEnd) {
+      return start - mViewportEnd;
+    } else if (end <= mViewportStart) {
+      return mViewportStart - end;
+    }
+    return 0;
+  }
+
+  private int findFirstItemEndingAfter(int offset, int itemCount) {
+    int low = 0;
+    int high = itemCount - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (mItemLayout.getItemEnd(middle) > offset) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+}
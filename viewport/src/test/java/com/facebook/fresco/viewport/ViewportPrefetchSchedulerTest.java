@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.fresco.viewport;
+
+import static org.junit.Assert.*;
+
+import com.facebook.fresco.viewport.ViewportPrefetchScheduler.PrefetchLevel;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ViewportPrefetchSchedulerTest {
+
+  private static final int ITEM_COUNT = 1000;
+  private static final int ITEM_SIZE_PX = 100;
+
+  private FakePrefetcher mPrefetcher;
+
+  @Before
+  public void setUp() {
+    mPrefetcher = new FakePrefetcher();
+  }
+
+  @Test
+  public void testIdlePrefetchesItemsAroundViewport() {
+    ViewportPrefetchScheduler scheduler = createScheduler(150, 1000);
+
+    scheduler.onViewportChanged(1000, 1500, 0);
+
+    assertEquals(0f, scheduler.getVelocityPxPerMs(), 0f);
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(8));
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(9));
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(15));
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(16));
+    assertNull(scheduler.getPrefetchLevel(7));
+    assertNull(scheduler.getPrefetchLevel(17));
+    // visible items are fetched by their views
+    assertNull(scheduler.getPrefetchLevel(10));
+    assertNull(scheduler.getPrefetchLevel(14));
+    assertEquals(4, mPrefetcher.mPrefetchCount);
+  }
+
+  @Test
+  public void testLevelsFollowPredictedTimeToEnter() {
+    ViewportPrefetchScheduler scheduler = createScheduler(0, 1000);
+
+    scheduler.onViewportChanged(0, 500, 0);
+    scheduler.onViewportChanged(160, 660, 16);
+
+    // 10 px/ms smoothed to 5 px/ms
+    assertEquals(5f, scheduler.getVelocityPxPerMs(), 0.001f);
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(7));
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(19));
+    assertEquals(PrefetchLevel.ENCODED_CACHE, scheduler.getPrefetchLevel(20));
+    assertEquals(PrefetchLevel.ENCODED_CACHE, scheduler.getPrefetchLevel(44));
+    assertEquals(PrefetchLevel.DISK_CACHE, scheduler.getPrefetchLevel(45));
+    assertEquals(PrefetchLevel.DISK_CACHE, scheduler.getPrefetchLevel(106));
+    assertNull(scheduler.getPrefetchLevel(107));
+    // behind the scroll direction
+    assertNull(scheduler.getPrefetchLevel(0));
+    assertFalse(scheduler.isLowPriority(20));
+  }
+
+  @Test
+  public void testItemsGettingCloserAreUpgraded() {
+    ViewportPrefetchScheduler scheduler = createScheduler(0, 1000);
+
+    scheduler.onViewportChanged(0, 500, 0);
+    scheduler.onViewportChanged(160, 660, 16);
+    FakeHandle encodedHandle = mPrefetcher.mHandles.get(20);
+    scheduler.onViewportChanged(320, 820, 32);
+
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(20));
+    assertTrue(encodedHandle.mCancelled);
+    assertFalse(mPrefetcher.mHandles.get(20).mCancelled);
+  }
+
+  @Test
+  public void testItemsScrollingAwayAreDowngradedThenCancelled() {
+    ViewportPrefetchScheduler scheduler = createScheduler(0, 1000);
+
+    scheduler.onViewportChanged(1000, 1500, 0);
+    scheduler.onViewportChanged(1160, 1660, 16);
+    FakeHandle nearHandle = mPrefetcher.mHandles.get(17);
+    FakeHandle farHandle = mPrefetcher.mHandles.get(30);
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(17));
+    assertEquals(PrefetchLevel.ENCODED_CACHE, scheduler.getPrefetchLevel(30));
+
+    // change direction
+    scheduler.onViewportChanged(1000, 1500, 32);
+
+    assertTrue(scheduler.getVelocityPxPerMs() < 0);
+    assertTrue(nearHandle.mCancelled);
+    assertEquals(PrefetchLevel.DISK_CACHE, scheduler.getPrefetchLevel(17));
+    assertTrue(scheduler.isLowPriority(17));
+    assertTrue(mPrefetcher.mHandles.get(17).mLowPriority);
+    assertTrue(farHandle.mCancelled);
+    assertNull(scheduler.getPrefetchLevel(30));
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(9));
+  }
+
+  @Test
+  public void testItemsBecomingVisibleAreCancelled() {
+    ViewportPrefetchScheduler scheduler = createScheduler(0, 1000);
+
+    scheduler.onViewportChanged(0, 500, 0);
+    scheduler.onViewportChanged(160, 660, 16);
+    FakeHandle handle = mPrefetcher.mHandles.get(7);
+    scheduler.onViewportChanged(320, 820, 32);
+
+    assertTrue(handle.mCancelled);
+    assertNull(scheduler.getPrefetchLevel(7));
+  }
+
+  @Test
+  public void testScrollStoppedKeepsOnlyIdleItems() {
+    ViewportPrefetchScheduler scheduler = createScheduler(100, 0);
+
+    scheduler.onViewportChanged(0, 500, 0);
+    scheduler.onViewportChanged(160, 660, 16);
+    FakeHandle aheadHandle = mPrefetcher.mHandles.get(20);
+    scheduler.onScrollStopped();
+
+    assertEquals(0f, scheduler.getVelocityPxPerMs(), 0f);
+    assertTrue(aheadHandle.mCancelled);
+    assertNull(scheduler.getPrefetchLevel(20));
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(0));
+    assertEquals(PrefetchLevel.BITMAP_CACHE, scheduler.getPrefetchLevel(7));
+  }
+
+  @Test
+  public void testSlowSamplesResetVelocity() {
+    ViewportPrefetchScheduler scheduler = createScheduler(0, 0);
+
+    scheduler.onViewportChanged(0, 500, 0);
+    scheduler.onViewportChanged(160, 660, 1000);
+
+    assertEquals(0f, scheduler.getVelocityPxPerMs(), 0f);
+  }
+
+  @Test
+  public void testCancelAll() {
+    ViewportPrefetchScheduler scheduler = createScheduler(0, 1000);
+
+    scheduler.onViewportChanged(0, 500, 0);
+    scheduler.onViewportChanged(160, 660, 16);
+    scheduler.cancelAll();
+
+    for (FakeHandle handle : mPrefetcher.mHandles.values()) {
+      assertTrue(handle.mCancelled);
+    }
+    assertNull(scheduler.getPrefetchLevel(7));
+  }
+
+  private ViewportPrefetchScheduler createScheduler(int idleDistancePx, int keepDistancePx) {
+    return new ViewportPrefetchScheduler(
+        new FixedSizeItemLayout(), mPrefetcher, idleDistancePx, keepDistancePx);
+  }
+
+  private static class FixedSizeItemLayout implements ViewportPrefetchScheduler.ItemLayout {
+
+    @Override
+    public int getItemCount() {
+      return ITEM_COUNT;
+    }
+
+    @Override
+    public int getItemStart(int position) {
+      return position * ITEM_SIZE_PX;
+    }
+
+    @Override
+    public int getItemEnd(int position) {
+      return (position + 1) * ITEM_SIZE_PX;
+    }
+  }
+
+  private static class FakePrefetcher implements ViewportPrefetchScheduler.Prefetcher {
+
+    final Map<Integer, FakeHandle> mHandles = new HashMap<>();
+    int mPrefetchCount;
+
+    @Override
+    public ViewportPrefetchScheduler.PrefetchHandle prefetch(
+        int position, PrefetchLevel level, boolean lowPriority) {
+      FakeHandle handle = new FakeHandle(lowPriority);
+      mHandles.put(position, handle);
+      mPrefetchCount++;
+      return handle;
+    }
+  }
+
+  private static class FakeHandle implements ViewportPrefetchScheduler.PrefetchHandle {
+
+    final boolean mLowPriority;
+    boolean mCancelled;
+
+    FakeHandle(boolean lowPriority) {
+      mLowPriority = lowPriority;
+    }
+
+    @Override
+    public void cancel() {
+      mCancelled = true;
+    }
+  }
+}
@@ -130,6 +130,11 @@ public class FrescoExperiments {
     return false;
   }
 
+  /** Rounds circular images at decode time with cached coverage masks instead of native code. */
+  public boolean useCoverageMaskRounding() {
+    return false;
+  }
+
   public boolean fireOffRequestInBackground() {
     return true;
   }
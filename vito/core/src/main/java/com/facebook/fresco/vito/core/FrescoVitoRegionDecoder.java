@@ -12,9 +12,11 @@ import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.Build;
+import com.facebook.cache.common.CacheKey;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.common.ImageDecodeOptions;
 import com.facebook.imagepipeline.decoder.ImageDecoder;
+import com.facebook.imagepipeline.decoder.RegionDecodeService;
 import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.imagepipeline.image.CloseableStaticBitmap;
 import com.facebook.imagepipeline.image.EncodedImage;
@@ -27,13 +29,35 @@ import javax.annotation.Nullable;
 /**
  * Decodes images with an option to decode only a region when {@link
  * com.facebook.drawee.drawable.ScalingUtils.ScaleType} specified.
+ *
+ * <p>If a {@link RegionDecodeService} is given, the regions of the image are decoded by the
+ * service, keyed by the encoded cache key of the image, so that the region decoders and the decoded
+ * tiles are reused while the region changes, e.g. on pan and zoom.
  */
 public class FrescoVitoRegionDecoder implements ImageDecoder {
 
   private final PlatformDecoder mPlatformDecoder;
+  private final @Nullable RegionDecodeService mRegionDecodeService;
+  private final @Nullable CacheKey mEncodedCacheKey;
 
   public FrescoVitoRegionDecoder(PlatformDecoder platformDecoder) {
     mPlatformDecoder = platformDecoder;
+    mRegionDecodeService = null;
+    mEncodedCacheKey = null;
+  }
+
+  /**
+   * @param regionDecodeService service decoding the regions of the image
+   * @param encodedCacheKey encoded cache key of the image this decoder is used for, see {@link
+   *     com.facebook.imagepipeline.cache.CacheKeyFactory#getEncodedCacheKey}
+   */
+  public FrescoVitoRegionDecoder(
+      PlatformDecoder platformDecoder,
+      RegionDecodeService regionDecodeService,
+      CacheKey encodedCacheKey) {
+    mPlatformDecoder = platformDecoder;
+    mRegionDecodeService = regionDecodeService;
+    mEncodedCacheKey = encodedCacheKey;
   }
 
   /**
@@ -51,9 +75,25 @@ public class FrescoVitoRegionDecoder implements ImageDecoder {
 
     Rect regionToDecode = computeRegionToDecode(encodedImage, options);
 
-    CloseableReference<Bitmap> decodedBitmapReference =
-        mPlatformDecoder.decodeJPEGFromEncodedImageWithColorSpace(
-            encodedImage, options.bitmapConfig, regionToDecode, length, options.colorSpace);
+    CloseableReference<Bitmap> decodedBitmapReference;
+    if (regionToDecode != null
+        && mRegionDecodeService != null
+        && mEncodedCacheKey != null
+        && length >= encodedImage.getSize()
+        && options.bitmapTransformation == null) {
+      // the bitmap may be a tile shared with the region cache, it must not be transformed
+      decodedBitmapReference =
+          mRegionDecodeService.decodeRegion(
+              mEncodedCacheKey,
+              encodedImage,
+              regionToDecode,
+              getScale(regionToDecode, (FrescoVitoImageDecodeOptions) options),
+              options.bitmapConfig);
+    } else {
+      decodedBitmapReference =
+          mPlatformDecoder.decodeJPEGFromEncodedImageWithColorSpace(
+              encodedImage, options.bitmapConfig, regionToDecode, length, options.colorSpace);
+    }
     try {
       maybeApplyTransformation(options.bitmapTransformation, decodedBitmapReference);
       return new CloseableStaticBitmap(
@@ -91,6 +131,19 @@ public class FrescoVitoRegionDecoder implements ImageDecoder {
     return regionToDecode;
   }
 
+  /** Returns the ratio between the size the region is displayed at and its size in the image. */
+  private static float getScale(Rect regionToDecode, FrescoVitoImageDecodeOptions options) {
+    Rect parentBounds = options.parentBounds;
+    if (parentBounds == null || regionToDecode.width() <= 0 || regionToDecode.height() <= 0) {
+      return 1f;
+    }
+    float scale =
+        Math.max(
+            parentBounds.width() / (float) regionToDecode.width(),
+            parentBounds.height() / (float) regionToDecode.height());
+    return scale > 0 ? scale : 1f;
+  }
+
   private void maybeApplyTransformation(
       @Nullable BitmapTransformation transformation, CloseableReference<Bitmap> bitmapReference) {
     if (transformation == null) {
@@ -20,6 +20,7 @@ import com.facebook.imagepipeline.common.ImageDecodeOptions;
 import com.facebook.imagepipeline.common.ResizeOptions;
 import com.facebook.imagepipeline.common.RotationOptions;
 import com.facebook.imagepipeline.core.NativeCodeSetup;
+import com.facebook.imagepipeline.filter.CoverageMaskRoundingFilter;
 import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.request.ImageRequestBuilder;
 import com.facebook.imagepipeline.request.Postprocessor;
@@ -84,8 +85,9 @@ public class ImagePipelineUtilsImpl implements ImagePipelineUtils {
     boolean forceRoundAtDecode =
         roundingOptions == null ? false : roundingOptions.isForceRoundAtDecode();
 
-    if ((!forceRoundAtDecode && mExperiments.useNativeRounding())
-        && NativeCodeSetup.getUseNativeCode()) {
+    if (!forceRoundAtDecode
+        && ((mExperiments.useNativeRounding() && NativeCodeSetup.getUseNativeCode())
+            || mExperiments.useCoverageMaskRounding())) {
       setupNativeRounding(imageRequestBuilder, imageOptions.getRoundingOptions());
     }
 
@@ -166,13 +168,11 @@ public class ImagePipelineUtilsImpl implements ImagePipelineUtils {
   }
 
   private synchronized ImageDecodeOptions getCircularImageDecodeOptions(boolean antiAliased) {
-    final boolean useFastNativeRounding = mExperiments.useFastNativeRounding();
     if (antiAliased) {
       if (mCircularImageDecodeOptionsAntiAliased == null) {
         mCircularImageDecodeOptionsAntiAliased =
             ImageDecodeOptions.newBuilder()
-                .setBitmapTransformation(
-                    new CircularBitmapTransformation(true, useFastNativeRounding))
+                .setBitmapTransformation(createCircularBitmapTransformation(true))
                 .build();
       }
       return mCircularImageDecodeOptionsAntiAliased;
@@ -180,11 +180,18 @@ public class ImagePipelineUtilsImpl implements ImagePipelineUtils {
       if (mCircularImageDecodeOptions == null) {
         mCircularImageDecodeOptions =
             ImageDecodeOptions.newBuilder()
-                .setBitmapTransformation(
-                    new CircularBitmapTransformation(false, useFastNativeRounding))
+                .setBitmapTransformation(createCircularBitmapTransformation(false))
                 .build();
       }
       return mCircularImageDecodeOptions;
     }
   }
+
+  private CircularBitmapTransformation createCircularBitmapTransformation(boolean antiAliased) {
+    if (mExperiments.useCoverageMaskRounding()) {
+      return new CircularBitmapTransformation(
+          antiAliased, CoverageMaskRoundingFilter.getInstance());
+    }
+    return new CircularBitmapTransformation(antiAliased, mExperiments.useFastNativeRounding());
+  }
 }
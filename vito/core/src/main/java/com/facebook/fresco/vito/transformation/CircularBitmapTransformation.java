@@ -8,9 +8,11 @@
 package com.facebook.fresco.vito.transformation;
 
 import android.graphics.Bitmap;
+import com.facebook.imagepipeline.filter.CoverageMaskRoundingFilter;
 import com.facebook.imagepipeline.transformation.BitmapTransformation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import javax.annotation.Nullable;
 
 public class CircularBitmapTransformation implements BitmapTransformation {
 
@@ -18,22 +20,12 @@ public class CircularBitmapTransformation implements BitmapTransformation {
 
   private final boolean mUseFastNativeRounding;
 
+  private final @Nullable CoverageMaskRoundingFilter mRoundingFilter;
+
   private static Method sToCircle;
 
   private static Method sToCircleFast;
 
-  static {
-    try {
-      Class<?> clazz = Class.forName("com.facebook.imagepipeline.nativecode.NativeRoundingFilter");
-      sToCircle = clazz.getMethod("toCircle", Bitmap.class, boolean.class);
-      sToCircleFast = clazz.getMethod("toCircleFast", Bitmap.class, boolean.class);
-    } catch (ClassNotFoundException e) {
-      throw new RuntimeException("Native code for rounding unsupported", e);
-    } catch (NoSuchMethodException e) {
-      throw new RuntimeException("Native code for rounding unsupported", e);
-    }
-  }
-
   public CircularBitmapTransformation(boolean antiAliased) {
     this(antiAliased, false);
   }
@@ -41,10 +33,27 @@ public class CircularBitmapTransformation implements BitmapTransformation {
   public CircularBitmapTransformation(boolean antiAliased, boolean useFastNativeRounding) {
     mAntiAliased = antiAliased;
     mUseFastNativeRounding = useFastNativeRounding;
+    mRoundingFilter = null;
+  }
+
+  /**
+   * Creates a transformation that rounds with the cached coverage masks of the given filter instead
+   * of the native code, which pays off when many bitmaps have the same size.
+   */
+  public CircularBitmapTransformation(
+      boolean antiAliased, CoverageMaskRoundingFilter roundingFilter) {
+    mAntiAliased = antiAliased;
+    mUseFastNativeRounding = false;
+    mRoundingFilter = roundingFilter;
   }
 
   @Override
   public void transform(Bitmap bitmap) {
+    if (mRoundingFilter != null) {
+      mRoundingFilter.roundToCircle(bitmap, mAntiAliased);
+      return;
+    }
+    loadNativeMethods();
     try {
       if (mUseFastNativeRounding) {
         sToCircleFast.invoke(null, bitmap, mAntiAliased);
@@ -71,7 +80,8 @@ public class CircularBitmapTransformation implements BitmapTransformation {
     if (obj == null || getClass() != obj.getClass()) return false;
     CircularBitmapTransformation other = (CircularBitmapTransformation) obj;
 
-    return mAntiAliased == other.mAntiAliased;
+    return mAntiAliased == other.mAntiAliased
+        && (mRoundingFilter == null) == (other.mRoundingFilter == null);
   }
 
   public boolean isAntiAliased() {
@@ -80,6 +90,21 @@ public class CircularBitmapTransformation implements BitmapTransformation {
 
   @Override
   public int hashCode() {
-    return mAntiAliased ? 1 : 0;
+    return (mAntiAliased ? 1 : 0) + (mRoundingFilter != null ? 2 : 0);
+  }
+
+  private static synchronized void loadNativeMethods() {
+    if (sToCircle != null) {
+      return;
+    }
+    try {
+      Class<?> clazz = Class.forName("com.facebook.imagepipeline.nativecode.NativeRoundingFilter");
+      sToCircle = clazz.getMethod("toCircle", Bitmap.class, boolean.class);
+      sToCircleFast = clazz.getMethod("toCircleFast", Bitmap.class, boolean.class);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException("Native code for rounding unsupported", e);
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException("Native code for rounding unsupported", e);
+    }
   }
 }
@@ -20,6 +20,7 @@ import com.facebook.fresco.vito.transformation.CircularBitmapTransformation;
 import com.facebook.imagepipeline.common.ImageDecodeOptions;
 import com.facebook.imagepipeline.common.ResizeOptions;
 import com.facebook.imagepipeline.common.RotationOptions;
+import com.facebook.imagepipeline.filter.CoverageMaskRoundingFilter;
 import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.testing.TestNativeLoader;
 import org.junit.Before;
@@ -119,6 +120,25 @@ public class ImagePipelineUtilsImplTest {
     assertThat(transformation.isAntiAliased()).isTrue();
   }
 
+  @Test
+  public void testBuildImageRequest_whenCoverageMaskRounding_thenRoundWithoutNativeCode() {
+    when(mFrescoExperiments.useNativeRounding()).thenReturn(false);
+    when(mFrescoExperiments.useCoverageMaskRounding()).thenReturn(true);
+
+    final ImageOptions imageOptions =
+        ImageOptions.create().round(RoundingOptions.asCircle(true)).build();
+
+    ImageRequest imageRequest = mImagePipelineUtils.buildImageRequest(URI, imageOptions);
+
+    assertThat(imageRequest).isNotNull();
+    ImageDecodeOptions imageDecodeOptions = imageRequest.getImageDecodeOptions();
+    assertThat(imageDecodeOptions.bitmapTransformation)
+        .isEqualTo(
+            new CircularBitmapTransformation(true, CoverageMaskRoundingFilter.getInstance()));
+    assertThat(imageDecodeOptions.bitmapTransformation)
+        .isNotEqualTo(new CircularBitmapTransformation(true));
+  }
+
   @Test
   public void testBuildImageRequest_whenResizingEnabled_thenSetResizeOptions() {
     ResizeOptions resizeOptions = ResizeOptions.forDimensions(123, 234);